@@ -4,17 +4,42 @@ import broadwick.BroadwickException;
 import broadwick.LoggingFacade;
 import ch.qos.logback.classic.Level;
 import com.google.common.base.Throwables;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.io.Writer;
 import java.net.URISyntaxException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 import lombok.Getter;
 import lombok.Setter;
 import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.bioss.cowtastrophe.AbcSmc;
 import uk.ac.bioss.cowtastrophe.ControlStrategy;
+import uk.ac.bioss.cowtastrophe.Ensemble;
+import uk.ac.bioss.cowtastrophe.EnsembleStatistics;
+import uk.ac.bioss.cowtastrophe.FarmMap;
+import uk.ac.bioss.cowtastrophe.InfectionTree;
+import uk.ac.bioss.cowtastrophe.ParameterSweep;
+import uk.ac.bioss.cowtastrophe.ResultsWriter;
 import uk.ac.bioss.cowtastrophe.Simulation;
+import uk.ac.bioss.cowtastrophe.StoppingRule;
+import uk.ac.bioss.cowtastrophe.StrategyOptimiser;
+import uk.ac.bioss.cowtastrophe.SweepCoordinator;
+import uk.ac.bioss.cowtastrophe.SweepDesign;
+import uk.ac.bioss.cowtastrophe.SweepWorker;
+import uk.ac.bioss.cowtastrophe.WorkQueue;
 
 /**
  * Application class that drives the simulation. The methods from here will eventually be incorporated in the servlet.
@@ -54,6 +79,10 @@ public class App {
      * Finalise the application.
      */
     public final void finalise() {
+        if (simulation == null) {
+            log.info("Closing project");
+            return;
+        }
         log.info("Closing project : {}", simulation.getSessionId());
 
         // empty the contents of the pid file
@@ -77,6 +106,257 @@ public class App {
 
     }
 
+    /**
+     * Run a task with the root logger raised to WARN, restoring its level afterwards, as logging every event of every
+     * simulation of a batch run would dominate the run time.
+     * @param <T>  the type of the result of the task.
+     * @param task the task.
+     * @return the result of the task.
+     */
+    private static <T> T runQuietly(final Supplier<T> task) {
+        final ch.qos.logback.classic.Logger rootLogger
+                = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+        final Level level = rootLogger.getLevel();
+        rootLogger.setLevel(Level.WARN);
+        try {
+            return task.get();
+        } finally {
+            rootLogger.setLevel(level);
+        }
+    }
+
+    /**
+     * Run an ensemble of independent replicates of the preset in the options file and log the mean statistics. The
+     * log level is raised to WARN while the replicates run as logging every event of every replicate would dominate
+     * the run time.
+     * @param controlStrategy the control strategy as given on the command line (created once per replicate).
+     * @param replicates      the number of replicates.
+     * @param seed            the master seed from which the seed of each replicate is derived.
+     * @param stoppingRule    the rule that stops a replicate early (null to run every replicate to the end).
+     * @param threads         the number of threads used to run the replicates.
+     * @param resultsFile     the file to which the daily statistics of every replicate are streamed ("" for none).
+     */
+    private void runEnsemble(final String controlStrategy, final int replicates, final long seed,
+                             final StoppingRule stoppingRule, final int threads, final String resultsFile) {
+        final String path = new File("").getAbsolutePath();
+        final String dir = new File(path, "resources").getAbsolutePath();
+        final String params = new File(dir, "cowtastrophe.properties").getAbsolutePath();
+        log.info("Running {} replicates of {} with master seed {} on {} threads", replicates, params, seed, threads);
+
+        final Ensemble ensemble = new Ensemble(dir, FarmMap.load(params),
+                                               () -> ControlStrategyFactory.create(controlStrategy),
+                                               replicates, seed);
+        if (stoppingRule != null) {
+            log.info("Stopping each replicate at {}", stoppingRule);
+            ensemble.setStoppingRule(stoppingRule);
+        }
+        final ResultsWriter results = resultsFile.isEmpty() ? null : new ResultsWriter(new File(resultsFile));
+        ensemble.setResults(results);
+        final EnsembleStatistics statistics;
+        try {
+            statistics = runQuietly(() -> ensemble.run(threads));
+        } finally {
+            if (results != null) {
+                results.close();
+            }
+        }
+        log.info("\n{}", statistics.toString());
+        if (results != null) {
+            log.info("Wrote the daily statistics of {} replicates ({} rows) to {}", results.getReplicates(),
+                     results.getRows(), resultsFile);
+        }
+    }
+
+    /**
+     * Run the parameter sweep described in a design file on the preset in the options file. The result of each point
+     * is appended to a JSON lines file (named after the design file) as soon as all its replicates have finished.
+     * @param designFile the name of the JSON design file.
+     * @param threads    the number of threads used to run the sweep.
+     */
+    private void runSweep(final String designFile, final int threads) {
+        final String path = new File("").getAbsolutePath();
+        final String dir = new File(path, "resources").getAbsolutePath();
+        final String params = new File(dir, "cowtastrophe.properties").getAbsolutePath();
+        final String resultsFile = designFile.replaceAll("\\.json$", "") + "_results.jsonl";
+
+        final SweepDesign design = new SweepDesign(designFile);
+        log.info("Running {} {} points x {} replicates of {} on {} threads, results in {}",
+                 design.getPoints().size(), design.getType(), design.getReplicates(), params, threads, resultsFile);
+
+        final ParameterSweep sweep = new ParameterSweep(dir, FarmMap.load(params), design);
+        try (Writer results = new BufferedWriter(new FileWriter(resultsFile))) {
+            runQuietly(() -> {
+                sweep.run(threads, (point) -> {
+                    try {
+                        results.write(point.asJson(design));
+                        results.write("\n");
+                        results.flush();
+                    } catch (IOException ex) {
+                        throw new BroadwickException("Error writing sweep results; " + ex.getLocalizedMessage());
+                    }
+                });
+                return null;
+            });
+        } catch (IOException ex) {
+            throw new BroadwickException("Error writing sweep results; " + Throwables.getStackTraceAsString(ex));
+        }
+        log.info("Finished sweep, results in {}", resultsFile);
+    }
+
+    /**
+     * Coordinate the parameter sweep described in a design file over a work queue, merging the results written back
+     * by the workers into a JSON lines file (named after the design file). Workers on other nodes join by running
+     * with -worker on the same (shared) queue directory; the given number of workers are also run in this process,
+     * so the whole sweep can run on a single machine.
+     * @param queueDir     the directory of the work queue.
+     * @param designFile   the name of the JSON design file.
+     * @param localWorkers the number of workers run in this process.
+     */
+    private void runCoordinator(final String queueDir, final String designFile, final int localWorkers) {
+        final String path = new File("").getAbsolutePath();
+        final String dir = new File(path, "resources").getAbsolutePath();
+        final String params = new File(dir, "cowtastrophe.properties").getAbsolutePath();
+        final String resultsFile = designFile.replaceAll("\\.json$", "") + "_results.jsonl";
+
+        final SweepCoordinator coordinator = new SweepCoordinator(new WorkQueue(queueDir), designFile,
+                                                                  SweepCoordinator.DEFAULT_UNIT_REPLICATES,
+                                                                  WorkQueue.DEFAULT_LEASE_MILLIS);
+        final SweepDesign design = coordinator.getDesign();
+        log.info("Coordinating {} {} points x {} replicates in {} with {} local workers, results in {}",
+                 design.getPoints().size(), design.getType(), design.getReplicates(), queueDir, localWorkers,
+                 resultsFile);
+
+        try (Writer results = new BufferedWriter(new FileWriter(resultsFile))) {
+            runQuietly(() -> {
+                coordinator.run(dir, localWorkers > 0 ? FarmMap.load(params) : null, localWorkers, (point) -> {
+                    try {
+                        results.write(point.asJson(design));
+                        results.write("\n");
+                        results.flush();
+                    } catch (IOException ex) {
+                        throw new BroadwickException("Error writing sweep results; " + ex.getLocalizedMessage());
+                    }
+                });
+                return null;
+            });
+        } catch (IOException ex) {
+            throw new BroadwickException("Error writing sweep results; " + Throwables.getStackTraceAsString(ex));
+        }
+        log.info("Finished distributed sweep ({} units reissued), results in {}", coordinator.getReissued(),
+                 resultsFile);
+    }
+
+    /**
+     * Run the units of a distributed parameter sweep on the preset in the options file, claiming them from a work
+     * queue until the coordinator has every result.
+     * @param queueDir the directory of the work queue.
+     * @param threads  the number of workers (each running one unit at a time) run in this process.
+     */
+    private void runWorkers(final String queueDir, final int threads) {
+        final String path = new File("").getAbsolutePath();
+        final String dir = new File(path, "resources").getAbsolutePath();
+        final String params = new File(dir, "cowtastrophe.properties").getAbsolutePath();
+        log.info("Running {} workers on the work queue in {}", threads, queueDir);
+
+        final WorkQueue queue = new WorkQueue(queueDir);
+        final FarmMap map = FarmMap.load(params);
+        final int units = runQuietly(() -> {
+            final ExecutorService executor = Executors.newFixedThreadPool(threads);
+            int total = 0;
+            try {
+                final List<Future<Integer>> workers = new ArrayList<>(threads);
+                for (int i = 0; i < threads; i++) {
+                    final SweepWorker worker = new SweepWorker(dir, map, queue, SweepWorker.createId(i));
+                    workers.add(executor.submit(worker::run));
+                }
+                for (Future<Integer> worker : workers) {
+                    total += worker.get();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new BroadwickException("Workers interrupted");
+            } catch (ExecutionException ex) {
+                throw new BroadwickException("Worker failed; " + Throwables.getStackTraceAsString(ex.getCause()));
+            } finally {
+                executor.shutdownNow();
+            }
+            return total;
+        });
+        log.info("Workers finished after running {} units", units);
+    }
+
+    /**
+     * Search for the cheapest control strategy settings on the preset in the options file and log the ranked
+     * candidates.
+     * @param optionsFile the name of the JSON file describing the search.
+     * @param threads     the number of threads used to run the replicates.
+     */
+    private void runOptimiser(final String optionsFile, final int threads) {
+        final String path = new File("").getAbsolutePath();
+        final String dir = new File(path, "resources").getAbsolutePath();
+        final String params = new File(dir, "cowtastrophe.properties").getAbsolutePath();
+
+        final StrategyOptimiser optimiser = new StrategyOptimiser(dir, FarmMap.load(params), optionsFile);
+        log.info("Searching {} candidate strategies on {} with master seed {} on {} threads",
+                 optimiser.getCandidates().size(), params, optimiser.getSeed(), threads);
+
+        final List<StrategyOptimiser.Candidate> ranked = runQuietly(() -> optimiser.run(threads));
+        log.info("\n{}", StrategyOptimiser.asTable(ranked));
+    }
+
+    /**
+     * Infer the parameters of the preset in the options file from an observed outbreak by ABC-SMC, log a summary of
+     * the posterior and write its particles to a CSV file (named after the ABC options file).
+     * @param optionsFile the name of the JSON file describing the inference.
+     * @param threads     the number of threads used to run the simulations.
+     */
+    private void runAbc(final String optionsFile, final int threads) {
+        final String path = new File("").getAbsolutePath();
+        final String dir = new File(path, "resources").getAbsolutePath();
+        final String params = new File(dir, "cowtastrophe.properties").getAbsolutePath();
+        final String posteriorFile = optionsFile.replaceAll("\\.json$", "") + "_posterior.csv";
+
+        final AbcSmc abc = new AbcSmc(dir, FarmMap.load(params), optionsFile);
+        log.info("Inferring {} from {} observed days on {} with {} particles, master seed {} on {} threads",
+                 abc.getParameters(), abc.getObservedDays(), params, abc.getNumParticles(), abc.getSeed(), threads);
+
+        final List<AbcSmc.Generation> generations = runQuietly(() -> abc.run(threads));
+        if (generations.isEmpty()) {
+            throw new BroadwickException("ABC-SMC did not complete a single generation");
+        }
+        final AbcSmc.Generation posterior = generations.get(generations.size() - 1);
+        try (Writer writer = new BufferedWriter(new FileWriter(posteriorFile))) {
+            writer.write(abc.asTable(posterior));
+        } catch (IOException ex) {
+            throw new BroadwickException("Error writing the posterior; " + Throwables.getStackTraceAsString(ex));
+        }
+        log.info("\n{}", abc.summarise(posterior));
+        log.info("Posterior particles in {}", posteriorFile);
+    }
+
+    /**
+     * Write the infection tree of the simulation that was run (if any) and log a summary of it.
+     * @param treeFile the name of the CSV file the tree is written to ("" to only log the summary).
+     * @param farmId   the id of a farm whose chain of transmission, offspring and subtree size are logged (null for
+     *                 none).
+     */
+    private void writeInfectionTree(final String treeFile, final Integer farmId) {
+        if (simulation == null || (treeFile.isEmpty() && farmId == null)) {
+            return;
+        }
+        final InfectionTree tree = simulation.getStatistics().getInfectionTree();
+        if (!treeFile.isEmpty()) {
+            try (Writer writer = new BufferedWriter(new FileWriter(treeFile))) {
+                tree.writeCsv(writer);
+            } catch (IOException ex) {
+                throw new BroadwickException("Error writing the infection tree; "
+                                             + Throwables.getStackTraceAsString(ex));
+            }
+            log.info("Infection tree in {}", treeFile);
+        }
+        log.info("Infection tree: {}", tree.asJson(farmId == null ? -1 : simulation.getMap().indexOf(farmId)));
+    }
+
     /**
      * Restore the simulation from the serialised session file and run the simulation.
      * @param sessionIdFile   the name of the file (including the path) of the serialised
@@ -132,11 +412,25 @@ public class App {
             ControlStrategy control = ControlStrategyFactory.create(cli.getcontrolStrategy());
             app.getLog().trace("command line options: \n control = {}", cli.getcontrolStrategy());
 
-            if (!(sessionIdFileName.isEmpty())) {
+            if (cli.getMode() == Mode.WORKER) {
+                app.runWorkers(cli.getQueueDirectory(), cli.getThreads());
+            } else if (cli.getMode() == Mode.COORDINATOR) {
+                app.runCoordinator(cli.getQueueDirectory(), cli.getSweepDesign(), cli.getThreads());
+            } else if (cli.getMode() == Mode.OPTIMISE) {
+                app.runOptimiser(cli.getOptimiserOptions(), cli.getThreads());
+            } else if (cli.getMode() == Mode.ABC) {
+                app.runAbc(cli.getAbcOptions(), cli.getThreads());
+            } else if (cli.getMode() == Mode.SWEEP) {
+                app.runSweep(cli.getSweepDesign(), cli.getThreads());
+            } else if (cli.getMode() == Mode.ENSEMBLE) {
+                app.runEnsemble(cli.getcontrolStrategy(), cli.getReplicates(), cli.getSeed(),
+                                cli.getStoppingRule(), cli.getThreads(), cli.getResultsFile());
+            } else if (!(sessionIdFileName.isEmpty())) {
                 app.runFromSessionIdFile(sessionIdFileName, control);
             } else {
                 app.runFromOptionsFile(control);
             }
+            app.writeInfectionTree(cli.getTreeFile(), cli.getTreeFarm());
 
             app.finalise();
 
@@ -10,6 +10,7 @@ import org.apache.commons.cli2.builder.DefaultOptionBuilder;
 import org.apache.commons.cli2.builder.GroupBuilder;
 import org.apache.commons.cli2.commandline.Parser;
 import org.apache.commons.cli2.util.HelpFormatter;
+import uk.ac.bioss.cowtastrophe.StoppingRule;
 
 /**
  * Construct and read command line arguments. This class contains methods for extracting some of
@@ -75,11 +76,138 @@ public class CommandLineOptions {
                 .withShortName("f")
                 .withDescription("fast forward the simulation until the end")
                 .create();
+        ensembleOpt = obuilder.withShortName("ensemble")
+                .withShortName("e")
+                .withDescription("run an ensemble of the given number of independent replicates")
+                .withArgument(
+                        abuilder
+                                .withName("replicates")
+                                .withMinimum(1)
+                                .withMaximum(1)
+                                .create())
+                .create();
+        seedOpt = obuilder.withShortName("seed")
+                .withDescription("the master random seed of the ensemble")
+                .withArgument(
+                        abuilder
+                                .withName("seed")
+                                .withMinimum(1)
+                                .withMaximum(1)
+                                .create())
+                .create();
+        sweepOpt = obuilder.withShortName("sweep")
+                .withDescription("run the parameter sweep described in the given JSON design file")
+                .withArgument(
+                        abuilder
+                                .withName("designFile")
+                                .withMinimum(1)
+                                .withMaximum(1)
+                                .create())
+                .create();
+        coordinatorOpt = obuilder.withShortName("coordinator")
+                .withDescription("distribute the sweep given by -sweep over the work queue in the given directory")
+                .withArgument(
+                        abuilder
+                                .withName("queueDir")
+                                .withMinimum(1)
+                                .withMaximum(1)
+                                .create())
+                .create();
+        workerOpt = obuilder.withShortName("worker")
+                .withDescription("run the units of the distributed sweep in the given work queue directory")
+                .withArgument(
+                        abuilder
+                                .withName("queueDir")
+                                .withMinimum(1)
+                                .withMaximum(1)
+                                .create())
+                .create();
+        optimiseOpt = obuilder.withShortName("optimise")
+                .withDescription("search for the cheapest control strategy described in the given JSON file")
+                .withArgument(
+                        abuilder
+                                .withName("optionsFile")
+                                .withMinimum(1)
+                                .withMaximum(1)
+                                .create())
+                .create();
+        abcOpt = obuilder.withShortName("abc")
+                .withDescription("infer the model parameters from the observed outbreak described in the given JSON "
+                                 + "file by ABC-SMC")
+                .withArgument(
+                        abuilder
+                                .withName("optionsFile")
+                                .withMinimum(1)
+                                .withMaximum(1)
+                                .create())
+                .create();
+        stopOpt = obuilder.withShortName("stop")
+                .withDescription("stop each replicate of the ensemble once it exceeds the limits in the given JSON, "
+                                 + "e.g. {\"maxCost\": 1.0e6, \"maxInfected\": 50}")
+                .withArgument(
+                        abuilder
+                                .withName("rule")
+                                .withMinimum(1)
+                                .withMaximum(1)
+                                .create())
+                .create();
+        treeOpt = obuilder.withShortName("tree")
+                .withDescription("write the infection tree of the simulation to the given CSV file and log its "
+                                 + "generation sizes and offspring distribution")
+                .withArgument(
+                        abuilder
+                                .withName("treeFile")
+                                .withMinimum(1)
+                                .withMaximum(1)
+                                .create())
+                .create();
+        treeFarmOpt = obuilder.withShortName("treeFarm")
+                .withDescription("log the chain of transmission to, the offspring and the subtree size of the farm "
+                                 + "with the given id in the infection tree")
+                .withArgument(
+                        abuilder
+                                .withName("farmId")
+                                .withMinimum(1)
+                                .withMaximum(1)
+                                .create())
+                .create();
+        resultsOpt = obuilder.withShortName("results")
+                .withDescription("stream the daily statistics of every replicate of the ensemble to the given "
+                                 + "columnar results file")
+                .withArgument(
+                        abuilder
+                                .withName("resultsFile")
+                                .withMinimum(1)
+                                .withMaximum(1)
+                                .create())
+                .create();
+        threadsOpt = obuilder.withShortName("threads")
+                .withShortName("t")
+                .withDescription("the number of threads used to run the ensemble (default: all cores)")
+                .withArgument(
+                        abuilder
+                                .withName("threads")
+                                .withMinimum(1)
+                                .withMaximum(1)
+                                .create())
+                .create();
 
         options = gbuilder.withName("options")
                 .withOption(sessionIdOpt)
                 .withOption(controlStgyOpt)
                 .withOption(fForwardOpt)
+                .withOption(ensembleOpt)
+                .withOption(seedOpt)
+                .withOption(sweepOpt)
+                .withOption(coordinatorOpt)
+                .withOption(workerOpt)
+                .withOption(optimiseOpt)
+                .withOption(abcOpt)
+                .withOption(stopOpt)
+                .withOption(treeOpt)
+                .withOption(treeFarmOpt)
+                .withOption(resultsOpt)
+                .withOption(threadsOpt)
                 .create();
     }
 
@@ -109,15 +237,128 @@ public class CommandLineOptions {
 
     /**
      * Obtain the simulation mode from the command line.
-     * @return Mode.FAST_FORWARD if "-f" was found on the command line, Mode.SINGLE_DAY otherwise.
+     * @return Mode.WORKER if "-worker" was found on the command line, Mode.COORDINATOR if "-coordinator" was found,
+     *         Mode.OPTIMISE if "-optimise" was found, Mode.ABC if "-abc" was found, Mode.SWEEP if "-sweep" was found,
+     *         Mode.ENSEMBLE if "-e" was found, Mode.FAST_FORWARD if "-f" was found, Mode.SINGLE_DAY otherwise.
      */
     public final Mode getMode() {
+        if (cmdLine.hasOption(workerOpt)) {
+            return Mode.WORKER;
+        }
+        if (cmdLine.hasOption(coordinatorOpt)) {
+            return Mode.COORDINATOR;
+        }
+        if (cmdLine.hasOption(optimiseOpt)) {
+            return Mode.OPTIMISE;
+        }
+        if (cmdLine.hasOption(abcOpt)) {
+            return Mode.ABC;
+        }
+        if (cmdLine.hasOption(sweepOpt)) {
+            return Mode.SWEEP;
+        }
+        if (cmdLine.hasOption(ensembleOpt)) {
+            return Mode.ENSEMBLE;
+        }
         if (cmdLine.hasOption(fForwardOpt)) {
             return Mode.FAST_FORWARD;
         }
         return Mode.SINGLE_DAY;
     }
 
+    /**
+     * Get the number of replicates of the ensemble specified by the -e option.
+     * @return the number of replicates.
+     */
+    public final int getReplicates() {
+        return Integer.parseInt(getOpt(ensembleOpt));
+    }
+
+    /**
+     * Get the name of the sweep design file specified by the -sweep option.
+     * @return the name of the design file.
+     */
+    public final String getSweepDesign() {
+        return getOpt(sweepOpt);
+    }
+
+    /**
+     * Get the directory of the work queue specified by the -coordinator or -worker option.
+     * @return the directory of the queue.
+     */
+    public final String getQueueDirectory() {
+        return cmdLine.hasOption(workerOpt) ? getOpt(workerOpt) : getOpt(coordinatorOpt);
+    }
+
+    /**
+     * Get the name of the optimiser options file specified by the -optimise option.
+     * @return the name of the options file.
+     */
+    public final String getOptimiserOptions() {
+        return getOpt(optimiseOpt);
+    }
+
+    /**
+     * Get the name of the ABC-SMC options file specified by the -abc option.
+     * @return the name of the options file.
+     */
+    public final String getAbcOptions() {
+        return getOpt(abcOpt);
+    }
+
+    /**
+     * Get the master seed of the ensemble specified by the -seed option, if there is no seed on the command line
+     * the current time is used.
+     * @return the master seed.
+     */
+    public final long getSeed() {
+        final String seed = getOpt(seedOpt);
+        return seed.isEmpty() ? System.currentTimeMillis() : Long.parseLong(seed);
+    }
+
+    /**
+     * Get the stopping rule specified by the -stop option.
+     * @return the rule, null if there is none.
+     */
+    public final StoppingRule getStoppingRule() {
+        final String rule = getOpt(stopOpt);
+        return rule.isEmpty() ? null : StoppingRule.fromJson(rule);
+    }
+
+    /**
+     * Get the name of the file the infection tree is written to, specified by the -tree option.
+     * @return the name of the file, "" if there is none.
+     */
+    public final String getTreeFile() {
+        return getOpt(treeOpt);
+    }
+
+    /**
+     * Get the id of the farm to describe in the infection tree, specified by the -treeFarm option.
+     * @return the id of the farm, null if there is none.
+     */
+    public final Integer getTreeFarm() {
+        final String farm = getOpt(treeFarmOpt);
+        return farm.isEmpty() ? null : Integer.valueOf(farm);
+    }
+
+    /**
+     * Get the name of the file the results of the ensemble are streamed to, specified by the -results option.
+     * @return the name of the file, "" if there is none.
+     */
+    public final String getResultsFile() {
+        return getOpt(resultsOpt);
+    }
+
+    /**
+     * Get the number of threads specified by the -t option, or the number of available processors if there is none.
+     * @return the number of threads.
+     */
+    public final int getThreads() {
+        final String threads = getOpt(threadsOpt);
+        return threads.isEmpty() ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(threads);
+    }
+
     /**
      * Get the string that accompanies this option or "" if there is none. For example, if the
      * command line is "-s 1331845.ser" and this method is called with the "-s" option it will
@@ -140,4 +381,16 @@ public class CommandLineOptions {
     private Option sessionIdOpt;
     private Option controlStgyOpt;
     private Option fForwardOpt;
+    private Option ensembleOpt;
+    private Option seedOpt;
+    private Option sweepOpt;
+    private Option coordinatorOpt;
+    private Option workerOpt;
+    private Option optimiseOpt;
+    private Option abcOpt;
+    private Option stopOpt;
+    private Option treeOpt;
+    private Option treeFarmOpt;
+    private Option resultsOpt;
+    private Option threadsOpt;
 }
@@ -1,10 +1,24 @@
 
 /**
- * The running mode of the simulation (daily or until the end).
+ * The running mode of the simulation (daily, until the end, as an ensemble of replicates, as a parameter sweep, as the
+ * coordinator or a worker of a sweep distributed over a work queue, as a search for the cheapest control strategy or as
+ * an inference of the model parameters from an observed outbreak).
  */
 public enum Mode {
     /** Run the simulation for a single day. */
     SINGLE_DAY,
     /** Run the simulation to the end. */
-    FAST_FORWARD
+    FAST_FORWARD,
+    /** Run an ensemble of independent replicates to the end. */
+    ENSEMBLE,
+    /** Run the points x replicates of a parameter sweep design. */
+    SWEEP,
+    /** Coordinate a parameter sweep distributed over a work queue. */
+    COORDINATOR,
+    /** Run the units of a distributed parameter sweep claimed from a work queue. */
+    WORKER,
+    /** Search for the control strategy settings with the lowest expected cost. */
+    OPTIMISE,
+    /** Infer the parameters of the disease model from an observed outbreak by ABC-SMC. */
+    ABC
 }
@@ -1,15 +1,22 @@
 import broadwick.BroadwickException;
 import broadwick.LoggingFacade;
 import ch.qos.logback.classic.Level;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Throwables;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.PrintWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -17,8 +24,19 @@ import javax.servlet.http.HttpServletResponse;
 import lombok.Getter;
 import org.slf4j.Logger;
 import uk.ac.bioss.cowtastrophe.ControlStrategy;
+import uk.ac.bioss.cowtastrophe.FarmStateEncoder;
+import uk.ac.bioss.cowtastrophe.InfectionTree;
+import uk.ac.bioss.cowtastrophe.OutbreakForecast;
+import uk.ac.bioss.cowtastrophe.ResponseFormat;
+import uk.ac.bioss.cowtastrophe.RunLimits;
+import uk.ac.bioss.cowtastrophe.SessionPool;
 import uk.ac.bioss.cowtastrophe.Simulation;
+import uk.ac.bioss.cowtastrophe.SimulationCancelledException;
+import uk.ac.bioss.cowtastrophe.SimulationHelper;
+import uk.ac.bioss.cowtastrophe.StatisticsCache;
+import uk.ac.bioss.cowtastrophe.StrategyComparison;
 import uk.ac.bioss.cowtastrophe.controls.ControlStrategyFactory;
+import uk.ac.bioss.cowtastrophe.controls.NullStrategy;
 
 
 /**
@@ -26,10 +44,31 @@ import uk.ac.bioss.cowtastrophe.controls.ControlStrategyFactory;
  */
 public class AppServlet extends HttpServlet {
 
-    private Simulation simulation;
+    private SessionPool sessionPool;
+    private ExecutorService comparePool;
+    private ExecutorService forecastPool;
+    private StatisticsCache statisticsCache;
     @Getter
     private Logger log;
     private final String logFormatThreadMsg = "[%thread] %-5level %msg %n";
+    private static final int DEFAULT_POOL_SIZE = 2;
+    private static final int DEFAULT_WARM_UP_DAYS = 10;
+    /**
+     * The runs of a session have no time limit unless the MaxRunMillis/MaxCpuMillis init parameters set one, the
+     * comparisons of strategies have one by default.
+     */
+    private static final int NO_LIMIT = 0;
+    private static final int DEFAULT_COMPARE_MAX_RUN_MILLIS = 60000;
+    private static final int DEFAULT_COMPARE_MAX_CPU_MILLIS = 60000;
+    private static final int DEFAULT_FORECAST_DAYS = 30;
+    private static final int DEFAULT_FORECAST_REPLICATES = 200;
+    private static final int DEFAULT_MAX_FORECAST_REPLICATES = 1000;
+    private static final int DEFAULT_MAX_FORECAST_MILLIS = 2000;
+    private static final int DEFAULT_STATISTICS_CACHE_SESSIONS = 64;
+    /**
+     * The limits of the simulations that are currently running, by session id.
+     */
+    private static final ConcurrentMap<String, RunLimits> RUNNING = new ConcurrentHashMap<>();
 
     @Override
     public final void init() {
@@ -48,6 +87,69 @@ public class AppServlet extends HttpServlet {
                       ex.getLocalizedMessage());
             //log.trace(Throwables.getStackTraceAsString(ex));
         }
+
+        synchronized (this) {
+            if (sessionPool == null) {
+                final String settingsFile = this.getServletConfig().getInitParameter("SettingsFile");
+                sessionPool = new SessionPool(this.getServletConfig().getInitParameter("BaseDirectory"),
+                                              getIntInitParameter("SessionPoolSize", DEFAULT_POOL_SIZE));
+                sessionPool.warmUp(settingsFile, getIntInitParameter("WarmUpDays", DEFAULT_WARM_UP_DAYS));
+                sessionPool.prefill(settingsFile);
+            }
+            if (comparePool == null) {
+                comparePool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), (runnable) -> {
+                    final Thread thread = new Thread(runnable, "compare-strategies");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            if (forecastPool == null) {
+                forecastPool = Executors.newFixedThreadPool(
+                        getIntInitParameter("ForecastThreads", Runtime.getRuntime().availableProcessors()),
+                        (runnable) -> {
+                            final Thread thread = new Thread(runnable, "forecast");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+            }
+            if (statisticsCache == null) {
+                statisticsCache = new StatisticsCache(getIntInitParameter("StatisticsCacheSessions",
+                                                                          DEFAULT_STATISTICS_CACHE_SESSIONS));
+            }
+        }
+    }
+
+    @Override
+    public final void destroy() {
+        synchronized (this) {
+            if (sessionPool != null) {
+                sessionPool.shutdown();
+                sessionPool = null;
+            }
+            if (comparePool != null) {
+                comparePool.shutdownNow();
+                comparePool = null;
+            }
+            if (forecastPool != null) {
+                forecastPool.shutdownNow();
+                forecastPool = null;
+            }
+        }
+        super.destroy();
+    }
+
+    /**
+     * Get an integer init parameter of the servlet.
+     * @param name         the name of the parameter.
+     * @param defaultValue the value to use if the parameter is not given.
+     * @return the value of the parameter.
+     */
+    private int getIntInitParameter(final String name, final int defaultValue) {
+        final String value = this.getServletConfig().getInitParameter(name);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        return Integer.parseInt(value.trim());
     }
 
     /**
@@ -61,12 +163,9 @@ public class AppServlet extends HttpServlet {
     protected final void doGet(final HttpServletRequest request, final HttpServletResponse response)
             throws ServletException, IOException {
         init();
-        simulation = new Simulation(this.getServletConfig().getInitParameter("BaseDirectory"),
-                                        this.getServletConfig().getInitParameter("SettingsFile"));
+        final Simulation simulation = sessionPool.take(this.getServletConfig().getInitParameter("SettingsFile"));
         //simulation.run24Hours();
-        response.setContentType("application/json");
-        response.setCharacterEncoding("UTF-8");
-        response.getWriter().write(simulation.asJson());
+        writeSimulation(request, response, simulation, true);
     }
 
     /**
@@ -80,7 +179,7 @@ public class AppServlet extends HttpServlet {
     protected final void
         doPost(final HttpServletRequest request, final HttpServletResponse response)
             throws ServletException, IOException {
-        if (simulation == null) {
+        if (sessionPool == null) {
             log.info("doPost - init()");
             init();
             for (Map.Entry<String, String[]> entry : request.getParameterMap().entrySet()) {
@@ -93,20 +192,34 @@ public class AppServlet extends HttpServlet {
             //                            this.getServletConfig().getInitParameter("SettingsFile"));
         }
         String ses = request.getParameter("session_id");
-        if (ses == null || "".equals(ses)) {
+        if ("cancel".equals(request.getParameter("mode"))) {
+            cancelRun(ses, response);
+            return;
+        } else if ("compare".equals(request.getParameter("mode"))) {
+            compareStrategies(request, response);
+            return;
+        } else if ("forecast".equals(request.getParameter("mode"))) {
+            forecast(request, response);
+            return;
+        } else if ("tree".equals(request.getParameter("mode"))) {
+            writeInfectionTree(request, response);
+            return;
+        } else if ("statistics".equals(request.getParameter("mode"))) {
+            writeStatistics(request, response);
+            return;
+        }
+        // the simulation is local to the request, the servlet instance is shared by the requests of every session.
+        Simulation simulation = null;
+        final boolean newSession = ses == null || "".equals(ses);
+        if (newSession) {
             log.info("empty session..");
-            simulation = new Simulation(this.getServletConfig().getInitParameter("BaseDirectory"),
-                                        this.getServletConfig().getInitParameter("SettingsFile"));
+            simulation = sessionPool.take(this.getServletConfig().getInitParameter("SettingsFile"));
         } else {
             String tf = request.getParameter("timeframe");
             int tfi = Integer.parseInt(tf) - 1;
             String basedir = this.getServletConfig().getInitParameter("BaseDirectory");
-            String sessionDir = new File(basedir, ses).getAbsolutePath();
-            String sessionFile = new File(sessionDir, ses + "_" + tfi + ".ser").getAbsolutePath();
-            log.info("file: " + sessionFile);
-            try (ObjectInputStream ois
-                                   = new ObjectInputStream(new FileInputStream(sessionFile))) {
-                simulation = (Simulation) ois.readObject();
+            try {
+                simulation = SimulationHelper.loadSession(basedir, ses, tfi);
                 log.trace("Running with settings {}", simulation.getParameters().toString());
             } catch (Exception ex) {
                 log.error("Error loading session; see exception for details");
@@ -164,22 +277,274 @@ public class AppServlet extends HttpServlet {
         }
         ControlStrategy strategy = 
                 ControlStrategyFactory.create(cullInt, vaccInt, vacrad, moveInt, moverad);
-        simulation.setControlStrategy(strategy);
+        // attaching a strategy replays the state of every farm to it, keep the one the session has if it is the same.
+        if (!strategy.hasSameSettings(simulation.getControlStrategy())) {
+            simulation.setControlStrategy(strategy);
+        }
 
-        if ("24Hours".equals(request.getParameter("mode"))) {
-            simulation.run24Hours();
-        } else if ("run".equals(request.getParameter("mode"))) {
-            simulation.run();
-        //} else if ("true".equals(request.getParameter("getStatistics"))) {
-            //simulation.getStatistics().asJson(); // need to write this method (ise toString()).
+        final String mode = request.getParameter("mode");
+        if ("24Hours".equals(mode) || "run".equals(mode)) {
+            if (!newSession) {
+                // the days from the loaded snapshot on are run again, possibly with another strategy.
+                statisticsCache.truncate(ses, simulation.getDay());
+            }
+            simulation = runWithinBudget(request, response, simulation, mode);
+            statisticsCache.extend(simulation.getSessionId(), simulation.getDay(), simulation.getStatistics());
         }
 
+        // The static attributes of the farms are only sent with a new session unless the client asks for them.
+        writeSimulation(request, response, simulation, newSession || "true".equals(request.getParameter("static")));
+    }
+
+    /**
+     * Run the simulation (for a day or until the end) within the wall-clock budget requested by the client (the
+     * budget_ms parameter), capped by the MaxRunMillis and MaxCpuMillis init parameters if they are set; the run has
+     * no time limit if none of them is given. The run is registered so that it can be cancelled by another request; if
+     * it is cancelled or runs out of time the snapshot of its last completed day is returned instead of the simulation.
+     * @param request  servlet request
+     * @param response servlet response
+     * @param running  the simulation to run.
+     * @param mode     the run mode ("24Hours" or "run").
+     * @return the simulation that was run, or the snapshot of its last completed day if the run was stopped.
+     */
+    private Simulation runWithinBudget(final HttpServletRequest request, final HttpServletResponse response,
+                                       final Simulation running, final String mode) {
+        final long maxRunMillis = getIntInitParameter("MaxRunMillis", NO_LIMIT);
+        long budget = maxRunMillis;
+        final String requested = request.getParameter("budget_ms");
+        if (requested != null && !"".equals(requested)) {
+            budget = maxRunMillis > 0 ? Math.min(Long.parseLong(requested), maxRunMillis) : Long.parseLong(requested);
+        }
+        final RunLimits limits = new RunLimits(budget, getIntInitParameter("MaxCpuMillis", NO_LIMIT));
 
-        PrintWriter out = response.getWriter();
+        running.setLimits(limits);
+        RUNNING.put(running.getSessionId(), limits);
         try {
-            out.write(simulation.asJson());
+            if ("24Hours".equals(mode)) {
+                running.run24Hours();
+            } else {
+                running.run();
+            }
+        } catch (SimulationCancelledException ex) {
+            log.info("Session {}: {}", running.getSessionId(), ex.getLocalizedMessage());
+            response.setHeader("X-Simulation-Stopped", limits.getReason());
+            return SimulationHelper.loadSession(this.getServletConfig().getInitParameter("BaseDirectory"),
+                                                running.getSessionId(), ex.getDay());
         } finally {
-            out.close();
+            RUNNING.remove(running.getSessionId(), limits);
+            running.setLimits(null);
+        }
+        return running;
+    }
+
+    /**
+     * Compare several control strategies from the same session and day. The request gives the session (session_id
+     * and timeframe), a JSON array of strategy settings (strategies) and the number of days to run each for (days);
+     * the strategies are run in parallel, each within the MaxRunMillis/MaxCpuMillis budget (a minute by default).
+     * @param request  servlet request
+     * @param response servlet response
+     * @throws IOException if an I/O error occurs
+     */
+    private void compareStrategies(final HttpServletRequest request, final HttpServletResponse response)
+            throws IOException {
+        final String ses = request.getParameter("session_id");
+        final int tfi = Integer.parseInt(request.getParameter("timeframe")) - 1;
+        final Simulation base = SimulationHelper.loadSession(this.getServletConfig().getInitParameter("BaseDirectory"),
+                                                             ses, tfi);
+        final StrategyComparison comparison
+                = new StrategyComparison(base, StrategyComparison.parse(request.getParameter("strategies")),
+                                         Integer.parseInt(request.getParameter("days")));
+        log.info("Comparing {} strategies for session {} over {} days", comparison.getSettings().size(), ses,
+                 comparison.getDays());
+
+        final List<StrategyComparison.Outcome> outcomes
+                = comparison.run(comparePool, getIntInitParameter("MaxRunMillis", DEFAULT_COMPARE_MAX_RUN_MILLIS),
+                                 getIntInitParameter("MaxCpuMillis", DEFAULT_COMPARE_MAX_CPU_MILLIS));
+
+        response.setContentType(ResponseFormat.JSON.getContentType());
+        try (Writer writer = new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8)) {
+            writer.write(comparison.asJson(outcomes));
+        }
+    }
+
+    /**
+     * Forecast the outbreak of a session from a given day. The request gives the session (session_id and timeframe),
+     * and optionally the number of days to forecast (days), the number of replicates (replicates, capped by the
+     * MaxForecastReplicates init parameter), the wall-clock budget (budget_ms, capped by MaxForecastMillis) and the
+     * strategy to apply as a JSON object of settings (strategy, the session's own strategy if absent). The response
+     * holds the per-day quantiles of the farm counts and cost over the replicates that finished within the budget.
+     * @param request  servlet request
+     * @param response servlet response
+     * @throws IOException if an I/O error occurs
+     */
+    private void forecast(final HttpServletRequest request, final HttpServletResponse response)
+            throws IOException {
+        final String ses = request.getParameter("session_id");
+        final int tfi = Integer.parseInt(request.getParameter("timeframe")) - 1;
+        final Simulation base = SimulationHelper.loadSession(this.getServletConfig().getInitParameter("BaseDirectory"),
+                                                             ses, tfi);
+        ControlStrategy strategy = base.getControlStrategy();
+        final String settings = request.getParameter("strategy");
+        if (settings != null && !"".equals(settings)) {
+            strategy = StrategyComparison.Settings.fromJson(new ObjectMapper().readTree(settings)).create();
+        } else if (strategy == null) {
+            strategy = new NullStrategy();
+        }
+        final int replicates = Math.min(getIntParameter(request, "replicates", DEFAULT_FORECAST_REPLICATES),
+                                        getIntInitParameter("MaxForecastReplicates",
+                                                            DEFAULT_MAX_FORECAST_REPLICATES));
+        final long maxMillis = getIntInitParameter("MaxForecastMillis", DEFAULT_MAX_FORECAST_MILLIS);
+        final long budget = Math.min(getIntParameter(request, "budget_ms", (int) maxMillis), maxMillis);
+
+        final OutbreakForecast forecast = new OutbreakForecast(base, strategy, replicates,
+                                                               getIntParameter(request, "days",
+                                                                               DEFAULT_FORECAST_DAYS));
+        forecast.run(forecastPool, budget);
+
+        response.setContentType(ResponseFormat.JSON.getContentType());
+        try (Writer writer = new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8)) {
+            writer.write(forecast.asJson());
+        }
+    }
+
+    /**
+     * Write the infection tree of a session on a given day (session_id and timeframe): the generation sizes and the
+     * offspring distribution and, if a farm id is given (farm), the chain of transmission to the farm, its offspring
+     * and the size of its subtree as JSON, or the whole tree as CSV if format=csv.
+     * @param request  servlet request
+     * @param response servlet response
+     * @throws IOException if an I/O error occurs
+     */
+    private void writeInfectionTree(final HttpServletRequest request, final HttpServletResponse response)
+            throws IOException {
+        final String ses = request.getParameter("session_id");
+        final int tfi = Integer.parseInt(request.getParameter("timeframe")) - 1;
+        final Simulation session = SimulationHelper.loadSession(
+                this.getServletConfig().getInitParameter("BaseDirectory"), ses, tfi);
+        final InfectionTree tree = session.getStatistics().getInfectionTree();
+
+        if ("csv".equals(request.getParameter("format"))) {
+            response.setContentType("text/csv");
+            try (Writer writer = new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8)) {
+                tree.writeCsv(writer);
+            }
+            return;
+        }
+        final int farmId = getIntParameter(request, "farm", -1);
+        response.setContentType(ResponseFormat.JSON.getContentType());
+        try (Writer writer = new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8)) {
+            writer.write(tree.asJson(farmId < 0 ? -1 : session.getMap().indexOf(farmId)));
+        }
+    }
+
+    /**
+     * Write the daily statistics of a session up to a given day (session_id and timeframe) as a JSON array of days
+     * and, if tree=true, the summary of its infection tree. The series is served from the statistics cache, which
+     * only needs the snapshot to be loaded if the session has not been run or fetched up to that day.
+     * @param request  servlet request
+     * @param response servlet response
+     * @throws IOException if an I/O error occurs
+     */
+    private void writeStatistics(final HttpServletRequest request, final HttpServletResponse response)
+            throws IOException {
+        final String ses = request.getParameter("session_id");
+        final int tfi = Integer.parseInt(request.getParameter("timeframe")) - 1;
+        final boolean includeTree = "true".equals(request.getParameter("tree"));
+
+        StatisticsCache.Series series = statisticsCache.get(ses, tfi);
+        Simulation session = null;
+        if (series == null || includeTree) {
+            session = SimulationHelper.loadSession(this.getServletConfig().getInitParameter("BaseDirectory"),
+                                                   ses, tfi);
+            if (series == null) {
+                series = statisticsCache.extend(ses, tfi, session.getStatistics());
+            }
+        }
+
+        response.setContentType(ResponseFormat.JSON.getContentType());
+        try (OutputStream out = response.getOutputStream()) {
+            out.write(("{\"session_id\": \"" + ses + "\", \"timeframe\": " + (tfi + 1) + ", \"days\": [")
+                              .getBytes(StandardCharsets.UTF_8));
+            series.writeTo(out);
+            out.write(']');
+            if (includeTree) {
+                out.write((", \"infection_tree\": " + session.getStatistics().getInfectionTree().asJson(-1))
+                                  .getBytes(StandardCharsets.UTF_8));
+            }
+            out.write('}');
+        }
+    }
+
+    /**
+     * Get an integer parameter of a request.
+     * @param request      servlet request
+     * @param name         the name of the parameter.
+     * @param defaultValue the value to use if the parameter is not given.
+     * @return the value of the parameter.
+     */
+    private static int getIntParameter(final HttpServletRequest request, final String name, final int defaultValue) {
+        final String value = request.getParameter(name);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        return Integer.parseInt(value.trim());
+    }
+
+    /**
+     * Cancel the running simulation of a session. The response is a small JSON object saying whether a running
+     * simulation was found; the simulation itself stops at its next check and answers its own request.
+     * @param sessionId the session whose simulation is to be cancelled.
+     * @param response  servlet response
+     * @throws IOException if an I/O error occurs
+     */
+    private void cancelRun(final String sessionId, final HttpServletResponse response) throws IOException {
+        final RunLimits limits = sessionId == null ? null : RUNNING.get(sessionId);
+        if (limits != null) {
+            log.info("Cancelling simulation for session {}", sessionId);
+            limits.cancel();
+        }
+        response.setContentType(ResponseFormat.JSON.getContentType());
+        try (Writer writer = new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8)) {
+            writer.write("{\"session_id\": \"" + sessionId + "\", \"cancelled\": " + (limits != null) + "}");
+        }
+    }
+
+    /**
+     * Write the state of the simulation in the format negotiated with the client, gzip compressed if the client
+     * accepts it.
+     * @param request       servlet request
+     * @param response      servlet response
+     * @param simulation    the simulation to write.
+     * @param includeStatic whether the static attributes of the farms (coordinates etc.) are written in the compact
+     *                      formats (the JSON format always contains them).
+     * @throws IOException if an I/O error occurs
+     */
+    private void writeSimulation(final HttpServletRequest request, final HttpServletResponse response,
+                                 final Simulation simulation, final boolean includeStatic) throws IOException {
+        final ResponseFormat format = ResponseFormat.negotiate(request.getHeader("Accept"),
+                                                               request.getParameter("format"));
+        response.setContentType(format.getContentType());
+        response.setHeader("Vary", "Accept, Accept-Encoding");
+
+        final String acceptEncoding = request.getHeader("Accept-Encoding");
+        final boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        if (gzip) {
+            response.setHeader("Content-Encoding", "gzip");
+        }
+
+        try (OutputStream out = gzip ? new GZIPOutputStream(response.getOutputStream())
+                                : response.getOutputStream()) {
+            if (format == ResponseFormat.BINARY) {
+                FarmStateEncoder.writeBinary(simulation, out, includeStatic);
+            } else {
+                final Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+                if (format == ResponseFormat.COLUMNAR) {
+                    writer.write(FarmStateEncoder.asColumnarJson(simulation, includeStatic));
+                } else {
+                    writer.write(simulation.asJson());
+                }
+                writer.flush();
+            }
         }
     }
 
@@ -0,0 +1,715 @@
+package uk.ac.bioss.cowtastrophe;
+
+import broadwick.BroadwickException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Throwables;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Infer the parameters of the disease model (e.g. beta, kernelPower and kernelOffset) from an observed outbreak by
+ * Approximate Bayesian Computation with sequential Monte Carlo (ABC-SMC, Toni et al. 2009, with the perturbation
+ * kernel of Beaumont et al. 2009).
+ * <p>
+ * A population of particles (parameter values) is drawn from uniform priors; each following generation resamples
+ * the previous population by weight, perturbs the values and keeps those whose simulated daily counts are within the
+ * tolerance of the observed counts, the tolerance of each generation being a quantile of the distances accepted in
+ * the generation before. The distance is the Euclidean distance between the simulated and observed counts over the
+ * observed days; as it only grows as days are added, a simulation is stopped (by a stopping rule) as soon as its
+ * distance so far exceeds the tolerance, so particles that diverge are rejected without simulating the rest of the
+ * outbreak.
+ * <p>
+ * The particles of a generation are drawn in parallel; every particle slot draws from its own random number stream
+ * (keyed by the seed, the generation and the slot), so the result does not depend on the number of threads. The
+ * inference is described by a JSON file of the form
+ * <pre>
+ * {
+ *   "observed" : { "confirmed" : [0, 1, 3, 6, 9], "culled" : [0, 0, 1, 4, 8] }, (the counts on days 0, 1, ...)
+ *   "parameters" : {
+ *     "beta" : { "min" : 0.01, "max" : 0.2 },
+ *     "kernelPower" : { "min" : 1.0, "max" : 4.0 },
+ *     "kernelOffset" : { "min" : 0.1, "max" : 2.0 }
+ *   },
+ *   "strategy" : { "culling" : 2 },
+ *   "particles" : 200, "generations" : 8, "quantile" : 0.5, "tolerance" : 0, "minAcceptance" : 0.01,
+ *   "maxAttempts" : 2000, "seed" : 42
+ * }
+ * </pre>
+ * The inference stops after the given number of generations, once the tolerance reaches the target tolerance, once
+ * the acceptance rate falls below minAcceptance or when a particle slot cannot accept a particle in maxAttempts
+ * simulations (the last complete population being kept).
+ */
+@Slf4j
+public final class AbcSmc {
+
+    /**
+     * A particle: a set of parameter values, its distance to the observed outbreak and its weight in the population.
+     */
+    public static final class Particle {
+
+        /**
+         * Create the particle.
+         * @param parameterValues the values of the parameters.
+         * @param dist            the distance of the simulation to the observed outbreak.
+         */
+        Particle(final double[] parameterValues, final double dist) {
+            this.values = parameterValues;
+            this.distance = dist;
+        }
+
+        /**
+         * Get the value of a parameter.
+         * @param index the index of the parameter.
+         * @return the value.
+         */
+        public double getValue(final int index) {
+            return values[index];
+        }
+
+        private final double[] values;
+        @Getter
+        private final double distance;
+        /**
+         * The (normalised) importance weight of the particle in its population.
+         */
+        @Getter
+        private double weight;
+    }
+
+    /**
+     * The particles of a generation.
+     */
+    public static final class Generation {
+
+        /**
+         * Create the generation.
+         * @param number        the number of the generation.
+         * @param epsilon       the tolerance of the generation.
+         * @param accepted      the accepted particles.
+         * @param numSimulated  the number of simulations run to accept them.
+         * @param numEarly      the number of simulations stopped early.
+         */
+        Generation(final int number, final double epsilon, final List<Particle> accepted, final int numSimulated,
+                   final int numEarly) {
+            this.index = number;
+            this.tolerance = epsilon;
+            this.particles = Collections.unmodifiableList(accepted);
+            this.simulations = numSimulated;
+            this.stoppedEarly = numEarly;
+        }
+
+        /**
+         * Get the fraction of the simulations that were accepted.
+         * @return the acceptance rate.
+         */
+        public double getAcceptanceRate() {
+            return simulations == 0 ? 0.0 : (double) particles.size() / simulations;
+        }
+
+        /**
+         * Get the effective sample size of the weighted population.
+         * @return the effective sample size.
+         */
+        public double getEffectiveSampleSize() {
+            double sumSq = 0.0;
+            for (Particle particle : particles) {
+                sumSq += particle.weight * particle.weight;
+            }
+            return sumSq == 0.0 ? 0.0 : 1.0 / sumSq;
+        }
+
+        /**
+         * Get the weighted mean of a parameter over the population.
+         * @param parameter the index of the parameter.
+         * @return the mean.
+         */
+        public double getMean(final int parameter) {
+            double mean = 0.0;
+            for (Particle particle : particles) {
+                mean += particle.weight * particle.values[parameter];
+            }
+            return mean;
+        }
+
+        /**
+         * Get the weighted variance of a parameter over the population.
+         * @param parameter the index of the parameter.
+         * @return the variance.
+         */
+        public double getVariance(final int parameter) {
+            final double mean = getMean(parameter);
+            double variance = 0.0;
+            for (Particle particle : particles) {
+                final double delta = particle.values[parameter] - mean;
+                variance += particle.weight * delta * delta;
+            }
+            return variance;
+        }
+
+        /**
+         * Get a weighted quantile of a parameter over the population.
+         * @param parameter the index of the parameter.
+         * @param q         the quantile (between 0 and 1).
+         * @return the quantile.
+         */
+        public double getQuantile(final int parameter, final double q) {
+            final List<Particle> sorted = new ArrayList<>(particles);
+            sorted.sort((a, b) -> Double.compare(a.values[parameter], b.values[parameter]));
+            double cumulative = 0.0;
+            for (Particle particle : sorted) {
+                cumulative += particle.weight;
+                if (cumulative >= q) {
+                    return particle.values[parameter];
+                }
+            }
+            return sorted.isEmpty() ? Double.NaN : sorted.get(sorted.size() - 1).values[parameter];
+        }
+
+        /**
+         * The number of the generation (0 for the population drawn from the priors).
+         */
+        @Getter
+        private final int index;
+        @Getter
+        private final double tolerance;
+        @Getter
+        private final List<Particle> particles;
+        /**
+         * The number of simulations run to accept the particles.
+         */
+        @Getter
+        private final int simulations;
+        /**
+         * The number of simulations stopped before the end of the observed days because they had diverged.
+         */
+        @Getter
+        private final int stoppedEarly;
+    }
+
+    /**
+     * Read the description of the inference from a JSON file.
+     * @param directory   the directory where the output is stored.
+     * @param farmMap     the preset map from which every simulation starts.
+     * @param optionsFile the name of the JSON file.
+     */
+    public AbcSmc(final String directory, final FarmMap farmMap, final String optionsFile) {
+        final JsonNode json;
+        try {
+            json = new ObjectMapper().readTree(new File(optionsFile));
+        } catch (IOException ex) {
+            throw new BroadwickException("Error reading ABC options " + optionsFile + "; "
+                                         + Throwables.getStackTraceAsString(ex));
+        }
+        this.directory = directory;
+        this.map = farmMap;
+        this.strategy = StrategyComparison.Settings.fromJson(json.path("strategy"));
+        this.numParticles = json.path("particles").asInt(DEFAULT_PARTICLES);
+        this.maxGenerations = json.path("generations").asInt(DEFAULT_GENERATIONS);
+        this.quantile = json.path("quantile").asDouble(DEFAULT_QUANTILE);
+        this.targetTolerance = json.path("tolerance").asDouble(0);
+        this.minAcceptance = json.path("minAcceptance").asDouble(DEFAULT_MIN_ACCEPTANCE);
+        this.maxAttempts = json.path("maxAttempts").asInt(DEFAULT_MAX_ATTEMPTS);
+        this.seed = json.path("seed").asLong(System.currentTimeMillis());
+        if (numParticles < 1) {
+            throw new BroadwickException("ABC-SMC needs at least 1 particle, got " + numParticles + " in "
+                                         + optionsFile);
+        }
+        if (!(quantile > 0.0 && quantile <= 1.0)) {
+            throw new BroadwickException("The ABC-SMC quantile must be in (0, 1], got " + quantile + " in "
+                                         + optionsFile);
+        }
+        if (maxAttempts < 1) {
+            throw new BroadwickException("ABC-SMC needs at least 1 attempt per particle, got maxAttempts = "
+                                         + maxAttempts + " in " + optionsFile);
+        }
+
+        final List<SweepDesign.Factor> names = new ArrayList<>();
+        final List<double[]> ranges = new ArrayList<>();
+        final Iterator<Map.Entry<String, JsonNode>> fields = json.path("parameters").fields();
+        while (fields.hasNext()) {
+            final Map.Entry<String, JsonNode> field = fields.next();
+            final SweepDesign.Factor factor = SweepDesign.Factor.fromJsonName(field.getKey());
+            if (factor == SweepDesign.Factor.VACRADIUS || factor == SweepDesign.Factor.MOVERADIUS) {
+                throw new BroadwickException("Cannot infer the control strategy setting " + field.getKey());
+            }
+            final double min = field.getValue().path("min").asDouble();
+            final double max = field.getValue().path("max").asDouble();
+            if (!(max > min)) {
+                throw new BroadwickException("Invalid prior for " + field.getKey() + ": max must exceed min");
+            }
+            names.add(factor);
+            ranges.add(new double[]{min, max});
+        }
+        if (names.isEmpty()) {
+            throw new BroadwickException("No parameters to infer in " + optionsFile);
+        }
+        this.parameters = Collections.unmodifiableList(names);
+        this.priors = ranges.toArray(new double[ranges.size()][]);
+
+        final List<Statistics.Measure> measures = new ArrayList<>();
+        final List<double[]> counts = new ArrayList<>();
+        final Iterator<Map.Entry<String, JsonNode>> observations = json.path("observed").fields();
+        while (observations.hasNext()) {
+            final Map.Entry<String, JsonNode> observation = observations.next();
+            final double[] values = new double[observation.getValue().size()];
+            for (int day = 0; day < values.length; day++) {
+                values[day] = observation.getValue().get(day).asDouble();
+            }
+            measures.add(Statistics.Measure.valueOf(observation.getKey().toUpperCase()));
+            counts.add(values);
+        }
+        if (measures.isEmpty()) {
+            throw new BroadwickException("No observed counts in " + optionsFile);
+        }
+        this.observedMeasures = measures.toArray(new Statistics.Measure[measures.size()]);
+        this.observed = counts.toArray(new double[counts.size()][]);
+        this.observedDays = counts.stream().mapToInt((values) -> values.length).max().orElse(0);
+    }
+
+    /**
+     * Run the inference.
+     * @param threads the number of threads on which the simulations are run.
+     * @return the generations, the last being the approximate posterior.
+     */
+    public List<Generation> run(final int threads) {
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final long start = System.currentTimeMillis();
+        final List<Generation> generations = new ArrayList<>();
+        try {
+            double epsilon = Double.POSITIVE_INFINITY;
+            for (int t = 0; t < maxGenerations; t++) {
+                final Generation previous = generations.isEmpty() ? null : generations.get(generations.size() - 1);
+                final Generation generation = runGeneration(executor, t, epsilon, previous);
+                if (generation == null) {
+                    log.warn("Generation {} could not accept {} particles within tolerance {} in {} attempts each, "
+                             + "stopping", t, numParticles, epsilon, maxAttempts);
+                    break;
+                }
+                generations.add(generation);
+                log.info("Generation {}: tolerance {}, acceptance rate {}, {} of {} simulations stopped early, "
+                         + "ESS {}, means {}", t, epsilon, generation.getAcceptanceRate(),
+                         generation.getStoppedEarly(), generation.getSimulations(),
+                         generation.getEffectiveSampleSize(), means(generation));
+                if (epsilon <= targetTolerance || generation.getAcceptanceRate() < minAcceptance) {
+                    break;
+                }
+                epsilon = Math.max(targetTolerance, nextTolerance(generation));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        log.info("ABC-SMC finished {} generations in {} ms", generations.size(), System.currentTimeMillis() - start);
+        return generations;
+    }
+
+    /**
+     * Draw the particles of a generation, in parallel.
+     * @param executor the executor on which the simulations are run.
+     * @param t        the number of the generation.
+     * @param epsilon  the tolerance.
+     * @param previous the previous generation (null for the first generation, which is drawn from the priors).
+     * @return the generation, null if a particle slot ran out of attempts.
+     */
+    private Generation runGeneration(final ExecutorService executor, final int t, final double epsilon,
+                                     final Generation previous) {
+        final double[] cumulative = previous == null ? null : cumulativeWeights(previous);
+        final double[] scales = previous == null ? null : perturbationScales(previous);
+        final CounterRng generationRandom = new CounterRng(seed, 0).split(t);
+
+        final List<Callable<Slot>> tasks = new ArrayList<>(numParticles);
+        for (int i = 0; i < numParticles; i++) {
+            final CounterRng random = generationRandom.split(i);
+            tasks.add(() -> drawParticle(random, epsilon, previous, cumulative, scales));
+        }
+
+        final List<Particle> accepted = new ArrayList<>(numParticles);
+        int simulations = 0;
+        int early = 0;
+        boolean complete = true;
+        try {
+            for (Future<Slot> future : executor.invokeAll(tasks)) {
+                final Slot slot = future.get();
+                simulations += slot.simulations;
+                early += slot.stoppedEarly;
+                if (slot.particle == null) {
+                    complete = false;
+                } else {
+                    accepted.add(slot.particle);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new BroadwickException("ABC-SMC interrupted");
+        } catch (ExecutionException ex) {
+            throw new BroadwickException("Error running an ABC simulation; "
+                                         + Throwables.getStackTraceAsString(ex.getCause()));
+        }
+        if (!complete) {
+            return null;
+        }
+        computeWeights(t, accepted, previous, scales);
+        return new Generation(t, epsilon, accepted, simulations, early);
+    }
+
+    /**
+     * Draw particles for a slot of a generation until one is accepted or the slot runs out of attempts.
+     * @param random     the random number stream of the slot.
+     * @param epsilon    the tolerance.
+     * @param previous   the previous generation (null to draw from the priors).
+     * @param cumulative the cumulative weights of the previous generation.
+     * @param scales     the standard deviations of the perturbation of each parameter.
+     * @return the result of the slot.
+     */
+    private Slot drawParticle(final CounterRng random, final double epsilon, final Generation previous,
+                              final double[] cumulative, final double[] scales) {
+        final Slot slot = new Slot();
+        for (int attempt = 0; attempt < maxAttempts; attempt++) {
+            final double[] values = new double[priors.length];
+            if (previous == null) {
+                for (int k = 0; k < priors.length; k++) {
+                    values[k] = priors[k][0] + random.nextDouble() * (priors[k][1] - priors[k][0]);
+                }
+            } else {
+                final Particle parent = previous.particles.get(sample(cumulative, random.nextDouble()));
+                for (int k = 0; k < priors.length; k++) {
+                    values[k] = parent.values[k] + scales[k] * random.nextGaussian();
+                }
+            }
+            final long stream = random.nextLong();
+            if (!inPrior(values)) {
+                continue;
+            }
+
+            final Simulation simulation = new Simulation(directory, map, false, seed, stream);
+            for (int k = 0; k < priors.length; k++) {
+                parameters.get(k).apply(simulation.getParameters(), values[k]);
+            }
+            simulation.setControlStrategy(strategy.create());
+            final Discrepancy discrepancy = new Discrepancy(observedMeasures, observed, observedDays, epsilon);
+            simulation.setStoppingRule(discrepancy);
+            simulation.runFor(observedDays);
+            slot.simulations++;
+            if (simulation.getStoppedBy() != null) {
+                slot.stoppedEarly++;
+                continue;
+            }
+            final double distance = discrepancy.finish(simulation.getStatistics());
+            if (distance <= epsilon) {
+                slot.particle = new Particle(values, distance);
+                return slot;
+            }
+        }
+        return slot;
+    }
+
+    /**
+     * Compute the (normalised) importance weights of the accepted particles: the prior density over the density of
+     * the particle under the perturbed previous population (the uniform prior densities cancel out).
+     * @param t        the number of the generation (for the error message).
+     * @param accepted the accepted particles.
+     * @param previous the previous generation (null if the particles were drawn from the priors).
+     * @param scales   the standard deviations of the perturbation of each parameter.
+     */
+    private void computeWeights(final int t, final List<Particle> accepted, final Generation previous,
+                                final double[] scales) {
+        double total = 0.0;
+        for (Particle particle : accepted) {
+            if (previous == null) {
+                particle.weight = 1.0;
+            } else {
+                double density = 0.0;
+                for (Particle parent : previous.particles) {
+                    double exponent = 0.0;
+                    for (int k = 0; k < priors.length; k++) {
+                        final double z = (particle.values[k] - parent.values[k]) / scales[k];
+                        exponent += z * z;
+                    }
+                    density += parent.weight * Math.exp(-0.5 * exponent);
+                }
+                particle.weight = density > 0.0 ? 1.0 / density : 0.0;
+            }
+            total += particle.weight;
+        }
+        if (!(total > 0.0)) {
+            // every perturbation density underflowed, so the weights cannot be normalised.
+            throw new BroadwickException("The particles of ABC-SMC generation " + t + " all have zero weight");
+        }
+        for (Particle particle : accepted) {
+            particle.weight /= total;
+        }
+    }
+
+    /**
+     * Get the standard deviations of the perturbation of each parameter: twice the weighted variance of the
+     * population (Beaumont et al. 2009), or a small fraction of the prior range if the population has collapsed.
+     * @param generation the generation that is perturbed.
+     * @return the standard deviations.
+     */
+    private double[] perturbationScales(final Generation generation) {
+        final double[] scales = new double[priors.length];
+        for (int k = 0; k < priors.length; k++) {
+            scales[k] = Math.max(Math.sqrt(2.0 * generation.getVariance(k)),
+                                 MIN_SCALE * (priors[k][1] - priors[k][0]));
+        }
+        return scales;
+    }
+
+    /**
+     * Get the tolerance of the next generation: the configured quantile of the distances of the accepted particles.
+     * @param generation the generation.
+     * @return the tolerance.
+     */
+    private double nextTolerance(final Generation generation) {
+        final double[] distances = generation.particles.stream().mapToDouble(Particle::getDistance).toArray();
+        Arrays.sort(distances);
+        return distances[(int) Math.min(distances.length - 1, Math.floor(quantile * (distances.length - 1)))];
+    }
+
+    /**
+     * Get the cumulative weights of a generation, for resampling.
+     * @param generation the generation.
+     * @return the cumulative weights.
+     */
+    private static double[] cumulativeWeights(final Generation generation) {
+        final double[] cumulative = new double[generation.particles.size()];
+        double sum = 0.0;
+        for (int i = 0; i < cumulative.length; i++) {
+            sum += generation.particles.get(i).weight;
+            cumulative[i] = sum;
+        }
+        return cumulative;
+    }
+
+    /**
+     * Sample the index of a particle in proportion to its weight.
+     * @param cumulative the cumulative weights.
+     * @param u          a uniform random number in [0, 1).
+     * @return the index.
+     */
+    private static int sample(final double[] cumulative, final double u) {
+        final int index = Arrays.binarySearch(cumulative, u * cumulative[cumulative.length - 1]);
+        return Math.min(index >= 0 ? index + 1 : -index - 1, cumulative.length - 1);
+    }
+
+    /**
+     * Check whether a set of parameter values has a non-zero prior density.
+     * @param values the values.
+     * @return true if every value is within the range of its prior.
+     */
+    private boolean inPrior(final double[] values) {
+        for (int k = 0; k < priors.length; k++) {
+            if (values[k] < priors[k][0] || values[k] > priors[k][1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Format the weighted means of the parameters of a generation.
+     * @param generation the generation.
+     * @return the means, by name of the parameter.
+     */
+    private String means(final Generation generation) {
+        final StringBuilder sb = new StringBuilder("{");
+        for (int k = 0; k < parameters.size(); k++) {
+            sb.append(k == 0 ? "" : ", ").append(parameters.get(k).getJsonName()).append("=")
+                    .append(String.format("%.4g", generation.getMean(k)));
+        }
+        return sb.append("}").toString();
+    }
+
+    /**
+     * Get the particles of a generation as a CSV table (one line per particle).
+     * @param generation the generation.
+     * @return the table.
+     */
+    public String asTable(final Generation generation) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("#particle, weight, distance");
+        for (SweepDesign.Factor parameter : parameters) {
+            sb.append(", ").append(parameter.getJsonName());
+        }
+        sb.append("\n");
+        for (int i = 0; i < generation.particles.size(); i++) {
+            final Particle particle = generation.particles.get(i);
+            sb.append(i).append(", ").append(particle.weight).append(", ").append(particle.distance);
+            for (double value : particle.values) {
+                sb.append(", ").append(value);
+            }
+            sb.append("\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Get a summary of the posterior (the last generation): the weighted mean, standard deviation and 2.5%, 50% and
+     * 97.5% quantiles of every parameter.
+     * @param generation the generation.
+     * @return the summary.
+     */
+    public String summarise(final Generation generation) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("#generation %d, tolerance %.4g, %d particles, ESS %.1f%n", generation.getIndex(),
+                                generation.getTolerance(), generation.getParticles().size(),
+                                generation.getEffectiveSampleSize()));
+        sb.append("#parameter, mean, sd, 2.5%, 50%, 97.5%\n");
+        for (int k = 0; k < parameters.size(); k++) {
+            sb.append(String.format("%s, %.4g, %.4g, %.4g, %.4g, %.4g%n", parameters.get(k).getJsonName(),
+                                    generation.getMean(k), Math.sqrt(generation.getVariance(k)),
+                                    generation.getQuantile(k, 0.025), generation.getQuantile(k, 0.5),
+                                    generation.getQuantile(k, 0.975)));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The result of a particle slot: the accepted particle (null if the slot ran out of attempts) and the number of
+     * simulations it took.
+     */
+    private static final class Slot {
+        private Particle particle;
+        private int simulations;
+        private int stoppedEarly;
+    }
+
+    /**
+     * The distance between a simulation and the observed counts, accumulated day by day as the simulation runs. As a
+     * stopping rule it stops the simulation as soon as the distance so far exceeds the tolerance.
+     */
+    private static final class Discrepancy extends StoppingRule {
+
+        /**
+         * Create the discrepancy.
+         * @param measures  the observed measures.
+         * @param counts    the observed counts, indexed by measure then day.
+         * @param days      the number of observed days.
+         * @param tolerance the distance above which the simulation is stopped.
+         */
+        Discrepancy(final Statistics.Measure[] measures, final double[][] counts, final int days,
+                    final double tolerance) {
+            super(0, 0);
+            this.measures = measures;
+            this.observed = counts;
+            this.numDays = days;
+            this.epsilon = tolerance;
+            this.last = new double[measures.length];
+        }
+
+        @Override
+        public String check(final Simulation simulation) {
+            accumulate(simulation.getStatistics(), Math.min(simulation.getDay(), numDays));
+            if (Math.sqrt(sumOfSquares) > epsilon) {
+                return String.format("distance above the tolerance %.4g", epsilon);
+            }
+            return null;
+        }
+
+        /**
+         * Get the distance over all the observed days; the days after the end of the simulation keep its last
+         * counts.
+         * @param statistics the statistics of the simulation.
+         * @return the distance.
+         */
+        double finish(final Statistics statistics) {
+            accumulate(statistics, numDays);
+            return Math.sqrt(sumOfSquares);
+        }
+
+        /**
+         * Add the squared differences of the days up to a given day.
+         * @param statistics the statistics of the simulation.
+         * @param until      the first day not to add.
+         */
+        private void accumulate(final Statistics statistics, final int until) {
+            for (; nextDay < until; nextDay++) {
+                final boolean recorded = statistics.isRecorded(nextDay);
+                for (int m = 0; m < measures.length; m++) {
+                    if (recorded) {
+                        last[m] = statistics.get(nextDay, measures[m]);
+                    } else if (!measures[m].isState()) {
+                        last[m] = 0;
+                    }
+                    if (nextDay < observed[m].length) {
+                        final double difference = last[m] - observed[m][nextDay];
+                        sumOfSquares += difference * difference;
+                    }
+                }
+            }
+        }
+
+        private final Statistics.Measure[] measures;
+        private final double[][] observed;
+        private final int numDays;
+        private final double epsilon;
+        private final double[] last;
+        private int nextDay;
+        private double sumOfSquares;
+        private static final long serialVersionUID = -6107370812469434583L;
+    }
+
+    private final String directory;
+    @Getter
+    private final FarmMap map;
+    /**
+     * The parameters that are inferred.
+     */
+    @Getter
+    private final List<SweepDesign.Factor> parameters;
+    /**
+     * The range (min, max) of the uniform prior of each parameter.
+     */
+    private final double[][] priors;
+    private final Statistics.Measure[] observedMeasures;
+    /**
+     * The observed counts, indexed by measure then day.
+     */
+    private final double[][] observed;
+    @Getter
+    private final int observedDays;
+    @Getter
+    private final StrategyComparison.Settings strategy;
+    @Getter
+    private final int numParticles;
+    @Getter
+    private final int maxGenerations;
+    /**
+     * The quantile of the accepted distances that gives the tolerance of the next generation.
+     */
+    @Getter
+    private final double quantile;
+    @Getter
+    private final double targetTolerance;
+    @Getter
+    private final double minAcceptance;
+    /**
+     * The number of simulations a particle slot may run before the generation is abandoned.
+     */
+    @Getter
+    private final int maxAttempts;
+    @Getter
+    private final long seed;
+    private static final int DEFAULT_PARTICLES = 200;
+    private static final int DEFAULT_GENERATIONS = 8;
+    private static final double DEFAULT_QUANTILE = 0.5;
+    private static final double DEFAULT_MIN_ACCEPTANCE = 0.01;
+    private static final int DEFAULT_MAX_ATTEMPTS = 2000;
+    /**
+     * The smallest standard deviation of the perturbation, as a fraction of the prior range.
+     */
+    private static final double MIN_SCALE = 1.0e-3;
+}
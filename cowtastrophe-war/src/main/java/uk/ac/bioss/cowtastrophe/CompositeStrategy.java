@@ -0,0 +1,254 @@
+package uk.ac.bioss.cowtastrophe;
+
+import java.util.Arrays;
+
+/**
+ * A control strategy composed of several measures (e.g. cull, vaccinate and restrict movements) that share the
+ * spatial work: when a farm becomes suspected or confirmed the farms around it are found with a single query, at the
+ * largest radius of the measures it triggers, and each measure is handed the farms within its own radius (in
+ * ascending order of index, as a query at its radius would return them). The measures are applied in the order they
+ * are given, each to the ring and then to the source.
+ * <p>
+ * Each measure considers a farm at most once per run, however many of the rings handled in the run it lies in (the
+ * farms it has considered are marked in a bitset that is cleared at the end of the run), so overlapping rings cost no
+ * more than their union. A farm that fails its test (becomes infectious but not suspected) after a ring it lies in
+ * was handled is handed to the measures it is eligible for if the farm at the centre of such a ring still triggers
+ * them, as if the rings were scanned again.
+ */
+public abstract class CompositeStrategy extends EventDrivenStrategy {
+
+    /**
+     * Create the strategy.
+     * @param measures the measures, in the order they are applied.
+     */
+    protected CompositeStrategy(final ControlMeasure... measures) {
+        this.measures = measures.clone();
+    }
+
+    @Override
+    public boolean isIdle(final Simulation simulation) {
+        for (ControlMeasure measure : measures) {
+            if (isTriggered(simulation, measure.getTrigger())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean hasSameSettings(final ControlStrategy other) {
+        if (other == null || other.getClass() != getClass()) {
+            return false;
+        }
+        final ControlMeasure[] otherMeasures = ((CompositeStrategy) other).measures;
+        if (otherMeasures.length != measures.length) {
+            return false;
+        }
+        for (int m = 0; m < measures.length; m++) {
+            if (!measures[m].hasSameSettings(otherMeasures[m])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    protected final void onSuspected(final Simulation simulation, final Farm farm) {
+        applyMeasures(simulation, farm, DiseaseState.SUSPECTED);
+    }
+
+    @Override
+    protected final void onConfirmed(final Simulation simulation, final Farm farm) {
+        applyMeasures(simulation, farm, DiseaseState.CONFIRMED);
+    }
+
+    @Override
+    protected final void onInfectiousNotSuspected(final Simulation simulation, final Farm farm) {
+        joinRings(simulation, farm);
+    }
+
+    @Override
+    protected final void afterTransitions(final Simulation simulation) {
+        for (int m = 0; m < measures.length; m++) {
+            if (marks != null && marks[m] != null) {
+                marks[m].clear();
+            }
+            measures[m].afterTransitions(simulation);
+        }
+    }
+
+    /**
+     * Apply the measures triggered by a farm that became suspected or confirmed.
+     * @param simulation the simulation.
+     * @param source     the farm.
+     * @param state      the state of the farm, SUSPECTED or CONFIRMED.
+     */
+    private void applyMeasures(final Simulation simulation, final Farm source, final DiseaseState state) {
+        double radius = -1;
+        for (ControlMeasure measure : measures) {
+            if (measure.hasRing() && measure.isTriggeredBy(state)) {
+                radius = Math.max(radius, measure.getRadius());
+            }
+        }
+        final FarmMap map = simulation.getMap();
+        final int[] ring = radius < 0 ? NO_FARMS : map.indicesWithin(source.getIndex(), radius);
+
+        for (int m = 0; m < measures.length; m++) {
+            final ControlMeasure measure = measures[m];
+            if (!measure.isTriggeredBy(state)) {
+                continue;
+            }
+            if (measure.hasRing()) {
+                final FarmMarks considered = marks(map, m);
+                for (int index : ring) {
+                    if (map.distance(source.getIndex(), index) <= measure.getRadius() && considered.add(index)) {
+                        final Farm neighbour = simulation.getFarm(index);
+                        if (measure.isEligible(neighbour)) {
+                            measure.applyToNeighbour(simulation, source, neighbour);
+                        }
+                    }
+                }
+            }
+            measure.applyToSource(simulation, source);
+        }
+    }
+
+    /**
+     * Hand a farm to the measures it is eligible for, if it lies in the ring of a farm that triggers them: a single
+     * query at the largest radius of these measures finds the farms around it.
+     * @param simulation the simulation.
+     * @param farm       the farm.
+     */
+    private void joinRings(final Simulation simulation, final Farm farm) {
+        final FarmMap map = simulation.getMap();
+        double radius = -1;
+        for (int m = 0; m < measures.length; m++) {
+            if (isJoinable(map, m, farm)) {
+                radius = Math.max(radius, measures[m].getRadius());
+            }
+        }
+        if (radius < 0) {
+            return;
+        }
+        final int[] around = map.indicesWithin(farm.getIndex(), radius);
+
+        for (int m = 0; m < measures.length; m++) {
+            // the farm is checked again, an earlier measure may have acted on it.
+            if (!isJoinable(map, m, farm)) {
+                continue;
+            }
+            final ControlMeasure measure = measures[m];
+            for (int index : around) {
+                final Farm source = simulation.getFarm(index);
+                if (map.distance(index, farm.getIndex()) <= measure.getRadius()
+                    && measure.isTriggeredBy(source.getStatus())) {
+                    marks(map, m).add(farm.getIndex());
+                    measure.applyToNeighbour(simulation, source, farm);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Check whether a farm may join the rings of a measure: the measure has a ring, is ever applied and has not
+     * considered the farm in this run, and the farm is eligible for it.
+     * @param map  the map.
+     * @param m    the index of the measure.
+     * @param farm the farm.
+     * @return true if the farm may join the rings of the measure.
+     */
+    private boolean isJoinable(final FarmMap map, final int m, final Farm farm) {
+        final ControlMeasure measure = measures[m];
+        return measure.hasRing() && measure.getTrigger() != ControlStrategy.CULL_NOT
+               && !marks(map, m).contains(farm.getIndex()) && measure.isEligible(farm);
+    }
+
+    /**
+     * Get the marks of the farms a measure has considered in this run, creating them for the map if required.
+     * @param map the map.
+     * @param m   the index of the measure.
+     * @return the marks.
+     */
+    private FarmMarks marks(final FarmMap map, final int m) {
+        if (marks == null) {
+            marks = new FarmMarks[measures.length];
+        }
+        if (marks[m] == null) {
+            marks[m] = new FarmMarks(map.size());
+        }
+        return marks[m];
+    }
+
+    /**
+     * A set of farm indices held in a bitset, with the list of the indices that were added so that it can be cleared
+     * in time proportional to its size rather than to the number of farms.
+     */
+    private static final class FarmMarks {
+
+        /**
+         * Create an empty set.
+         * @param numFarms the number of farms.
+         */
+        FarmMarks(final int numFarms) {
+            this.bits = new long[(numFarms + Long.SIZE - 1) / Long.SIZE];
+        }
+
+        /**
+         * Check whether a farm is in the set.
+         * @param index the index of the farm.
+         * @return true if the farm is in the set.
+         */
+        boolean contains(final int index) {
+            return (bits[index >>> WORD_SHIFT] & (1L << index)) != 0;
+        }
+
+        /**
+         * Add a farm to the set.
+         * @param index the index of the farm.
+         * @return true if the farm was not in the set.
+         */
+        boolean add(final int index) {
+            final int word = index >>> WORD_SHIFT;
+            final long bit = 1L << index;
+            if ((bits[word] & bit) != 0) {
+                return false;
+            }
+            bits[word] |= bit;
+            if (size == added.length) {
+                added = Arrays.copyOf(added, size * 2);
+            }
+            added[size++] = index;
+            return true;
+        }
+
+        /**
+         * Remove every farm from the set.
+         */
+        void clear() {
+            for (int i = 0; i < size; i++) {
+                bits[added[i] >>> WORD_SHIFT] = 0;
+            }
+            size = 0;
+        }
+
+        private final long[] bits;
+        private int[] added = new int[INITIAL_CAPACITY];
+        private int size;
+        private static final int WORD_SHIFT = 6;
+        private static final int INITIAL_CAPACITY = 64;
+    }
+
+    private final ControlMeasure[] measures;
+    /**
+     * The farms each measure has considered in this run (created when first needed, they are not saved with the
+     * session as they are empty between runs).
+     */
+    private transient FarmMarks[] marks;
+    private static final int[] NO_FARMS = new int[0];
+
+    /**
+     * The serialVersionUID.
+     */
+    private static final long serialVersionUID = 2717416390581829384L;
+}
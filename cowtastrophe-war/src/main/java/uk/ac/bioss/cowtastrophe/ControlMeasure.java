@@ -0,0 +1,123 @@
+package uk.ac.bioss.cowtastrophe;
+
+import java.io.Serializable;
+import lombok.Getter;
+
+/**
+ * One measure of a CompositeStrategy, e.g. culling, ring vaccination or movement restriction. A measure is triggered
+ * by a farm (the source) becoming suspected or confirmed; it acts on the source itself and/or on the farms within its
+ * radius of the source (its ring). The composite strategy does the spatial query for the ring of every source once,
+ * at the largest radius of the measures it triggers, and hands each measure the farms within its own radius.
+ */
+public abstract class ControlMeasure implements Serializable {
+
+    /**
+     * Create the measure.
+     * @param trigger when the measure is applied: never, on suspicion or on confirmation (one of the CULL_, VAC_ or
+     *                MOVE_ constants of ControlStrategy).
+     * @param radius  the radius of the ring of the measure, negative if the measure has no ring.
+     */
+    protected ControlMeasure(final int trigger, final double radius) {
+        this.trigger = trigger;
+        this.radius = radius;
+    }
+
+    /**
+     * Check whether the measure is triggered by a farm in a given state.
+     * @param state the state of the farm.
+     * @return true if the measure is applied to the farm.
+     */
+    public final boolean isTriggeredBy(final DiseaseState state) {
+        return (state == DiseaseState.CONFIRMED && trigger != ControlStrategy.CULL_NOT)
+               || (state == DiseaseState.SUSPECTED && trigger == ControlStrategy.CULL_ON_SUS);
+    }
+
+    /**
+     * Check whether the measure acts on the farms around the source.
+     * @return true if the measure has a ring.
+     */
+    public final boolean hasRing() {
+        return radius >= 0;
+    }
+
+    /**
+     * Check whether another measure has the same settings as this one (see ControlStrategy.hasSameSettings).
+     * @param other the other measure.
+     * @return true if the measures act the same.
+     */
+    protected boolean hasSameSettings(final ControlMeasure other) {
+        return other.getClass() == getClass() && other.trigger == trigger
+               && Double.compare(other.radius, radius) == 0;
+    }
+
+    /**
+     * Check whether a farm in the ring of a source is one the measure acts on (e.g. it is not culled). The farms of
+     * the ring that are not eligible are not handed to applyToNeighbour. The default accepts no farm.
+     * @param farm the farm.
+     * @return true if the measure acts on the farm.
+     */
+    protected boolean isEligible(final Farm farm) {
+        return false;
+    }
+
+    /**
+     * Apply the measure to an eligible farm in the ring of a source. The default does nothing.
+     * @param simulation the simulation.
+     * @param source     the farm that triggered the measure.
+     * @param neighbour  the farm in its ring.
+     */
+    protected void applyToNeighbour(final Simulation simulation, final Farm source, final Farm neighbour) {
+    }
+
+    /**
+     * Apply the measure to the source, after its ring. The default does nothing.
+     * @param simulation the simulation.
+     * @param source     the farm that triggered the measure.
+     */
+    protected void applyToSource(final Simulation simulation, final Farm source) {
+    }
+
+    /**
+     * Called at the end of every run of the strategy (e.g. to book a daily cost). The default does nothing.
+     * @param simulation the simulation.
+     */
+    protected void afterTransitions(final Simulation simulation) {
+    }
+
+    /**
+     * Cull a farm, unless it has been culled already, and book the cost of culling it (as the event-driven strategies
+     * do).
+     * @param simulation the simulation.
+     * @param farm       the farm.
+     * @return true if the farm was culled.
+     */
+    protected static boolean cull(final Simulation simulation, final Farm farm) {
+        return EventDrivenStrategy.cull(simulation, farm);
+    }
+
+    /**
+     * Vaccinate a farm and book the cost of vaccinating it (as the event-driven strategies do).
+     * @param simulation the simulation.
+     * @param farm       the farm.
+     * @param visitCost  whether the cost of the visit is booked on top of the cost per animal.
+     */
+    protected static void vaccinate(final Simulation simulation, final Farm farm, final boolean visitCost) {
+        EventDrivenStrategy.vaccinate(simulation, farm, visitCost);
+    }
+
+    /**
+     * When the measure is applied: never, on suspicion or on confirmation.
+     */
+    @Getter
+    private final int trigger;
+    /**
+     * The radius of the ring of the measure, negative if the measure has no ring.
+     */
+    @Getter
+    private final double radius;
+
+    /**
+     * The serialVersionUID.
+     */
+    private static final long serialVersionUID = -3150871170356532974L;
+}
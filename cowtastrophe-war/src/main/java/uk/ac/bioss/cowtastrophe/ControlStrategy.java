@@ -21,6 +21,62 @@ public abstract class ControlStrategy implements Serializable {
      * @param simulation the simulation on which the control will be applied.
      */
     public abstract void run(final Simulation simulation);
+
+    /**
+     * Called when the strategy is attached to a simulation (i.e. set as its control strategy), before it is first
+     * run. The default does nothing.
+     * @param simulation the simulation to which the strategy is attached.
+     */
+    public void attach(final Simulation simulation) {
+    }
+
+    /**
+     * Check whether another strategy has the same settings as this one, so that the strategy attached to a simulation
+     * can be kept rather than replaced by (and the state of the simulation replayed to) an identical one. The default
+     * is false, i.e. a strategy that does not override this is always replaced.
+     * @param other the other strategy (may be null).
+     * @return true if the strategies act the same.
+     */
+    public boolean hasSameSettings(final ControlStrategy other) {
+        return false;
+    }
+
+    /**
+     * Check whether the strategy has nothing to act on in the current state of the simulation, i.e. running it would
+     * not change any farm and would only add its idle cost. The simulation uses this to record the days on which
+     * nothing can happen without running them; the default is false so a strategy that does not override this is
+     * always run.
+     * @param simulation the simulation on which the control is applied.
+     * @return true if running the strategy would only add its idle cost.
+     */
+    public boolean isIdle(final Simulation simulation) {
+        return false;
+    }
+
+    /**
+     * Get the cost the strategy adds each time it is run while it is idle, i.e. the daily cost of the movement
+     * restrictions it imposed (it is booked as a movement restriction cost).
+     * @param simulation the simulation on which the control is applied.
+     * @return the cost.
+     */
+    public double getIdleCost(final Simulation simulation) {
+        return 0.0;
+    }
+
+    /**
+     * Check whether a measure with the given trigger (one of the CULL_, VAC_ or MOVE_ constants) has any farm to act
+     * on.
+     * @param simulation the simulation on which the control is applied.
+     * @param trigger    when the measure is applied: never, on suspicion or on confirmation.
+     * @return true if there are farms that would trigger the measure.
+     */
+    protected static boolean isTriggered(final Simulation simulation, final int trigger) {
+        if (trigger == CULL_NOT) {
+            return false;
+        }
+        return simulation.countFarms(DiseaseState.CONFIRMED) > 0
+               || (trigger == CULL_ON_SUS && simulation.countFarms(DiseaseState.SUSPECTED) > 0);
+    }
     
     /**
      * A public identifier (name) of the strategy. Note this will need to be final 
@@ -0,0 +1,19 @@
+package uk.ac.bioss.cowtastrophe;
+
+/**
+ * The categories in which the costs of an outbreak are booked.
+ */
+public enum CostCategory {
+    /** Visiting and testing suspected farms. */
+    TESTING,
+    /** Visiting and culling farms. */
+    CULLING,
+    /** Visiting and vaccinating farms. */
+    VACCINATION,
+    /** The daily cost of the farms under movement restriction. */
+    MOVEMENT_RESTRICTION,
+    /** The daily cost of the infected farms. */
+    INFECTED_FARMS,
+    /** Any other cost. */
+    OTHER
+}
@@ -0,0 +1,204 @@
+package uk.ac.bioss.cowtastrophe;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A ledger of the costs of a simulation by category. The costs of the day being simulated are accumulated in one
+ * primitive accumulator per category (booking a cost is a single addition) and are posted once, at the end of the
+ * day, to the cost of each category on each day; the ledger keeps the running total of each category too, so the
+ * breakdown of the cost of a day or of the whole simulation is read in constant time.
+ */
+public class CostLedger implements Serializable {
+
+    /**
+     * Create an empty ledger.
+     */
+    public CostLedger() {
+        pending = new double[NUM_CATEGORIES];
+        totals = new double[NUM_CATEGORIES];
+        byDay = new double[NUM_CATEGORIES][INITIAL_CAPACITY];
+    }
+
+    /**
+     * Create a copy of a ledger (e.g. for a branch of a forked simulation).
+     * @param other the ledger to copy.
+     */
+    public CostLedger(final CostLedger other) {
+        pending = other.pending.clone();
+        totals = other.totals.clone();
+        byDay = new double[NUM_CATEGORIES][];
+        for (int i = 0; i < NUM_CATEGORIES; i++) {
+            byDay[i] = other.byDay[i].clone();
+        }
+        numDays = other.numDays;
+    }
+
+    /**
+     * Book a cost to the day being simulated.
+     * @param category the category of the cost.
+     * @param amount   the cost.
+     */
+    public final void add(final CostCategory category, final double amount) {
+        pending[category.ordinal()] += amount;
+    }
+
+    /**
+     * Post a cost directly to a given day.
+     * @param day      the day (not negative).
+     * @param category the category of the cost.
+     * @param amount   the cost.
+     */
+    final void post(final int day, final CostCategory category, final double amount) {
+        ensureCapacity(day);
+        byDay[category.ordinal()][day] += amount;
+        totals[category.ordinal()] += amount;
+    }
+
+    /**
+     * Post the costs booked since the last flush to a day and clear the accumulators.
+     * @param day the day (not negative).
+     * @return the total of the costs posted.
+     */
+    final double flush(final int day) {
+        ensureCapacity(day);
+        double posted = 0.0;
+        for (int i = 0; i < NUM_CATEGORIES; i++) {
+            if (pending[i] != 0.0) {
+                byDay[i][day] += pending[i];
+                totals[i] += pending[i];
+                posted += pending[i];
+                pending[i] = 0.0;
+            }
+        }
+        return posted;
+    }
+
+    /**
+     * Get the cost booked but not yet posted in a category.
+     * @param category the category.
+     * @return the cost.
+     */
+    public final double getPending(final CostCategory category) {
+        return pending[category.ordinal()];
+    }
+
+    /**
+     * Get the cost posted in a category on a day.
+     * @param day      the day.
+     * @param category the category.
+     * @return the cost (0 if nothing was posted on that day).
+     */
+    public final double getCost(final int day, final CostCategory category) {
+        return day >= 0 && day < numDays ? byDay[category.ordinal()][day] : 0.0;
+    }
+
+    /**
+     * Get the total cost posted in a category.
+     * @param category the category.
+     * @return the total cost.
+     */
+    public final double getTotalCost(final CostCategory category) {
+        return totals[category.ordinal()];
+    }
+
+    /**
+     * Get the total cost of every category as a JSON object, e.g. {"testing": 120.0, "culling": 3400.0, ...}.
+     * @return A JSON string.
+     */
+    public final String totalsAsJson() {
+        final StringBuilder jsFile = new StringBuilder();
+        jsFile.append("{");
+        for (CostCategory category : CATEGORIES) {
+            jsFile.append(category.ordinal() == 0 ? "\"" : ", \"").append(category.name().toLowerCase())
+                    .append("\": ").append(totals[category.ordinal()]);
+        }
+        jsFile.append("}");
+        return jsFile.toString();
+    }
+
+    /**
+     * Write the breakdown of the costs as CSV: one line per day with the cost of each category on that day, then
+     * a line with the total of each category.
+     * @param out where the CSV is written.
+     * @throws IOException if the CSV cannot be written.
+     */
+    public final void writeCsv(final Appendable out) throws IOException {
+        out.append("#day");
+        for (CostCategory category : CATEGORIES) {
+            out.append(", ").append(category.name().toLowerCase());
+        }
+        out.append('\n');
+        for (int day = 0; day < numDays; day++) {
+            out.append(Integer.toString(day));
+            for (int i = 0; i < NUM_CATEGORIES; i++) {
+                out.append(", ").append(String.format("%.2f", byDay[i][day]));
+            }
+            out.append('\n');
+        }
+        out.append("#total");
+        for (int i = 0; i < NUM_CATEGORIES; i++) {
+            out.append(", ").append(String.format("%.2f", totals[i]));
+        }
+        out.append('\n');
+    }
+
+    /**
+     * Get the breakdown of the costs as CSV (see writeCsv).
+     * @return the string.
+     */
+    @Override
+    public final String toString() {
+        final StringBuilder sb = new StringBuilder();
+        try {
+            writeCsv(sb);
+        } catch (IOException ex) {
+            // a StringBuilder does not throw.
+            throw new IllegalStateException(ex);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Make sure the columns can hold a given day, doubling their capacity as required.
+     * @param day the day.
+     */
+    private void ensureCapacity(final int day) {
+        if (day < 0) {
+            throw new IllegalArgumentException("Cannot book a cost on day " + day);
+        }
+        if (day >= byDay[0].length) {
+            final int capacity = Math.max(day + 1, byDay[0].length * 2);
+            for (int i = 0; i < NUM_CATEGORIES; i++) {
+                byDay[i] = Arrays.copyOf(byDay[i], capacity);
+            }
+        }
+        numDays = Math.max(numDays, day + 1);
+    }
+
+    /**
+     * The costs booked to the day being simulated, indexed by the ordinal of the category.
+     */
+    private final double[] pending;
+    /**
+     * The total cost of each category.
+     */
+    private final double[] totals;
+    /**
+     * The cost of each category on each day, indexed by the ordinal of the category then by day.
+     */
+    private final double[][] byDay;
+    /**
+     * The number of days (from day 0) covered by the columns.
+     */
+    private int numDays;
+    private static final CostCategory[] CATEGORIES = CostCategory.values();
+    private static final int NUM_CATEGORIES = CATEGORIES.length;
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * The serialVersionUID.
+     */
+    private static final long serialVersionUID = 4475410238861930052L;
+}
@@ -0,0 +1,203 @@
+package uk.ac.bioss.cowtastrophe;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Getter;
+
+/**
+ * A counter-based random number generator (Philox4x32-10, Salmon et al. 2011): the n-th number of a stream is a
+ * keyed bijection of (stream, n), so it is computed directly rather than by stepping through the n-1 numbers before
+ * it. A generator is identified by a seed (the key) and a stream number; sub-streams are derived by mixing the stream
+ * number with an index (e.g. master seed, replicate, branch, day) and any position in a stream can be reached in
+ * O(1), so the numbers drawn by a simulation depend only on the identity of the simulation and not on which thread
+ * ran it or on what other simulations drew before it.
+ * <p>
+ * The 128 bit counter holds the position in the stream (the 64 low bits, in blocks of 4 numbers) and the stream
+ * number (the 64 high bits); the 64 bit key is the seed.
+ */
+public final class CounterRng implements Serializable {
+
+    /**
+     * Create a generator at the start of a stream.
+     * @param seed         the seed.
+     * @param streamNumber the number of the stream.
+     */
+    public CounterRng(final long seed, final long streamNumber) {
+        this.key = seed;
+        this.stream = streamNumber;
+        this.block = new int[BLOCK_SIZE];
+        this.position = 0;
+    }
+
+    /**
+     * Create a generator for an independent sub-stream of this one (the position of this generator does not matter).
+     * @param index the index of the sub-stream.
+     * @return a generator at the start of the sub-stream.
+     */
+    public CounterRng split(final long index) {
+        return new CounterRng(key, mix(stream * GOLDEN_GAMMA + mix(index + GOLDEN_GAMMA)));
+    }
+
+    /**
+     * Move to a given position in the stream.
+     * @param index the number of 32 bit values drawn from the start of the stream.
+     */
+    public void jump(final long index) {
+        position = index;
+    }
+
+    /**
+     * Get a uniformly distributed 32 bit integer.
+     * @return the integer.
+     */
+    public int nextInt() {
+        if (position >>> 2 != cachedBlock) {
+            cachedBlock = position >>> 2;
+            philox(cachedBlock, stream, key, block);
+        }
+        return block[(int) (position++ & (BLOCK_SIZE - 1))];
+    }
+
+    /**
+     * Get a uniformly distributed integer in [0, bound), without bias (Lemire's multiply and reject method).
+     * @param bound the (positive) upper bound.
+     * @return the integer.
+     */
+    public int nextInt(final int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive, got " + bound);
+        }
+        long product = (nextInt() & MASK) * bound;
+        if ((product & MASK) < bound) {
+            final long threshold = (UNSIGNED_RANGE - bound) % bound;
+            while ((product & MASK) < threshold) {
+                product = (nextInt() & MASK) * bound;
+            }
+        }
+        return (int) (product >>> Integer.SIZE);
+    }
+
+    /**
+     * Get a uniformly distributed 64 bit integer.
+     * @return the integer.
+     */
+    public long nextLong() {
+        return ((long) nextInt() << Integer.SIZE) | (nextInt() & MASK);
+    }
+
+    /**
+     * Get a uniformly distributed double in [0, 1) with 53 random bits.
+     * @return the double.
+     */
+    public double nextDouble() {
+        return (nextLong() >>> (Long.SIZE - DOUBLE_BITS)) * DOUBLE_UNIT;
+    }
+
+    /**
+     * Get a normally distributed double with mean 0 and standard deviation 1 (by the Box-Muller transform, using two
+     * uniform values per normal value so that the position in the stream does not depend on a cached value).
+     * @return the double.
+     */
+    public double nextGaussian() {
+        final double radius = Math.sqrt(-2.0 * Math.log(1.0 - nextDouble()));
+        return radius * Math.cos(2.0 * Math.PI * nextDouble());
+    }
+
+    /**
+     * Select a number of distinct elements of a list at random (a partial Fisher-Yates shuffle of a copy of the list).
+     * @param <T>      the type of the elements.
+     * @param elements the list.
+     * @param number   the number of elements to select (at most the size of the list).
+     * @return the selected elements, in the order in which they were drawn.
+     */
+    public <T> List<T> selectManyOf(final List<T> elements, final int number) {
+        final List<T> copy = new ArrayList<>(elements);
+        final int selected = Math.min(number, copy.size());
+        for (int i = 0; i < selected; i++) {
+            final int j = i + nextInt(copy.size() - i);
+            final T element = copy.get(j);
+            copy.set(j, copy.get(i));
+            copy.set(i, element);
+        }
+        return new ArrayList<>(copy.subList(0, selected));
+    }
+
+    /**
+     * Compute a block of the Philox4x32 function with 10 rounds.
+     * @param counter the low 64 bits of the counter.
+     * @param high    the high 64 bits of the counter.
+     * @param seed    the key.
+     * @param out     the array in which the 4 output words are stored.
+     */
+    static void philox(final long counter, final long high, final long seed, final int[] out) {
+        int c0 = (int) counter;
+        int c1 = (int) (counter >>> Integer.SIZE);
+        int c2 = (int) high;
+        int c3 = (int) (high >>> Integer.SIZE);
+        int k0 = (int) seed;
+        int k1 = (int) (seed >>> Integer.SIZE);
+        for (int round = 0; round < ROUNDS; round++) {
+            final long p0 = (c0 & MASK) * M0;
+            final long p1 = (c2 & MASK) * M1;
+            final int hi0 = (int) (p0 >>> Integer.SIZE);
+            final int hi1 = (int) (p1 >>> Integer.SIZE);
+            c0 = hi1 ^ c1 ^ k0;
+            c1 = (int) p1;
+            c2 = hi0 ^ c3 ^ k1;
+            c3 = (int) p0;
+            k0 += W0;
+            k1 += W1;
+        }
+        out[0] = c0;
+        out[1] = c1;
+        out[2] = c2;
+        out[3] = c3;
+    }
+
+    /**
+     * The SplitMix64 finaliser, used to derive the numbers of the sub-streams so that neighbouring indices give
+     * unrelated streams.
+     * @param value the value to mix.
+     * @return the mixed value.
+     */
+    static long mix(final long value) {
+        long z = value;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * The seed (the Philox key).
+     */
+    @Getter
+    private final long key;
+    /**
+     * The number of the stream (the high half of the Philox counter).
+     */
+    @Getter
+    private final long stream;
+    /**
+     * The number of 32 bit values drawn from the start of the stream.
+     */
+    @Getter
+    private long position;
+    private final int[] block;
+    private long cachedBlock = -1;
+    private static final int BLOCK_SIZE = 4;
+    private static final int ROUNDS = 10;
+    private static final long M0 = 0xD2511F53L;
+    private static final long M1 = 0xCD9E8D57L;
+    private static final int W0 = 0x9E3779B9;
+    private static final int W1 = 0xBB67AE85;
+    private static final long MASK = 0xFFFFFFFFL;
+    private static final long UNSIGNED_RANGE = 1L << Integer.SIZE;
+    private static final int DOUBLE_BITS = 53;
+    private static final double DOUBLE_UNIT = 0x1.0p-53;
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    /**
+     * The serialVersionUID.
+     */
+    private static final long serialVersionUID = 6093152476358140977L;
+}
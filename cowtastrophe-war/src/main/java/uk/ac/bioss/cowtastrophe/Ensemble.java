@@ -0,0 +1,146 @@
+package uk.ac.bioss.cowtastrophe;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Run a number of independent replicates of a preset and control strategy in parallel on a work-stealing pool and
+ * aggregate their statistics.
+ * <p>
+ * Each replicate draws from its own counter-based random number stream, keyed by the master seed and the number of the
+ * replicate, so the ensemble can be reproduced whatever the number of threads. The replicates are not persistent: no
+ * session directories, pid or snapshot files are written. An optional stopping rule ends each replicate as soon as its
+ * outcome is decided, and an optional results writer streams the daily statistics of every replicate to a columnar
+ * file.
+ */
+@Slf4j
+public final class Ensemble {
+
+    /**
+     * Create the ensemble.
+     * @param directory     the directory where the output is stored.
+     * @param farmMap       the preset map from which every replicate starts.
+     * @param strategy      the supplier of the control strategy, called once per replicate.
+     * @param numReplicates the number of replicates.
+     * @param seed          the master seed.
+     */
+    public Ensemble(final String directory, final FarmMap farmMap, final Supplier<ControlStrategy> strategy,
+                    final int numReplicates, final long seed) {
+        this.directory = directory;
+        this.map = farmMap;
+        this.strategySupplier = strategy;
+        this.replicates = numReplicates;
+        this.masterSeed = seed;
+    }
+
+    /**
+     * Run the ensemble.
+     * @param threads the number of worker threads.
+     * @return the aggregated statistics of the replicates.
+     */
+    public EnsembleStatistics run(final int threads) {
+        final long start = System.currentTimeMillis();
+        final ForkJoinPool pool = new ForkJoinPool(threads);
+        final int grain = Math.max(1, replicates / CHUNKS);
+        try {
+            final EnsembleStatistics statistics = pool.invoke(new Replicates(0, replicates, grain));
+            log.info("Ran {} replicates on {} threads in {} ms", replicates, threads,
+                     System.currentTimeMillis() - start);
+            return statistics;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Run a single replicate.
+     * @param replicate the number of the replicate.
+     * @return the simulation at the end of the replicate.
+     */
+    public Simulation runReplicate(final int replicate) {
+        final Simulation simulation = new Simulation(directory, map, false, masterSeed, replicate);
+        simulation.setControlStrategy(strategySupplier.get());
+        simulation.setStoppingRule(stoppingRule);
+        simulation.runToEnd();
+        return simulation;
+    }
+
+    /**
+     * The task of running a range of replicates, split in two until the range is no bigger than the grain. Each leaf
+     * aggregates its replicates into its own partial statistics as they finish (so no locking is needed and no
+     * replicate is kept), and the partials are merged in the fixed order of the ranges so that the result does not
+     * depend on which thread ran which replicate.
+     */
+    private final class Replicates extends RecursiveTask<EnsembleStatistics> {
+
+        /**
+         * Create the task.
+         * @param from the first replicate (inclusive).
+         * @param to   the last replicate (exclusive).
+         * @param size the largest range that is run without being split.
+         */
+        Replicates(final int from, final int to, final int size) {
+            this.first = from;
+            this.last = to;
+            this.grain = size;
+        }
+
+        @Override
+        protected EnsembleStatistics compute() {
+            if (last - first <= grain) {
+                final EnsembleStatistics statistics = new EnsembleStatistics();
+                for (int replicate = first; replicate < last; replicate++) {
+                    final Statistics replicateStatistics = runReplicate(replicate).getStatistics();
+                    statistics.add(replicateStatistics);
+                    if (results != null) {
+                        results.add(replicate, replicateStatistics);
+                    }
+                }
+                return statistics;
+            }
+            final int middle = (first + last) >>> 1;
+            final Replicates right = new Replicates(middle, last, grain);
+            right.fork();
+            final EnsembleStatistics statistics = new Replicates(first, middle, grain).compute();
+            statistics.merge(right.join());
+            return statistics;
+        }
+
+        private final int first;
+        private final int last;
+        private final int grain;
+        private static final long serialVersionUID = 3356105213460437724L;
+    }
+
+    private final String directory;
+    @Getter
+    private final FarmMap map;
+    private final Supplier<ControlStrategy> strategySupplier;
+    @Getter
+    private final int replicates;
+    @Getter
+    private final long masterSeed;
+    /**
+     * The rule applied to every replicate to stop it early, null to run every replicate to the end.
+     */
+    @Getter
+    @Setter
+    private StoppingRule stoppingRule;
+    /**
+     * The writer to which the daily statistics of every replicate are streamed as it finishes, null to keep only the
+     * aggregated statistics. It is not closed by the ensemble.
+     */
+    @Getter
+    @Setter
+    private ResultsWriter results;
+    /**
+     * The number of ranges the replicates are split into; it is fixed (rather than depending on the number of threads)
+     * so that the partials are always merged in the same way, and large enough for the pool to balance replicates of
+     * different lengths.
+     */
+    private static final int CHUNKS = 64;
+}
@@ -0,0 +1,210 @@
+package uk.ac.bioss.cowtastrophe;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import lombok.Getter;
+
+/**
+ * The statistics of an ensemble of replicate simulations: for every measure on every day, the count, mean and
+ * variance over the replicates and a sketch from which quantiles are estimated. Each replicate is added as it
+ * finishes and is not kept, so the memory used depends on the number of days, not the number of replicates.
+ * <p>
+ * Replicates end on different days; after its last day a replicate keeps its final farm counts and has no further
+ * cost. Rather than padding every replicate to the longest one, each day only holds the replicates still running on
+ * that day, and the final values of each replicate are held by the day it ended; the final values of the replicates
+ * that ended earlier are merged in when the statistics of a day are read.
+ * <p>
+ * Partial ensembles (e.g. one per worker) are built without any locking and merged at the end.
+ */
+public class EnsembleStatistics implements Serializable {
+
+    /**
+     * Create an empty ensemble with the default relative accuracy (1%) of the quantiles.
+     */
+    public EnsembleStatistics() {
+        this(DEFAULT_ACCURACY);
+    }
+
+    /**
+     * Create an empty ensemble.
+     * @param relativeAccuracy the relative accuracy of the quantiles.
+     */
+    public EnsembleStatistics(final double relativeAccuracy) {
+        this.accuracy = relativeAccuracy;
+        this.days = new ArrayList<>();
+        this.finals = new TreeMap<>();
+        this.replicates = 0;
+    }
+
+    /**
+     * Add the statistics of a replicate. Days before day 0 are ignored.
+     * @param statistics the statistics of the replicate.
+     */
+    public final void add(final Statistics statistics) {
+        final double[] last = new double[MEASURES.length];
+        int lastDay = -1;
+        for (int day = Math.max(0, statistics.getFirstDay()); day <= statistics.getLastDay(); day++) {
+            if (!statistics.isRecorded(day)) {
+                continue;
+            }
+            final StreamingStatistic[] dayStats = statisticsFor(day);
+            for (Statistics.Measure measure : MEASURES) {
+                final double value = statistics.get(day, measure);
+                dayStats[measure.ordinal()].add(value);
+                last[measure.ordinal()] = measure.isState() ? value : 0;
+            }
+            lastDay = day;
+        }
+        final StreamingStatistic[] ended = finals.computeIfAbsent(lastDay, (d) -> newStatistics());
+        for (int i = 0; i < ended.length; i++) {
+            ended[i].add(last[i]);
+        }
+        replicates++;
+    }
+
+    /**
+     * Merge the statistics of another (partial) ensemble into this one.
+     * @param other the ensemble to merge.
+     */
+    public final void merge(final EnsembleStatistics other) {
+        for (int day = 0; day < other.days.size(); day++) {
+            mergeInto(statisticsFor(day), other.days.get(day));
+        }
+        for (Map.Entry<Integer, StreamingStatistic[]> entry : other.finals.entrySet()) {
+            mergeInto(finals.computeIfAbsent(entry.getKey(), (d) -> newStatistics()), entry.getValue());
+        }
+        replicates += other.replicates;
+    }
+
+    /**
+     * Get the statistics of every measure for every day over all the replicates (including the final values of those
+     * that ended before the day).
+     * @return the statistics indexed by day then by the ordinal of the measure.
+     */
+    public final StreamingStatistic[][] getSummary() {
+        final StreamingStatistic[][] summary = new StreamingStatistic[days.size()][];
+        final StreamingStatistic[] ended = newStatistics();
+        for (int day = 0; day < days.size(); day++) {
+            final StreamingStatistic[] endedYesterday = finals.get(day - 1);
+            if (endedYesterday != null) {
+                mergeInto(ended, endedYesterday);
+            }
+            summary[day] = newStatistics();
+            mergeInto(summary[day], days.get(day));
+            mergeInto(summary[day], ended);
+        }
+        return summary;
+    }
+
+    /**
+     * Get the mean of every measure for every day over the replicates.
+     * @return the means indexed by day then by the ordinal of the measure.
+     */
+    public final double[][] getMeans() {
+        final StreamingStatistic[][] summary = getSummary();
+        final double[][] means = new double[summary.length][MEASURES.length];
+        for (int day = 0; day < summary.length; day++) {
+            for (int i = 0; i < MEASURES.length; i++) {
+                means[day][i] = summary[day][i].getMean();
+            }
+        }
+        return means;
+    }
+
+    /**
+     * Get the statistics for a day, extending the list of days if required.
+     * @param day the day.
+     * @return the statistics of the measures on that day.
+     */
+    private StreamingStatistic[] statisticsFor(final int day) {
+        while (days.size() <= day) {
+            days.add(newStatistics());
+        }
+        return days.get(day);
+    }
+
+    /**
+     * Create an empty statistic for each measure.
+     * @return the statistics indexed by the ordinal of the measure.
+     */
+    private StreamingStatistic[] newStatistics() {
+        final StreamingStatistic[] statistics = new StreamingStatistic[MEASURES.length];
+        for (int i = 0; i < statistics.length; i++) {
+            statistics[i] = new StreamingStatistic(accuracy);
+        }
+        return statistics;
+    }
+
+    /**
+     * Merge a set of statistics (one per measure) into another.
+     * @param into the statistics that are updated.
+     * @param from the statistics to merge.
+     */
+    private static void mergeInto(final StreamingStatistic[] into, final StreamingStatistic[] from) {
+        for (int i = 0; i < into.length; i++) {
+            into[i].merge(from[i]);
+        }
+    }
+
+    /**
+     * Get a string representation of the ensemble in the form of a CSV of the time and, for each measure, the mean,
+     * standard deviation, 5%, 50% and 95% quantiles.
+     * @return the string.
+     */
+    @Override
+    public final String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("#Replicates : ").append(replicates).append("\n");
+        sb.append("#Column 1 : Time\n");
+        int column = 2;
+        for (Statistics.Measure measure : MEASURES) {
+            sb.append("#Columns ").append(column).append("-").append(column + COLUMNS_PER_MEASURE - 1)
+                    .append(" : ").append(measure.name()).append(" (mean, sd, 5%, 50%, 95%)\n");
+            column += COLUMNS_PER_MEASURE;
+        }
+        sb.append("#Column ").append(column).append(" : Mean Total Cost\n");
+
+        double totalCost = 0.0;
+        final StreamingStatistic[][] summary = getSummary();
+        for (int day = 0; day < summary.length; day++) {
+            sb.append(day);
+            for (StreamingStatistic statistic : summary[day]) {
+                sb.append(String.format(", %.2f, %.2f, %.2f, %.2f, %.2f", statistic.getMean(),
+                                        Math.sqrt(statistic.getVariance()), statistic.quantile(0.05),
+                                        statistic.quantile(0.5), statistic.quantile(0.95)));
+            }
+            totalCost += summary[day][Statistics.Measure.COST.ordinal()].getMean();
+            sb.append(", ").append(String.format("%.2f", totalCost)).append("\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The relative accuracy of the quantiles.
+     */
+    @Getter
+    private final double accuracy;
+    /**
+     * The statistics of the replicates still running on each day, indexed by day.
+     */
+    private final List<StreamingStatistic[]> days;
+    /**
+     * The statistics of the final values of the replicates, by the last day of the replicates.
+     */
+    private final TreeMap<Integer, StreamingStatistic[]> finals;
+    /**
+     * The number of replicates in the ensemble.
+     */
+    @Getter
+    private int replicates;
+    private static final Statistics.Measure[] MEASURES = Statistics.Measure.values();
+    private static final double DEFAULT_ACCURACY = 0.01;
+    private static final int COLUMNS_PER_MEASURE = 5;
+    /**
+     * The serialVersionUID.
+     */
+    private static final long serialVersionUID = -4377216850212907381L;
+}
@@ -0,0 +1,321 @@
+package uk.ac.bioss.cowtastrophe;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import lombok.Getter;
+
+/**
+ * Epidemic metrics that are kept up to date as the simulation runs rather than computed from the whole history: the
+ * reproduction number, the exponential growth rate of the incidence and its doubling time, each over a sliding window
+ * of the last closed days.
+ * <p>
+ * Every infection adds one to the incidence of its day and one to the offspring of the day its source was infected;
+ * at the end of each day the day is closed, i.e. it enters the window and the day that falls out of the window leaves
+ * it. The window sums (of the incidence, of the offspring and of the terms of the least squares fit of the log
+ * incidence against the day) are updated as they change, so an infection and the closing of a day both take constant
+ * time. The metrics of every closed day are kept.
+ * <ul>
+ * <li>The reproduction number R_t is the number of farms infected by the farms infected in the window divided by the
+ * number of farms infected in the window (the case reproduction number); the farms infected most recently have not
+ * infected all their offspring yet so the last days underestimate it.</li>
+ * <li>The growth rate r is the slope of the least squares fit of ln(incidence + 0.5) against the day over the window
+ * and the doubling time is ln 2 / r (infinite if the incidence is not growing).</li>
+ * <li>The reproduction number implied by the growth rate is exp(r Tg), Tg being the mean generation interval (the
+ * mean number of days between the infection of a source and of the farms it infected).</li>
+ * </ul>
+ */
+public class EpidemicMetrics implements Serializable {
+
+    /**
+     * Create the metrics with the default window.
+     */
+    public EpidemicMetrics() {
+        this(DEFAULT_WINDOW);
+    }
+
+    /**
+     * Create the metrics.
+     * @param windowDays the number of days in the sliding window.
+     */
+    public EpidemicMetrics(final int windowDays) {
+        if (windowDays < 2) {
+            throw new IllegalArgumentException("The window must have at least 2 days, got " + windowDays);
+        }
+        this.window = windowDays;
+        this.incidence = new int[INITIAL_CAPACITY];
+        this.offspring = new int[INITIAL_CAPACITY];
+        this.reproductionNumbers = new double[INITIAL_CAPACITY];
+        this.growthRates = new double[INITIAL_CAPACITY];
+        this.lastClosedDay = -1;
+    }
+
+    /**
+     * Create a copy of the metrics (e.g. for a branch of a forked simulation).
+     * @param other the metrics to copy.
+     */
+    public EpidemicMetrics(final EpidemicMetrics other) {
+        this.window = other.window;
+        this.incidence = other.incidence.clone();
+        this.offspring = other.offspring.clone();
+        this.reproductionNumbers = other.reproductionNumbers.clone();
+        this.growthRates = other.growthRates.clone();
+        this.lastClosedDay = other.lastClosedDay;
+        this.windowCases = other.windowCases;
+        this.windowOffspring = other.windowOffspring;
+        this.sumX = other.sumX;
+        this.sumXX = other.sumXX;
+        this.sumY = other.sumY;
+        this.sumXY = other.sumXY;
+        this.windowLength = other.windowLength;
+        this.intervalSum = other.intervalSum;
+        this.numIntervals = other.numIntervals;
+    }
+
+    /**
+     * Record an index case.
+     * @param day the day the farm was infected.
+     */
+    public final void addIndexCase(final int day) {
+        addCase(day);
+    }
+
+    /**
+     * Record an infection.
+     * @param day       the day of the infection.
+     * @param sourceDay the day the source of the infection was infected.
+     */
+    public final void addInfection(final int day, final int sourceDay) {
+        addCase(day);
+        if (sourceDay >= 0) {
+            ensureCapacity(sourceDay);
+            offspring[sourceDay]++;
+            if (isInWindow(sourceDay)) {
+                windowOffspring++;
+            }
+            intervalSum += day - sourceDay;
+            numIntervals++;
+        }
+    }
+
+    /**
+     * Close the days up to a given day: the days enter the window and the metrics of each day are recorded.
+     * @param day the last day to close (days already closed are ignored).
+     */
+    public final void closeDay(final int day) {
+        while (lastClosedDay < day) {
+            final int next = lastClosedDay + 1;
+            ensureCapacity(next);
+            windowCases += incidence[next];
+            windowOffspring += offspring[next];
+            addToFit(next, 1);
+            final int leaving = next - window;
+            if (leaving >= 0) {
+                windowCases -= incidence[leaving];
+                windowOffspring -= offspring[leaving];
+                addToFit(leaving, -1);
+            }
+            lastClosedDay = next;
+            reproductionNumbers[next] = windowCases == 0 ? Double.NaN : (double) windowOffspring / windowCases;
+            growthRates[next] = slope();
+        }
+    }
+
+    /**
+     * Get the reproduction number (over the window ending on the last closed day).
+     * @return the reproduction number (NaN if no farm was infected in the window).
+     */
+    public final double getReproductionNumber() {
+        return getReproductionNumber(lastClosedDay);
+    }
+
+    /**
+     * Get the reproduction number over the window ending on a given day, as it was when the day was closed.
+     * @param day the day.
+     * @return the reproduction number (NaN if the day is not closed or no farm was infected in the window).
+     */
+    public final double getReproductionNumber(final int day) {
+        return day >= 0 && day <= lastClosedDay ? reproductionNumbers[day] : Double.NaN;
+    }
+
+    /**
+     * Get the exponential growth rate of the incidence (over the window ending on the last closed day).
+     * @return the growth rate per day (NaN if fewer than 2 days are closed).
+     */
+    public final double getGrowthRate() {
+        return getGrowthRate(lastClosedDay);
+    }
+
+    /**
+     * Get the exponential growth rate of the incidence over the window ending on a given day.
+     * @param day the day.
+     * @return the growth rate per day (NaN if the day is not closed or fewer than 2 days were closed then).
+     */
+    public final double getGrowthRate(final int day) {
+        return day >= 0 && day <= lastClosedDay ? growthRates[day] : Double.NaN;
+    }
+
+    /**
+     * Get the doubling time of the incidence (over the window ending on the last closed day).
+     * @return the doubling time in days (infinite if the incidence is not growing, NaN if it is not known).
+     */
+    public final double getDoublingTime() {
+        return getDoublingTime(lastClosedDay);
+    }
+
+    /**
+     * Get the doubling time of the incidence over the window ending on a given day.
+     * @param day the day.
+     * @return the doubling time in days (infinite if the incidence is not growing, NaN if it is not known).
+     */
+    public final double getDoublingTime(final int day) {
+        final double rate = getGrowthRate(day);
+        if (Double.isNaN(rate)) {
+            return Double.NaN;
+        }
+        return rate > 0 ? Math.log(2.0) / rate : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Get the mean generation interval, i.e. the mean number of days between the infection of a source and of the
+     * farms it infected.
+     * @return the mean generation interval (NaN if there has been no infection).
+     */
+    public final double getMeanGenerationInterval() {
+        return numIntervals == 0 ? Double.NaN : (double) intervalSum / numIntervals;
+    }
+
+    /**
+     * Get the reproduction number implied by the current growth rate and the mean generation interval, exp(r Tg).
+     * Unlike getReproductionNumber it does not lag behind the offspring still to be infected.
+     * @return the reproduction number (NaN if the growth rate or the generation interval are not known).
+     */
+    public final double getGrowthReproductionNumber() {
+        return Math.exp(getGrowthRate() * getMeanGenerationInterval());
+    }
+
+    /**
+     * Get the number of farms infected on a day.
+     * @param day the day.
+     * @return the number of farms.
+     */
+    public final int getIncidence(final int day) {
+        return day >= 0 && day < incidence.length ? incidence[day] : 0;
+    }
+
+    /**
+     * Record a case.
+     * @param day the day the farm was infected.
+     */
+    private void addCase(final int day) {
+        if (day < 0) {
+            return;
+        }
+        ensureCapacity(day);
+        if (isInWindow(day)) {
+            // a late case on a closed day: replace the day's term of the fit.
+            addToFit(day, -1);
+            incidence[day]++;
+            addToFit(day, 1);
+            windowCases++;
+        } else {
+            incidence[day]++;
+        }
+    }
+
+    /**
+     * Check whether a day is in the window, i.e. it is one of the last closed days.
+     * @param day the day.
+     * @return true if the day is in the window.
+     */
+    private boolean isInWindow(final int day) {
+        return day <= lastClosedDay && day > lastClosedDay - window;
+    }
+
+    /**
+     * Add (or remove) the term of a day to the sums of the least squares fit.
+     * @param day  the day.
+     * @param sign 1 to add the term, -1 to remove it.
+     */
+    private void addToFit(final int day, final int sign) {
+        final double y = Math.log(incidence[day] + HALF);
+        sumX += sign * (double) day;
+        sumXX += sign * (double) day * day;
+        sumY += sign * y;
+        sumXY += sign * day * y;
+        windowLength += sign;
+    }
+
+    /**
+     * Get the slope of the least squares fit over the window.
+     * @return the slope (NaN if the window holds fewer than 2 days).
+     */
+    private double slope() {
+        if (windowLength < 2) {
+            return Double.NaN;
+        }
+        final double denominator = windowLength * sumXX - sumX * sumX;
+        return (windowLength * sumXY - sumX * sumY) / denominator;
+    }
+
+    /**
+     * Make sure the columns can hold a given day, doubling their capacity as required.
+     * @param day the day.
+     */
+    private void ensureCapacity(final int day) {
+        if (day < incidence.length) {
+            return;
+        }
+        final int capacity = Math.max(day + 1, incidence.length * 2);
+        incidence = Arrays.copyOf(incidence, capacity);
+        offspring = Arrays.copyOf(offspring, capacity);
+        reproductionNumbers = Arrays.copyOf(reproductionNumbers, capacity);
+        growthRates = Arrays.copyOf(growthRates, capacity);
+    }
+
+    /**
+     * The number of days in the sliding window.
+     */
+    @Getter
+    private final int window;
+    /**
+     * The number of farms infected on each day.
+     */
+    private int[] incidence;
+    /**
+     * The number of farms infected by the farms infected on each day.
+     */
+    private int[] offspring;
+    /**
+     * The reproduction number of each closed day.
+     */
+    private double[] reproductionNumbers;
+    /**
+     * The growth rate of each closed day.
+     */
+    private double[] growthRates;
+    /**
+     * The last day that was closed (-1 if none).
+     */
+    @Getter
+    private int lastClosedDay;
+    private int windowCases;
+    private int windowOffspring;
+    private double sumX;
+    private double sumXX;
+    private double sumY;
+    private double sumXY;
+    private int windowLength;
+    private long intervalSum;
+    private int numIntervals;
+    /**
+     * The default number of days in the sliding window.
+     */
+    public static final int DEFAULT_WINDOW = 7;
+    private static final int INITIAL_CAPACITY = 64;
+    private static final double HALF = 0.5;
+
+    /**
+     * The serialVersionUID.
+     */
+    private static final long serialVersionUID = 8120445173350293652L;
+}
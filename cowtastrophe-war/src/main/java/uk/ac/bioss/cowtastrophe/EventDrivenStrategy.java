@@ -0,0 +1,189 @@
+package uk.ac.bioss.cowtastrophe;
+
+/**
+ * A control strategy that reacts to the changes to the farms rather than scanning every farm each time it is run.
+ * <p>
+ * Each run hands the entries of the simulation's transition log (every change of disease state since the last run,
+ * whoever made it, and the movement restrictions that were lifted) to the callbacks below, in the order they happened,
+ * and then clears the log, so a run costs time in proportion to what changed. A change that was overtaken before the
+ * run (the farm is no longer in the state it changed to) is skipped, the later change is handled instead; otherwise
+ * the change is handled even if a callback has changed the farm since (e.g. a confirmed farm that was vaccinated in
+ * the ring of another still has its own ring vaccinated), as a strategy that scanned the farms at the start of the run
+ * would. The changes the callbacks make (e.g. culling a confirmed farm) are logged too and handled in the same run if
+ * the farm is still in the state they changed it to.
+ * <p>
+ * When the strategy is attached to a simulation the log is replaced by a replay of the current state: onAttach is
+ * called and then every farm that is not susceptible is handed to the callbacks as if it had just changed to its
+ * state, so a strategy attached in the middle of an outbreak (a new strategy for a loaded session, or a branch of a
+ * forked simulation) acts on the outbreak as it stands. The replay is handled at the first run, at the time the
+ * strategy would have scanned the farms.
+ * <p>
+ * The callbacks must only act on the farms they are given (and their neighbourhoods); they should not scan the whole
+ * simulation.
+ */
+public abstract class EventDrivenStrategy extends ControlStrategy {
+
+    @Override
+    public void attach(final Simulation simulation) {
+        simulation.getTransitions().replay(simulation.getFarmStates());
+    }
+
+    @Override
+    public final void run(final Simulation simulation) {
+        final TransitionLog transitions = simulation.getTransitions();
+        transitions.dropOvertaken(simulation.getFarmStates());
+        final int logged = transitions.size();
+        // the callbacks may add entries, which are handled in this loop too.
+        for (int entry = 0; entry < transitions.size(); entry++) {
+            switch (transitions.getKind(entry)) {
+                case ATTACHED:
+                    onAttach(simulation);
+                    break;
+                case RESTRICTION_LIFTED:
+                    onRestrictionLifted(simulation, simulation.getFarm(transitions.getFarm(entry)));
+                    break;
+                default:
+                    final Farm farm = simulation.getFarm(transitions.getFarm(entry));
+                    if (entry < logged || farm.getStatus() == transitions.getTo(entry)) {
+                        onTransition(simulation, farm, transitions.getFrom(entry), transitions.getTo(entry));
+                    }
+                    break;
+            }
+        }
+        transitions.clear();
+        afterTransitions(simulation);
+    }
+
+    /**
+     * Handle a change of the disease state of a farm. The default calls the callback for the new state.
+     * @param simulation the simulation.
+     * @param farm       the farm.
+     * @param from       the state the farm changed from (SUSCEPTIBLE for the replay of an attachment).
+     * @param to         the state the farm changed to (the farm was in it at the start of the run).
+     */
+    protected void onTransition(final Simulation simulation, final Farm farm, final DiseaseState from,
+                                final DiseaseState to) {
+        switch (to) {
+            case SUSPECTED:
+                onSuspected(simulation, farm);
+                break;
+            case CONFIRMED:
+                onConfirmed(simulation, farm);
+                break;
+            case INFECTIOUS_NOT_SUSPECTED:
+                onInfectiousNotSuspected(simulation, farm);
+                break;
+            case CULLED:
+                onCulled(simulation, farm);
+                break;
+            case VACCINATED:
+                onVaccinated(simulation, farm);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Called at the first run after the strategy was attached to a simulation, before the replay of the farms, e.g.
+     * to impose measures that do not depend on the outbreak. The default does nothing.
+     * @param simulation the simulation.
+     */
+    protected void onAttach(final Simulation simulation) {
+    }
+
+    /**
+     * Called when a farm becomes suspected. The default does nothing.
+     * @param simulation the simulation.
+     * @param farm       the farm.
+     */
+    protected void onSuspected(final Simulation simulation, final Farm farm) {
+    }
+
+    /**
+     * Called when a farm is confirmed to be infected. The default does nothing.
+     * @param simulation the simulation.
+     * @param farm       the farm.
+     */
+    protected void onConfirmed(final Simulation simulation, final Farm farm) {
+    }
+
+    /**
+     * Called when a farm becomes infectious without being suspected (e.g. it failed its test). The default does
+     * nothing.
+     * @param simulation the simulation.
+     * @param farm       the farm.
+     */
+    protected void onInfectiousNotSuspected(final Simulation simulation, final Farm farm) {
+    }
+
+    /**
+     * Called when a farm is culled. The default does nothing.
+     * @param simulation the simulation.
+     * @param farm       the farm.
+     */
+    protected void onCulled(final Simulation simulation, final Farm farm) {
+    }
+
+    /**
+     * Called when a farm is vaccinated. The default does nothing.
+     * @param simulation the simulation.
+     * @param farm       the farm.
+     */
+    protected void onVaccinated(final Simulation simulation, final Farm farm) {
+    }
+
+    /**
+     * Called when the movement restriction of a farm is lifted. The default does nothing.
+     * @param simulation the simulation.
+     * @param farm       the farm.
+     */
+    protected void onRestrictionLifted(final Simulation simulation, final Farm farm) {
+    }
+
+    /**
+     * Called at the end of every run, once the changes have been handled, for the work the strategy does every day
+     * whatever happened (e.g. booking a daily cost). The changes it makes are handled at the next run. The default
+     * does nothing.
+     * @param simulation the simulation.
+     */
+    protected void afterTransitions(final Simulation simulation) {
+    }
+
+    /**
+     * Cull a farm, unless it has been culled already, and book the cost of culling it.
+     * @param simulation the simulation.
+     * @param farm       the farm.
+     * @return true if the farm was culled.
+     */
+    protected static boolean cull(final Simulation simulation, final Farm farm) {
+        if (farm.getStatus() == DiseaseState.CULLED) {
+            return false;
+        }
+        farm.setDayCulled(simulation.getDay());
+        farm.setStatus(DiseaseState.CULLED);
+        simulation.getStatistics().addCost(CostCategory.CULLING,
+                                           farm.getHerdSize() * simulation.getParameters().getCostOfCullingAnimal()
+                                           + simulation.getParameters().getCostOfFarmVisit());
+        return true;
+    }
+
+    /**
+     * Vaccinate a farm and book the cost of vaccinating it.
+     * @param simulation the simulation.
+     * @param farm       the farm.
+     * @param visitCost  whether the cost of the visit is booked on top of the cost per animal.
+     */
+    protected static void vaccinate(final Simulation simulation, final Farm farm, final boolean visitCost) {
+        farm.setDayVaccinated(simulation.getDay());
+        farm.setStatus(DiseaseState.VACCINATED);
+        simulation.getStatistics().addCost(CostCategory.VACCINATION,
+                                           farm.getHerdSize() * simulation.getParameters().getCostOfVaccinatingAnimal()
+                                           + (visitCost ? simulation.getParameters().getCostOfFarmVisit() : 0.0));
+    }
+
+    /**
+     * The serialVersionUID.
+     */
+    private static final long serialVersionUID = 5170633940175220698L;
+}
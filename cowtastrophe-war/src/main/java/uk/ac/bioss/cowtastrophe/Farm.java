@@ -2,50 +2,30 @@ package uk.ac.bioss.cowtastrophe;
 
 import broadwick.BroadwickException;
 import broadwick.stochastic.SimulationState;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Throwables;
 import java.io.Serializable;
-import java.util.concurrent.ThreadLocalRandom;
-import lombok.Getter;
-import lombok.Setter;
-import lombok.EqualsAndHashCode;
 
 /**
  * A Farm in the simulation contains animals that can move and transmit disease. Since they contain a [disease] state
  * they implement a SimulationState.
  */
-@EqualsAndHashCode
 public class Farm implements SimulationState, Serializable {
     
     // TODO: add member daysSinceLastSuspectedCase;
 
     /**
-     * Create a default farm object without setting any internal attributes.
+     * Create the farm at the specified index of the map. A farm is a lightweight view of one farm of a simulation;
+     * its static attributes (id, coordinates, herd size, radius) are read from the shared map and its mutable state
+     * is stored in the states of the simulation that owns it.
+     * @param farmStates the states of the farms of the simulation.
+     * @param farmIndex  the index of the farm in the map.
      */
-    public Farm() {
-    }
-
-    /**
-     * Create the farm at the specified location with the given attributes.
-     * @param name      the id of the farm.
-     * @param latitude  the x coordinate of the farm.
-     * @param longitude the y coordinate of the farm.
-     * @param size      the radius of the farm.
-     */
-    public Farm(final int name, final double latitude, final double longitude, final int size) {
-        this.id = name;
-        this.x = latitude;
-        this.y = longitude;
-        this.status = DiseaseState.SUSCEPTIBLE;
-        this.herdSize = ThreadLocalRandom.current().nextInt(MIN_SIZE, MAX_SIZE);
-        this.radius = size;
-        this.infectionSource = -1;
-        this.dayInfected = -1;
-        this.dayCulled = -1;
-        this.dayVaccinated = -1;
-        this.restrictedMovement = false;
-        this.restrictionSource = -1;
+    public Farm(final FarmStates farmStates, final int farmIndex) {
+        this.states = farmStates;
+        this.index = farmIndex;
     }
 
     /**
@@ -54,7 +34,7 @@ public class Farm implements SimulationState, Serializable {
      */
     @Override
     public final String getStateName() {
-        return String.valueOf(id);
+        return String.valueOf(getId());
     }
 
     /**
@@ -63,7 +43,7 @@ public class Farm implements SimulationState, Serializable {
      */
     @Override
     public final String toString() {
-        return String.format("%d [%s]", id, status);
+        return String.format("%d [%s]", getId(), getStatus());
     }
 
     /**
@@ -74,8 +54,7 @@ public class Farm implements SimulationState, Serializable {
         String jsonStr = "";
 
         try {
-            ObjectMapper mapper = new ObjectMapper();
-            jsonStr = mapper.writer().writeValueAsString(this);
+            jsonStr = MAPPER.writeValueAsString(this);
         } catch (JsonProcessingException jpe) {
             throw new BroadwickException("Error saving arm as json; "
                                          + Throwables.getStackTraceAsString(jpe));
@@ -99,92 +78,176 @@ public class Farm implements SimulationState, Serializable {
 
     @Override
     public int hashCode() {
-        return id;
+        return getId();
     }
 
     /**
-     * The id of the farm.
+     * Get the index of the farm in the map.
+     * @return the index of the farm.
      */
-    @Getter
-    @Setter
-    private int id;
+    @JsonIgnore
+    public final int getIndex() {
+        return index;
+    }
+
     /**
-     * The x (latitude) coordinate of the farm.
+     * Get the id of the farm.
+     * @return the id of the farm.
      */
-    @Getter
-    @Setter
-    private double x;
+    public final int getId() {
+        return states.getMap().getId(index);
+    }
+
     /**
-     * The y (longitude) coordinate of the farm.
+     * Get the x (latitude) coordinate of the farm.
+     * @return the x coordinate.
      */
-    @Getter
-    @Setter
-    private double y;
+    public final double getX() {
+        return states.getMap().getX(index);
+    }
+
     /**
-     * The disease state of the farm.
+     * Get the y (longitude) coordinate of the farm.
+     * @return the y coordinate.
      */
-    @Getter
-    @Setter
-    private DiseaseState status;
+    public final double getY() {
+        return states.getMap().getY(index);
+    }
+
     /**
-     * The number of animals on the farm.
+     * Get the number of animals on the farm.
+     * @return the herd size.
      */
-    @Getter
-    @Setter
-    private int herdSize;
+    public final int getHerdSize() {
+        return states.getMap().getHerdSize(index);
+    }
+
     /**
-     * The radius of the farm.
+     * Get the radius of the farm.
+     * @return the radius.
      */
-    @Getter
-    @Setter
-    private int radius;
+    public final int getRadius() {
+        return states.getMap().getRadius(index);
+    }
+
     /**
-     * The day the farm was infected.
+     * Get the disease state of the farm.
+     * @return the disease state.
      */
-    @Getter
-    @Setter
-    private int dayInfected;
+    public final DiseaseState getStatus() {
+        return states.getStatus(index);
+    }
+
     /**
-     * The day the farm was culled.
+     * Set the disease state of the farm.
+     * @param status the disease state.
      */
-    @Getter
-    @Setter
-    private int dayCulled;
+    public final void setStatus(final DiseaseState status) {
+        states.setStatus(index, status);
+    }
+
     /**
-     * The day the farm was vaccinated.
+     * Get the day the farm was infected.
+     * @return the day (or -1).
      */
-    @Getter
-    @Setter
-    private int dayVaccinated;
+    public final int getDayInfected() {
+        return states.getDayInfected(index);
+    }
+
     /**
-     * The id of the farm infecting this one.
+     * Set the day the farm was infected.
+     * @param day the day.
      */
-    @Getter
-    @Setter
-    private int infectionSource;
+    public final void setDayInfected(final int day) {
+        states.setDayInfected(index, day);
+    }
+
     /**
-     * whether movement is restricted for this farm
+     * Get the day the farm was culled.
+     * @return the day (or -1).
      */
-    @Getter
-    @Setter
-    private boolean restrictedMovement;
+    public final int getDayCulled() {
+        return states.getDayCulled(index);
+    }
+
     /**
-     * The farm that caused the movement restriction on us.
+     * Set the day the farm was culled.
+     * @param day the day.
      */
-    @Getter
-    @Setter
-    private int restrictionSource;
+    public final void setDayCulled(final int day) {
+        states.setDayCulled(index, day);
+    }
+
     /**
-     * The serialVersionUID.
+     * Get the day the farm was vaccinated.
+     * @return the day (or -1).
      */
-    private static final long serialVersionUID = 3453098701390754586L;
+    public final int getDayVaccinated() {
+        return states.getDayVaccinated(index);
+    }
+
+    /**
+     * Set the day the farm was vaccinated.
+     * @param day the day.
+     */
+    public final void setDayVaccinated(final int day) {
+        states.setDayVaccinated(index, day);
+    }
+
     /**
-     * The minimum herd size.
+     * Get the id of the farm infecting this one.
+     * @return the id of the infecting farm (or -1).
      */
-    private static final int MIN_SIZE = 50;
+    public final int getInfectionSource() {
+        return states.getInfectionSource(index);
+    }
+
     /**
-     * The maximum herd size.
+     * Set the id of the farm infecting this one.
+     * @param source the id of the infecting farm.
      */
-    private static final int MAX_SIZE = 150;
+    public final void setInfectionSource(final int source) {
+        states.setInfectionSource(index, source);
+    }
 
+    /**
+     * Get whether movement is restricted for this farm.
+     * @return true if movement is restricted.
+     */
+    public final boolean isRestrictedMovement() {
+        return states.isRestrictedMovement(index);
+    }
+
+    /**
+     * Get the farm that caused the movement restriction on us.
+     * @return the id of the farm (or -1).
+     */
+    public final int getRestrictionSource() {
+        return states.getRestrictionSource(index);
+    }
+
+    /**
+     * Set the farm that caused the movement restriction on us.
+     * @param source the id of the farm.
+     */
+    public final void setRestrictionSource(final int source) {
+        states.setRestrictionSource(index, source);
+    }
+
+    /**
+     * The states of the farms of the simulation this farm belongs to.
+     */
+    private final FarmStates states;
+    /**
+     * The index of the farm in the map.
+     */
+    private final int index;
+    /**
+     * The (thread safe) mapper used to write farms as JSON.
+     */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    /**
+     * The serialVersionUID.
+     */
+    private static final long serialVersionUID = 3453098701390754587L;
 }
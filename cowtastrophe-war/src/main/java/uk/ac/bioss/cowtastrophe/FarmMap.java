@@ -0,0 +1,401 @@
+package uk.ac.bioss.cowtastrophe;
+
+import broadwick.BroadwickException;
+import com.fasterxml.jackson.databind.JsonNode;
+import java.io.File;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntConsumer;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The static (immutable) part of a preset map: the ids, coordinates, herd sizes and radii of the farms, the seed
+ * farms, the parameters of the preset and a spatial index over the farms. A map is loaded once per preset file (and
+ * again when the file is modified) and shared by every session that uses that preset, each session only holds the
+ * mutable state of the farms (see FarmStates).
+ * <p>
+ * Farms are identified in the map by a dense index (0..size-1) in the order they appear in the preset file.
+ */
+@Slf4j
+public final class FarmMap implements Serializable {
+
+    /**
+     * Create the map from the parsed contents of a preset file.
+     * @param source   the (canonical) name of the preset file.
+     * @param modified the time the preset file was last modified.
+     * @param json     the root node of the preset file.
+     */
+    private FarmMap(final String source, final long modified, final JsonNode json) {
+        this.source = source;
+        this.lastModified = modified;
+        this.parameters = new Parameters(json);
+
+        final JsonNode farmsNode = json.get("farms");
+        final int size = farmsNode == null ? 0 : farmsNode.size();
+        this.ids = new int[size];
+        this.x = new double[size];
+        this.y = new double[size];
+        this.herdSizes = new int[size];
+        this.radii = new int[size];
+        this.initialStatus = new byte[size];
+        this.indexById = new HashMap<>(size * 2);
+        this.unset = new int[size];
+        Arrays.fill(unset, -1);
+
+        for (int i = 0; i < size; i++) {
+            final JsonNode farm = farmsNode.get(i);
+            ids[i] = farm.get("id").asInt();
+            x[i] = farm.get("x").asDouble();
+            y[i] = farm.get("y").asDouble();
+            herdSizes[i] = farm.has("herdSize") ? farm.get("herdSize").asInt()
+                           : MIN_SIZE + new CounterRng(HERD_SIZE_SEED, ids[i]).nextInt(MAX_SIZE - MIN_SIZE);
+            radii[i] = farm.has("radius") ? farm.get("radius").asInt() : 0;
+            initialStatus[i] = (byte) (farm.has("status")
+                                       ? DiseaseState.valueOf(farm.get("status").asText())
+                                       : DiseaseState.SUSCEPTIBLE).ordinal();
+            if (indexById.put(ids[i], i) != null) {
+                throw new BroadwickException("Duplicate farm id " + ids[i] + " in " + source);
+            }
+        }
+
+        final JsonNode seedsNode = json.get("seedFarms");
+        this.seedIndices = new int[seedsNode == null ? 0 : seedsNode.size()];
+        for (int i = 0; i < seedIndices.length; i++) {
+            seedIndices[i] = indexOf(seedsNode.get(i).get("id").asInt());
+        }
+
+        this.fingerprint = computeFingerprint();
+        buildSpatialIndex();
+        log.info("Loaded map {} with {} farms", source, size);
+    }
+
+    /**
+     * Get the map for a preset file, the file is only read the first time it is requested and the map is shared by
+     * all subsequent callers until the file is modified; the file is then read again and the new map replaces the old
+     * one (the sessions that hold the old map keep it).
+     * @param paramsFileName the name of the file containing the preset.
+     * @return the map.
+     */
+    public static FarmMap load(final String paramsFileName) {
+        final File file = new File(paramsFileName).getAbsoluteFile();
+        final long modified = file.lastModified();
+        return MAPS.compute(file.getPath(), (key, loaded) -> loaded != null && loaded.lastModified == modified
+                                                            ? loaded
+                                                            : new FarmMap(key, modified, Parameters.readJson(key)));
+    }
+
+    /**
+     * Get the number of farms in the map.
+     * @return the number of farms.
+     */
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * Get the index of a farm given its id.
+     * @param farmId the id of the farm.
+     * @return the index of the farm in the map.
+     */
+    public int indexOf(final int farmId) {
+        final Integer index = indexById.get(farmId);
+        if (index == null) {
+            throw new BroadwickException("No farm with id " + farmId + " in " + source);
+        }
+        return index;
+    }
+
+    /**
+     * Get the id of the farm at the given index.
+     * @param index the index of the farm.
+     * @return the id of the farm.
+     */
+    public int getId(final int index) {
+        return ids[index];
+    }
+
+    /**
+     * Get the x coordinate of the farm at the given index.
+     * @param index the index of the farm.
+     * @return the x coordinate.
+     */
+    public double getX(final int index) {
+        return x[index];
+    }
+
+    /**
+     * Get the y coordinate of the farm at the given index.
+     * @param index the index of the farm.
+     * @return the y coordinate.
+     */
+    public double getY(final int index) {
+        return y[index];
+    }
+
+    /**
+     * Get the herd size of the farm at the given index.
+     * @param index the index of the farm.
+     * @return the number of animals on the farm.
+     */
+    public int getHerdSize(final int index) {
+        return herdSizes[index];
+    }
+
+    /**
+     * Get the radius of the farm at the given index.
+     * @param index the index of the farm.
+     * @return the radius of the farm.
+     */
+    public int getRadius(final int index) {
+        return radii[index];
+    }
+
+    /**
+     * Get the disease states of the farms as they were given in the preset file (as DiseaseState ordinals). The
+     * array is shared and must not be modified.
+     * @return the initial state column.
+     */
+    byte[] initialStatusColumn() {
+        return initialStatus;
+    }
+
+    /**
+     * Get a column of -1 values (the initial value of the days and sources in FarmStates). The array is shared and
+     * must not be modified.
+     * @return the column.
+     */
+    int[] unsetColumn() {
+        return unset;
+    }
+
+    /**
+     * Get the indices of the seed farms.
+     * @return a copy of the seed farm indices.
+     */
+    public int[] getSeedIndices() {
+        return seedIndices.clone();
+    }
+
+    /**
+     * Get the distance between two farms.
+     * @param i the index of a farm.
+     * @param j the index of another farm.
+     * @return the distance between the farms.
+     */
+    public double distance(final int i, final int j) {
+        final double dx = x[i] - x[j];
+        final double dy = y[i] - y[j];
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Visit all the farms that are within a given distance of a reference farm (including the reference farm
+     * itself). Only the cells of the spatial index that overlap the circle are searched.
+     * @param index    the index of the reference farm.
+     * @param distance the specified radius.
+     * @param visitor  the consumer that is given the index of each farm within the distance.
+     */
+    public void forEachWithin(final int index, final double distance, final IntConsumer visitor) {
+        if (ids.length == 0 || distance < 0) {
+            return;
+        }
+        final int minCol = cellColumn(x[index] - distance);
+        final int maxCol = cellColumn(x[index] + distance);
+        final int minRow = cellRow(y[index] - distance);
+        final int maxRow = cellRow(y[index] + distance);
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int col = minCol; col <= maxCol; col++) {
+                final int cell = row * columns + col;
+                for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                    final int other = cellFarms[k];
+                    if (distance(index, other) <= distance) {
+                        visitor.accept(other);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the indices of all the farms that are within a given distance of a reference farm (including the
+     * reference farm), in ascending order.
+     * @param index    the index of the reference farm.
+     * @param distance the specified radius.
+     * @return the indices of the farms within the distance.
+     */
+    public int[] indicesWithin(final int index, final double distance) {
+        final int[][] found = {new int[INITIAL_QUERY_CAPACITY]};
+        final int[] count = {0};
+        forEachWithin(index, distance, (other) -> {
+            if (count[0] == found[0].length) {
+                found[0] = Arrays.copyOf(found[0], count[0] * 2);
+            }
+            found[0][count[0]++] = other;
+        });
+        final int[] result = Arrays.copyOf(found[0], count[0]);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Build the spatial index; the farms are bucketed in a uniform grid whose cells hold a few farms each on
+     * average and stored in compressed (CSR) form.
+     */
+    private void buildSpatialIndex() {
+        double minXCoord = Double.MAX_VALUE;
+        double minYCoord = Double.MAX_VALUE;
+        double maxXCoord = -Double.MAX_VALUE;
+        double maxYCoord = -Double.MAX_VALUE;
+        for (int i = 0; i < ids.length; i++) {
+            minXCoord = Math.min(minXCoord, x[i]);
+            minYCoord = Math.min(minYCoord, y[i]);
+            maxXCoord = Math.max(maxXCoord, x[i]);
+            maxYCoord = Math.max(maxYCoord, y[i]);
+        }
+        if (ids.length == 0) {
+            minXCoord = 0;
+            minYCoord = 0;
+            maxXCoord = 0;
+            maxYCoord = 0;
+        }
+        final double width = Math.max(maxXCoord - minXCoord, MIN_EXTENT);
+        final double height = Math.max(maxYCoord - minYCoord, MIN_EXTENT);
+
+        this.originX = minXCoord;
+        this.originY = minYCoord;
+        this.cellSize = Math.sqrt(width * height * FARMS_PER_CELL / Math.max(ids.length, 1));
+        this.columns = (int) (width / cellSize) + 1;
+        this.rows = (int) (height / cellSize) + 1;
+
+        final int[] cellOf = new int[ids.length];
+        this.cellStart = new int[columns * rows + 1];
+        for (int i = 0; i < ids.length; i++) {
+            cellOf[i] = cellRow(y[i]) * columns + cellColumn(x[i]);
+            cellStart[cellOf[i] + 1]++;
+        }
+        for (int cell = 0; cell < columns * rows; cell++) {
+            cellStart[cell + 1] += cellStart[cell];
+        }
+        this.cellFarms = new int[ids.length];
+        final int[] fill = Arrays.copyOf(cellStart, cellStart.length - 1);
+        for (int i = 0; i < ids.length; i++) {
+            cellFarms[fill[cellOf[i]]++] = i;
+        }
+    }
+
+    /**
+     * Get the column of the spatial index containing an x coordinate (clamped to the grid).
+     * @param xCoord the x coordinate.
+     * @return the column.
+     */
+    private int cellColumn(final double xCoord) {
+        return Math.max(0, Math.min(columns - 1, (int) Math.floor((xCoord - originX) / cellSize)));
+    }
+
+    /**
+     * Get the row of the spatial index containing a y coordinate (clamped to the grid).
+     * @param yCoord the y coordinate.
+     * @return the row.
+     */
+    private int cellRow(final double yCoord) {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor((yCoord - originY) / cellSize)));
+    }
+
+    /**
+     * Compute a fingerprint of the farm data so that a deserialised map can be matched against a loaded one.
+     * @return the fingerprint.
+     */
+    private long computeFingerprint() {
+        long hash = ids.length;
+        for (int i = 0; i < ids.length; i++) {
+            hash = 31 * hash + ids[i];
+            hash = 31 * hash + Double.doubleToLongBits(x[i]);
+            hash = 31 * hash + Double.doubleToLongBits(y[i]);
+            hash = 31 * hash + herdSizes[i];
+        }
+        return hash;
+    }
+
+    /**
+     * Replace a deserialised map by the shared instance for the same preset (if there is one and it contains the
+     * same farms) so that restored sessions do not each hold their own copy of the map.
+     * @return the shared map.
+     */
+    private Object readResolve() {
+        final FarmMap shared = MAPS.putIfAbsent(source, this);
+        if (shared != null && shared.fingerprint == fingerprint) {
+            return shared;
+        }
+        return this;
+    }
+
+    /**
+     * The name of the preset file the map was read from.
+     */
+    @Getter
+    private final String source;
+    /**
+     * The time the preset file was last modified when the map was read from it.
+     */
+    private final long lastModified;
+    /**
+     * The parameters of the preset, each simulation takes its own copy of these.
+     */
+    @Getter
+    private final Parameters parameters;
+    private final int[] ids;
+    private final double[] x;
+    private final double[] y;
+    private final int[] herdSizes;
+    private final int[] radii;
+    private final byte[] initialStatus;
+    private final int[] unset;
+    private final int[] seedIndices;
+    private final Map<Integer, Integer> indexById;
+    private final long fingerprint;
+    private double originX;
+    private double originY;
+    private double cellSize;
+    private int columns;
+    private int rows;
+    private int[] cellStart;
+    private int[] cellFarms;
+    /**
+     * The maps that have been loaded, keyed by the absolute name of their preset file (only the latest map of each
+     * file is kept).
+     */
+    private static final Map<String, FarmMap> MAPS = new ConcurrentHashMap<>();
+    /**
+     * The average number of farms in a cell of the spatial index.
+     */
+    private static final double FARMS_PER_CELL = 4.0;
+    /**
+     * The minimum extent of the spatial index (to avoid empty grids when all farms share a coordinate).
+     */
+    private static final double MIN_EXTENT = 1.0;
+    /**
+     * The initial capacity of the buffer used in radius queries.
+     */
+    private static final int INITIAL_QUERY_CAPACITY = 16;
+    /**
+     * The minimum herd size (used when the preset does not give one).
+     */
+    private static final int MIN_SIZE = 50;
+    /**
+     * The maximum herd size (used when the preset does not give one).
+     */
+    private static final int MAX_SIZE = 150;
+    /**
+     * The seed of the herd sizes drawn for the farms without one (the stream being the id of the farm), so a preset
+     * gives the same map every time it is loaded.
+     */
+    private static final long HERD_SIZE_SEED = 0x5DEECE66DL;
+    /**
+     * The serialVersionUID.
+     */
+    private static final long serialVersionUID = 2391004585201397431L;
+}
@@ -0,0 +1,208 @@
+package uk.ac.bioss.cowtastrophe;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.function.ToIntFunction;
+
+/**
+ * Compact encodings of the state of the farms in a simulation. The farms are always written in the order of their
+ * index in the (shared) map so that the static attributes of the farms (ids, coordinates, herd sizes), which only
+ * need to be sent once per session, line up with the status columns that are sent for every day.
+ */
+public final class FarmStateEncoder {
+
+    /**
+     * Hidden private utility class constructor.
+     */
+    private FarmStateEncoder() {
+    }
+
+    /**
+     * Get the simulation data as columnar JSON, i.e. the farm attributes are written as parallel arrays rather than
+     * as one object per farm.
+     * @param simulation    the simulation to encode.
+     * @param includeStatic whether or not the static attributes (coordinates, herd sizes and radii) are included.
+     * @return A JSON string.
+     */
+    public static String asColumnarJson(final Simulation simulation, final boolean includeStatic) {
+        final Farm[] farms = orderedFarms(simulation);
+        final int[] counts = countStates(farms);
+
+        StringBuilder jsFile = new StringBuilder(64 + farms.length * 24);
+        jsFile.append("{");
+        jsFile.append("\"session_id\": \"").append(simulation.getSessionId()).append("\", ");
+        jsFile.append("\"timeframe\": ").append(simulation.getDay() + 1).append(", ");
+        jsFile.append("\"next_event\": ").append(simulation.getSimulator().getCurrentTime()).append(", ");
+        jsFile.append("\"susceptible\": ").append(counts[DiseaseState.SUSCEPTIBLE.ordinal()]).append(", ");
+        jsFile.append("\"suspected\": ").append(counts[DiseaseState.SUSPECTED.ordinal()]).append(", ");
+        jsFile.append("\"confirmed\": ").append(counts[DiseaseState.CONFIRMED.ordinal()]).append(", ");
+        jsFile.append("\"culled\": ").append(counts[DiseaseState.CULLED.ordinal()]).append(", ");
+        jsFile.append("\"vaccinated\": ").append(counts[DiseaseState.VACCINATED.ordinal()]).append(", ");
+        jsFile.append("\"cost\": ").append(simulation.getStatistics().getCost(simulation.getDay() - 1)).append(", ");
+        jsFile.append("\"cost_breakdown\": ").append(simulation.getStatistics().getCostLedger().totalsAsJson())
+                .append(", ");
+        final EpidemicMetrics metrics = simulation.getStatistics().getMetrics();
+        jsFile.append("\"r_t\": ").append(jsonNumber(metrics.getReproductionNumber())).append(", ");
+        jsFile.append("\"growth_rate\": ").append(jsonNumber(metrics.getGrowthRate())).append(", ");
+        jsFile.append("\"doubling_time\": ").append(jsonNumber(metrics.getDoublingTime())).append(", ");
+
+        jsFile.append("\"states\": [");
+        for (DiseaseState state : DiseaseState.values()) {
+            jsFile.append(state.ordinal() == 0 ? "\"" : ", \"").append(state.name()).append("\"");
+        }
+        jsFile.append("], ");
+
+        appendColumn(jsFile, "ids", farms, Farm::getId);
+        if (includeStatic) {
+            jsFile.append("\"x\": [");
+            for (int i = 0; i < farms.length; i++) {
+                jsFile.append(i == 0 ? "" : ",").append(farms[i].getX());
+            }
+            jsFile.append("], ");
+            jsFile.append("\"y\": [");
+            for (int i = 0; i < farms.length; i++) {
+                jsFile.append(i == 0 ? "" : ",").append(farms[i].getY());
+            }
+            jsFile.append("], ");
+            appendColumn(jsFile, "herdSize", farms, Farm::getHerdSize);
+            appendColumn(jsFile, "radius", farms, Farm::getRadius);
+        }
+        appendColumn(jsFile, "status", farms, (farm) -> farm.getStatus().ordinal());
+        final RestrictedFarms restricted = simulation.getRestrictedFarms();
+        appendColumn(jsFile, "restricted", farms, (farm) -> restricted.isRestricted(farm.getIndex()) ? 1 : 0);
+        appendColumn(jsFile, "dayInfected", farms, Farm::getDayInfected);
+        appendColumn(jsFile, "dayCulled", farms, Farm::getDayCulled);
+        appendColumn(jsFile, "dayVaccinated", farms, Farm::getDayVaccinated);
+        appendColumn(jsFile, "infectionSource", farms, Farm::getInfectionSource);
+        jsFile.setLength(jsFile.length() - 2);
+        jsFile.append("}");
+
+        return jsFile.toString();
+    }
+
+    /**
+     * Write the simulation data in the packed binary form. All values are big-endian, the layout is
+     * <pre>
+     *   int     magic number (0x434F5754, "COWT")
+     *   byte    format version
+     *   byte    flags (bit 0 set if the static attributes are included)
+     *   UTF     session id
+     *   int     timeframe
+     *   double  next event time
+     *   double  cost
+     *   int     number of farms, n
+     *   [static attributes, only if flagged: int[n] ids, float[n] x, float[n] y, int[n] herd sizes, int[n] radii]
+     *   byte[n] status of each farm (the DiseaseState ordinal, bit 7 set if under movement restriction)
+     * </pre>
+     * @param simulation    the simulation to encode.
+     * @param stream        the stream to which the data is written (the stream is flushed but not closed).
+     * @param includeStatic whether or not the static attributes (ids, coordinates, herd sizes and radii) are included.
+     * @throws IOException if the data could not be written.
+     */
+    public static void writeBinary(final Simulation simulation, final OutputStream stream,
+                                   final boolean includeStatic) throws IOException {
+        final Farm[] farms = orderedFarms(simulation);
+        final DataOutputStream out = new DataOutputStream(stream);
+
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeByte(includeStatic ? FLAG_STATIC : 0);
+        out.writeUTF(simulation.getSessionId());
+        out.writeInt(simulation.getDay() + 1);
+        out.writeDouble(simulation.getSimulator().getCurrentTime());
+        out.writeDouble(simulation.getStatistics().getCost(simulation.getDay() - 1));
+        out.writeInt(farms.length);
+
+        if (includeStatic) {
+            for (Farm farm : farms) {
+                out.writeInt(farm.getId());
+            }
+            for (Farm farm : farms) {
+                out.writeFloat((float) farm.getX());
+            }
+            for (Farm farm : farms) {
+                out.writeFloat((float) farm.getY());
+            }
+            for (Farm farm : farms) {
+                out.writeInt(farm.getHerdSize());
+            }
+            for (Farm farm : farms) {
+                out.writeInt(farm.getRadius());
+            }
+        }
+
+        final RestrictedFarms restricted = simulation.getRestrictedFarms();
+        final byte[] status = new byte[farms.length];
+        for (int i = 0; i < farms.length; i++) {
+            status[i] = (byte) (farms[i].getStatus().ordinal()
+                                | (restricted.isRestricted(farms[i].getIndex()) ? RESTRICTED_BIT : 0));
+        }
+        out.write(status);
+        out.flush();
+    }
+
+    /**
+     * Get the farms of the simulation in the order of the map.
+     * @param simulation the simulation.
+     * @return the array of farms.
+     */
+    private static Farm[] orderedFarms(final Simulation simulation) {
+        return simulation.getFarms().toArray(new Farm[0]);
+    }
+
+    /**
+     * Count the number of farms in each disease state in a single pass.
+     * @param farms the farms to count.
+     * @return the number of farms in each state indexed by the ordinal of the state.
+     */
+    private static int[] countStates(final Farm[] farms) {
+        final int[] counts = new int[DiseaseState.values().length];
+        for (Farm farm : farms) {
+            counts[farm.getStatus().ordinal()]++;
+        }
+        return counts;
+    }
+
+    /**
+     * Format a number for JSON, which has no NaN or infinity.
+     * @param value the number.
+     * @return the number, or null if it is not finite.
+     */
+    private static String jsonNumber(final double value) {
+        return Double.isNaN(value) || Double.isInfinite(value) ? "null" : Double.toString(value);
+    }
+
+    /**
+     * Append a named integer array (and a trailing separator) to a JSON string.
+     * @param jsFile the JSON being built.
+     * @param name   the name of the array.
+     * @param farms  the farms.
+     * @param column the function that extracts the value for each farm.
+     */
+    private static void appendColumn(final StringBuilder jsFile, final String name, final Farm[] farms,
+                                     final ToIntFunction<Farm> column) {
+        jsFile.append("\"").append(name).append("\": [");
+        for (int i = 0; i < farms.length; i++) {
+            jsFile.append(i == 0 ? "" : ",").append(column.applyAsInt(farms[i]));
+        }
+        jsFile.append("], ");
+    }
+
+    /**
+     * The magic number at the start of the binary form ("COWT").
+     */
+    public static final int MAGIC = 0x434F5754;
+    /**
+     * The version of the binary form.
+     */
+    public static final int VERSION = 1;
+    /**
+     * The flag set in the binary form if the static attributes are included.
+     */
+    public static final int FLAG_STATIC = 0x01;
+    /**
+     * The bit set in a status byte if the farm is under movement restriction.
+     */
+    public static final int RESTRICTED_BIT = 0x80;
+}
@@ -0,0 +1,250 @@
+package uk.ac.bioss.cowtastrophe;
+
+import java.io.Serializable;
+import lombok.Getter;
+
+/**
+ * The mutable state of the farms of one simulation, stored as columns indexed by the (dense) index of the farm in the
+ * shared FarmMap.
+ * <p>
+ * The columns are copy-on-write: a new set of states shares the (read-only) initial columns held by the map, and a
+ * copy shares the columns of the original, until a column is first written to, at which point only that column is
+ * copied. Every change of disease state is also recorded in the transition log, from which the control strategy
+ * learns about it.
+ */
+public final class FarmStates implements Serializable {
+
+    /**
+     * Create the state of the farms as they are given in the preset map.
+     * @param farmMap the map of farms.
+     */
+    public FarmStates(final FarmMap farmMap) {
+        this.map = farmMap;
+        this.status = map.initialStatusColumn();
+        this.dayInfected = map.unsetColumn();
+        this.dayCulled = map.unsetColumn();
+        this.dayVaccinated = map.unsetColumn();
+        this.infectionSource = map.unsetColumn();
+        this.restrictionSource = map.unsetColumn();
+        this.restrictedFarms = new RestrictedFarms(map.size());
+        this.owned = 0;
+        this.transitions = new TransitionLog();
+    }
+
+    /**
+     * Create a copy of a set of states that shares all its columns with the original.
+     * @param other the states to copy.
+     */
+    private FarmStates(final FarmStates other) {
+        this.map = other.map;
+        this.status = other.status;
+        this.dayInfected = other.dayInfected;
+        this.dayCulled = other.dayCulled;
+        this.dayVaccinated = other.dayVaccinated;
+        this.infectionSource = other.infectionSource;
+        this.restrictionSource = other.restrictionSource;
+        this.restrictedFarms = new RestrictedFarms(other.restrictedFarms);
+        this.owned = 0;
+        this.transitions = new TransitionLog(other.transitions);
+    }
+
+    /**
+     * Create a (copy-on-write) copy of these states. Neither this object nor the copy owns any column afterwards,
+     * so whichever writes to a column first takes a private copy of it.
+     * @return the copy.
+     */
+    public synchronized FarmStates copy() {
+        this.owned = 0;
+        return new FarmStates(this);
+    }
+
+    /**
+     * Get the number of farms.
+     * @return the number of farms.
+     */
+    public int size() {
+        return status.length;
+    }
+
+    /**
+     * Get the disease state of a farm.
+     * @param index the index of the farm.
+     * @return the disease state.
+     */
+    public DiseaseState getStatus(final int index) {
+        return STATES[status[index]];
+    }
+
+    /**
+     * Set the disease state of a farm, recording the change in the transition log.
+     * @param index the index of the farm.
+     * @param state the new state.
+     */
+    public void setStatus(final int index, final DiseaseState state) {
+        if (status[index] == state.ordinal()) {
+            return;
+        }
+        if ((owned & STATUS) == 0) {
+            status = status.clone();
+            owned |= STATUS;
+        }
+        transitions.addStatusChange(index, STATES[status[index]], state);
+        status[index] = (byte) state.ordinal();
+    }
+
+    /**
+     * Get the day a farm was infected.
+     * @param index the index of the farm.
+     * @return the day (or -1 if it has not been infected).
+     */
+    public int getDayInfected(final int index) {
+        return dayInfected[index];
+    }
+
+    /**
+     * Set the day a farm was infected.
+     * @param index the index of the farm.
+     * @param day   the day.
+     */
+    public void setDayInfected(final int index, final int day) {
+        if ((owned & DAY_INFECTED) == 0) {
+            dayInfected = dayInfected.clone();
+            owned |= DAY_INFECTED;
+        }
+        dayInfected[index] = day;
+    }
+
+    /**
+     * Get the day a farm was culled.
+     * @param index the index of the farm.
+     * @return the day (or -1 if it has not been culled).
+     */
+    public int getDayCulled(final int index) {
+        return dayCulled[index];
+    }
+
+    /**
+     * Set the day a farm was culled.
+     * @param index the index of the farm.
+     * @param day   the day.
+     */
+    public void setDayCulled(final int index, final int day) {
+        if ((owned & DAY_CULLED) == 0) {
+            dayCulled = dayCulled.clone();
+            owned |= DAY_CULLED;
+        }
+        dayCulled[index] = day;
+    }
+
+    /**
+     * Get the day a farm was vaccinated.
+     * @param index the index of the farm.
+     * @return the day (or -1 if it has not been vaccinated).
+     */
+    public int getDayVaccinated(final int index) {
+        return dayVaccinated[index];
+    }
+
+    /**
+     * Set the day a farm was vaccinated.
+     * @param index the index of the farm.
+     * @param day   the day.
+     */
+    public void setDayVaccinated(final int index, final int day) {
+        if ((owned & DAY_VACCINATED) == 0) {
+            dayVaccinated = dayVaccinated.clone();
+            owned |= DAY_VACCINATED;
+        }
+        dayVaccinated[index] = day;
+    }
+
+    /**
+     * Get the id of the farm that infected a farm.
+     * @param index the index of the farm.
+     * @return the id of the source of the infection (or -1).
+     */
+    public int getInfectionSource(final int index) {
+        return infectionSource[index];
+    }
+
+    /**
+     * Set the id of the farm that infected a farm.
+     * @param index  the index of the farm.
+     * @param source the id of the infecting farm.
+     */
+    public void setInfectionSource(final int index, final int source) {
+        if ((owned & INFECTION_SOURCE) == 0) {
+            infectionSource = infectionSource.clone();
+            owned |= INFECTION_SOURCE;
+        }
+        infectionSource[index] = source;
+    }
+
+    /**
+     * Get the id of the farm that caused a movement restriction on a farm.
+     * @param index the index of the farm.
+     * @return the id of the source of the restriction (or -1).
+     */
+    public int getRestrictionSource(final int index) {
+        return restrictionSource[index];
+    }
+
+    /**
+     * Set the id of the farm that caused a movement restriction on a farm.
+     * @param index  the index of the farm.
+     * @param source the id of the farm causing the restriction.
+     */
+    public void setRestrictionSource(final int index, final int source) {
+        if ((owned & RESTRICTION_SOURCE) == 0) {
+            restrictionSource = restrictionSource.clone();
+            owned |= RESTRICTION_SOURCE;
+        }
+        restrictionSource[index] = source;
+    }
+
+    /**
+     * Get whether movement is restricted for a farm.
+     * @param index the index of the farm.
+     * @return true if movement is restricted.
+     */
+    public boolean isRestrictedMovement(final int index) {
+        return restrictedFarms.isRestricted(index);
+    }
+
+    /**
+     * The (shared) map of farms whose state this is.
+     */
+    @Getter
+    private final FarmMap map;
+    private byte[] status;
+    private int[] dayInfected;
+    private int[] dayCulled;
+    private int[] dayVaccinated;
+    private int[] infectionSource;
+    private int[] restrictionSource;
+    /**
+     * The farms whose movements are restricted (a bitset, so it is copied rather than shared by copies).
+     */
+    @Getter
+    private final RestrictedFarms restrictedFarms;
+    /**
+     * The changes of state that the control strategy has not handled yet (the log is not shared by copies).
+     */
+    @Getter
+    private final TransitionLog transitions;
+    /**
+     * A bit mask of the columns this object has its own copy of.
+     */
+    private int owned;
+    private static final int STATUS = 1;
+    private static final int DAY_INFECTED = 1 << 1;
+    private static final int DAY_CULLED = 1 << 2;
+    private static final int DAY_VACCINATED = 1 << 3;
+    private static final int INFECTION_SOURCE = 1 << 4;
+    private static final int RESTRICTION_SOURCE = 1 << 5;
+    private static final DiseaseState[] STATES = DiseaseState.values();
+    /**
+     * The serialVersionUID.
+     */
+    private static final long serialVersionUID = 6038447613287416901L;
+}
@@ -0,0 +1,419 @@
+package uk.ac.bioss.cowtastrophe;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * The tree of who infected whom in a simulation. Every infected farm is a node of the tree holding the farm, the day
+ * it was infected, its generation (0 for an index case, the generation of its source + 1 otherwise) and its source;
+ * the nodes are held in primitive columns in the order of infection, so a source always comes before the farms it
+ * infected.
+ * <p>
+ * The children of every node are indexed in compressed sparse row form (the children of node n being
+ * children[childStart[n]] to children[childStart[n + 1] - 1]) and the size of every subtree is computed in one reverse
+ * pass over the nodes; both indices are built when first queried after an infection was added, so the offspring of a
+ * farm, the offspring distribution, the generation sizes, the transmission chain to a farm and the size of the
+ * outbreak seeded by a farm are answered without going through the whole tree.
+ * <p>
+ * Farms are given by their index in the map; the ids of the farms are recorded too so that the tree can be written
+ * without the map.
+ */
+public class InfectionTree implements Serializable {
+
+    /**
+     * Create an empty tree.
+     */
+    public InfectionTree() {
+        farms = new int[INITIAL_CAPACITY];
+        ids = new int[INITIAL_CAPACITY];
+        days = new int[INITIAL_CAPACITY];
+        generations = new int[INITIAL_CAPACITY];
+        parents = new int[INITIAL_CAPACITY];
+        nodeOf = new int[0];
+    }
+
+    /**
+     * Create a copy of a tree (e.g. for a branch of a forked simulation).
+     * @param other the tree to copy.
+     */
+    public InfectionTree(final InfectionTree other) {
+        final int capacity = Math.max(INITIAL_CAPACITY, other.size + INITIAL_CAPACITY);
+        farms = Arrays.copyOf(other.farms, capacity);
+        ids = Arrays.copyOf(other.ids, capacity);
+        days = Arrays.copyOf(other.days, capacity);
+        generations = Arrays.copyOf(other.generations, capacity);
+        parents = Arrays.copyOf(other.parents, capacity);
+        nodeOf = other.nodeOf.clone();
+        size = other.size;
+        numIndexCases = other.numIndexCases;
+        maxGeneration = other.maxGeneration;
+    }
+
+    /**
+     * Record an index case, i.e. a farm infected from outside the simulation. A farm already in the tree is ignored.
+     * @param day  the day the farm was infected.
+     * @param farm the farm.
+     */
+    public final void addIndexCase(final int day, final Farm farm) {
+        if (!contains(farm.getIndex())) {
+            addNode(farm, day, -1);
+        }
+    }
+
+    /**
+     * Record an infection. A source that is not in the tree is recorded as an index case infected on the same day; an
+     * infected farm already in the tree is ignored (a farm is only infected once).
+     * @param day      the day of the infection.
+     * @param source   the farm that was the source of the infection.
+     * @param infected the newly infected farm.
+     */
+    public final void addInfection(final int day, final Farm source, final Farm infected) {
+        if (contains(infected.getIndex())) {
+            return;
+        }
+        addIndexCase(day, source);
+        addNode(infected, day, nodeOf[source.getIndex()] - 1);
+    }
+
+    /**
+     * Check whether a farm is in the tree.
+     * @param farm the index of the farm.
+     * @return true if the farm is an index case or was infected.
+     */
+    public final boolean contains(final int farm) {
+        return farm >= 0 && farm < nodeOf.length && nodeOf[farm] != 0;
+    }
+
+    /**
+     * Get the number of infections (source to infected farm), i.e. the number of farms in the tree that are not
+     * index cases.
+     * @return the number of infections.
+     */
+    public final int getNumInfections() {
+        return size - numIndexCases;
+    }
+
+    /**
+     * Get the number of farms in the tree (index cases and infected farms).
+     * @return the number of farms.
+     */
+    public final int getNumFarms() {
+        return size;
+    }
+
+    /**
+     * Get the source of the infection of a farm.
+     * @param farm the index of the farm.
+     * @return the index of the source, or -1 if the farm is an index case.
+     */
+    public final int getSource(final int farm) {
+        final int parent = parents[node(farm)];
+        return parent < 0 ? -1 : farms[parent];
+    }
+
+    /**
+     * Get the day a farm was infected.
+     * @param farm the index of the farm.
+     * @return the day.
+     */
+    public final int getDayInfected(final int farm) {
+        return days[node(farm)];
+    }
+
+    /**
+     * Get the generation of a farm.
+     * @param farm the index of the farm.
+     * @return the generation (0 for an index case).
+     */
+    public final int getGeneration(final int farm) {
+        return generations[node(farm)];
+    }
+
+    /**
+     * Get the farms infected by a farm, in the order of infection.
+     * @param farm the index of the farm.
+     * @return the indices of the farms.
+     */
+    public final int[] getOffspring(final int farm) {
+        buildIndex();
+        final int node = node(farm);
+        final int[] offspring = new int[childStart[node + 1] - childStart[node]];
+        for (int i = 0; i < offspring.length; i++) {
+            offspring[i] = farms[children[childStart[node] + i]];
+        }
+        return offspring;
+    }
+
+    /**
+     * Get the number of farms infected by a farm.
+     * @param farm the index of the farm.
+     * @return the number of farms.
+     */
+    public final int getNumOffspring(final int farm) {
+        buildIndex();
+        final int node = node(farm);
+        return childStart[node + 1] - childStart[node];
+    }
+
+    /**
+     * Get the number of farms in the subtree of a farm, i.e. the farm and every farm infected by it directly or
+     * indirectly.
+     * @param farm the index of the farm.
+     * @return the size of the subtree.
+     */
+    public final int getSubtreeSize(final int farm) {
+        buildIndex();
+        return subtreeSizes[node(farm)];
+    }
+
+    /**
+     * Get the chain of transmission to a farm.
+     * @param farm the index of the farm.
+     * @return the indices of the farms from the index case to the farm.
+     */
+    public final int[] getChain(final int farm) {
+        int node = node(farm);
+        final int[] chain = new int[generations[node] + 1];
+        for (int i = chain.length - 1; i >= 0; i--) {
+            chain[i] = farms[node];
+            node = parents[node];
+        }
+        return chain;
+    }
+
+    /**
+     * Get the offspring distribution: the number of farms in the tree that infected 0, 1, 2... farms. The farms
+     * still infectious have not necessarily infected all their offspring yet.
+     * @return the number of farms, indexed by the number of offspring.
+     */
+    public final int[] getOffspringDistribution() {
+        buildIndex();
+        int maxOffspring = 0;
+        for (int node = 0; node < size; node++) {
+            maxOffspring = Math.max(maxOffspring, childStart[node + 1] - childStart[node]);
+        }
+        final int[] distribution = new int[size == 0 ? 0 : maxOffspring + 1];
+        for (int node = 0; node < size; node++) {
+            distribution[childStart[node + 1] - childStart[node]]++;
+        }
+        return distribution;
+    }
+
+    /**
+     * Get the number of farms in each generation.
+     * @return the number of farms, indexed by generation.
+     */
+    public final int[] getGenerationSizes() {
+        final int[] sizes = new int[size == 0 ? 0 : maxGeneration + 1];
+        for (int node = 0; node < size; node++) {
+            sizes[generations[node]]++;
+        }
+        return sizes;
+    }
+
+    /**
+     * Write the tree as CSV, one line per farm in the order of infection: the id of the farm, the id of its source
+     * (-1 for an index case), the day it was infected and its generation.
+     * @param out where the CSV is written.
+     * @throws IOException if the CSV cannot be written.
+     */
+    public final void writeCsv(final Appendable out) throws IOException {
+        out.append("#farm, source, day, generation\n");
+        for (int node = 0; node < size; node++) {
+            out.append(Integer.toString(ids[node])).append(", ")
+                    .append(Integer.toString(parents[node] < 0 ? -1 : ids[parents[node]])).append(", ")
+                    .append(Integer.toString(days[node])).append(", ")
+                    .append(Integer.toString(generations[node])).append('\n');
+        }
+    }
+
+    /**
+     * Get a summary of the tree as JSON: the number of farms and infections, the generation sizes and the offspring
+     * distribution and, if a farm is given, its source, day, generation, offspring, subtree size and chain of
+     * transmission (all farms being given by id; the farm is null if it is not in the tree).
+     * @param farm the index of the farm to describe (-1 for none).
+     * @return A JSON string.
+     */
+    public final String asJson(final int farm) {
+        StringBuilder jsFile = new StringBuilder();
+
+        jsFile.append("{");
+        jsFile.append("\"farms\": ").append(size).append(", ");
+        jsFile.append("\"infections\": ").append(getNumInfections()).append(", ");
+        jsFile.append("\"generation_sizes\": ");
+        appendArray(jsFile, getGenerationSizes());
+        jsFile.append(", \"offspring_distribution\": ");
+        appendArray(jsFile, getOffspringDistribution());
+        if (farm >= 0) {
+            jsFile.append(", \"farm\": ");
+            if (contains(farm)) {
+                final int node = nodeOf[farm] - 1;
+                jsFile.append("{\"id\": ").append(ids[node]);
+                jsFile.append(", \"source\": ").append(parents[node] < 0 ? -1 : ids[parents[node]]);
+                jsFile.append(", \"day\": ").append(days[node]);
+                jsFile.append(", \"generation\": ").append(generations[node]);
+                jsFile.append(", \"subtree_size\": ").append(getSubtreeSize(farm));
+                jsFile.append(", \"offspring\": ");
+                appendIds(jsFile, getOffspring(farm));
+                jsFile.append(", \"chain\": ");
+                appendIds(jsFile, getChain(farm));
+                jsFile.append("}");
+            } else {
+                jsFile.append("null");
+            }
+        }
+        jsFile.append("}");
+
+        return jsFile.toString();
+    }
+
+    /**
+     * Append an array of integers as a JSON array.
+     * @param sb     the string builder.
+     * @param values the integers.
+     */
+    private static void appendArray(final StringBuilder sb, final int[] values) {
+        sb.append("[");
+        for (int i = 0; i < values.length; i++) {
+            sb.append(i == 0 ? "" : ", ").append(values[i]);
+        }
+        sb.append("]");
+    }
+
+    /**
+     * Append the ids of farms in the tree as a JSON array.
+     * @param sb          the string builder.
+     * @param farmIndices the indices of the farms.
+     */
+    private void appendIds(final StringBuilder sb, final int[] farmIndices) {
+        sb.append("[");
+        for (int i = 0; i < farmIndices.length; i++) {
+            sb.append(i == 0 ? "" : ", ").append(ids[nodeOf[farmIndices[i]] - 1]);
+        }
+        sb.append("]");
+    }
+
+    /**
+     * Get the node of a farm.
+     * @param farm the index of the farm.
+     * @return the node.
+     * @throws IllegalArgumentException if the farm is not in the tree.
+     */
+    private int node(final int farm) {
+        if (!contains(farm)) {
+            throw new IllegalArgumentException("Farm " + farm + " is not in the infection tree");
+        }
+        return nodeOf[farm] - 1;
+    }
+
+    /**
+     * Add a node to the tree.
+     * @param farm   the farm.
+     * @param day    the day the farm was infected.
+     * @param parent the node of the source of the infection (-1 for an index case).
+     */
+    private void addNode(final Farm farm, final int day, final int parent) {
+        if (size == farms.length) {
+            final int capacity = farms.length * 2;
+            farms = Arrays.copyOf(farms, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+            days = Arrays.copyOf(days, capacity);
+            generations = Arrays.copyOf(generations, capacity);
+            parents = Arrays.copyOf(parents, capacity);
+        }
+        if (farm.getIndex() >= nodeOf.length) {
+            nodeOf = Arrays.copyOf(nodeOf, Math.max(farm.getIndex() + 1, nodeOf.length * 2));
+        }
+        farms[size] = farm.getIndex();
+        ids[size] = farm.getId();
+        days[size] = day;
+        generations[size] = parent < 0 ? 0 : generations[parent] + 1;
+        parents[size] = parent;
+        maxGeneration = Math.max(maxGeneration, generations[size]);
+        if (parent < 0) {
+            numIndexCases++;
+        }
+        size++;
+        nodeOf[farm.getIndex()] = size;
+    }
+
+    /**
+     * Build the child lists and the subtree sizes if infections were added since they were last built.
+     */
+    private void buildIndex() {
+        if (childStart != null && indexedSize == size) {
+            return;
+        }
+        // count the children of every node, then place them (in the order of the nodes, i.e. of infection).
+        childStart = new int[size + 1];
+        for (int node = 0; node < size; node++) {
+            if (parents[node] >= 0) {
+                childStart[parents[node] + 1]++;
+            }
+        }
+        for (int node = 0; node < size; node++) {
+            childStart[node + 1] += childStart[node];
+        }
+        children = new int[childStart[size]];
+        final int[] next = Arrays.copyOf(childStart, size);
+        for (int node = 0; node < size; node++) {
+            if (parents[node] >= 0) {
+                children[next[parents[node]]++] = node;
+            }
+        }
+        // a source comes before the farms it infected, so a reverse pass sees every subtree before its root.
+        subtreeSizes = new int[size];
+        for (int node = size - 1; node >= 0; node--) {
+            subtreeSizes[node]++;
+            if (parents[node] >= 0) {
+                subtreeSizes[parents[node]] += subtreeSizes[node];
+            }
+        }
+        indexedSize = size;
+    }
+
+    /**
+     * The index of the farm of each node in the map.
+     */
+    private int[] farms;
+    /**
+     * The id of the farm of each node.
+     */
+    private int[] ids;
+    /**
+     * The day each node was infected.
+     */
+    private int[] days;
+    /**
+     * The generation of each node.
+     */
+    private int[] generations;
+    /**
+     * The node of the source of each node (-1 for an index case).
+     */
+    private int[] parents;
+    /**
+     * The node of each farm + 1, indexed by the index of the farm in the map (0 if the farm is not in the tree).
+     */
+    private int[] nodeOf;
+    private int size;
+    private int numIndexCases;
+    private int maxGeneration;
+    /**
+     * The start of the children of each node in children (the compressed sparse row index).
+     */
+    private transient int[] childStart;
+    private transient int[] children;
+    private transient int[] subtreeSizes;
+    /**
+     * The number of nodes when the index was built.
+     */
+    private transient int indexedSize;
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * The serialVersionUID.
+     */
+    private static final long serialVersionUID = -4273059812847364191L;
+}
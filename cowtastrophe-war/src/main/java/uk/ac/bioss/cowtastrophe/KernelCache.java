@@ -0,0 +1,207 @@
+package uk.ac.bioss.cowtastrophe;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A cache of the weights of the infection kernel of a simulation, i.e. the rate at which an infected farm infects a
+ * susceptible one, so that the kernel, which is rebuilt after every infection, does not recompute the power law for
+ * every pair of farms each time.
+ * <p>
+ * The weights of each infected farm are held in two rows over the index of the farms, filled as they are needed: the
+ * weights when neither farm is restricted and those when either is. The caller picks the row, so the cached weights
+ * do not depend on which farms are restricted and nothing is dropped when a restriction is imposed or lifted. A cache
+ * only holds the weights of one map and set of kernel parameters and there is one cache for each of them, shared by
+ * every simulation that uses them (e.g. the sessions on the same preset and the branches of a fork, which run in
+ * parallel).
+ * <p>
+ * All the caches together take at most a fraction of the heap, however many simulations are alive: when a new row
+ * would take more, the caches that were least recently added to are closed (a simulation holding a closed cache gets
+ * a new one the next time it asks for it) and, if that is not enough, the rows of the cache are dropped. A row that
+ * would not fit at all is not cached.
+ */
+final class KernelCache {
+
+    /**
+     * Create an empty cache.
+     * @param cacheKey   the key of the cache in the caches.
+     * @param farmMap    the map of the farms.
+     * @param parameters the parameters of the kernel.
+     */
+    private KernelCache(final List<Object> cacheKey, final FarmMap farmMap, final Parameters parameters) {
+        this.key = cacheKey;
+        this.map = farmMap;
+        this.numFarms = farmMap.size();
+        this.rows = new AtomicReferenceArray<>(2 * numFarms);
+        this.rowBytes = (long) Double.BYTES * numFarms;
+        this.tableBytes = (long) REFERENCE_BYTES * rows.length();
+        this.beta = parameters.getBeta();
+        this.kernelOffset = parameters.getKernelOffset();
+        this.kernelPower = parameters.getKernelPower();
+        this.restrictedKernelPower = parameters.getRestrictedKernelPower();
+    }
+
+    /**
+     * Get the cache of a map and the current kernel parameters: the given cache if it holds the weights of the same
+     * map and parameters and is still open, the shared cache of the map and parameters if not.
+     * @param cache      the cache used so far (may be null).
+     * @param farmMap    the map of the farms.
+     * @param parameters the parameters of the simulation.
+     * @return the cache.
+     */
+    static KernelCache forParameters(final KernelCache cache, final FarmMap farmMap, final Parameters parameters) {
+        if (cache != null && !cache.closed && cache.map == farmMap && parameters.getBeta() == cache.beta
+            && parameters.getKernelOffset() == cache.kernelOffset && parameters.getKernelPower() == cache.kernelPower
+            && parameters.getRestrictedKernelPower() == cache.restrictedKernelPower) {
+            return cache;
+        }
+        // the map is compared by identity (as above), the same file loaded again is a new map.
+        final List<Object> cacheKey = Arrays.asList(farmMap, parameters.getBeta(), parameters.getKernelOffset(),
+                                                    parameters.getKernelPower(), parameters.getRestrictedKernelPower());
+        synchronized (CACHES) {
+            KernelCache shared = CACHES.get(cacheKey);
+            if (shared == null) {
+                shared = new KernelCache(cacheKey, farmMap, parameters);
+                while (usedBytes + shared.tableBytes > MAX_BYTES && !CACHES.isEmpty()) {
+                    CACHES.values().iterator().next().close();
+                }
+                CACHES.put(cacheKey, shared);
+                usedBytes += shared.tableBytes;
+            }
+            return shared;
+        }
+    }
+
+    /**
+     * Get the rate at which an infected farm infects a susceptible one.
+     * @param infected    the index of the infected farm.
+     * @param susceptible the index of the susceptible farm.
+     * @param restricted  whether either farm is restricted.
+     * @return the weight of the pair in the kernel.
+     */
+    double weight(final int infected, final int susceptible, final boolean restricted) {
+        final int index = restricted ? numFarms + infected : infected;
+        double[] row = rows.get(index);
+        if (row == null) {
+            row = newRow(index);
+            if (row == null) {
+                return computeWeight(infected, susceptible, restricted);
+            }
+        }
+        // an entry that is not filled yet is 0 (the weight of a farm with no animals is recomputed every time), so a
+        // thread that sees a row before another thread's writes to it only computes the weight again.
+        double weight = row[susceptible];
+        if (weight == 0) {
+            weight = computeWeight(infected, susceptible, restricted);
+            row[susceptible] = weight;
+        }
+        return weight;
+    }
+
+    /**
+     * Compute the rate at which an infected farm infects a susceptible one.
+     * @param infected    the index of the infected farm.
+     * @param susceptible the index of the susceptible farm.
+     * @param restricted  whether either farm is restricted.
+     * @return the weight of the pair in the kernel.
+     */
+    private double computeWeight(final int infected, final int susceptible, final boolean restricted) {
+        return Math.pow(1 + (map.distance(infected, susceptible) / kernelOffset),
+                        -(restricted ? restrictedKernelPower : kernelPower))
+               * map.getHerdSize(infected) * map.getHerdSize(susceptible)
+               * beta;
+    }
+
+    /**
+     * Add an empty row, closing the least recently used caches (or dropping the rows of this one) first if the caches
+     * are full.
+     * @param index the index of the row.
+     * @return the row, or null if the cache is closed or the row does not fit in the caches.
+     */
+    private double[] newRow(final int index) {
+        synchronized (CACHES) {
+            double[] row = rows.get(index);
+            if (row != null || closed) {
+                return row;
+            }
+            // mark the cache as the most recently used.
+            CACHES.get(key);
+            while (usedBytes + rowBytes > MAX_BYTES) {
+                final KernelCache eldest = CACHES.values().iterator().next();
+                if (eldest != this) {
+                    eldest.close();
+                } else if (cachedRows > 0) {
+                    dropRows();
+                } else {
+                    return null;
+                }
+            }
+            row = new double[numFarms];
+            rows.set(index, row);
+            cachedRows++;
+            usedBytes += rowBytes;
+            return row;
+        }
+    }
+
+    /**
+     * Drop every row of the cache (the caller holds the lock of the caches).
+     */
+    private void dropRows() {
+        for (int i = 0; i < rows.length(); i++) {
+            rows.set(i, null);
+        }
+        usedBytes -= cachedRows * rowBytes;
+        cachedRows = 0;
+    }
+
+    /**
+     * Drop the rows of the cache and remove it from the caches, it caches nothing after that (the caller holds the
+     * lock of the caches).
+     */
+    private void close() {
+        CACHES.remove(key);
+        dropRows();
+        usedBytes -= tableBytes;
+        closed = true;
+    }
+
+    private final List<Object> key;
+    private final FarmMap map;
+    private final int numFarms;
+    /**
+     * The rows of the weights when neither farm is restricted (the first numFarms) and when either is.
+     */
+    private final AtomicReferenceArray<double[]> rows;
+    /**
+     * The size in bytes of a row and of the table of the rows.
+     */
+    private final long rowBytes;
+    private final long tableBytes;
+    private int cachedRows;
+    private volatile boolean closed;
+    private final double beta;
+    private final double kernelOffset;
+    private final double kernelPower;
+    private final double restrictedKernelPower;
+    /**
+     * The open caches, the least recently used first.
+     */
+    private static final Map<List<Object>, KernelCache> CACHES = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * The bytes taken by the rows and tables of all the open caches (guarded by the lock of the caches).
+     */
+    private static long usedBytes;
+    /**
+     * The caches take at most 1 / HEAP_FRACTION of the maximum heap.
+     */
+    private static final long HEAP_FRACTION = 8;
+    private static final long MAX_BYTES = Runtime.getRuntime().maxMemory() / HEAP_FRACTION;
+    /**
+     * The size of a reference in the table of the rows (the largest, without compressed references).
+     */
+    private static final int REFERENCE_BYTES = 8;
+}
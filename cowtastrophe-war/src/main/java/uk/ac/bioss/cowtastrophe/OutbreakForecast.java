@@ -0,0 +1,241 @@
+package uk.ac.bioss.cowtastrophe;
+
+import broadwick.BroadwickException;
+import com.google.common.base.Throwables;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang.SerializationUtils;
+
+/**
+ * Forecast the course of an outbreak from the current state of a session: the simulation is forked into a number of
+ * replicates, each with its own random number stream and a copy of the control strategy, which are run for a given
+ * number of days in parallel. The forecast holds, for every day, the distribution over the replicates of the number
+ * of farms in each state and of the cost incurred since the start of the forecast.
+ * <p>
+ * The replicates share a wall-clock budget so that the forecast can answer an interactive request: the replicates
+ * that have not finished when the budget runs out are cancelled and the forecast is made from those that did.
+ */
+@Slf4j
+public final class OutbreakForecast {
+
+    /**
+     * Create the forecast.
+     * @param simulation    the simulation from which every replicate starts (it is not modified).
+     * @param strategy      the control strategy applied in every replicate (it is copied for each replicate).
+     * @param numReplicates the number of replicates.
+     * @param numDays       the number of days to forecast.
+     */
+    public OutbreakForecast(final Simulation simulation, final ControlStrategy strategy, final int numReplicates,
+                            final int numDays) {
+        this.base = simulation;
+        this.controlStrategy = strategy;
+        this.replicates = numReplicates;
+        this.days = numDays;
+        this.startDay = simulation.getDay();
+        this.summary = new StreamingStatistic[numDays][MEASURES.length];
+        for (int day = 0; day < numDays; day++) {
+            for (int i = 0; i < MEASURES.length; i++) {
+                summary[day][i] = new StreamingStatistic(ACCURACY);
+            }
+        }
+    }
+
+    /**
+     * Run the replicates on the given executor, within a wall-clock budget. The replicates are aggregated in the
+     * calling thread as they finish, so nothing is shared between the replicates.
+     * @param executor     the executor on which the replicates are run.
+     * @param budgetMillis the wall-clock budget of the whole forecast (&lt;= 0 for no limit).
+     */
+    public void run(final ExecutorService executor, final long budgetMillis) {
+        final long start = System.nanoTime();
+        final long deadline = start + TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+
+        final List<RunLimits> limits = new ArrayList<>(replicates);
+        final List<Future<double[][]>> futures = new ArrayList<>(replicates);
+        for (int replicate = 0; replicate < replicates; replicate++) {
+            final Simulation branch = base.fork(replicate,
+                                                (ControlStrategy) SerializationUtils.clone(controlStrategy));
+            final RunLimits branchLimits = new RunLimits(budgetMillis, 0);
+            branch.setLimits(branchLimits);
+            limits.add(branchLimits);
+            futures.add(executor.submit(() -> runReplicate(branch)));
+        }
+
+        try {
+            for (Future<double[][]> future : futures) {
+                try {
+                    final double[][] trajectory = budgetMillis > 0
+                                                  ? future.get(Math.max(0, deadline - System.nanoTime()),
+                                                               TimeUnit.NANOSECONDS)
+                                                  : future.get();
+                    if (trajectory != null) {
+                        add(trajectory);
+                    }
+                } catch (TimeoutException | CancellationException ex) {
+                    // out of time: stop the replicates still running and drop those not yet started.
+                    limits.forEach(RunLimits::cancel);
+                    futures.forEach((f) -> f.cancel(false));
+                }
+            }
+        } catch (InterruptedException ex) {
+            limits.forEach(RunLimits::cancel);
+            futures.forEach((future) -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new BroadwickException("Forecast interrupted");
+        } catch (ExecutionException ex) {
+            limits.forEach(RunLimits::cancel);
+            futures.forEach((future) -> future.cancel(true));
+            throw new BroadwickException("Error running forecast; " + Throwables.getStackTraceAsString(ex.getCause()));
+        }
+        elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        log.info("Forecast {} days of session {} from {} of {} replicates in {} ms", days, base.getSessionId(),
+                 completed, replicates, elapsedMillis);
+    }
+
+    /**
+     * Run a replicate and extract its trajectory.
+     * @param branch the fork of the simulation.
+     * @return the value of every measure on every forecast day (the cost being the cost since the start of the
+     *         forecast), or null if the replicate ran out of time.
+     */
+    private double[][] runReplicate(final Simulation branch) {
+        try {
+            branch.runFor(days);
+        } catch (SimulationCancelledException ex) {
+            return null;
+        }
+        final Statistics statistics = branch.getStatistics();
+        final double[][] trajectory = new double[days][MEASURES.length];
+        // a replicate that ended early keeps its last farm counts, and incurs no further cost.
+        final double[] last = new double[MEASURES.length];
+        int before = startDay - 1;
+        while (before >= statistics.getFirstDay() && !statistics.isRecorded(before)) {
+            before--;
+        }
+        if (before >= statistics.getFirstDay()) {
+            for (Statistics.Measure measure : MEASURES) {
+                last[measure.ordinal()] = measure.isState() ? statistics.get(before, measure) : 0;
+            }
+        }
+        double cost = 0.0;
+        for (int i = 0; i < days; i++) {
+            final int day = startDay + i;
+            if (statistics.isRecorded(day)) {
+                for (Statistics.Measure measure : MEASURES) {
+                    last[measure.ordinal()] = statistics.get(day, measure);
+                }
+                cost += last[COST];
+            }
+            System.arraycopy(last, 0, trajectory[i], 0, MEASURES.length);
+            trajectory[i][COST] = cost;
+        }
+        return trajectory;
+    }
+
+    /**
+     * Add the trajectory of a replicate to the forecast.
+     * @param trajectory the value of every measure on every forecast day.
+     */
+    private void add(final double[][] trajectory) {
+        for (int day = 0; day < days; day++) {
+            for (int i = 0; i < MEASURES.length; i++) {
+                summary[day][i].add(trajectory[day][i]);
+            }
+        }
+        completed++;
+    }
+
+    /**
+     * Get the distribution of a measure on a day of the forecast over the replicates.
+     * @param day     the number of the day in the forecast (0 for the first forecast day).
+     * @param measure the measure (the cost being the cost since the start of the forecast).
+     * @return the statistic.
+     */
+    public StreamingStatistic get(final int day, final Statistics.Measure measure) {
+        return summary[day][measure.ordinal()];
+    }
+
+    /**
+     * Get the forecast as JSON: for every day and measure the mean and the quantiles given by QUANTILES over the
+     * replicates that finished.
+     * @return A JSON string.
+     */
+    public String asJson() {
+        StringBuilder jsFile = new StringBuilder();
+
+        jsFile.append("{");
+        jsFile.append("\"session_id\": \"").append(base.getSessionId()).append("\", ");
+        jsFile.append("\"timeframe\": ").append(startDay + 1).append(", ");
+        jsFile.append("\"days\": ").append(days).append(", ");
+        jsFile.append("\"replicates\": ").append(replicates).append(", ");
+        jsFile.append("\"completed\": ").append(completed).append(", ");
+        jsFile.append("\"elapsed_ms\": ").append(elapsedMillis).append(", ");
+        jsFile.append("\"quantiles\": [");
+        for (int q = 0; q < QUANTILES.length; q++) {
+            jsFile.append(q == 0 ? "" : ", ").append(QUANTILES[q]);
+        }
+        jsFile.append("], ");
+        jsFile.append("\"forecast\": [");
+        for (int day = 0; day < days; day++) {
+            jsFile.append(day == 0 ? "{" : ", {");
+            jsFile.append("\"timeframe\": ").append(startDay + day + 2);
+            for (Statistics.Measure measure : MEASURES) {
+                final StreamingStatistic statistic = get(day, measure);
+                jsFile.append(", \"").append(measure.name().toLowerCase()).append("\": {");
+                jsFile.append("\"mean\": ").append(completed == 0 ? "null" : statistic.getMean());
+                jsFile.append(", \"quantiles\": [");
+                for (int q = 0; q < QUANTILES.length; q++) {
+                    jsFile.append(q == 0 ? "" : ", ")
+                            .append(completed == 0 ? "null" : statistic.quantile(QUANTILES[q]));
+                }
+                jsFile.append("]}");
+            }
+            jsFile.append("}");
+        }
+        jsFile.append("]");
+        jsFile.append("}");
+
+        return jsFile.toString();
+    }
+
+    private final Simulation base;
+    private final ControlStrategy controlStrategy;
+    @Getter
+    private final int replicates;
+    @Getter
+    private final int days;
+    /**
+     * The day of the simulation the forecast starts from.
+     */
+    @Getter
+    private final int startDay;
+    /**
+     * The statistics of each measure over the replicates, indexed by forecast day then by the ordinal of the measure.
+     */
+    private final StreamingStatistic[][] summary;
+    /**
+     * The number of replicates that finished within the budget.
+     */
+    @Getter
+    private int completed;
+    /**
+     * The wall-clock time taken by the forecast.
+     */
+    @Getter
+    private long elapsedMillis;
+    /**
+     * The quantiles reported by asJson.
+     */
+    public static final double[] QUANTILES = {0.05, 0.25, 0.5, 0.75, 0.95};
+    private static final Statistics.Measure[] MEASURES = Statistics.Measure.values();
+    private static final int COST = Statistics.Measure.COST.ordinal();
+    private static final double ACCURACY = 0.01;
+}
@@ -0,0 +1,363 @@
+package uk.ac.bioss.cowtastrophe;
+
+import broadwick.BroadwickException;
+import com.google.common.base.Throwables;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Run the points x replicates of a sweep design in parallel. The preset map is read once and shared by every run.
+ * <p>
+ * The runs are scheduled longest-expected-first: one pilot replicate of every point is run first and the time it took
+ * is used as the expected run time of the remaining replicates of that point, which are then queued in order of
+ * decreasing expected time so that long points don't end up running on their own at the end of the sweep.
+ * <p>
+ * The result of a point is passed to the listener as soon as all its replicates have finished. Replicate r of every
+ * point uses the same seed, so the differences between neighbouring points are not swamped by the random numbers.
+ */
+@Slf4j
+public final class ParameterSweep {
+
+    /**
+     * The results of the replicates at one point of the design.
+     */
+    public static final class PointResult {
+
+        /**
+         * Create the result.
+         * @param pointIndex the index of the point in the design.
+         * @param point      the values of the factors at the point.
+         * @param numReplicates the number of replicates.
+         */
+        PointResult(final int pointIndex, final double[] point, final int numReplicates) {
+            this.index = pointIndex;
+            this.values = point;
+            this.costs = new double[numReplicates];
+            this.outbreakSizes = new int[numReplicates];
+            this.durations = new int[numReplicates];
+        }
+
+        /**
+         * Get the mean of an array.
+         * @param data the data.
+         * @return the mean.
+         */
+        private static double mean(final double[] data) {
+            double sum = 0.0;
+            for (double value : data) {
+                sum += value;
+            }
+            return sum / data.length;
+        }
+
+        /**
+         * Get the mean total cost over the replicates.
+         * @return the mean cost.
+         */
+        public double getMeanCost() {
+            return mean(costs);
+        }
+
+        /**
+         * Get the standard deviation of the total cost over the replicates.
+         * @return the standard deviation.
+         */
+        public double getSdCost() {
+            if (costs.length < 2) {
+                return 0.0;
+            }
+            final double mean = getMeanCost();
+            double sumSq = 0.0;
+            for (double cost : costs) {
+                sumSq += (cost - mean) * (cost - mean);
+            }
+            return Math.sqrt(sumSq / (costs.length - 1));
+        }
+
+        /**
+         * Get the mean number of farms infected over the replicates.
+         * @return the mean outbreak size.
+         */
+        public double getMeanOutbreakSize() {
+            double sum = 0.0;
+            for (int size : outbreakSizes) {
+                sum += size;
+            }
+            return sum / outbreakSizes.length;
+        }
+
+        /**
+         * Get the mean duration (in days) of the replicates.
+         * @return the mean duration.
+         */
+        public double getMeanDuration() {
+            double sum = 0.0;
+            for (int duration : durations) {
+                sum += duration;
+            }
+            return sum / durations.length;
+        }
+
+        /**
+         * Record the result of a replicate that was run elsewhere (e.g. by a worker of a distributed sweep).
+         * @param replicate    the number of the replicate.
+         * @param cost         the total cost of the replicate, NaN if it failed.
+         * @param outbreakSize the number of farms infected.
+         * @param duration     the duration (in days) of the replicate.
+         */
+        synchronized void record(final int replicate, final double cost, final int outbreakSize,
+                                 final int duration) {
+            costs[replicate] = cost;
+            outbreakSizes[replicate] = outbreakSize;
+            durations[replicate] = duration;
+            if (Double.isNaN(cost)) {
+                failed++;
+            }
+        }
+
+        /**
+         * Get the total cost of a replicate.
+         * @param replicate the number of the replicate.
+         * @return the cost, NaN if the replicate failed.
+         */
+        double getCost(final int replicate) {
+            return costs[replicate];
+        }
+
+        /**
+         * Get the number of farms infected in a replicate.
+         * @param replicate the number of the replicate.
+         * @return the outbreak size.
+         */
+        int getOutbreakSize(final int replicate) {
+            return outbreakSizes[replicate];
+        }
+
+        /**
+         * Get the duration (in days) of a replicate.
+         * @param replicate the number of the replicate.
+         * @return the duration.
+         */
+        int getDuration(final int replicate) {
+            return durations[replicate];
+        }
+
+        /**
+         * Get the result as a single line of JSON.
+         * @param design the design the point belongs to.
+         * @return the JSON string.
+         */
+        public String asJson(final SweepDesign design) {
+            StringBuilder jsFile = new StringBuilder();
+            jsFile.append("{");
+            jsFile.append("\"point\": ").append(index).append(", ");
+            for (int f = 0; f < values.length; f++) {
+                jsFile.append("\"").append(design.getFactors().get(f).getJsonName()).append("\": ")
+                        .append(values[f]).append(", ");
+            }
+            jsFile.append("\"replicates\": ").append(costs.length).append(", ");
+            jsFile.append("\"failed\": ").append(failed).append(", ");
+            jsFile.append("\"meanCost\": ").append(getMeanCost()).append(", ");
+            jsFile.append("\"sdCost\": ").append(getSdCost()).append(", ");
+            jsFile.append("\"meanOutbreakSize\": ").append(getMeanOutbreakSize()).append(", ");
+            jsFile.append("\"meanDuration\": ").append(getMeanDuration());
+            jsFile.append("}");
+            return jsFile.toString();
+        }
+
+        @Getter
+        private final int index;
+        @Getter
+        private final double[] values;
+        private final double[] costs;
+        private final int[] outbreakSizes;
+        private final int[] durations;
+        /**
+         * The number of replicates that failed (their cost is recorded as NaN).
+         */
+        @Getter
+        private int failed;
+    }
+
+    /**
+     * Create the sweep.
+     * @param directory the directory where the output is stored.
+     * @param farmMap   the preset map from which every run starts.
+     * @param sweep     the design of the sweep.
+     */
+    public ParameterSweep(final String directory, final FarmMap farmMap, final SweepDesign sweep) {
+        this.directory = directory;
+        this.map = farmMap;
+        this.design = sweep;
+    }
+
+    /**
+     * Run the sweep, blocking until every point has finished.
+     * @param threads  the number of worker threads.
+     * @param listener called (from the worker threads, one point at a time) with the result of each point as soon as
+     *                 all its replicates have finished.
+     */
+    public void run(final int threads, final Consumer<PointResult> listener) {
+        final int numPoints = design.getPoints().size();
+        final int numReplicates = design.getReplicates();
+        final CountDownLatch done = new CountDownLatch(numPoints * numReplicates);
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                                                                   new PriorityBlockingQueue<>());
+        final long start = System.currentTimeMillis();
+        try {
+            for (int p = 0; p < numPoints; p++) {
+                final PointState state = new PointState(p, design.getPoints().get(p), numReplicates, listener);
+                executor.execute(new Run(state, 0, Double.POSITIVE_INFINITY, executor, done));
+            }
+            done.await();
+            log.info("Ran {} points x {} replicates on {} threads in {} ms", numPoints, numReplicates, threads,
+                     System.currentTimeMillis() - start);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new BroadwickException("Parameter sweep interrupted");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Run a single replicate of a point of the design and record its result.
+     * @param result    the result of the point.
+     * @param replicate the number of the replicate.
+     */
+    private void runReplicate(final PointResult result, final int replicate) {
+        final double[] point = result.getValues();
+        final Simulation simulation = new Simulation(directory, map, false, design.getSeed(), replicate);
+        design.applyTo(simulation.getParameters(), point);
+        simulation.setControlStrategy(design.strategyAt(point).create());
+        simulation.runToEnd();
+
+        int infected = map.getSeedIndices().length;
+        for (Farm farm : simulation.getFarms()) {
+            if (farm.getDayInfected() >= 0) {
+                infected++;
+            }
+        }
+        result.costs[replicate] = simulation.getStatistics().getTotalCost();
+        result.outbreakSizes[replicate] = infected;
+        result.durations[replicate] = simulation.getDay();
+    }
+
+    /**
+     * Run a single replicate of a point of the design, recording a failed replicate (with a NaN cost) rather than
+     * throwing.
+     * @param result    the result of the point.
+     * @param replicate the number of the replicate.
+     */
+    void runOrFail(final PointResult result, final int replicate) {
+        try {
+            runReplicate(result, replicate);
+        } catch (RuntimeException ex) {
+            log.error("Replicate {} of point {} failed; {}", replicate, result.getIndex(),
+                      Throwables.getStackTraceAsString(ex));
+            synchronized (result) {
+                result.costs[replicate] = Double.NaN;
+                result.failed++;
+            }
+        }
+    }
+
+    /**
+     * The progress of a point of the design.
+     */
+    private static final class PointState {
+
+        /**
+         * Create the state of a point.
+         * @param pointIndex    the index of the point.
+         * @param point         the values of the factors at the point.
+         * @param numReplicates the number of replicates.
+         * @param pointListener the listener to which the result is passed.
+         */
+        PointState(final int pointIndex, final double[] point, final int numReplicates,
+                   final Consumer<PointResult> pointListener) {
+            this.result = new PointResult(pointIndex, point, numReplicates);
+            this.remaining = new AtomicInteger(numReplicates);
+            this.listener = pointListener;
+        }
+
+        private final PointResult result;
+        private final AtomicInteger remaining;
+        private final Consumer<PointResult> listener;
+    }
+
+    /**
+     * A replicate of a point, ordered by its expected run time (longest first) then by the order of submission.
+     */
+    private final class Run implements Runnable, Comparable<Run> {
+
+        /**
+         * Create the run.
+         * @param pointState   the point.
+         * @param replicateNum the number of the replicate.
+         * @param expected     the expected run time (in ms).
+         * @param pool         the executor, used to queue the remaining replicates after the pilot.
+         * @param latch        counted down when the run finishes.
+         */
+        Run(final PointState pointState, final int replicateNum, final double expected,
+            final ThreadPoolExecutor pool, final CountDownLatch latch) {
+            this.state = pointState;
+            this.replicate = replicateNum;
+            this.expectedMillis = expected;
+            this.executor = pool;
+            this.done = latch;
+            this.sequence = SEQUENCE.getAndIncrement();
+        }
+
+        @Override
+        public void run() {
+            final long start = System.currentTimeMillis();
+            runOrFail(state.result, replicate);
+
+            if (replicate == 0) {
+                // this is the pilot, queue the rest of the replicates with its run time as their expected run time.
+                final double elapsed = System.currentTimeMillis() - start;
+                for (int r = 1; r < state.result.costs.length; r++) {
+                    executor.execute(new Run(state, r, elapsed, executor, done));
+                }
+            }
+
+            try {
+                if (state.remaining.decrementAndGet() == 0) {
+                    synchronized (state.listener) {
+                        state.listener.accept(state.result);
+                    }
+                }
+            } finally {
+                done.countDown();
+            }
+        }
+
+        @Override
+        public int compareTo(final Run other) {
+            final int byExpected = Double.compare(other.expectedMillis, expectedMillis);
+            return byExpected != 0 ? byExpected : Long.compare(sequence, other.sequence);
+        }
+
+        private final PointState state;
+        private final int replicate;
+        private final double expectedMillis;
+        private final ThreadPoolExecutor executor;
+        private final CountDownLatch done;
+        private final long sequence;
+    }
+
+    private final String directory;
+    @Getter
+    private final FarmMap map;
+    @Getter
+    private final SweepDesign design;
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+}
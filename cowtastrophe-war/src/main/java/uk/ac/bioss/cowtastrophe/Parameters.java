@@ -8,9 +8,6 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
@@ -35,12 +32,17 @@ public class Parameters implements Serializable {
      * @param jsonFile the name (including path) of the JSON file.
      */
     public Parameters(final String jsonFile) {
+        this(readJson(jsonFile));
+    }
 
-        log.info("Loading simulation data from {}", jsonFile);
-
-        ObjectMapper mapper = new ObjectMapper();
-        try (InputStream input = new FileInputStream(jsonFile)) {
-            JsonNode json = mapper.readTree(input);
+    /**
+     * Construct the parameters object from the parsed contents of a JSON file. Only the "parameters" node is read,
+     * the farms are read by the FarmMap.
+     * @param json the root node of the JSON file.
+     */
+    public Parameters(final JsonNode json) {
+        try {
+            ObjectMapper mapper = new ObjectMapper();
             Parameters params = mapper.treeToValue(json.get("parameters"), Parameters.class);
 
             this.directory = ""; // this will be set by the Simulation.
@@ -59,14 +61,48 @@ public class Parameters implements Serializable {
             this.costOfMvmtBanPerDay = params.getCostOfMvmtBanPerDay();
             this.costOfInfectedFarmPerDay = params.getCostOfInfectedFarmPerDay();
 
-            farms.clear();
-            farms.addAll(Arrays.asList(mapper.treeToValue(json.get("farms"), Farm[].class)));
+            log.debug("Loaded parameters {}", this.toString());
+
+        } catch (IOException ex) {
+            throw new BroadwickException("Error loading simulation info; "
+                                         + Throwables.getStackTraceAsString(ex));
+        }
+    }
 
-            seedFarms.clear();
-            seedFarms.addAll(Arrays.asList(mapper.treeToValue(json.get("seedFarms"), Farm[].class)));
+    /**
+     * Create a copy of a set of parameters, each simulation takes a copy of the parameters of the preset map so that
+     * it can change them without affecting other sessions.
+     * @param other the parameters to copy.
+     */
+    public Parameters(final Parameters other) {
+        this.directory = other.directory;
+        this.beta = other.beta;
+        this.endTime = other.endTime;
+        this.suspectedTestDelay = other.suspectedTestDelay;
+        this.kernelOffset = other.kernelOffset;
+        this.kernelPower = other.kernelPower;
+        this.restrictedKernelPower = other.restrictedKernelPower;
+        this.testSensitivity = other.testSensitivity;
+        this.testSpecificity = other.testSpecificity;
+        this.costOfFarmVisit = other.costOfFarmVisit;
+        this.costOfTestPerAnimal = other.costOfTestPerAnimal;
+        this.costOfCullingAnimal = other.costOfCullingAnimal;
+        this.costOfVaccinatingAnimal = other.costOfVaccinatingAnimal;
+        this.costOfMvmtBanPerDay = other.costOfMvmtBanPerDay;
+        this.costOfInfectedFarmPerDay = other.costOfInfectedFarmPerDay;
+    }
 
-            log.debug("Loaded parameters {}", this.toString());
+    /**
+     * Read and parse a JSON file.
+     * @param jsonFile the name (including path) of the JSON file.
+     * @return the root node of the file.
+     */
+    static JsonNode readJson(final String jsonFile) {
+        log.info("Loading simulation data from {}", jsonFile);
 
+        ObjectMapper mapper = new ObjectMapper();
+        try (InputStream input = new FileInputStream(jsonFile)) {
+            return mapper.readTree(input);
         } catch (IOException ex) {
             throw new BroadwickException("Error loading simulation info; "
                                          + Throwables.getStackTraceAsString(ex));
@@ -184,10 +220,6 @@ public class Parameters implements Serializable {
     @Getter
     @Setter
     private double costOfInfectedFarmPerDay;
-    @Getter
-    private final List<Farm> farms = new ArrayList<>();
-    @Getter
-    private final List<Farm> seedFarms = new ArrayList<>();
     /**
      * The serialVersionUID.
      */
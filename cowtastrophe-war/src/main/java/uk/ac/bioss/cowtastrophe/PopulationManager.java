@@ -52,7 +52,7 @@ public class PopulationManager implements AmountManager, Serializable {
             simulation.getSuspisciousFarmTests().put(day + parameters.getSuspectedTestDelay(),
                                                      scheduledTests);
 
-            simulation.getStatistics().addNewInfection(((Farm) ev.getInitialState()), infectedFarm);
+            simulation.getStatistics().addNewInfection(day, ((Farm) ev.getInitialState()), infectedFarm);
             infectedFarm.setDayInfected(day);
             infectedFarm.setInfectionSource(((Farm) event.getInitialState()).getId());
         }
@@ -0,0 +1,171 @@
+package uk.ac.bioss.cowtastrophe;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import lombok.Getter;
+
+/**
+ * A mergeable sketch of a distribution from which quantiles can be estimated with a bounded relative error, after the
+ * DDSketch of Masson, Rim and Lee (2019).
+ * <p>
+ * Values are counted in logarithmically sized buckets, bucket i holding the values in (gamma^(i-1), gamma^i] where
+ * gamma = (1 + a) / (1 - a) for a relative accuracy a, so every quantile is estimated to within a relative error of a.
+ * Zero and negative values are counted separately (the negative values in a mirrored set of buckets). The size of the
+ * sketch depends on the range of the values, not on how many there are, and two sketches with the same accuracy are
+ * merged by adding their bucket counts.
+ */
+public final class QuantileSketch implements Serializable {
+
+    /**
+     * Create an empty sketch.
+     * @param relativeAccuracy the relative accuracy of the quantiles (e.g. 0.01 for 1%).
+     */
+    public QuantileSketch(final double relativeAccuracy) {
+        this.accuracy = relativeAccuracy;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+        this.positive = new Buckets();
+        this.negative = new Buckets();
+    }
+
+    /**
+     * Add a value to the sketch.
+     * @param value the value.
+     */
+    public void add(final double value) {
+        if (value > MIN_VALUE) {
+            positive.add(index(value), 1);
+        } else if (value < -MIN_VALUE) {
+            negative.add(index(-value), 1);
+        } else {
+            zeros++;
+        }
+        count++;
+    }
+
+    /**
+     * Merge another sketch (with the same accuracy) into this one.
+     * @param other the sketch to merge.
+     */
+    public void merge(final QuantileSketch other) {
+        if (other.accuracy != accuracy) {
+            throw new IllegalArgumentException("Cannot merge sketches with different accuracies");
+        }
+        positive.merge(other.positive);
+        negative.merge(other.negative);
+        zeros += other.zeros;
+        count += other.count;
+    }
+
+    /**
+     * Estimate a quantile of the values added to the sketch.
+     * @param q the quantile (between 0 and 1).
+     * @return the estimate of the quantile, NaN if the sketch is empty.
+     */
+    public double quantile(final double q) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        long rank = (long) (q * (count - 1));
+
+        // the negative values, most negative (i.e. highest index) first.
+        for (int i = negative.counts.length - 1; i >= 0; i--) {
+            rank -= negative.counts[i];
+            if (rank < 0) {
+                return -value(negative.offset + i);
+            }
+        }
+        rank -= zeros;
+        if (rank < 0) {
+            return 0.0;
+        }
+        for (int i = 0; i < positive.counts.length; i++) {
+            rank -= positive.counts[i];
+            if (rank < 0) {
+                return value(positive.offset + i);
+            }
+        }
+        return value(positive.offset + positive.counts.length - 1);
+    }
+
+    /**
+     * Get the index of the bucket holding a (positive) value.
+     * @param value the value.
+     * @return the index.
+     */
+    private int index(final double value) {
+        return (int) Math.ceil(Math.log(value) / logGamma);
+    }
+
+    /**
+     * Get the representative value of a bucket, i.e. the value with the same relative distance to both its bounds.
+     * @param index the index of the bucket.
+     * @return the value.
+     */
+    private double value(final int index) {
+        return 2 * Math.pow(gamma, index) / (gamma + 1);
+    }
+
+    /**
+     * A contiguous range of bucket counts that grows in either direction as required.
+     */
+    private static final class Buckets implements Serializable {
+
+        /**
+         * Add to the count of a bucket.
+         * @param index the index of the bucket.
+         * @param n     the number to add.
+         */
+        void add(final int index, final long n) {
+            if (counts.length == 0) {
+                counts = new long[1];
+                offset = index;
+            } else if (index < offset) {
+                final long[] grown = new long[counts.length + offset - index];
+                System.arraycopy(counts, 0, grown, offset - index, counts.length);
+                counts = grown;
+                offset = index;
+            } else if (index >= offset + counts.length) {
+                counts = Arrays.copyOf(counts, index - offset + 1);
+            }
+            counts[index - offset] += n;
+        }
+
+        /**
+         * Add the counts of another set of buckets to these.
+         * @param other the buckets to merge.
+         */
+        void merge(final Buckets other) {
+            for (int i = 0; i < other.counts.length; i++) {
+                if (other.counts[i] != 0) {
+                    add(other.offset + i, other.counts[i]);
+                }
+            }
+        }
+
+        private long[] counts = new long[0];
+        private int offset;
+        private static final long serialVersionUID = -6170282519453180815L;
+    }
+
+    /**
+     * The relative accuracy of the quantiles.
+     */
+    @Getter
+    private final double accuracy;
+    private final double gamma;
+    private final double logGamma;
+    private final Buckets positive;
+    private final Buckets negative;
+    private long zeros;
+    /**
+     * The number of values added to the sketch.
+     */
+    @Getter
+    private long count;
+    private static final double MIN_VALUE = 1.0e-9;
+    /**
+     * The serialVersionUID.
+     */
+    private static final long serialVersionUID = 2712894480093611523L;
+}
@@ -0,0 +1,73 @@
+package uk.ac.bioss.cowtastrophe;
+
+import lombok.Getter;
+
+/**
+ * The encodings in which the state of the farms can be sent to a client. The format is negotiated from the
+ * <code>Accept</code> header of the request (or an explicit <code>format</code> request parameter).
+ */
+public enum ResponseFormat {
+    /** The original verbose JSON, one object per farm. */
+    JSON("json", "application/json", true),
+    /** JSON with parallel arrays of ids, statuses and days. */
+    COLUMNAR("columnar", "application/vnd.cowtastrophe.columnar+json", true),
+    /** A packed binary form with one status byte per farm. */
+    BINARY("binary", "application/vnd.cowtastrophe.farms", false);
+
+    /**
+     * Create the format.
+     * @param formatName  the name of the format used in the format request parameter.
+     * @param type        the media type of the format.
+     * @param isText      whether the format is text (which is sent in UTF-8).
+     */
+    ResponseFormat(final String formatName, final String type, final boolean isText) {
+        this.formatName = formatName;
+        this.mediaType = type;
+        this.contentType = isText ? type + ";charset=UTF-8" : type;
+    }
+
+    /**
+     * Select the format for a response. An explicit format parameter takes precedence over the accept header, if
+     * neither of them name a known format the original JSON format is used.
+     * @param acceptHeader the value of the Accept header of the request (may be null).
+     * @param formatParam  the value of the format request parameter (may be null).
+     * @return the format of the response.
+     */
+    public static ResponseFormat negotiate(final String acceptHeader, final String formatParam) {
+        if (formatParam != null && !formatParam.isEmpty()) {
+            for (ResponseFormat format : values()) {
+                if (format.formatName.equalsIgnoreCase(formatParam)) {
+                    return format;
+                }
+            }
+        }
+        if (acceptHeader != null) {
+            for (String accepted : acceptHeader.split(",")) {
+                final String type = accepted.split(";")[0].trim();
+                if (COLUMNAR.mediaType.equalsIgnoreCase(type)) {
+                    return COLUMNAR;
+                } else if (BINARY.mediaType.equalsIgnoreCase(type)
+                           || "application/octet-stream".equalsIgnoreCase(type)) {
+                    return BINARY;
+                }
+            }
+        }
+        return JSON;
+    }
+
+    /**
+     * The name of the format as given in the format request parameter.
+     */
+    @Getter
+    private final String formatName;
+    /**
+     * The media type of the format.
+     */
+    @Getter
+    private final String mediaType;
+    /**
+     * The content type of a response in the format, i.e. the media type with the charset of the text formats.
+     */
+    @Getter
+    private final String contentType;
+}
@@ -0,0 +1,97 @@
+package uk.ac.bioss.cowtastrophe;
+
+import java.io.Serializable;
+import java.util.function.IntConsumer;
+import lombok.Getter;
+
+/**
+ * The set of the farms of a simulation whose movements are restricted, held as a bitset over the index of the farms
+ * in the map so that the transition kernel can check a pair of farms without boxing or hashing.
+ */
+public final class RestrictedFarms implements Serializable {
+
+    /**
+     * Create an empty set.
+     * @param numFarms the number of farms.
+     */
+    public RestrictedFarms(final int numFarms) {
+        this.bits = new long[(numFarms + Long.SIZE - 1) / Long.SIZE];
+    }
+
+    /**
+     * Create a copy of a set.
+     * @param other the set to copy.
+     */
+    public RestrictedFarms(final RestrictedFarms other) {
+        this.bits = other.bits.clone();
+        this.size = other.size;
+    }
+
+    /**
+     * Check whether the movements of a farm are restricted.
+     * @param index the index of the farm.
+     * @return true if the farm is restricted.
+     */
+    public boolean isRestricted(final int index) {
+        return (bits[index >>> WORD_SHIFT] & (1L << index)) != 0;
+    }
+
+    /**
+     * Restrict the movements of a farm.
+     * @param index the index of the farm.
+     * @return true if the farm was not restricted already.
+     */
+    public boolean add(final int index) {
+        final int word = index >>> WORD_SHIFT;
+        final long bit = 1L << index;
+        if ((bits[word] & bit) != 0) {
+            return false;
+        }
+        bits[word] |= bit;
+        size++;
+        return true;
+    }
+
+    /**
+     * Lift the restriction of the movements of a farm.
+     * @param index the index of the farm.
+     * @return true if the farm was restricted.
+     */
+    public boolean remove(final int index) {
+        final int word = index >>> WORD_SHIFT;
+        final long bit = 1L << index;
+        if ((bits[word] & bit) == 0) {
+            return false;
+        }
+        bits[word] &= ~bit;
+        size--;
+        return true;
+    }
+
+    /**
+     * Visit the restricted farms in ascending order of index.
+     * @param visitor the consumer that is given the index of each restricted farm.
+     */
+    public void forEach(final IntConsumer visitor) {
+        for (int word = 0; word < bits.length; word++) {
+            long remaining = bits[word];
+            while (remaining != 0) {
+                visitor.accept((word << WORD_SHIFT) + Long.numberOfTrailingZeros(remaining));
+                remaining &= remaining - 1;
+            }
+        }
+    }
+
+    private final long[] bits;
+    /**
+     * The number of restricted farms.
+     */
+    @Getter
+    private int size;
+    private static final int WORD_SHIFT = 6;
+
+    /**
+     * The serialVersionUID.
+     */
+    private static final long serialVersionUID = -1788806018117209371L;
+}
@@ -0,0 +1,200 @@
+package uk.ac.bioss.cowtastrophe;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import lombok.Getter;
+
+/**
+ * The days on which the movement restrictions of the farms are lifted. Each farm has at most one scheduled lifting,
+ * restricting a farm that is scheduled already extends its restriction (it is never shortened), so reapplying a
+ * restriction does not add to the bookkeeping.
+ * <p>
+ * The liftings are held in a hashed timing wheel: a ring of WHEEL_SIZE buckets of farm indices, the lifting on day d
+ * in bucket d mod WHEEL_SIZE. Lifting the restrictions that are due on a day only looks at the bucket of the day,
+ * i.e. at the farms due that day and the (few) farms due a whole number of turns of the wheel later. When a
+ * restriction is extended its entry in the old bucket is left behind and dropped when that bucket is next looked at.
+ */
+public final class RestrictionScheduler implements Serializable {
+
+    /**
+     * Create an empty scheduler.
+     * @param numFarms the number of farms.
+     */
+    public RestrictionScheduler(final int numFarms) {
+        this.liftDays = new int[numFarms];
+        Arrays.fill(liftDays, NOT_SCHEDULED);
+        this.buckets = new int[WHEEL_SIZE][];
+        this.bucketSizes = new int[WHEEL_SIZE];
+        this.lastLiftDay = NOT_SCHEDULED;
+    }
+
+    /**
+     * Create a copy of a scheduler.
+     * @param other the scheduler to copy.
+     */
+    public RestrictionScheduler(final RestrictionScheduler other) {
+        this.liftDays = other.liftDays.clone();
+        this.buckets = new int[WHEEL_SIZE][];
+        for (int bucket = 0; bucket < WHEEL_SIZE; bucket++) {
+            if (other.buckets[bucket] != null) {
+                this.buckets[bucket] = Arrays.copyOf(other.buckets[bucket],
+                                                     Math.max(other.bucketSizes[bucket], INITIAL_BUCKET_CAPACITY));
+            }
+        }
+        this.bucketSizes = other.bucketSizes.clone();
+        this.today = other.today;
+        this.size = other.size;
+        this.lastLiftDay = other.lastLiftDay;
+    }
+
+    /**
+     * Schedule the lifting of the restriction of a farm, or extend it if it is scheduled for an earlier day. A day
+     * before the last day on which the due restrictions were lifted is taken as that day.
+     * @param farm    the index of the farm.
+     * @param liftDay the day on which the restriction is lifted.
+     * @return the day on which the restriction was to be lifted before, NOT_SCHEDULED if it was not scheduled.
+     */
+    public int schedule(final int farm, final int liftDay) {
+        final int previous = liftDays[farm];
+        final int day = Math.max(liftDay, today);
+        if (previous >= day) {
+            return previous;
+        }
+        liftDays[farm] = day;
+        if (previous == NOT_SCHEDULED) {
+            size++;
+        }
+        if (previous == NOT_SCHEDULED || (previous & MASK) != (day & MASK)) {
+            append(day & MASK, farm);
+        }
+        lastLiftDay = Math.max(lastLiftDay, day);
+        return previous;
+    }
+
+    /**
+     * Lift the restrictions that are due on or before a day (the restrictions scheduled later on the same day are
+     * lifted when this is called again for the day).
+     * @param day  the day.
+     * @param lift the consumer that is given the index of each farm whose restriction is lifted.
+     */
+    public void liftDue(final int day, final IntConsumer lift) {
+        // the buckets of the days since the last call, at most one turn of the wheel.
+        for (int due = Math.max(today, day - WHEEL_SIZE + 1); due <= day; due++) {
+            liftBucket(due & MASK, day, lift);
+        }
+        today = Math.max(today, day);
+    }
+
+    /**
+     * Visit the farms whose restrictions are due on or before a day, without lifting them (e.g. to extend them before
+     * they are lifted). The visitor may reschedule the farms.
+     * @param day     the day.
+     * @param visitor the consumer that is given the index of each farm whose restriction is due.
+     */
+    public void forEachDue(final int day, final IntConsumer visitor) {
+        for (int due = Math.max(today, day - WHEEL_SIZE + 1); due <= day; due++) {
+            final int bucket = due & MASK;
+            // a copy, as rescheduling a farm may append to the bucket.
+            for (int farm : Arrays.copyOf(buckets[bucket] == null ? EMPTY : buckets[bucket], bucketSizes[bucket])) {
+                final int liftDay = liftDays[farm];
+                if (liftDay != NOT_SCHEDULED && (liftDay & MASK) == bucket && liftDay <= day) {
+                    visitor.accept(farm);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the day on which the restriction of a farm is lifted.
+     * @param farm the index of the farm.
+     * @return the day, NOT_SCHEDULED if the lifting of its restriction is not scheduled.
+     */
+    public int getLiftDay(final int farm) {
+        return liftDays[farm];
+    }
+
+    /**
+     * Check whether the lifting of the restriction of a farm is scheduled.
+     * @param farm the index of the farm.
+     * @return true if it is scheduled.
+     */
+    public boolean isScheduled(final int farm) {
+        return liftDays[farm] != NOT_SCHEDULED;
+    }
+
+    /**
+     * Lift the restrictions of a bucket that are due, dropping the entries that were left behind by an extension.
+     * @param bucket the bucket.
+     * @param day    the day up to which the restrictions are due.
+     * @param lift   the consumer that is given the index of each farm whose restriction is lifted.
+     */
+    private void liftBucket(final int bucket, final int day, final IntConsumer lift) {
+        final int[] farms = buckets[bucket];
+        int kept = 0;
+        for (int i = 0; i < bucketSizes[bucket]; i++) {
+            final int farm = farms[i];
+            final int liftDay = liftDays[farm];
+            if (liftDay == NOT_SCHEDULED || (liftDay & MASK) != bucket) {
+                continue;
+            }
+            if (liftDay <= day) {
+                liftDays[farm] = NOT_SCHEDULED;
+                size--;
+                lift.accept(farm);
+            } else {
+                farms[kept++] = farm;
+            }
+        }
+        bucketSizes[bucket] = kept;
+    }
+
+    /**
+     * Append a farm to a bucket, doubling its capacity as required.
+     * @param bucket the bucket.
+     * @param farm   the index of the farm.
+     */
+    private void append(final int bucket, final int farm) {
+        if (buckets[bucket] == null) {
+            buckets[bucket] = new int[INITIAL_BUCKET_CAPACITY];
+        } else if (bucketSizes[bucket] == buckets[bucket].length) {
+            buckets[bucket] = Arrays.copyOf(buckets[bucket], bucketSizes[bucket] * 2);
+        }
+        buckets[bucket][bucketSizes[bucket]++] = farm;
+    }
+
+    /**
+     * The value of a lift day when no lifting is scheduled.
+     */
+    public static final int NOT_SCHEDULED = -1;
+
+    /**
+     * The day on which each farm's restriction is lifted, NOT_SCHEDULED if none is scheduled.
+     */
+    private final int[] liftDays;
+    private final int[][] buckets;
+    private final int[] bucketSizes;
+    /**
+     * The last day on which the due restrictions were lifted.
+     */
+    private int today;
+    /**
+     * The number of farms whose lifting is scheduled.
+     */
+    @Getter
+    private int size;
+    /**
+     * The latest day for which a lifting was ever scheduled, NOT_SCHEDULED if none was.
+     */
+    @Getter
+    private int lastLiftDay;
+    private static final int WHEEL_SIZE = 256;
+    private static final int MASK = WHEEL_SIZE - 1;
+    private static final int INITIAL_BUCKET_CAPACITY = 16;
+    private static final int[] EMPTY = new int[0];
+
+    /**
+     * The serialVersionUID.
+     */
+    private static final long serialVersionUID = 6390457237766209521L;
+}
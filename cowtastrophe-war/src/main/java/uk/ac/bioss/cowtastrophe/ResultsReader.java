@@ -0,0 +1,338 @@
+package uk.ac.bioss.cowtastrophe;
+
+import broadwick.BroadwickException;
+import com.google.common.base.Throwables;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import lombok.Getter;
+
+/**
+ * Reads the columnar results written by a ResultsWriter. Only the footer is read when the file is opened; each
+ * column is then read on its own (the whole column or the rows of one row group), seeking straight to its chunks, so
+ * e.g. the cost of every replicate and day can be read without decoding the farm counts.
+ */
+public final class ResultsReader implements Closeable {
+
+    /**
+     * Open a results file and read its footer.
+     * @param file the file.
+     */
+    public ResultsReader(final File file) {
+        try {
+            this.raf = new RandomAccessFile(file, "r");
+            final long fileLength = raf.length();
+            raf.seek(0);
+            if (fileLength < HEADER_LENGTH + TRAILER_LENGTH || raf.readInt() != ResultsWriter.MAGIC) {
+                throw new BroadwickException(file + " is not a results file");
+            }
+            final int version = raf.readByte();
+            if (version != ResultsWriter.VERSION) {
+                throw new BroadwickException("Unsupported results file version " + version);
+            }
+            raf.seek(fileLength - TRAILER_LENGTH);
+            final int footerLength = raf.readInt();
+            if (raf.readInt() != ResultsWriter.MAGIC) {
+                throw new BroadwickException(file + " is incomplete (the results writer was not closed)");
+            }
+            final byte[] footer = new byte[footerLength];
+            raf.seek(fileLength - TRAILER_LENGTH - footerLength);
+            raf.readFully(footer);
+            final DataInputStream in = new DataInputStream(new ByteArrayInputStream(footer));
+
+            final int numColumns = in.readInt();
+            final String[] names = new String[numColumns];
+            types = new byte[numColumns];
+            for (int column = 0; column < numColumns; column++) {
+                names[column] = in.readUTF();
+                types[column] = in.readByte();
+            }
+            columnNames = Collections.unmodifiableList(Arrays.asList(names));
+
+            final int numGroups = in.readInt();
+            groupRows = new int[numGroups];
+            groupStarts = new long[numGroups];
+            offsets = new long[numGroups][numColumns];
+            lengths = new int[numGroups][numColumns];
+            long rows = 0;
+            for (int group = 0; group < numGroups; group++) {
+                groupRows[group] = in.readInt();
+                groupStarts[group] = rows;
+                rows += groupRows[group];
+                for (int column = 0; column < numColumns; column++) {
+                    offsets[group][column] = in.readLong();
+                    lengths[group][column] = in.readInt();
+                }
+            }
+            numRows = rows;
+        } catch (IOException ex) {
+            throw new BroadwickException("Error reading results file " + file + "; "
+                                         + Throwables.getStackTraceAsString(ex));
+        }
+    }
+
+    /**
+     * Get the number of row groups.
+     * @return the number of row groups.
+     */
+    public int getNumRowGroups() {
+        return groupRows.length;
+    }
+
+    /**
+     * Get the number of rows in a row group.
+     * @param group the row group.
+     * @return the number of rows.
+     */
+    public int getNumRows(final int group) {
+        return groupRows[group];
+    }
+
+    /**
+     * Read the whole of an integer column.
+     * @param name the name of the column.
+     * @return the values of every row.
+     */
+    public int[] readIntColumn(final String name) {
+        final int column = intColumn(name);
+        final int[] values = new int[checkedRows()];
+        for (int group = 0; group < groupRows.length; group++) {
+            decodeInts(group, column, values, (int) groupStarts[group]);
+        }
+        return values;
+    }
+
+    /**
+     * Read an integer column of one row group.
+     * @param name  the name of the column.
+     * @param group the row group.
+     * @return the values of the rows of the group.
+     */
+    public int[] readIntColumn(final String name, final int group) {
+        final int[] values = new int[groupRows[group]];
+        decodeInts(group, intColumn(name), values, 0);
+        return values;
+    }
+
+    /**
+     * Read the whole of a double column.
+     * @param name the name of the column.
+     * @return the values of every row.
+     */
+    public double[] readDoubleColumn(final String name) {
+        final int column = doubleColumn(name);
+        final double[] values = new double[checkedRows()];
+        for (int group = 0; group < groupRows.length; group++) {
+            decodeDoubles(group, column, values, (int) groupStarts[group]);
+        }
+        return values;
+    }
+
+    /**
+     * Read a double column of one row group.
+     * @param name  the name of the column.
+     * @param group the row group.
+     * @return the values of the rows of the group.
+     */
+    public double[] readDoubleColumn(final String name, final int group) {
+        final double[] values = new double[groupRows[group]];
+        decodeDoubles(group, doubleColumn(name), values, 0);
+        return values;
+    }
+
+    @Override
+    public void close() {
+        try {
+            raf.close();
+        } catch (IOException ex) {
+            throw new BroadwickException("Error closing results file; " + Throwables.getStackTraceAsString(ex));
+        }
+    }
+
+    /**
+     * Decode the chunk of an integer column of a row group.
+     * @param group  the row group.
+     * @param column the column.
+     * @param values the array in which the values are stored.
+     * @param start  the index in the array of the first row of the group.
+     */
+    private void decodeInts(final int group, final int column, final int[] values, final int start) {
+        readChunk(group, column);
+        final byte encoding = chunk[0];
+        position = 1;
+        final int rows = groupRows[group];
+        if (encoding == ResultsWriter.DELTA) {
+            int previous = 0;
+            for (int i = 0; i < rows; i++) {
+                final int zigzag = readVarint();
+                previous += (zigzag >>> 1) ^ -(zigzag & 1);
+                values[start + i] = previous;
+            }
+        } else if (encoding == ResultsWriter.PLAIN) {
+            for (int i = 0; i < rows; i++) {
+                values[start + i] = (int) readBigEndian(Integer.BYTES);
+            }
+        } else {
+            throw new BroadwickException("Unknown encoding " + encoding + " of column " + columnNames.get(column));
+        }
+    }
+
+    /**
+     * Decode the chunk of a double column of a row group.
+     * @param group  the row group.
+     * @param column the column.
+     * @param values the array in which the values are stored.
+     * @param start  the index in the array of the first row of the group.
+     */
+    private void decodeDoubles(final int group, final int column, final double[] values, final int start) {
+        readChunk(group, column);
+        final byte encoding = chunk[0];
+        position = 1;
+        final int rows = groupRows[group];
+        if (encoding == ResultsWriter.DICTIONARY) {
+            final double[] dictionary = new double[readVarint()];
+            for (int i = 0; i < dictionary.length; i++) {
+                dictionary[i] = Double.longBitsToDouble(readBigEndian(Long.BYTES));
+            }
+            for (int i = 0; i < rows; i++) {
+                values[start + i] = dictionary[readVarint()];
+            }
+        } else if (encoding == ResultsWriter.PLAIN) {
+            for (int i = 0; i < rows; i++) {
+                values[start + i] = Double.longBitsToDouble(readBigEndian(Long.BYTES));
+            }
+        } else {
+            throw new BroadwickException("Unknown encoding " + encoding + " of column " + columnNames.get(column));
+        }
+    }
+
+    /**
+     * Read the bytes of a column chunk into the chunk buffer.
+     * @param group  the row group.
+     * @param column the column.
+     */
+    private void readChunk(final int group, final int column) {
+        final int length = lengths[group][column];
+        if (chunk.length < length) {
+            chunk = new byte[length];
+        }
+        try {
+            raf.seek(offsets[group][column]);
+            raf.readFully(chunk, 0, length);
+        } catch (IOException ex) {
+            throw new BroadwickException("Error reading column " + columnNames.get(column) + "; "
+                                         + Throwables.getStackTraceAsString(ex));
+        }
+    }
+
+    /**
+     * Read an unsigned varint from the chunk buffer.
+     * @return the value.
+     */
+    private int readVarint() {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = chunk[position++];
+            value |= (b & ResultsWriter.VARINT_MASK) << shift;
+            shift += ResultsWriter.VARINT_BITS;
+        } while ((b & ResultsWriter.VARINT_MORE) != 0);
+        return value;
+    }
+
+    /**
+     * Read a big-endian value from the chunk buffer.
+     * @param numBytes the number of bytes of the value.
+     * @return the value.
+     */
+    private long readBigEndian(final int numBytes) {
+        long value = 0;
+        for (int i = 0; i < numBytes; i++) {
+            value = (value << Byte.SIZE) | (chunk[position++] & BYTE_MASK);
+        }
+        return value;
+    }
+
+    /**
+     * Find an integer column.
+     * @param name the name of the column.
+     * @return the index of the column.
+     */
+    private int intColumn(final String name) {
+        return column(name, ResultsWriter.TYPE_INT);
+    }
+
+    /**
+     * Find a double column.
+     * @param name the name of the column.
+     * @return the index of the column.
+     */
+    private int doubleColumn(final String name) {
+        return column(name, ResultsWriter.TYPE_DOUBLE);
+    }
+
+    /**
+     * Find a column, checking its type.
+     * @param name the name of the column.
+     * @param type the expected type.
+     * @return the index of the column.
+     */
+    private int column(final String name, final byte type) {
+        final int column = columnNames.indexOf(name);
+        if (column < 0) {
+            throw new IllegalArgumentException("Unknown column " + name + ", expected one of " + columnNames);
+        }
+        if (types[column] != type) {
+            throw new IllegalArgumentException("Column " + name + " is not a "
+                                               + (type == ResultsWriter.TYPE_INT ? "integer" : "double") + " column");
+        }
+        return column;
+    }
+
+    /**
+     * Get the number of rows as an array size.
+     * @return the number of rows.
+     */
+    private int checkedRows() {
+        if (numRows > Integer.MAX_VALUE) {
+            throw new BroadwickException("Too many rows (" + numRows
+                                         + ") to read a whole column, read it by row group");
+        }
+        return (int) numRows;
+    }
+
+    private final RandomAccessFile raf;
+    /**
+     * The names of the columns.
+     */
+    @Getter
+    private final List<String> columnNames;
+    private final byte[] types;
+    /**
+     * The total number of rows.
+     */
+    @Getter
+    private final long numRows;
+    private final int[] groupRows;
+    /**
+     * The index of the first row of each row group.
+     */
+    private final long[] groupStarts;
+    private final long[][] offsets;
+    private final int[][] lengths;
+    /**
+     * The bytes of the chunk being decoded and the position in it.
+     */
+    private byte[] chunk = new byte[0];
+    private int position;
+    private static final int HEADER_LENGTH = Integer.BYTES + 1;
+    private static final int TRAILER_LENGTH = 2 * Integer.BYTES;
+    private static final int BYTE_MASK = 0xFF;
+}
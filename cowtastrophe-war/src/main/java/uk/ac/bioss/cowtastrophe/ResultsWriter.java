@@ -0,0 +1,503 @@
+package uk.ac.bioss.cowtastrophe;
+
+import broadwick.BroadwickException;
+import com.google.common.base.Throwables;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A sink that streams the daily statistics of the replicates of an ensemble to a compact columnar file. Every row is
+ * a (replicate, day) pair with the farm counts and the cost of the day; the columns are
+ * <pre>
+ *   replicate, day, susceptible, suspected, infectious_not_suspected, confirmed, culled, vaccinated, restricted, cost
+ * </pre>
+ * The rows are gathered in row groups of a fixed size held in primitive arrays; a full row group is handed to a
+ * background thread that encodes and writes it while the replicates go on, and its arrays are then reused, so adding
+ * rows allocates nothing and the memory used does not depend on the size of the ensemble. If the writer falls behind,
+ * adding rows waits for a free row group.
+ * <p>
+ * Within a row group each column is written as a chunk: the integer columns are delta encoded (the zigzag varint of
+ * the difference with the previous row, so a replicate number that repeats or a day that goes up by one takes a
+ * byte), the cost column is dictionary encoded (the distinct values, then the varint index of each row's value) when
+ * few values repeat often, as daily costs do, and written plainly otherwise. The layout of the file is
+ * <pre>
+ *   int     magic number (0x43575253, "CWRS")
+ *   byte    format version
+ *   [row groups: for each column a chunk of one encoding byte and the encoded values]
+ *   footer: int number of columns, [UTF name, byte type] per column,
+ *           int number of row groups, [int rows, [long offset, int length] per column] per row group
+ *   int     length of the footer
+ *   int     magic number
+ * </pre>
+ * so a reader (see ResultsReader) can read any column of any row group without reading the rest of the file. The rows
+ * of a replicate are contiguous but the replicates are in the order in which they finished.
+ */
+@Slf4j
+public final class ResultsWriter implements Closeable {
+
+    /**
+     * Create the writer.
+     * @param file         the file to write.
+     * @param rowGroupSize the number of rows in a row group.
+     */
+    public ResultsWriter(final File file, final int rowGroupSize) {
+        if (rowGroupSize <= 0) {
+            throw new IllegalArgumentException("The row group size must be positive, got " + rowGroupSize);
+        }
+        this.groupSize = rowGroupSize;
+        this.freeGroups = new ArrayBlockingQueue<>(BUFFERED_GROUPS);
+        for (int i = 0; i < BUFFERED_GROUPS; i++) {
+            freeGroups.add(new RowGroup(rowGroupSize));
+        }
+        this.pending = new ArrayList<>();
+        this.groupRows = new ArrayList<>();
+        this.chunkOffsets = new ArrayList<>();
+        this.chunkLengths = new ArrayList<>();
+        this.encoder = new Encoder(rowGroupSize);
+        this.writer = Executors.newSingleThreadExecutor((runnable) -> {
+            final Thread thread = new Thread(runnable, "results-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), OUTPUT_BUFFER));
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+        } catch (IOException ex) {
+            writer.shutdownNow();
+            throw new BroadwickException("Error creating results file " + file + "; "
+                                         + Throwables.getStackTraceAsString(ex));
+        }
+        this.offset = HEADER_LENGTH;
+    }
+
+    /**
+     * Create the writer with the default row group size.
+     * @param file the file to write.
+     */
+    public ResultsWriter(final File file) {
+        this(file, DEFAULT_ROW_GROUP_SIZE);
+    }
+
+    /**
+     * Add the daily statistics of a replicate (every recorded day from day 0). This can be called from any thread.
+     * @param replicate  the number of the replicate.
+     * @param statistics the statistics of the replicate.
+     */
+    public synchronized void add(final int replicate, final Statistics statistics) {
+        for (int day = Math.max(0, statistics.getFirstDay()); day <= statistics.getLastDay(); day++) {
+            if (!statistics.isRecorded(day)) {
+                continue;
+            }
+            if (current == null) {
+                current = takeFreeGroup();
+            }
+            final int row = current.rows++;
+            current.ints[REPLICATE][row] = replicate;
+            current.ints[DAY][row] = day;
+            for (int i = 0; i < COUNTS.length; i++) {
+                current.ints[FIRST_COUNT + i][row] = (int) statistics.get(day, COUNTS[i]);
+            }
+            current.costs[row] = statistics.getCost(day);
+            if (current.rows == groupSize) {
+                submit(current);
+                current = null;
+            }
+        }
+        replicates++;
+    }
+
+    /**
+     * Write the last (partial) row group and the footer and close the file.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (current != null && current.rows > 0) {
+                submit(current);
+            }
+            current = null;
+            for (Future<?> future : pending) {
+                future.get();
+            }
+            writeFooter();
+            out.close();
+            log.debug("Wrote {} rows of {} replicates in {} row groups ({} bytes)", rows, replicates,
+                     groupRows.size(), offset);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new BroadwickException("Interrupted writing the results");
+        } catch (ExecutionException | IOException ex) {
+            final Throwable cause = ex instanceof ExecutionException ? ex.getCause() : ex;
+            throw new BroadwickException("Error writing the results; " + Throwables.getStackTraceAsString(cause));
+        } finally {
+            writer.shutdownNow();
+        }
+    }
+
+    /**
+     * Take a free row group, waiting for the writer to release one if they are all in use.
+     * @return the row group.
+     */
+    private RowGroup takeFreeGroup() {
+        checkWriter();
+        try {
+            return freeGroups.take();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new BroadwickException("Interrupted waiting for the results writer");
+        }
+    }
+
+    /**
+     * Hand a row group to the background writer.
+     * @param group the row group.
+     */
+    private void submit(final RowGroup group) {
+        rows += group.rows;
+        pending.add(writer.submit(() -> {
+            try {
+                writeGroup(group);
+            } finally {
+                group.rows = 0;
+                freeGroups.add(group);
+            }
+            return null;
+        }));
+        // forget the row groups that have been written, surfacing any error.
+        while (!pending.isEmpty() && pending.get(0).isDone()) {
+            checkDone(pending.remove(0));
+        }
+    }
+
+    /**
+     * Rethrow the error of the background writer, if it failed.
+     */
+    private void checkWriter() {
+        for (Future<?> future : pending) {
+            if (future.isDone()) {
+                checkDone(future);
+            }
+        }
+    }
+
+    /**
+     * Rethrow the error of a finished write, if it failed.
+     * @param future the write.
+     */
+    private static void checkDone(final Future<?> future) {
+        try {
+            future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            throw new BroadwickException("Error writing the results; "
+                                         + Throwables.getStackTraceAsString(ex.getCause()));
+        }
+    }
+
+    /**
+     * Encode and write a row group (in the writer thread).
+     * @param group the row group.
+     * @throws IOException if the row group cannot be written.
+     */
+    private void writeGroup(final RowGroup group) throws IOException {
+        final long[] offsets = new long[COLUMNS.length];
+        final int[] lengths = new int[COLUMNS.length];
+        for (int column = 0; column < COLUMNS.length; column++) {
+            if (column == COST) {
+                encoder.encodeDoubles(group.costs, group.rows);
+            } else {
+                encoder.encodeInts(group.ints[column], group.rows);
+            }
+            offsets[column] = offset;
+            lengths[column] = encoder.length;
+            out.write(encoder.bytes, 0, encoder.length);
+            offset += encoder.length;
+        }
+        groupRows.add(group.rows);
+        chunkOffsets.add(offsets);
+        chunkLengths.add(lengths);
+    }
+
+    /**
+     * Write the footer (in the calling thread, once every row group has been written).
+     * @throws IOException if the footer cannot be written.
+     */
+    private void writeFooter() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream footer = new DataOutputStream(bytes);
+        footer.writeInt(COLUMNS.length);
+        for (int column = 0; column < COLUMNS.length; column++) {
+            footer.writeUTF(COLUMNS[column]);
+            footer.writeByte(column == COST ? TYPE_DOUBLE : TYPE_INT);
+        }
+        footer.writeInt(groupRows.size());
+        for (int group = 0; group < groupRows.size(); group++) {
+            footer.writeInt(groupRows.get(group));
+            for (int column = 0; column < COLUMNS.length; column++) {
+                footer.writeLong(chunkOffsets.get(group)[column]);
+                footer.writeInt(chunkLengths.get(group)[column]);
+            }
+        }
+        footer.flush();
+        bytes.writeTo(out);
+        final int footerLength = bytes.size();
+        out.writeInt(footerLength);
+        out.writeInt(MAGIC);
+        offset += footerLength + 2 * Integer.BYTES;
+    }
+
+    /**
+     * The rows of a row group, one primitive array per column.
+     */
+    private static final class RowGroup {
+
+        /**
+         * Create an empty row group.
+         * @param capacity the number of rows.
+         */
+        RowGroup(final int capacity) {
+            ints = new int[COLUMNS.length - 1][capacity];
+            costs = new double[capacity];
+        }
+
+        /**
+         * The integer columns, indexed by column then by row.
+         */
+        private final int[][] ints;
+        private final double[] costs;
+        private int rows;
+    }
+
+    /**
+     * Encodes the chunks of a row group into a reusable buffer (used by the writer thread only).
+     */
+    private static final class Encoder {
+
+        /**
+         * Create the encoder.
+         * @param capacity the number of rows in a row group.
+         */
+        Encoder(final int capacity) {
+            bytes = new byte[1 + capacity * MAX_VARINT];
+            final int maxDistinct = Math.max(1, capacity / DICTIONARY_RATIO);
+            dictionary = new double[maxDistinct];
+            indices = new int[capacity];
+            int tableSize = 1;
+            while (tableSize < 2 * maxDistinct) {
+                tableSize <<= 1;
+            }
+            tableKeys = new long[tableSize];
+            tableSlots = new int[tableSize];
+        }
+
+        /**
+         * Delta encode an integer column.
+         * @param values the values.
+         * @param count  the number of values.
+         */
+        void encodeInts(final int[] values, final int count) {
+            length = 0;
+            bytes[length++] = DELTA;
+            int previous = 0;
+            for (int i = 0; i < count; i++) {
+                final int delta = values[i] - previous;
+                writeVarint((delta << 1) ^ (delta >> (Integer.SIZE - 1)));
+                previous = values[i];
+            }
+        }
+
+        /**
+         * Encode a double column, with a dictionary if it has few distinct values, plainly otherwise.
+         * @param values the values.
+         * @param count  the number of values.
+         */
+        void encodeDoubles(final double[] values, final int count) {
+            if (buildDictionary(values, count)) {
+                length = 0;
+                bytes[length++] = DICTIONARY;
+                writeVarint(distinct);
+                for (int i = 0; i < distinct; i++) {
+                    writeLong(Double.doubleToRawLongBits(dictionary[i]));
+                }
+                for (int i = 0; i < count; i++) {
+                    writeVarint(indices[i]);
+                }
+            } else {
+                ensureCapacity(1 + count * Long.BYTES);
+                length = 0;
+                bytes[length++] = PLAIN;
+                for (int i = 0; i < count; i++) {
+                    writeLong(Double.doubleToRawLongBits(values[i]));
+                }
+            }
+        }
+
+        /**
+         * Build the dictionary of a double column (an open addressing table of the bit patterns).
+         * @param values the values.
+         * @param count  the number of values.
+         * @return false if the column has too many distinct values for a dictionary to pay off.
+         */
+        private boolean buildDictionary(final double[] values, final int count) {
+            Arrays.fill(tableSlots, 0);
+            final int limit = Math.min(dictionary.length, count / DICTIONARY_RATIO);
+            final int mask = tableSlots.length - 1;
+            distinct = 0;
+            for (int i = 0; i < count; i++) {
+                final long key = Double.doubleToRawLongBits(values[i]);
+                int slot = (int) CounterRng.mix(key) & mask;
+                while (tableSlots[slot] != 0 && tableKeys[slot] != key) {
+                    slot = (slot + 1) & mask;
+                }
+                if (tableSlots[slot] == 0) {
+                    if (distinct == limit) {
+                        return false;
+                    }
+                    dictionary[distinct++] = values[i];
+                    tableKeys[slot] = key;
+                    tableSlots[slot] = distinct;
+                }
+                indices[i] = tableSlots[slot] - 1;
+            }
+            return true;
+        }
+
+        /**
+         * Append an unsigned varint.
+         * @param value the value.
+         */
+        private void writeVarint(final int value) {
+            int remaining = value;
+            while ((remaining & ~VARINT_MASK) != 0) {
+                bytes[length++] = (byte) ((remaining & VARINT_MASK) | VARINT_MORE);
+                remaining >>>= VARINT_BITS;
+            }
+            bytes[length++] = (byte) remaining;
+        }
+
+        /**
+         * Append a big-endian long.
+         * @param value the value.
+         */
+        private void writeLong(final long value) {
+            for (int shift = Long.SIZE - Byte.SIZE; shift >= 0; shift -= Byte.SIZE) {
+                bytes[length++] = (byte) (value >>> shift);
+            }
+        }
+
+        /**
+         * Make sure the buffer can hold a number of bytes.
+         * @param capacity the number of bytes.
+         */
+        private void ensureCapacity(final int capacity) {
+            if (capacity > bytes.length) {
+                bytes = Arrays.copyOf(bytes, capacity);
+            }
+        }
+
+        private byte[] bytes;
+        private int length;
+        private final double[] dictionary;
+        private final int[] indices;
+        private final long[] tableKeys;
+        /**
+         * The index in the dictionary + 1 of the value in each slot of the table (0 for an empty slot).
+         */
+        private final int[] tableSlots;
+        private int distinct;
+    }
+
+    private final int groupSize;
+    private final BlockingQueue<RowGroup> freeGroups;
+    /**
+     * The writes of the row groups, in order, that may not have finished yet.
+     */
+    private final List<Future<?>> pending;
+    private final ExecutorService writer;
+    private final DataOutputStream out;
+    private final Encoder encoder;
+    /**
+     * The number of rows, the offset and the length of every column chunk of every row group written so far.
+     */
+    private final List<Integer> groupRows;
+    private final List<long[]> chunkOffsets;
+    private final List<int[]> chunkLengths;
+    /**
+     * The row group being filled.
+     */
+    private RowGroup current;
+    /**
+     * The number of bytes written to the file.
+     */
+    private long offset;
+    /**
+     * The number of rows added.
+     */
+    @Getter
+    private long rows;
+    /**
+     * The number of replicates added.
+     */
+    @Getter
+    private int replicates;
+    private boolean closed;
+
+    /**
+     * The names of the columns.
+     */
+    public static final String[] COLUMNS = {"replicate", "day", "susceptible", "suspected",
+                                            "infectious_not_suspected", "confirmed", "culled", "vaccinated",
+                                            "restricted", "cost"};
+    /**
+     * The default number of rows in a row group.
+     */
+    public static final int DEFAULT_ROW_GROUP_SIZE = 65536;
+    static final int MAGIC = 0x43575253;
+    static final byte VERSION = 1;
+    static final byte TYPE_INT = 0;
+    static final byte TYPE_DOUBLE = 1;
+    static final byte PLAIN = 0;
+    static final byte DELTA = 1;
+    static final byte DICTIONARY = 2;
+    static final int VARINT_BITS = 7;
+    static final int VARINT_MASK = 0x7F;
+    static final int VARINT_MORE = 0x80;
+    private static final int REPLICATE = 0;
+    private static final int DAY = 1;
+    private static final int FIRST_COUNT = 2;
+    private static final int COST = COLUMNS.length - 1;
+    private static final Statistics.Measure[] COUNTS = {Statistics.Measure.SUSCEPTIBLE, Statistics.Measure.SUSPECTED,
+                                                        Statistics.Measure.INFECTIOUS_NOT_SUSPECTED,
+                                                        Statistics.Measure.CONFIRMED, Statistics.Measure.CULLED,
+                                                        Statistics.Measure.VACCINATED, Statistics.Measure.RESTRICTED};
+    private static final int HEADER_LENGTH = Integer.BYTES + 1;
+    private static final int BUFFERED_GROUPS = 3;
+    private static final int OUTPUT_BUFFER = 1 << 16;
+    private static final int MAX_VARINT = 5;
+    /**
+     * A dictionary is used if there are at most 1 distinct value in DICTIONARY_RATIO rows.
+     */
+    private static final int DICTIONARY_RATIO = 4;
+}
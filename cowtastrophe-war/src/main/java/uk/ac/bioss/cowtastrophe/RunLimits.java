@@ -0,0 +1,102 @@
+package uk.ac.bioss.cowtastrophe;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import lombok.Getter;
+
+/**
+ * The limits on a running simulation: a cancellation flag that can be set from another thread, a wall-clock deadline
+ * and a budget of CPU time. The limits are checked cooperatively by the simulation, between events and between days.
+ * <p>
+ * The CPU budget is the CPU time of the threads that check the limits (i.e. the threads running the simulation) added
+ * up, so a simulation that is continued on another thread (e.g. by the next request of a servlet session) keeps the
+ * time it used before. The CPU time is only sampled every few checks as it is much more expensive to read than the
+ * wall clock.
+ */
+public final class RunLimits {
+
+    /**
+     * Create a set of limits.
+     * @param wallClockMillis the wall-clock time (in milliseconds) the simulation may run for, a value &lt;= 0 means
+     *                        there is no limit.
+     * @param cpuMillis       the CPU time (in milliseconds) the simulation may use, a value &lt;= 0 means there is no
+     *                        limit.
+     */
+    public RunLimits(final long wallClockMillis, final long cpuMillis) {
+        this.deadline = wallClockMillis > 0 ? System.nanoTime() + wallClockMillis * NANOS_PER_MILLI : 0;
+        this.cpuBudget = cpuMillis > 0 && THREADS.isCurrentThreadCpuTimeSupported()
+                         ? cpuMillis * NANOS_PER_MILLI : 0;
+        this.cpuThread = -1;
+    }
+
+    /**
+     * Create a set of limits that can only be cancelled.
+     * @return the limits.
+     */
+    public static RunLimits unlimited() {
+        return new RunLimits(0, 0);
+    }
+
+    /**
+     * Request that the simulation stops at the next check.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Check whether the simulation should stop, i.e. it has been cancelled or has exceeded its wall-clock or CPU
+     * budget. The reason is recorded the first time a limit is found to be exceeded.
+     * @return true if the simulation should stop.
+     */
+    public boolean isExceeded() {
+        if (reason != null) {
+            return true;
+        }
+        if (cancelled) {
+            reason = "cancelled";
+        } else if (deadline != 0 && System.nanoTime() - deadline > 0) {
+            reason = "wall-clock budget exceeded";
+        } else if (cpuBudget != 0 && (checks++ & CPU_CHECK_MASK) == 0 && cpuUsed() > cpuBudget) {
+            reason = "CPU budget exceeded";
+        }
+        return reason != null;
+    }
+
+    /**
+     * Get the CPU time used by the simulation since it first checked these limits, over all the threads it has run on.
+     * @return the CPU time in nanoseconds.
+     */
+    private synchronized long cpuUsed() {
+        final long threadId = Thread.currentThread().getId();
+        final long now = THREADS.getCurrentThreadCpuTime();
+        if (cpuThread != threadId) {
+            // the simulation has moved to another thread, keep the time it used on the previous one.
+            cpuBefore += cpuLast - cpuStart;
+            cpuThread = threadId;
+            cpuStart = now;
+        }
+        cpuLast = now;
+        return cpuBefore + cpuLast - cpuStart;
+    }
+
+    private volatile boolean cancelled;
+    /**
+     * Why the simulation should stop (null until a limit is exceeded).
+     */
+    @Getter
+    private volatile String reason;
+    private final long deadline;
+    private final long cpuBudget;
+    private long cpuThread;
+    private long cpuStart;
+    private long cpuLast;
+    /**
+     * The CPU time (in nanoseconds) used on the threads the simulation ran on before the current one.
+     */
+    private long cpuBefore;
+    private int checks;
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+    private static final int CPU_CHECK_MASK = 0x3F;
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+}
@@ -0,0 +1,165 @@
+package uk.ac.bioss.cowtastrophe;
+
+import com.google.common.base.Throwables;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import uk.ac.bioss.cowtastrophe.controls.ControlStrategyFactory;
+
+/**
+ * A pool of new (day 0) sessions that are ready to be handed out. Creating a session generates a session id, creates
+ * the session directory, builds the simulation and writes the day 0 snapshot and pid file; the pool does this in a
+ * background thread so that a new user does not have to wait for it.
+ * <p>
+ * The pool keeps up to a fixed number of sessions per preset, it is topped up asynchronously every time a session is
+ * taken from it.
+ */
+@Slf4j
+public final class SessionPool {
+
+    /**
+     * Create the pool.
+     * @param directory the directory in which the sessions are stored.
+     * @param size      the number of ready sessions to keep for each preset.
+     */
+    public SessionPool(final String directory, final int size) {
+        this.baseDirectory = directory;
+        this.poolSize = size;
+        this.ready = new ConcurrentHashMap<>();
+        this.pending = ConcurrentHashMap.newKeySet();
+        this.filler = Executors.newSingleThreadExecutor((runnable) -> {
+            final Thread thread = new Thread(runnable, "session-pool");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Take a new session for a preset. If the pool has a ready session it is returned immediately, otherwise one is
+     * created synchronously; in either case the pool is topped up in the background.
+     * @param paramsFileName the name of the file containing the preset.
+     * @return a simulation at day 0.
+     */
+    public Simulation take(final String paramsFileName) {
+        final String key = new File(paramsFileName).getAbsolutePath();
+        Simulation simulation = queueFor(key).poll();
+        if (simulation == null) {
+            log.info("Session pool for {} is empty, creating a session", key);
+            simulation = new Simulation(baseDirectory, FarmMap.load(key));
+        }
+        topUp(key);
+        return simulation;
+    }
+
+    /**
+     * Fill the pool for a preset in the background.
+     * @param paramsFileName the name of the file containing the preset.
+     */
+    public void prefill(final String paramsFileName) {
+        topUp(new File(paramsFileName).getAbsolutePath());
+    }
+
+    /**
+     * Run a short simulation in the background (before any sessions are created) so that the JIT has compiled the
+     * kernel, Gillespie and control paths before the first user arrives. The warm-up simulation is not persistent so
+     * nothing is written to disk.
+     * @param paramsFileName the name of the file containing the preset.
+     * @param days           the number of days to simulate.
+     */
+    public void warmUp(final String paramsFileName, final int days) {
+        filler.submit(() -> {
+            try {
+                final long start = System.currentTimeMillis();
+                final Simulation simulation = new Simulation(baseDirectory, FarmMap.load(paramsFileName), false);
+                simulation.setControlStrategy(ControlStrategyFactory.create(ControlStrategy.CULL_ON_CON,
+                                                                            ControlStrategy.VAC_ON_CON, 1.0,
+                                                                            ControlStrategy.MOVE_ON_CON, 1.0));
+                for (int i = 0; i < days; i++) {
+                    simulation.run24Hours();
+                }
+                log.info("Warm-up simulation of {} days took {} ms", days, System.currentTimeMillis() - start);
+            } catch (RuntimeException ex) {
+                log.error("Warm-up simulation failed; {}", Throwables.getStackTraceAsString(ex));
+            }
+        });
+    }
+
+    /**
+     * Stop topping up the pool and remove the sessions that were never handed out (and their directories).
+     */
+    public void shutdown() {
+        filler.shutdownNow();
+        for (BlockingQueue<Simulation> queue : ready.values()) {
+            Simulation simulation;
+            while ((simulation = queue.poll()) != null) {
+                final Path sessionDir = Paths.get(baseDirectory, simulation.getSessionId());
+                try (Stream<Path> files = Files.walk(sessionDir)) {
+                    for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                        Files.delete(file);
+                    }
+                } catch (IOException ex) {
+                    log.error("Could not remove unused session {}; {}", simulation.getSessionId(),
+                              ex.getLocalizedMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Schedule the pool for a preset to be topped up, unless a top up is already scheduled.
+     * @param key the (absolute) name of the preset file.
+     */
+    private void topUp(final String key) {
+        if (pending.add(key)) {
+            filler.submit(() -> {
+                pending.remove(key);
+                final BlockingQueue<Simulation> queue = queueFor(key);
+                try {
+                    while (queue.size() < poolSize && !Thread.currentThread().isInterrupted()) {
+                        queue.add(new Simulation(baseDirectory, FarmMap.load(key)));
+                    }
+                } catch (RuntimeException ex) {
+                    log.error("Could not top up session pool for {}; {}", key, Throwables.getStackTraceAsString(ex));
+                }
+            });
+        }
+    }
+
+    /**
+     * Get the queue of ready sessions for a preset.
+     * @param key the (absolute) name of the preset file.
+     * @return the queue.
+     */
+    private BlockingQueue<Simulation> queueFor(final String key) {
+        return ready.computeIfAbsent(key, (file) -> new LinkedBlockingQueue<>());
+    }
+
+    /**
+     * The directory in which the sessions are stored.
+     */
+    @Getter
+    private final String baseDirectory;
+    /**
+     * The number of ready sessions kept for each preset.
+     */
+    @Getter
+    private final int poolSize;
+    private final ConcurrentMap<String, BlockingQueue<Simulation>> ready;
+    private final Set<String> pending;
+    private final ExecutorService filler;
+}
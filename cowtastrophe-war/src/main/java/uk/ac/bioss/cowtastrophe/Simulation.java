@@ -1,5 +1,6 @@
 package uk.ac.bioss.cowtastrophe;
 
+import broadwick.BroadwickException;
 import broadwick.rng.RNG;
 import uk.ac.bioss.cowtastrophe.controls.NullStrategy;
 import broadwick.stochastic.SimulationController;
@@ -14,8 +15,8 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -24,6 +25,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.stream.Collectors;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
@@ -40,36 +42,79 @@ public class Simulation implements Serializable {
      * @param paramsFileName the name of the file containing the parameters with which to run the simulation.
      */
     public Simulation(final String directory, final String paramsFileName) {
-        // TODO: simulation should take a string that gives the location of
-        // the parameters file
-        this.parameters = new Parameters(paramsFileName);
+        this(directory, FarmMap.load(paramsFileName));
+    }
+
+    /**
+     * Create a simulation on a (shared) preset map.
+     * @param directory the directory where the output is to be stored.
+     * @param farmMap   the map of farms with which to run the simulation.
+     */
+    public Simulation(final String directory, final FarmMap farmMap) {
+        this(directory, farmMap, true);
+    }
+
+    /**
+     * Create a simulation on a (shared) preset map.
+     * @param directory    the directory where the output is to be stored.
+     * @param farmMap      the map of farms with which to run the simulation.
+     * @param isPersistent whether the session is saved to disk; a simulation that is not persistent does not create
+     *                     a session directory and never writes session (.ser/.json) or pid files.
+     */
+    public Simulation(final String directory, final FarmMap farmMap, final boolean isPersistent) {
+        this(directory, farmMap, isPersistent, new RNG(RNG.Generator.Well19937c).getInteger(0, Integer.MAX_VALUE - 1));
+    }
+
+    /**
+     * Create a simulation on a (shared) preset map with a given random seed, so that the simulation can be
+     * reproduced.
+     * @param directory    the directory where the output is to be stored.
+     * @param farmMap      the map of farms with which to run the simulation.
+     * @param isPersistent whether the session is saved to disk.
+     * @param seed         the seed of the random number generators used by the simulation.
+     */
+    public Simulation(final String directory, final FarmMap farmMap, final boolean isPersistent, final int seed) {
+        this(directory, farmMap, isPersistent, seed, 0);
+    }
+
+    /**
+     * Create a simulation on a (shared) preset map that draws its random numbers from a given stream, e.g. replicate
+     * number r of an ensemble with a master seed, so that every replicate is reproduced whichever thread runs it.
+     * @param directory    the directory where the output is to be stored.
+     * @param farmMap      the map of farms with which to run the simulation.
+     * @param isPersistent whether the session is saved to disk.
+     * @param seed         the (master) seed of the random number generators.
+     * @param stream       the number of the random number stream (e.g. the number of the replicate).
+     */
+    public Simulation(final String directory, final FarmMap farmMap, final boolean isPersistent, final long seed,
+                      final long stream) {
+        this.map = farmMap;
+        this.persistent = isPersistent;
+        this.parameters = new Parameters(map.getParameters());
         this.parameters.setDirectory(directory);
-        this.farms = new HashSet<>(this.parameters.getFarms());
-        this.restrictedFarms = new HashSet<>();
+        this.farmStates = new FarmStates(map);
+        this.farms = createFarms(farmStates);
+        this.restrictedFarms = farmStates.getRestrictedFarms();
         this.SuspisciousFarmTests = new HashMap<>();
-        this.easeMvmtRestriction = new HashMap<>();
+        this.restrictionScheduler = new RestrictionScheduler(map.size());
         this.helper = new SimulationHelper(this);
         this.day = 0;
         this.statistics = new Statistics();
         this.controlStrategy = new NullStrategy();
-        this.rng = new RNG(RNG.Generator.Well19937c);
-        this.rngSeed = rng.getInteger(0, Integer.MAX_VALUE - 1);
+        this.random = new CounterRng(seed, stream);
         this.cleanupRequired = true;
 
-        // Find all the farms whose id is in the list of seedIds and set them to be INFECTIOUS.
-        List<Integer> seedIds = this.parameters.getSeedFarms().stream().map(Farm::getId)
-                .collect(Collectors.toList());
-        for (Farm f : farms) {
-            if (seedIds.contains(f.getId())) {
-                f.setStatus(DiseaseState.SUSPECTED);
-            }
+        // Set all the seed farms to be INFECTIOUS.
+        for (int index : map.getSeedIndices()) {
+            farms.get(index).setStatus(DiseaseState.SUSPECTED);
+            statistics.addIndexCase(day, farms.get(index));
         }
 
         // Create the sessionId for the session and create the directory to hold it.
         sessionId = helper.generateSessionId();
         log.info("Generated session id " + sessionId);
         File settingsDir = new File(directory, sessionId);
-        if (!settingsDir.exists()) {
+        if (persistent && !settingsDir.exists()) {
             log.info("Creating directory " + settingsDir);
             settingsDir.mkdir();
             // If you require it to make the entire directory path including parents,
@@ -80,7 +125,7 @@ public class Simulation implements Serializable {
         manager = new PopulationManager(this);
         kernel = new TransitionKernel();
         this.simulator = new GillespieSimple(manager, kernel);
-        this.simulator.setRngSeed(rngSeed);
+        this.simulator.setRngSeed(random.split(ENGINE_STREAM).nextInt() & Integer.MAX_VALUE);
         this.simulator.setStartTime(day);
 
         // register all suspected farms on day 0 to be checked.
@@ -98,9 +143,123 @@ public class Simulation implements Serializable {
     }
 
     /**
-     * Run the simulation for the next 24 hours.
+     * Create a branch of a simulation (see fork). The branch shares the map and, until either of them writes to it,
+     * every column of the farm states with its parent; the (small) scheduled tests, restrictions and statistics are
+     * copied.
+     * @param parent   the simulation to branch from.
+     * @param branch   the number of the branch, from which its random number stream is derived.
+     * @param strategy the control strategy of the branch.
+     */
+    private Simulation(final Simulation parent, final int branch, final ControlStrategy strategy) {
+        this.map = parent.map;
+        this.persistent = false;
+        this.parameters = new Parameters(parent.parameters);
+        this.farmStates = parent.farmStates.copy();
+        this.farms = createFarms(farmStates);
+        this.restrictedFarms = farmStates.getRestrictedFarms();
+        this.SuspisciousFarmTests = new HashMap<>();
+        parent.SuspisciousFarmTests.forEach((testDay, tests) -> {
+            // the tests refer to the farms of the parent, replace them with the farms of the branch.
+            final Collection<Event> copy = new ArrayList<>(tests.size());
+            for (Event test : tests) {
+                final Farm farm = farms.get(((Farm) test.getInitialState()).getIndex());
+                copy.add(new Event(farm, farm, test.getType()));
+            }
+            this.SuspisciousFarmTests.put(testDay, copy);
+        });
+        this.restrictionScheduler = new RestrictionScheduler(parent.restrictionScheduler);
+        this.kernelCache = parent.kernelCache;
+        this.helper = new SimulationHelper(this);
+        this.day = parent.day;
+        this.statistics = new Statistics(parent.statistics);
+        this.controlStrategy = strategy;
+        this.stoppingRule = parent.stoppingRule;
+        this.random = parent.random.split(FORK_STREAM).split(parent.day).split(branch);
+        this.cleanupRequired = false;
+        this.sessionId = parent.sessionId + "-" + branch;
+
+        manager = new PopulationManager(this);
+        kernel = new TransitionKernel();
+        this.simulator = new GillespieSimple(manager, kernel);
+        this.simulator.setRngSeed(random.split(ENGINE_STREAM).nextInt() & Integer.MAX_VALUE);
+        this.simulator.setStartTime(parent.simulator.getCurrentTime());
+        strategy.attach(this);
+    }
+
+    /**
+     * Fork the simulation into a number of branches, e.g. to compare "what if" control strategies from the current
+     * day. Each branch continues from the current state with its own random number stream (a sub-stream of the stream
+     * of this simulation keyed by the day and the number of the branch, so forking is reproducible) and its own control
+     * strategy. The branches are not persistent and share the map and the farm states with this simulation until
+     * they are written to, so forking takes no more than a copy of the scheduled tests, restrictions and statistics.
+     * @param strategies the control strategy of each branch; a strategy must not be shared between branches.
+     * @return the branches, in the order of the strategies.
+     */
+    public final List<Simulation> fork(final List<ControlStrategy> strategies) {
+        if (threadRunning) {
+            throw new BroadwickException("Cannot fork simulation " + sessionId + " while it is running");
+        }
+        final List<Simulation> branches = new ArrayList<>(strategies.size());
+        for (int branch = 0; branch < strategies.size(); branch++) {
+            branches.add(new Simulation(this, branch, strategies.get(branch)));
+        }
+        return branches;
+    }
+
+    /**
+     * Fork a single branch of the simulation (see fork(List)).
+     * @param branch   the number of the branch, from which its random number stream is derived.
+     * @param strategy the control strategy of the branch.
+     * @return the branch.
+     */
+    public final Simulation fork(final int branch, final ControlStrategy strategy) {
+        if (threadRunning) {
+            throw new BroadwickException("Cannot fork simulation " + sessionId + " while it is running");
+        }
+        return new Simulation(this, branch, strategy);
+    }
+
+    /**
+     * Get a random number stream for a control strategy that makes random choices. The stream depends only on the
+     * stream of the simulation, the day and the index, so the choices are reproduced whichever thread runs the
+     * simulation and however many numbers were drawn before.
+     * @param index an index telling apart the streams the strategy uses on the same day.
+     * @return the stream.
+     */
+    public final CounterRng getStrategyRandom(final long index) {
+        return random.split(STRATEGY_STREAM).split(day).split(index);
+    }
+
+    /**
+     * Run the simulation for the next 24 hours, and on past the days without events until a day with events (or the
+     * end date).
+     * @throws SimulationCancelledException if the run limits were exceeded; if this happens part way through a day the
+     *                                      state of the simulation is incomplete and the snapshot of the last completed
+     *                                      day should be used.
      */
     public final void run24Hours() {
+        runDay();
+
+        // Keep running until we have a day with events (in case there are situations where there
+        // are no events for several days)
+        if (!dayWithEvents) {
+            // we've  had no events today so try tomorrow and keep going until we have had a day with events
+            // (but not past the end date, the next event can be thousands of days away late in an outbreak).
+            if (this.simulator.getCurrentTime() < day + 200 && day < MAX_ENDDATE) {
+                skipQuietDays(MAX_ENDDATE);
+                if (day < MAX_ENDDATE) {
+                    run24Hours();
+                }
+            }
+        }
+    }
+
+    /**
+     * Run the simulation for exactly one day.
+     * @throws SimulationCancelledException if the run limits were exceeded part way through the day.
+     */
+    private void runDay() {
+        checkLimits();
         log.info("Running simulation for day {}", day);
         cleanupDataFiles();
 
@@ -109,9 +268,10 @@ public class Simulation implements Serializable {
         simulator.setStartTime(this.simulator.getCurrentTime());
 
         // Add a controller (netbeans converted anpnymous inner class to this lambda)
+        final RunLimits runLimits = limits;
         final SimulationController controller = (StochasticSimulator sim) -> {
             log.trace("Checking if simulation time {} < time {}", sim.getCurrentTime(), day);
-            return sim.getCurrentTime() <= day;
+            return sim.getCurrentTime() <= day && (runLimits == null || !runLimits.isExceeded());
         };
         this.simulator.setController(controller);
 
@@ -119,6 +279,8 @@ public class Simulation implements Serializable {
         this.kernel = updateKernel();
         this.simulator.setTransitionKernel(kernel);
         this.simulator.run();
+        // the day is incomplete if the limits stopped the simulator, don't save it.
+        checkLimits();
 
         doDailyChecks();
 
@@ -128,11 +290,30 @@ public class Simulation implements Serializable {
         statistics.addCulledFarms(day, ((int) countFarms(DiseaseState.CULLED)));
         statistics.addVaccinatedFarms(day, ((int) countFarms(DiseaseState.VACCINATED)));
         statistics.addInfectedButNotSuspectedFarms(day, ((int) countFarms(DiseaseState.INFECTIOUS_NOT_SUSPECTED)));
-        statistics.addRestrictedFarms(day, this.restrictedFarms.size());
-        statistics.addCost(day, 0.0); // TODO - update this when the controls have been encoded.
+        statistics.addRestrictedFarms(day, this.restrictedFarms.getSize());
 
         doDailyChecks();
+        statistics.endDay(day);
+
+        if (log.isInfoEnabled()) {
+            logFarmStates();
+        }
+
+        // TODO: we should now ask the statistics to update itself......
+        log.info("Finished simulation for day {} [next infection event at = {}]",
+                 day,
+                 this.simulator.getCurrentTime());
+
+        log.trace("Scheduled tests: {}", SuspisciousFarmTests);
+        day += 1; // update the time by one day...
 
+        helper.saveSession(sessionId, day);
+    }
+
+    /**
+     * Log the ids of the farms in each disease state.
+     */
+    private void logFarmStates() {
         log.info("Susceptible Farms = {} ", farms.stream()
                  .filter((farm) -> (farm.getStatus() == DiseaseState.SUSCEPTIBLE))
                  .map(Farm::getId)
@@ -163,26 +344,139 @@ public class Simulation implements Serializable {
                  .map(Farm::getId)
                  .sorted()
                  .collect(Collectors.toList()));
+    }
 
-        // TODO: we should now ask the statistics to update itself......
-        log.info("Finished simulation for day {} [next infection event at = {}]",
-                 day,
-                 this.simulator.getCurrentTime());
+    /**
+     * Run the simulation for a number of days, or until there are no more infection events. The days without events
+     * are run one at a time (or skipped) here so the run never goes past the last of the days.
+     * @param days the number of days to run for.
+     */
+    public final void runFor(final int days) {
+        final int end = days >= MAX_ENDDATE - day ? MAX_ENDDATE : day + days;
+        stoppedBy = null;
+        while (day < end) {
+            skipQuietDays(end);
+            if (day >= end) {
+                break;
+            }
+            runDay();
+            if (stoppingRule != null) {
+                stoppedBy = stoppingRule.check(this);
+                if (stoppedBy != null) {
+                    log.info("Stopping simulation {} on day {}: {}", sessionId, day, stoppedBy);
+                    break;
+                }
+            }
+            if (this.simulator.getTransitionKernel().getTransitionEvents().isEmpty()
+                || finishExtinctOutbreak(end)) {
+                break;
+            }
+        }
+    }
 
-        log.trace("Scheduled tests: {}", SuspisciousFarmTests.toString());
-        day += 1; // update the time by one day...
+    /**
+     * Record the days on which nothing can happen (other than the daily costs and the lifting of movement
+     * restrictions) in closed form rather than running them: the days before the next infection event of the
+     * simulator, as long as no test is due and the control strategy has nothing to act on. Only simulations that are
+     * not persistent are fast forwarded as no snapshot is saved for the days that are skipped.
+     * @param until the day (exclusive) up to which days can be skipped.
+     */
+    private void skipQuietDays(final int until) {
+        if (persistent || day >= this.simulator.getCurrentTime()
+            || this.simulator.getTransitionKernel().getTransitionEvents().isEmpty()
+            || !controlStrategy.isIdle(this)) {
+            return;
+        }
+        final int last = (int) Math.min(until, Math.min(nextTestDay(), Math.ceil(this.simulator.getCurrentTime())));
+        if (last > day) {
+            log.debug("Skipping quiet days {} to {}", day, last - 1);
+            recordQuietDays(last);
+        }
+    }
 
-        helper.saveSession(sessionId, day);
+    /**
+     * Finish the run if the outbreak is extinct, i.e. no farm is infectious (so no test is pending either) and the
+     * control strategy has nothing to act on. Nothing but the lifting of the movement restrictions can happen after
+     * that, so the days up to the last scheduled lifting (at least one day) are recorded in closed form and the run
+     * ends.
+     * @param until the day (exclusive) up to which days can be recorded.
+     * @return true if the outbreak was extinct and the run is finished.
+     */
+    private boolean finishExtinctOutbreak(final int until) {
+        if (persistent || countFarms(DiseaseState.SUSPECTED) > 0 || countFarms(DiseaseState.CONFIRMED) > 0
+            || countFarms(DiseaseState.INFECTIOUS_NOT_SUSPECTED) > 0 || !controlStrategy.isIdle(this)) {
+            return false;
+        }
+        final int lastLift = Math.max(day, restrictionScheduler.getLastLiftDay());
+        log.debug("Outbreak extinct on day {}, recording days {} to {}", day, day, lastLift);
+        recordQuietDays(Math.min(until, lastLift + 1));
+        return true;
+    }
 
-        // Keep running until we have a day with events (in case there are situations where there
-        // are no events for several days)
-        if (!dayWithEvents) {
-            // we've  had no events today so try tomorrow and keep going until we have had a day with events.
-            if(this.simulator.getCurrentTime() < day+200)
-            run24Hours();
+    /**
+     * Get the first day (from today) on which a suspected farm is due to be tested.
+     * @return the day, or MAX_ENDDATE if there is none.
+     */
+    private int nextTestDay() {
+        int next = MAX_ENDDATE;
+        for (Map.Entry<Integer, Collection<Event>> tests : SuspisciousFarmTests.entrySet()) {
+            if (tests.getKey() >= day && tests.getKey() < next) {
+                for (Event test : tests.getValue()) {
+                    if (((Farm) test.getInitialState()).getStatus() == DiseaseState.SUSPECTED) {
+                        next = tests.getKey();
+                        break;
+                    }
+                }
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Record the days from the current day up to a given day as run24Hours would record them if nothing but the daily
+     * costs and the lifting of movement restrictions happened on them (the daily checks are done twice a day, so
+     * are the costs).
+     * @param until the day (exclusive) up to which the days are recorded.
+     */
+    private void recordQuietDays(final int until) {
+        final int[] counts = new int[DiseaseState.values().length];
+        for (Farm farm : farms) {
+            counts[farm.getStatus().ordinal()]++;
+        }
+        final double infectedCost = (counts[DiseaseState.CONFIRMED.ordinal()]
+                                     + counts[DiseaseState.INFECTIOUS_NOT_SUSPECTED.ordinal()])
+                                    * parameters.getCostOfInfectedFarmPerDay();
+        while (day < until) {
+            for (int check = 0; check < 2; check++) {
+                statistics.addCost(CostCategory.MOVEMENT_RESTRICTION, controlStrategy.getIdleCost(this));
+                liftRestrictions();
+                statistics.addCost(CostCategory.INFECTED_FARMS, infectedCost);
+                statistics.addCost(CostCategory.MOVEMENT_RESTRICTION,
+                                   restrictedFarms.getSize() * parameters.getCostOfMvmtBanPerDay());
+                if (check == 0) {
+                    statistics.setSusceptibleFarms(day, counts[DiseaseState.SUSCEPTIBLE.ordinal()]);
+                    statistics.addSuspectedFarms(day, counts[DiseaseState.SUSPECTED.ordinal()]);
+                    statistics.addConfirmedFarms(day, counts[DiseaseState.CONFIRMED.ordinal()]);
+                    statistics.addCulledFarms(day, counts[DiseaseState.CULLED.ordinal()]);
+                    statistics.addVaccinatedFarms(day, counts[DiseaseState.VACCINATED.ordinal()]);
+                    statistics.addInfectedButNotSuspectedFarms(day,
+                                                               counts[DiseaseState.INFECTIOUS_NOT_SUSPECTED.ordinal()]);
+                    statistics.addRestrictedFarms(day, this.restrictedFarms.getSize());
+                }
+            }
+            statistics.endDay(day);
+            day += 1;
         }
     }
 
+    /**
+     * Run the simulation, in the current thread, until there are no more infection events or the maximum end date is
+     * reached.
+     */
+    public final void runToEnd() {
+        runFor(MAX_ENDDATE - day);
+    }
+
     /**
      * Run the simulation in a separate thread until the end. The thread is a blocking thread but this will need to
      * change when connected to the servlet as we don't want the application to hang.
@@ -209,10 +503,23 @@ public class Simulation implements Serializable {
             // Wait until the thread is finished running (get the result of the future) and
             // shutdown the executor service.
             result.get();
-            executorService.shutdownNow();
-        } catch (InterruptedException | ExecutionException ex) {
+        } catch (InterruptedException ex) {
+            // stop the simulation thread at its next check rather than leaving it running.
+            if (limits != null) {
+                limits.cancel();
+            }
+            Thread.currentThread().interrupt();
             log.error("{}\nSomething went wrong running simulation. See the error messages.",
                       ex.getLocalizedMessage());
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof SimulationCancelledException) {
+                throw (SimulationCancelledException) ex.getCause();
+            }
+            log.error("{}\nSomething went wrong running simulation. See the error messages.",
+                      ex.getLocalizedMessage());
+        } finally {
+            threadRunning = false;
+            executorService.shutdownNow();
         }
 
         // non-blocking case:
@@ -225,6 +532,17 @@ public class Simulation implements Serializable {
 //        }
     }
 
+    /**
+     * Stop the simulation if its run limits have been exceeded.
+     * @throws SimulationCancelledException if the limits have been exceeded.
+     */
+    private void checkLimits() {
+        if (limits != null && limits.isExceeded()) {
+            log.info("Stopping simulation {} on day {}: {}", sessionId, day, limits.getReason());
+            throw new SimulationCancelledException(limits.getReason(), day);
+        }
+    }
+
     /**
      * Run the tests that are scheduled for the current day. These tests check suspected farms and mark them as
      * confirmed.
@@ -237,6 +555,10 @@ public class Simulation implements Serializable {
         // will not be controlled but confirmed cases will, OR we run the control again AFTER the test
         // block).
         controlStrategy.run(this);
+        if (!(controlStrategy instanceof EventDrivenStrategy)) {
+            // only an event-driven strategy reads the log, don't let it grow.
+            farmStates.getTransitions().clear();
+        }
 
         //First: check all suspected farms and mark them as confirmed.
         if (SuspisciousFarmTests.get(this.getDay()) != null) {
@@ -254,12 +576,13 @@ public class Simulation implements Serializable {
                 int numFailedTests = ((int) Math.round(suspectedFarms.size() * (1 - parameters.getTestSensitivity())));
                 log.info("from {} farms, num failed = {}", suspectedFarms.size(), numFailedTests);
                 // these farms are suspected but are not confirmed - these will be infectious but not suspected.
-                List<Farm> failedFarmTests = rng.selectManyOf(suspectedFarms, numFailedTests);
+                List<Farm> failedFarmTests = random.split(TEST_STREAM).split(day)
+                        .selectManyOf(suspectedFarms, numFailedTests);
 
                 for (final Farm farm : suspectedFarms) {
                     final double cost = parameters.getCostOfFarmVisit()
                                         + parameters.getCostOfTestPerAnimal() * farm.getHerdSize();
-                    statistics.addCost(day, cost);
+                    statistics.addCost(CostCategory.TESTING, cost);
                     if (failedFarmTests.contains(farm)) {
                         farm.setStatus(DiseaseState.CONFIRMED);
                         log.info("Farm {} confirmed on day [cost = {}].", farm.getId(), day, cost);
@@ -274,12 +597,7 @@ public class Simulation implements Serializable {
         }
 
         //Second: check if any farms that have a movement ban can have the ban lifted.
-        Collection<Integer> todaysLifts = easeMvmtRestriction.get(this.getDay());
-        if (todaysLifts != null) {
-            for (int farmId : todaysLifts) {
-                restrictedFarms.remove(farmId);
-            }
-        }
+        liftRestrictions();
 
         // Finally: Each infected farm carries a cost as does being under movement restriction
         // update the statistics.
@@ -288,16 +606,29 @@ public class Simulation implements Serializable {
         Long numInfectedFarms = farms.stream()
                 .filter((farm) -> (infectedStates.contains(farm.getStatus())))
                 .collect(Collectors.counting());
-        this.statistics.addCost(day, numInfectedFarms * parameters.getCostOfInfectedFarmPerDay());
+        this.statistics.addCost(CostCategory.INFECTED_FARMS,
+                                numInfectedFarms * parameters.getCostOfInfectedFarmPerDay());
 
-        this.statistics.addCost(day, restrictedFarms.size() * parameters.getCostOfMvmtBanPerDay());
+        this.statistics.addCost(CostCategory.MOVEMENT_RESTRICTION,
+                                restrictedFarms.getSize() * parameters.getCostOfMvmtBanPerDay());
+    }
+
+    /**
+     * Lift the movement restrictions that end today.
+     */
+    private void liftRestrictions() {
+        restrictionScheduler.liftDue(this.getDay(), (index) -> {
+            if (restrictedFarms.remove(index)) {
+                farmStates.getTransitions().addRestrictionLifted(index);
+            }
+        });
     }
 
     /**
      * Remove all the .ser nd .json files that have a day > today.
      */
     private void cleanupDataFiles() {
-        if (cleanupRequired) {
+        if (cleanupRequired && persistent) {
             Path path = Paths.get(parameters.getDirectory()).resolve(this.sessionId);
             File[] files = path.toFile().listFiles((d, name) -> name.startsWith(sessionId)
                                                                 && name.endsWith(".ser"));
@@ -321,6 +652,7 @@ public class Simulation implements Serializable {
      */
     public final void finalise() {
         log.info("\n{}", statistics.toString());
+        log.info("Cost by category:\n{}", statistics.getCostLedger().toString());
 
         // empty the contents of the pid file
         helper.savePid(sessionId, "");
@@ -344,20 +676,15 @@ public class Simulation implements Serializable {
                 .filter((farm) -> (farm.getStatus() == DiseaseState.SUSCEPTIBLE))
                 .collect(Collectors.toList());
 
+        kernelCache = KernelCache.forParameters(kernelCache, map, parameters);
+        final KernelCache weights = kernelCache;
         infectedFarms.forEach((infected) -> {
+            final boolean infectedRestricted = restrictedFarms.isRestricted(infected.getIndex());
             susceptibleFarms.forEach((susceptible) -> {
-                final double sep = helper.getFarmDistance(infected, susceptible);
-
-                double power = parameters.getKernelPower();
-                if (restrictedFarms.contains(infected.getId())
-                    || restrictedFarms.contains(susceptible.getId())) {
-                    power = parameters.getRestrictedKernelPower();
-                }
-
-                final double prob = Math.pow(1 + (sep / parameters.getKernelOffset()), -power)
-                                    * infected.getHerdSize() * susceptible.getHerdSize()
-                                    * parameters.getBeta();
-
+                // the weight falls off with the distance between the farms, faster if either is restricted.
+                final double prob = weights.weight(infected.getIndex(), susceptible.getIndex(),
+                                                   infectedRestricted
+                                                   || restrictedFarms.isRestricted(susceptible.getIndex()));
                 kern.addToKernel(new Event(infected, susceptible, Event.Type.INFECTION), prob);
             });
         });
@@ -382,6 +709,10 @@ public class Simulation implements Serializable {
         jsFile.append("\"culled\": \"").append(countFarms(DiseaseState.CULLED)).append("\", ");
         jsFile.append("\"vaccinated\": \"").append(countFarms(DiseaseState.VACCINATED)).append("\", ");
         jsFile.append("\"cost\": \"").append(statistics.getCost(day - 1)).append("\", ");
+        jsFile.append("\"cost_breakdown\": ").append(statistics.getCostLedger().totalsAsJson()).append(", ");
+        jsFile.append("\"r_t\": \"").append(statistics.getMetrics().getReproductionNumber()).append("\", ");
+        jsFile.append("\"growth_rate\": \"").append(statistics.getMetrics().getGrowthRate()).append("\", ");
+        jsFile.append("\"doubling_time\": \"").append(statistics.getMetrics().getDoublingTime()).append("\", ");
         jsFile.append("\"farms\": [");
 
         jsFile.append(farms.stream().map(Farm::asJson)
@@ -392,6 +723,45 @@ public class Simulation implements Serializable {
         return jsFile.toString();
     }
 
+    /**
+     * Create the farms of the simulation, one for each farm in the map, indexed by their index in the map.
+     * @param states the states of the farms.
+     * @return the (unmodifiable) list of farms.
+     */
+    private static List<Farm> createFarms(final FarmStates states) {
+        final Farm[] farmArray = new Farm[states.size()];
+        for (int i = 0; i < farmArray.length; i++) {
+            farmArray[i] = new Farm(states, i);
+        }
+        return Collections.unmodifiableList(Arrays.asList(farmArray));
+    }
+
+    /**
+     * Get the farm at a given index of the map.
+     * @param index the index of the farm.
+     * @return the farm.
+     */
+    public final Farm getFarm(final int index) {
+        return farms.get(index);
+    }
+
+    /**
+     * Set the control strategy and attach it to the simulation.
+     * @param strategy the control strategy.
+     */
+    public final void setControlStrategy(final ControlStrategy strategy) {
+        this.controlStrategy = strategy;
+        strategy.attach(this);
+    }
+
+    /**
+     * Get the log of the changes to the farms that the control strategy has not handled yet.
+     * @return the transition log.
+     */
+    public final TransitionLog getTransitions() {
+        return farmStates.getTransitions();
+    }
+
     /**
      * Get a collection of farms (a java.util.Set) which are labelled as SUSPECTED.
      * @return a a java.util.Set of SUSPECTED farms.
@@ -455,12 +825,23 @@ public class Simulation implements Serializable {
     private int day;
     @JsonIgnore
     @Getter
-    private final Set<Farm> farms;
+    private final FarmMap map;
+    @JsonIgnore
+    @Getter
+    private final FarmStates farmStates;
+    /**
+     * The farms of the simulation in the order of their index in the map.
+     */
+    @JsonIgnore
+    @Getter
+    private final List<Farm> farms;
+    /**
+     * The farms whose movements are restricted (those of the farm states).
+     */
     @Getter
-    private final Set<Integer> restrictedFarms;
+    private final RestrictedFarms restrictedFarms;
     private final PopulationManager manager;
     @Getter
-    @Setter
     private ControlStrategy controlStrategy;
     @Getter
     private final Statistics statistics;
@@ -468,22 +849,65 @@ public class Simulation implements Serializable {
     private final StochasticSimulator simulator;
     @Getter
     private final Map<Integer, Collection<Event>> SuspisciousFarmTests;
+    /**
+     * The days on which the movement restrictions of the farms are lifted.
+     */
     @Getter
-    private final Map<Integer, Collection<Integer>> easeMvmtRestriction;
+    private final RestrictionScheduler restrictionScheduler;
     private TransitionKernel kernel;
+    /**
+     * The weights of the infection kernel (the cache shared by the simulations on the same map with the same kernel
+     * parameters, it is not saved with the session).
+     */
+    private transient KernelCache kernelCache;
+    @Getter
+    private volatile boolean threadRunning;
+    /**
+     * The limits (cancellation, wall-clock and CPU budgets) of the current run, or null if the run is unlimited.
+     */
+    @JsonIgnore
     @Getter
-    private boolean threadRunning;
+    @Setter
+    private transient RunLimits limits;
+    /**
+     * The root of the random number streams of the simulation; the engine, the daily tests, the control strategies
+     * and the forks each draw from their own sub-stream of it.
+     */
     @JsonIgnore
-    private final RNG rng;
-    private final int rngSeed;
+    private final CounterRng random;
     @JsonIgnore
     @Setter
     @Getter
     private boolean cleanupRequired;
+    /**
+     * The rule for stopping runFor early (e.g. once the cost of an ensemble replicate exceeds a threshold), or null
+     * to run to the end.
+     */
+    @JsonIgnore
+    @Getter
+    @Setter
+    private StoppingRule stoppingRule;
+    /**
+     * The reason the stopping rule stopped the last runFor, or null if it was not stopped.
+     */
+    @JsonIgnore
+    @Getter
+    private String stoppedBy;
+    /**
+     * Whether the session is saved to disk (session directory, .ser/.json snapshots and pid file).
+     */
+    @JsonIgnore
+    @Getter
+    @Setter(AccessLevel.PACKAGE)
+    private boolean persistent;
     @JsonIgnore
     @Setter
     private boolean dayWithEvents;
     @JsonIgnore
     private final int MAX_ENDDATE = 1000;
     private static final long serialVersionUID = 84345527169572871L;
+    private static final long ENGINE_STREAM = 0;
+    private static final long TEST_STREAM = 1;
+    private static final long STRATEGY_STREAM = 2;
+    private static final long FORK_STREAM = 3;
 }
@@ -0,0 +1,35 @@
+package uk.ac.bioss.cowtastrophe;
+
+import broadwick.BroadwickException;
+
+/**
+ * Thrown when a simulation stops because it was cancelled or ran out of its time budget. If the simulation stopped
+ * part way through a day its in-memory state is incomplete; the snapshot of the last completed day (day
+ * {@link #getDay()}) should be used instead.
+ */
+public class SimulationCancelledException extends BroadwickException {
+
+    /**
+     * Create the exception.
+     * @param reason    why the simulation was stopped.
+     * @param completed the last completed day, i.e. the day of the last consistent snapshot.
+     */
+    public SimulationCancelledException(final String reason, final int completed) {
+        super("Simulation stopped (" + reason + "); last completed day " + completed);
+        this.day = completed;
+    }
+
+    /**
+     * Get the day of the last consistent snapshot.
+     * @return the day.
+     */
+    public final int getDay() {
+        return day;
+    }
+
+    private final int day;
+    /**
+     * The serialVersionUID.
+     */
+    private static final long serialVersionUID = -2291838403364718530L;
+}
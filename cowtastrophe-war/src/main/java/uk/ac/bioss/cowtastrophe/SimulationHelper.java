@@ -1,19 +1,22 @@
 package uk.ac.bioss.cowtastrophe;
 
+import broadwick.BroadwickException;
 import broadwick.io.FileOutput;
 import com.google.common.base.Throwables;
-import static com.google.common.collect.MoreCollectors.onlyElement;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.io.Writer;
 import java.lang.management.ManagementFactory;
 import java.math.BigInteger;
 import java.security.SecureRandom;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -39,8 +42,7 @@ public class SimulationHelper implements Serializable {
      * @return the distance between f1 and f2.
      */
     public final double getFarmDistance(final Farm f1, final Farm f2) {
-        return Math.sqrt(Math.pow(f1.getX() - f2.getX(), 2)
-                         + Math.pow(f1.getY() - f2.getY(), 2));
+        return simulation.getMap().distance(f1.getIndex(), f2.getIndex());
     }
 
     /**
@@ -49,30 +51,36 @@ public class SimulationHelper implements Serializable {
      * @return the farm.
      */
     public final Farm getFarmById(final int farmId) {
-        return simulation.getFarms().stream()
-                .filter(f -> f.getId() == farmId)
-                .collect(onlyElement());
+        return simulation.getFarm(simulation.getMap().indexOf(farmId));
     }
 
     /**
-     * Get a list of all farms that are within a given radius of a reference farm.
+     * Get a list of all farms that are within a given radius of a reference farm. The spatial index of the map is
+     * used so that only the farms near the reference farm are examined.
      * @param f1       the reference farm
      * @param distance the specified radius.
      * @return a list of farms within distance from f1.
      */
     public final List<Farm> getAllFarmsWithindistance(final Farm f1,
                                                       final double distance) {
-        return simulation.getFarms().stream().filter(f -> getFarmDistance(f1, f) <= distance)
-                .collect(Collectors.toList());
+        final int[] indices = simulation.getMap().indicesWithin(f1.getIndex(), distance);
+        final List<Farm> nearby = new ArrayList<>(indices.length);
+        for (int index : indices) {
+            nearby.add(simulation.getFarm(index));
+        }
+        return nearby;
     }
 
     /**
      * Serialise the simulation to a file.
      * @param sessionId the session id for this process (will be used as the filename).
      * @param time      the simulation time of the session (will be used as the filename).
-     * @return the file that the simulation was serialised to.
+     * @return the file that the simulation was serialised to (empty if the simulation is not persistent).
      */
     public final String saveSession(final String sessionId, final double time) {
+        if (!simulation.isPersistent()) {
+            return "";
+        }
         String sessionDir = new File(parameters.getDirectory(), sessionId).getAbsolutePath();
         String sessionFile = new File(sessionDir, sessionId + "_" + ((int)time) + ".ser").getAbsolutePath();
         String jsonFile = new File(sessionDir, sessionId + "_" + ((int)time) + ".json").getAbsolutePath();
@@ -98,6 +106,26 @@ public class SimulationHelper implements Serializable {
         return sessionFile;
     }
 
+    /**
+     * Load a simulation that was serialised by saveSession.
+     * @param directory the directory in which the sessions are stored.
+     * @param sessionId the session id of the simulation.
+     * @param time      the simulation time (day) of the snapshot.
+     * @return the simulation.
+     */
+    public static Simulation loadSession(final String directory, final String sessionId, final int time) {
+        String sessionDir = new File(directory, sessionId).getAbsolutePath();
+        String sessionFile = new File(sessionDir, sessionId + "_" + time + ".ser").getAbsolutePath();
+        log.info("Loading session from " + sessionFile);
+
+        try (ObjectInputStream serFile = new ObjectInputStream(new FileInputStream(sessionFile))) {
+            return (Simulation) serFile.readObject();
+        } catch (IOException | ClassNotFoundException ex) {
+            throw new BroadwickException("Error loading session " + sessionFile + "; "
+                                         + Throwables.getStackTraceAsString(ex));
+        }
+    }
+
     /**
      * Save the process id of the current process.
      * @param sessionId the sessin id for this process (will be used as the filename).
@@ -119,6 +147,9 @@ public class SimulationHelper implements Serializable {
      * @param pid       the process id to save.
      */
     public final void savePid(final String sessionId, final String pid) {
+        if (!simulation.isPersistent()) {
+            return;
+        }
         // save it to a file called [sessionId].pid
         String sessionDir = new File(parameters.getDirectory(), sessionId).getAbsolutePath();
         String sessionFile = new File(sessionDir, sessionId + ".pid").getAbsolutePath();
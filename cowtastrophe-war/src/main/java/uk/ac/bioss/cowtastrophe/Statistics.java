@@ -1,51 +1,97 @@
 package uk.ac.bioss.cowtastrophe;
 
-import broadwick.utils.Pair;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
-import java.util.Collection;
-import java.util.LinkedHashSet;
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.Arrays;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import lombok.Getter;
 
 /**
  * A class to store the statistics (number of infected farms etc.) in the simulation.
+ * <p>
+ * The measurements are held in columns of primitives indexed by day (one column per measure), together with the
+ * running total of the cost, so a measurement or the total cost up to a day is read in constant time and a copy of
+ * the statistics is a copy of a few arrays. The columns grow as days are recorded (in either direction, so days
+ * before day 0 can be recorded too).
+ * <p>
+ * Who infected whom is held in an InfectionTree and the reproduction number, growth rate and doubling time in
+ * EpidemicMetrics. The costs of the day being simulated are booked by category in a CostLedger and posted to the day
+ * when it ends (see endDay).
  */
 public class Statistics implements Serializable {
 
     /**
-     * This class records the measurements that are recorded.
+     * The measurements that are recorded for each day.
      */
-    private class Measurements implements Serializable {
+    public enum Measure {
+        /** The number of susceptible farms. */
+        SUSCEPTIBLE(true),
+        /** The number of suspected farms. */
+        SUSPECTED(true),
+        /** The number of infectious farms that are not suspected. */
+        INFECTIOUS_NOT_SUSPECTED(true),
+        /** The number of confirmed farms. */
+        CONFIRMED(true),
+        /** The number of culled farms. */
+        CULLED(true),
+        /** The number of vaccinated farms. */
+        VACCINATED(true),
+        /** The number of farms under movement restriction. */
+        RESTRICTED(true),
+        /** The cost on the day. */
+        COST(false);
 
         /**
-         * Get a CSV of the measurements.
-         * @return the CSV string.
+         * Create the measure.
+         * @param isState true if the measure is a count of farms in a state (which stays the same after the end of
+         *                the simulation) rather than a daily amount (which is zero after the end).
          */
-        @Override
-        public String toString() {
-            return String.format("%d, %d, %d, %d, %d, %d, %d, %.2f", numSusceptibleFarms, numSuspectedFarms,
-                                 numInfectedButUnsuspectedFarms,
-                                 numConfirmedFarms, numCulledFarms,
-                                 numVaccinatedFarms, numRestrictedFarms, cost);
+        Measure(final boolean isState) {
+            this.state = isState;
         }
 
-        private int numSusceptibleFarms = 0;
-        private int numSuspectedFarms = 0;
-        private int numConfirmedFarms = 0;
-        private int numCulledFarms = 0;
-        private int numVaccinatedFarms = 0;
-        private int numRestrictedFarms = 0;
-        private int numInfectedButUnsuspectedFarms = 0;
-        private double cost = 0.0;
-        private static final long serialVersionUID = 745539930019474501L;
+        /**
+         * Whether the measure is a count of farms in a state (which holds its last value after the end of the
+         * simulation) rather than a daily amount.
+         */
+        @Getter
+        private final boolean state;
     }
 
     /**
      * Create the statistics class by initialising the measurements that will be taken.
      */
     public Statistics() {
-        stats = new TreeMap<>();
-        infectionTree = new LinkedHashSet<>();
+        counts = new int[NUM_COUNTS][INITIAL_CAPACITY];
+        costs = new double[INITIAL_CAPACITY];
+        totalCosts = new double[INITIAL_CAPACITY];
+        recorded = new boolean[INITIAL_CAPACITY];
+        infectionTree = new InfectionTree();
+        metrics = new EpidemicMetrics();
+        costLedger = new CostLedger();
+    }
+
+    /**
+     * Create a copy of the statistics (e.g. for a branch of a forked simulation).
+     * @param other the statistics to copy.
+     */
+    public Statistics(final Statistics other) {
+        final int capacity = Math.max(INITIAL_CAPACITY, other.size + INITIAL_CAPACITY);
+        counts = new int[NUM_COUNTS][];
+        for (int i = 0; i < NUM_COUNTS; i++) {
+            counts[i] = Arrays.copyOf(other.counts[i], capacity);
+        }
+        costs = Arrays.copyOf(other.costs, capacity);
+        totalCosts = Arrays.copyOf(other.totalCosts, capacity);
+        recorded = Arrays.copyOf(other.recorded, capacity);
+        origin = other.origin;
+        size = other.size;
+        infectionTree = new InfectionTree(other.infectionTree);
+        metrics = new EpidemicMetrics(other.metrics);
+        costLedger = new CostLedger(other.costLedger);
     }
 
     /**
@@ -54,14 +100,8 @@ public class Statistics implements Serializable {
      * @param num the number of susceptible farms on that day.
      */
     void setSusceptibleFarms(final int day, final int num) {
-        Measurements measurements = getMeasures(day);
-
-        // Get the last days entry in the stats map and from it get the number of previously
-        // infected farms.
-        //Optional<Integer> prevDay = stats.keySet().stream()
-        //        .filter(e -> (e < day)).max(Comparator.naturalOrder());
-        //measurements.numSusceptibleFarms += (getMeasures(prevDay.orElse(0)).numSusceptibleFarms + num);    
-        measurements.numSusceptibleFarms += num;
+        final int index = index(day);
+        counts[Measure.SUSCEPTIBLE.ordinal()][index] += num;
     }
 
     /**
@@ -70,9 +110,8 @@ public class Statistics implements Serializable {
      * @param num the number of suspected farms on that day.
      */
     public final void addSuspectedFarms(final int day, final int num) {
-        Measurements measurements = getMeasures(day);
-
-        measurements.numSuspectedFarms += num;
+        final int index = index(day);
+        counts[Measure.SUSPECTED.ordinal()][index] += num;
     }
 
     /**
@@ -81,9 +120,8 @@ public class Statistics implements Serializable {
      * @param num the number of vaccinated farms on that day.
      */
     public final void addVaccinatedFarms(final int day, final int num) {
-        Measurements measurements = getMeasures(day);
-
-        measurements.numVaccinatedFarms += num;
+        final int index = index(day);
+        counts[Measure.VACCINATED.ordinal()][index] += num;
     }
 
     /**
@@ -92,9 +130,8 @@ public class Statistics implements Serializable {
      * @param num the number of vaccinated farms on that day.
      */
     public final void addRestrictedFarms(final int day, final int num) {
-        Measurements measurements = getMeasures(day);
-
-        measurements.numRestrictedFarms += num;
+        final int index = index(day);
+        counts[Measure.RESTRICTED.ordinal()][index] += num;
     }
 
     /**
@@ -103,9 +140,8 @@ public class Statistics implements Serializable {
      * @param num the number of confirmed farms on that day.
      */
     public final void addConfirmedFarms(final int day, final int num) {
-        Measurements measurements = getMeasures(day);
-
-        measurements.numConfirmedFarms += num;
+        final int index = index(day);
+        counts[Measure.CONFIRMED.ordinal()][index] += num;
     }
 
     /**
@@ -114,9 +150,8 @@ public class Statistics implements Serializable {
      * @param num the number of culled farms on that day.
      */
     public final void addCulledFarms(final int day, final int num) {
-        Measurements measurements = getMeasures(day);
-
-        measurements.numCulledFarms += num;
+        final int index = index(day);
+        counts[Measure.CULLED.ordinal()][index] += num;
     }
 
     /**
@@ -125,52 +160,358 @@ public class Statistics implements Serializable {
      * @param num the number of culled farms on that day.
      */
     public final void addInfectedButNotSuspectedFarms(final int day, final int num) {
-        Measurements measurements = getMeasures(day);
+        final int index = index(day);
+        counts[Measure.INFECTIOUS_NOT_SUSPECTED.ordinal()][index] += num;
+    }
 
-        measurements.numInfectedButUnsuspectedFarms += num;
+    /**
+     * Book a cost to the day being simulated; it is posted to the day (and to its category in the cost ledger) when
+     * the day ends.
+     * @param category the category of the cost.
+     * @param cost     the cost.
+     */
+    public final void addCost(final CostCategory category, final double cost) {
+        costLedger.add(category, cost);
     }
 
     /**
-     * Add a cost for culling farms for a given day.
-     * @param day  the day to make the recording.
-     * @param cost the cost of culling farms farms on that day.
+     * Add an uncategorised cost for a given day (it is posted to the OTHER category of the cost ledger straight away).
+     * The ledger only holds days from day 0, so a cost for an earlier day is rejected rather than being posted to the
+     * costs but not to the ledger.
+     * @param day  the day to make the recording (not negative).
+     * @param cost the cost on that day.
      */
     public final void addCost(final int day, final double cost) {
-        Measurements measurements = getMeasures(day);
+        if (day < 0) {
+            throw new IllegalArgumentException("Cannot add a cost to day " + day + ", the days start at 0");
+        }
+        costLedger.post(day, CostCategory.OTHER, cost);
+        postCost(day, cost);
+    }
 
-        measurements.cost += cost;
+    /**
+     * Add a cost to the cost of a given day. The running totals of the later days are updated too, which is constant
+     * time when (as in a simulation) the cost is added to the last recorded day.
+     * @param day  the day to make the recording.
+     * @param cost the cost on that day.
+     */
+    private void postCost(final int day, final double cost) {
+        final int index = index(day);
+        costs[index] += cost;
+        for (int i = index; i < size; i++) {
+            totalCosts[i] += cost;
+        }
     }
 
     /**
-     * Get cumulative costs at end of given day.
-     * @param day the day to get the cumulative costs up to.
+     * Get the cost incurred on a given day.
+     * @param day the day.
+     * @return the cost on that day (0 if nothing was recorded for that day).
      */
     public final double getCost(final int day) {
-        Measurements measurements = getMeasures(day);
-        return measurements.cost;
+        final int index = day - origin;
+        return index >= 0 && index < size ? costs[index] : 0.0;
+    }
+
+    /**
+     * Get the total cost of all the days up to and including a given day.
+     * @param day the last day to include.
+     * @return the total cost.
+     */
+    public final double getTotalCost(final int day) {
+        final int index = Math.min(day - origin, size - 1);
+        return index >= 0 ? totalCosts[index] : 0.0;
+    }
+
+    /**
+     * Get a measurement for a given day.
+     * @param day     the day of the recording.
+     * @param measure the measure to get.
+     * @return the value recorded (0 if nothing was recorded for that day).
+     */
+    public final double get(final int day, final Measure measure) {
+        final int index = day - origin;
+        if (index < 0 || index >= size) {
+            return 0;
+        }
+        return measure == Measure.COST ? costs[index] : counts[measure.ordinal()][index];
+    }
+
+    /**
+     * Check whether anything was recorded for a given day.
+     * @param day the day.
+     * @return true if a measurement was recorded for that day.
+     */
+    public final boolean isRecorded(final int day) {
+        final int index = day - origin;
+        return index >= 0 && index < size && recorded[index];
+    }
+
+    /**
+     * Get the first day for which measurements have been recorded.
+     * @return the first day (0 if nothing has been recorded).
+     */
+    public final int getFirstDay() {
+        return origin;
+    }
+
+    /**
+     * Get the last day for which measurements have been recorded.
+     * @return the last day (getFirstDay() - 1 if nothing has been recorded).
+     */
+    public final int getLastDay() {
+        return origin + size - 1;
+    }
+
+    /**
+     * Get the days for which measurements have been recorded, in ascending order. The set is created on every call;
+     * use getFirstDay, getLastDay and isRecorded to go through the days without allocating.
+     * @return the set of days.
+     */
+    public final NavigableSet<Integer> getDays() {
+        final NavigableSet<Integer> days = new TreeSet<>();
+        for (int i = 0; i < size; i++) {
+            if (recorded[i]) {
+                days.add(origin + i);
+            }
+        }
+        return days;
+    }
+
+    /**
+     * Get the total cost of all the recorded days.
+     * @return the total cost.
+     */
+    public final double getTotalCost() {
+        return size == 0 ? 0.0 : totalCosts[size - 1];
+    }
+
+    /**
+     * Record an index case, i.e. a farm infected at the start of the simulation.
+     * @param day  the day the farm was infected.
+     * @param farm the infected farm.
+     */
+    public final void addIndexCase(final int day, final Farm farm) {
+        if (!infectionTree.contains(farm.getIndex())) {
+            this.infectionTree.addIndexCase(day, farm);
+            this.metrics.addIndexCase(day);
+        }
     }
 
     /**
      * Record a new infection.
+     * @param day      the day of the infection.
      * @param source   the course of the infection.
      * @param infected the newly infected farm.
      */
-    public final void addNewInfection(final Farm source, final Farm infected) {
-        this.infectionTree.add(new Pair<>(source.getId(), infected.getId()));
+    public final void addNewInfection(final int day, final Farm source, final Farm infected) {
+        if (infectionTree.contains(infected.getIndex())) {
+            return;
+        }
+        addIndexCase(day, source);
+        this.infectionTree.addInfection(day, source, infected);
+        this.metrics.addInfection(day, infectionTree.getDayInfected(source.getIndex()));
+    }
+
+    /**
+     * Mark the end of a simulated day: the costs booked during the day are posted to it and the epidemic metrics are
+     * updated. The simulator runs up to the end of a day, so the infections of a day keep arriving while the
+     * following day is simulated; the metrics are therefore brought up to the day before (the last day whose
+     * infections are all recorded).
+     * @param day the day that was simulated.
+     */
+    public final void endDay(final int day) {
+        postCost(day, costLedger.flush(day));
+        this.metrics.closeDay(day - 1);
     }
 
     /**
-     * Get the measures for a particular day if they exist or create an empty measures object if they don't.
+     * Get the number of infections (source to infected farm) recorded so far.
+     * @return the number of infections.
+     */
+    public final int getNumInfections() {
+        return infectionTree.getNumInfections();
+    }
+
+    /**
+     * Get the index in the columns of a day that is being recorded, extending the columns to cover the day if
+     * required. As the columns may be replaced it must be called before a column is read, not in its subscript.
      * @param day the day for which we want the measurements.
-     * @return a (guaranteed non-null) Measures object for that day.
+     * @return the index of the day.
      */
-    private Measurements getMeasures(final int day) {
-        Measurements measurements = stats.get(day);
-        if (measurements == null) {
-            measurements = new Measurements();
-            stats.put(day, measurements);
+    private int index(final int day) {
+        if (size == 0) {
+            origin = day;
+        } else if (day < origin) {
+            shift(origin - day);
+        }
+        final int index = day - origin;
+        if (index >= size) {
+            ensureCapacity(index + 1);
+            // the days in between have no cost, so they carry the running total forward.
+            final double total = size == 0 ? 0.0 : totalCosts[size - 1];
+            Arrays.fill(totalCosts, size, index + 1, total);
+            size = index + 1;
         }
-        return measurements;
+        recorded[index] = true;
+        return index;
+    }
+
+    /**
+     * Make room for a number of days before the first recorded day.
+     * @param days the number of days.
+     */
+    private void shift(final int days) {
+        ensureCapacity(size + days);
+        for (int[] column : counts) {
+            System.arraycopy(column, 0, column, days, size);
+            Arrays.fill(column, 0, days, 0);
+        }
+        System.arraycopy(costs, 0, costs, days, size);
+        Arrays.fill(costs, 0, days, 0.0);
+        System.arraycopy(totalCosts, 0, totalCosts, days, size);
+        Arrays.fill(totalCosts, 0, days, 0.0);
+        System.arraycopy(recorded, 0, recorded, days, size);
+        Arrays.fill(recorded, 0, days, false);
+        origin -= days;
+        size += days;
+    }
+
+    /**
+     * Make sure the columns can hold a number of days, doubling their capacity as required.
+     * @param capacity the number of days.
+     */
+    private void ensureCapacity(final int capacity) {
+        if (capacity <= costs.length) {
+            return;
+        }
+        final int newCapacity = Math.max(capacity, costs.length * 2);
+        for (int i = 0; i < NUM_COUNTS; i++) {
+            counts[i] = Arrays.copyOf(counts[i], newCapacity);
+        }
+        costs = Arrays.copyOf(costs, newCapacity);
+        totalCosts = Arrays.copyOf(totalCosts, newCapacity);
+        recorded = Arrays.copyOf(recorded, newCapacity);
+    }
+
+    /**
+     * Write the statistics as CSV (one line per recorded day: the day, the farm counts, the cost on the day and the
+     * total cost, preceded by a header of comment lines). Apart from the header nothing is allocated per line, so the
+     * statistics of long runs can be streamed to a file cheaply.
+     * @param out where the CSV is written.
+     * @throws IOException if the CSV cannot be written.
+     */
+    public final void writeCsv(final Appendable out) throws IOException {
+        out.append(CSV_HEADER);
+        final char[] digits = new char[MAX_DIGITS];
+        for (int i = 0; i < size; i++) {
+            if (!recorded[i]) {
+                continue;
+            }
+            appendLong(out, origin + i, digits);
+            for (int column : CSV_COUNT_ORDER) {
+                out.append(", ");
+                appendLong(out, counts[column][i], digits);
+            }
+            out.append(", ");
+            appendCents(out, costs[i], digits);
+            out.append(", ");
+            appendCents(out, totalCosts[i], digits);
+            out.append('\n');
+        }
+    }
+
+    /**
+     * Write the statistics in a binary, columnar form: the first day and the number of days, then each column in
+     * turn (the recorded flags, the farm counts of each measure and the costs). The infection tree is not written.
+     * @param out where the statistics are written.
+     * @throws IOException if the statistics cannot be written.
+     */
+    public final void writeBinary(final DataOutput out) throws IOException {
+        out.writeInt(origin);
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeBoolean(recorded[i]);
+        }
+        for (int[] column : counts) {
+            for (int i = 0; i < size; i++) {
+                out.writeInt(column[i]);
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            out.writeDouble(costs[i]);
+        }
+    }
+
+    /**
+     * Read statistics written by writeBinary.
+     * @param in where the statistics are read from.
+     * @return the statistics (without an infection tree).
+     * @throws IOException if the statistics cannot be read.
+     */
+    public static Statistics readBinary(final DataInput in) throws IOException {
+        final Statistics statistics = new Statistics();
+        final int first = in.readInt();
+        final int days = in.readInt();
+        statistics.ensureCapacity(days);
+        statistics.origin = first;
+        statistics.size = days;
+        for (int i = 0; i < days; i++) {
+            statistics.recorded[i] = in.readBoolean();
+        }
+        for (int[] column : statistics.counts) {
+            for (int i = 0; i < days; i++) {
+                column[i] = in.readInt();
+            }
+        }
+        double total = 0.0;
+        for (int i = 0; i < days; i++) {
+            statistics.costs[i] = in.readDouble();
+            total += statistics.costs[i];
+            statistics.totalCosts[i] = total;
+        }
+        return statistics;
+    }
+
+    /**
+     * Append an integer without allocating.
+     * @param out    where the integer is appended.
+     * @param value  the integer.
+     * @param digits a scratch buffer.
+     * @throws IOException if the integer cannot be appended.
+     */
+    private static void appendLong(final Appendable out, final long value, final char[] digits) throws IOException {
+        if (value < 0) {
+            out.append('-');
+        }
+        long remaining = Math.abs(value);
+        int position = digits.length;
+        do {
+            digits[--position] = (char) ('0' + remaining % 10);
+            remaining /= 10;
+        } while (remaining > 0);
+        while (position < digits.length) {
+            out.append(digits[position++]);
+        }
+    }
+
+    /**
+     * Append an amount with two decimal places without allocating.
+     * @param out    where the amount is appended.
+     * @param value  the amount.
+     * @param digits a scratch buffer.
+     * @throws IOException if the amount cannot be appended.
+     */
+    private static void appendCents(final Appendable out, final double value, final char[] digits)
+            throws IOException {
+        final long cents = Math.round(Math.abs(value) * CENTS);
+        if (value < 0 && cents != 0) {
+            out.append('-');
+        }
+        appendLong(out, cents / CENTS, digits);
+        out.append('.');
+        out.append((char) ('0' + cents % CENTS / 10));
+        out.append((char) ('0' + cents % 10));
     }
 
     /**
@@ -179,39 +520,80 @@ public class Statistics implements Serializable {
      */
     @Override
     public final String toString() {
-
-        StringBuilder sb = new StringBuilder();
-        sb.append("#Column 1 : Time\n");
-        sb.append("#Column 2 : Susceptible Farms\n");
-        sb.append("#Column 3 : Farms Suspected\n");
-        sb.append("#Column 4 : Infectious but not suspected\n");
-        sb.append("#Column 5 : Farms Confirmed\n");
-        sb.append("#Column 6 : Farms Culled\n");
-        sb.append("#Column 7 : Farms Vaccinated\n");
-        sb.append("#Column 8 : Restricted Farms\n");
-        sb.append("#Column 9 : Cost on day\n");
-        sb.append("#Column 10 : Total Cost\n");
-        stats.entrySet().forEach((entry) -> {
-
-            double totalCost = 0.0;
-            final int day = entry.getKey();
-            // cumulative cost thus far.
-            totalCost = stats.entrySet().stream().filter((entry2) -> (entry2.getKey() <= day))
-                    .map((entry2) -> entry2.getValue().cost)
-                    .reduce(totalCost, (accumulator, _item) -> accumulator + _item);
-
-            sb.append(entry.getKey()).append(", ").append(entry.getValue().toString())
-                    .append(", ").append(String.format("%.2f", totalCost))
-                    .append("\n");
-        });
+        final StringBuilder sb = new StringBuilder(CSV_HEADER.length() + size * CSV_LINE_LENGTH);
+        try {
+            writeCsv(sb);
+        } catch (IOException ex) {
+            // a StringBuilder does not throw.
+            throw new IllegalStateException(ex);
+        }
         return sb.toString();
     }
 
-    private final Map<Integer, Measurements> stats;
-    private final Collection<Pair<Integer, Integer>> infectionTree;
+    /**
+     * The farm counts, indexed by the ordinal of the measure then by day - origin.
+     */
+    private final int[][] counts;
+    /**
+     * The cost on each day, indexed by day - origin.
+     */
+    private double[] costs;
+    /**
+     * The total cost up to and including each day, indexed by day - origin.
+     */
+    private double[] totalCosts;
+    /**
+     * Whether anything was recorded on each day, indexed by day - origin.
+     */
+    private boolean[] recorded;
+    /**
+     * The day at index 0 of the columns.
+     */
+    private int origin;
+    /**
+     * The number of days covered by the columns.
+     */
+    private int size;
+    /**
+     * Who infected whom.
+     */
+    @Getter
+    private final InfectionTree infectionTree;
+    /**
+     * The costs by category.
+     */
+    @Getter
+    private final CostLedger costLedger;
+    /**
+     * The reproduction number, growth rate and doubling time, updated as the simulation runs.
+     */
+    @Getter
+    private final EpidemicMetrics metrics;
+    private static final int NUM_COUNTS = Measure.COST.ordinal();
+    private static final int INITIAL_CAPACITY = 32;
+    /**
+     * The order of the farm counts in the CSV.
+     */
+    private static final int[] CSV_COUNT_ORDER = {Measure.SUSCEPTIBLE.ordinal(), Measure.SUSPECTED.ordinal(),
+                                                  Measure.INFECTIOUS_NOT_SUSPECTED.ordinal(),
+                                                  Measure.CONFIRMED.ordinal(), Measure.CULLED.ordinal(),
+                                                  Measure.VACCINATED.ordinal(), Measure.RESTRICTED.ordinal()};
+    private static final String CSV_HEADER = "#Column 1 : Time\n"
+                                             + "#Column 2 : Susceptible Farms\n"
+                                             + "#Column 3 : Farms Suspected\n"
+                                             + "#Column 4 : Infectious but not suspected\n"
+                                             + "#Column 5 : Farms Confirmed\n"
+                                             + "#Column 6 : Farms Culled\n"
+                                             + "#Column 7 : Farms Vaccinated\n"
+                                             + "#Column 8 : Restricted Farms\n"
+                                             + "#Column 9 : Cost on day\n"
+                                             + "#Column 10 : Total Cost\n";
+    private static final int CSV_LINE_LENGTH = 64;
+    private static final int MAX_DIGITS = 20;
+    private static final long CENTS = 100;
 
     /**
      * The serialVersionUID.
      */
-    private static final long serialVersionUID = 721879930018356598L;
+    private static final long serialVersionUID = 3385712069416152208L;
 }
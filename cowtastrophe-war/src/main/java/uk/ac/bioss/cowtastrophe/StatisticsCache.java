@@ -0,0 +1,221 @@
+package uk.ac.bioss.cowtastrophe;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import lombok.Getter;
+
+/**
+ * A cache of the serialised daily statistics of the sessions, so that the time series of a session can be sent to a
+ * client without loading a snapshot per day (or even one snapshot) for every request.
+ * <p>
+ * The series of a session is held as the UTF-8 bytes of the comma separated JSON objects of its days (from day 0) and
+ * the offset in the bytes of the end of each day, so the series up to any cached snapshot time is a prefix of the
+ * bytes. The days of a snapshot never change, so when a session runs on (or a later snapshot is loaded) only the new
+ * days are serialised and appended. When a session is rewound, i.e. run again from an earlier snapshot (possibly with
+ * a different strategy), its later days are about to be rewritten and the series is truncated to the snapshot.
+ * <p>
+ * The bytes up to the length of a Series are never modified (a truncated series is copied before it is extended
+ * again), so a Series can be written to a client without holding a lock. The cache holds a bounded number of
+ * sessions, the least recently used are dropped.
+ */
+public final class StatisticsCache {
+
+    /**
+     * Create the cache.
+     * @param maxSessions the largest number of sessions whose series are cached.
+     */
+    public StatisticsCache(final int maxSessions) {
+        this.sessions = new LinkedHashMap<String, CachedSeries>(INITIAL_SESSIONS, LOAD_FACTOR, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, CachedSeries> eldest) {
+                return size() > maxSessions;
+            }
+
+            private static final long serialVersionUID = -2364093751228540711L;
+        };
+    }
+
+    /**
+     * Get the cached series of a session up to a snapshot time.
+     * @param sessionId the session id.
+     * @param time      the time (day) of the snapshot, the series holds the days before it.
+     * @return the series, null if the days up to the time are not all cached.
+     */
+    public synchronized Series get(final String sessionId, final int time) {
+        final CachedSeries entry = sessions.get(sessionId);
+        if (entry == null || entry.time < time) {
+            return null;
+        }
+        return new Series(entry.bytes, entry.ends[Math.max(0, time)], time);
+    }
+
+    /**
+     * Extend the cached series of a session with the days of its statistics that are not cached yet and get the
+     * series up to a snapshot time.
+     * @param sessionId  the session id.
+     * @param time       the time (day) of the snapshot of the statistics, i.e. the days before it are complete.
+     * @param statistics the statistics of the session at that time.
+     * @return the series up to the time.
+     */
+    public synchronized Series extend(final String sessionId, final int time, final Statistics statistics) {
+        CachedSeries entry = sessions.get(sessionId);
+        if (entry == null) {
+            entry = new CachedSeries();
+            sessions.put(sessionId, entry);
+        }
+        if (entry.time < time) {
+            final StringBuilder days = new StringBuilder(DAY_LENGTH * (time - entry.time));
+            entry.ensureCapacity(time);
+            final int[] dayEnds = new int[time - entry.time];
+            for (int day = entry.time; day < time; day++) {
+                if (statistics.isRecorded(day)) {
+                    appendDay(days.append(entry.isEmpty() && days.length() == 0 ? "" : ", "), statistics, day);
+                }
+                dayEnds[day - entry.time] = days.length();
+            }
+            // the series is ASCII (numbers and names) so the character offsets are byte offsets.
+            final byte[] appended = days.toString().getBytes(StandardCharsets.UTF_8);
+            final int start = entry.length;
+            entry.append(appended);
+            for (int i = 0; i < dayEnds.length; i++) {
+                entry.ends[entry.time + 1 + i] = start + dayEnds[i];
+            }
+            entry.time = time;
+        }
+        return new Series(entry.bytes, entry.ends[Math.max(0, time)], time);
+    }
+
+    /**
+     * Truncate the cached series of a session that is rewound to a snapshot: the days from the time of the snapshot
+     * on are dropped.
+     * @param sessionId the session id.
+     * @param time      the time (day) of the snapshot.
+     */
+    public synchronized void truncate(final String sessionId, final int time) {
+        final CachedSeries entry = sessions.get(sessionId);
+        if (entry != null && entry.time > time) {
+            entry.time = Math.max(0, time);
+            entry.length = entry.ends[entry.time];
+            // the old bytes may be being sent, the days that replace the dropped ones go to a copy.
+            entry.bytes = Arrays.copyOf(entry.bytes, entry.bytes.length);
+        }
+    }
+
+    /**
+     * Append the JSON object of a day.
+     * @param json       the JSON being built.
+     * @param statistics the statistics.
+     * @param day        the day.
+     */
+    private static void appendDay(final StringBuilder json, final Statistics statistics, final int day) {
+        json.append("{\"day\": ").append(day);
+        for (Statistics.Measure measure : Statistics.Measure.values()) {
+            if (measure.isState()) {
+                json.append(", \"").append(NAMES[measure.ordinal()]).append("\": ")
+                        .append((int) statistics.get(day, measure));
+            }
+        }
+        json.append(", \"cost\": ").append(statistics.getCost(day));
+        json.append(", \"total_cost\": ").append(statistics.getTotalCost(day)).append('}');
+    }
+
+    /**
+     * The serialised series of a session up to a snapshot time: the comma separated JSON objects of the days (the
+     * contents of a JSON array).
+     */
+    public static final class Series {
+
+        /**
+         * Create the series.
+         * @param data     the bytes of the series.
+         * @param numBytes the number of bytes of the series.
+         * @param snapshot the time of the snapshot.
+         */
+        Series(final byte[] data, final int numBytes, final int snapshot) {
+            this.bytes = data;
+            this.length = numBytes;
+            this.time = snapshot;
+        }
+
+        /**
+         * Write the series.
+         * @param out the stream to which the series is written.
+         * @throws IOException if the series cannot be written.
+         */
+        public void writeTo(final OutputStream out) throws IOException {
+            out.write(bytes, 0, length);
+        }
+
+        private final byte[] bytes;
+        /**
+         * The number of bytes of the series.
+         */
+        @Getter
+        private final int length;
+        /**
+         * The time of the snapshot, the series holds the days before it.
+         */
+        @Getter
+        private final int time;
+    }
+
+    /**
+     * The cached series of a session.
+     */
+    private static final class CachedSeries {
+
+        /**
+         * Check whether no day has been serialised.
+         * @return true if the series is empty.
+         */
+        boolean isEmpty() {
+            return length == 0;
+        }
+
+        /**
+         * Make sure the offsets can hold the end of the days before a time.
+         * @param upTo the time.
+         */
+        void ensureCapacity(final int upTo) {
+            if (upTo >= ends.length) {
+                ends = Arrays.copyOf(ends, Math.max(upTo + 1, ends.length * 2));
+            }
+        }
+
+        /**
+         * Append bytes to the series, doubling its capacity as required.
+         * @param data the bytes.
+         */
+        void append(final byte[] data) {
+            if (length + data.length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(length + data.length, bytes.length * 2));
+            }
+            System.arraycopy(data, 0, bytes, length, data.length);
+            length += data.length;
+        }
+
+        private byte[] bytes = new byte[INITIAL_BYTES];
+        private int length;
+        /**
+         * The offset of the end of the days before each time, ends[0] = 0.
+         */
+        private int[] ends = new int[INITIAL_DAYS];
+        /**
+         * The time up to which the days are cached.
+         */
+        private int time;
+    }
+
+    private final Map<String, CachedSeries> sessions;
+    private static final String[] NAMES = {"susceptible", "suspected", "infectious_not_suspected", "confirmed",
+                                           "culled", "vaccinated", "restricted"};
+    private static final int INITIAL_SESSIONS = 16;
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final int INITIAL_BYTES = 4096;
+    private static final int INITIAL_DAYS = 64;
+    private static final int DAY_LENGTH = 200;
+}
@@ -0,0 +1,88 @@
+package uk.ac.bioss.cowtastrophe;
+
+import broadwick.BroadwickException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Throwables;
+import java.io.IOException;
+import java.io.Serializable;
+import lombok.Getter;
+
+/**
+ * A rule for stopping a run once its outcome is decided, e.g. once an ensemble replicate has cost more than a
+ * threshold or infected more than a given number of farms, so that no time is spent on the rest of it. A stopped run
+ * keeps the statistics of the days it ran.
+ * <p>
+ * Subclasses can stop on other criteria by overriding check, which is called at the end of every simulated day.
+ */
+public class StoppingRule implements Serializable {
+
+    /**
+     * Create the rule.
+     * @param costThreshold     the total cost at which the run is stopped (&lt;= 0 for no limit).
+     * @param infectedThreshold the number of farms infected (including the seeds) at which the run is stopped (&lt;= 0
+     *                          for no limit).
+     */
+    public StoppingRule(final double costThreshold, final int infectedThreshold) {
+        this.maxCost = costThreshold;
+        this.maxInfected = infectedThreshold;
+    }
+
+    /**
+     * Read the rule from a JSON object of the form {"maxCost" : 1.0e6, "maxInfected" : 50} (either field can be
+     * omitted).
+     * @param json the JSON string.
+     * @return the rule.
+     */
+    public static StoppingRule fromJson(final String json) {
+        try {
+            final JsonNode node = new ObjectMapper().readTree(json);
+            return new StoppingRule(node.path("maxCost").asDouble(0), node.path("maxInfected").asInt(0));
+        } catch (IOException ex) {
+            throw new BroadwickException("Could not read stopping rule " + json + "; "
+                                         + Throwables.getStackTraceAsString(ex));
+        }
+    }
+
+    /**
+     * Check whether a simulation should be stopped.
+     * @param simulation the simulation.
+     * @return the reason for stopping the simulation, or null if it should carry on.
+     */
+    public String check(final Simulation simulation) {
+        if (maxInfected > 0) {
+            final int infected = simulation.getMap().getSeedIndices().length
+                                 + simulation.getStatistics().getNumInfections();
+            if (infected >= maxInfected) {
+                return String.format("%d farms infected (limit %d)", infected, maxInfected);
+            }
+        }
+        if (maxCost > 0) {
+            final double cost = simulation.getStatistics().getTotalCost();
+            if (cost >= maxCost) {
+                return String.format("total cost %.2f (limit %.2f)", cost, maxCost);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("{\"maxCost\": %s, \"maxInfected\": %d}", maxCost, maxInfected);
+    }
+
+    /**
+     * The total cost at which a run is stopped (&lt;= 0 for no limit).
+     */
+    @Getter
+    private final double maxCost;
+    /**
+     * The number of farms infected at which a run is stopped (&lt;= 0 for no limit).
+     */
+    @Getter
+    private final int maxInfected;
+    /**
+     * The serialVersionUID.
+     */
+    private static final long serialVersionUID = -2290118345472925311L;
+}
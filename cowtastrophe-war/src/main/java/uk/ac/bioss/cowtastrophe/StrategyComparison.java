@@ -0,0 +1,266 @@
+package uk.ac.bioss.cowtastrophe;
+
+import broadwick.BroadwickException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Throwables;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import uk.ac.bioss.cowtastrophe.controls.ControlStrategyFactory;
+
+/**
+ * Compare a number of control strategies from the same starting point. The simulation is forked once per strategy and
+ * each branch is run for the same number of days in parallel.
+ * <p>
+ * The branches are not persistent (nothing is written to the session directory) and they use the same random number
+ * stream, so the differences between the outcomes are due to the strategies rather than to the random numbers drawn.
+ */
+@Slf4j
+public final class StrategyComparison {
+
+    /**
+     * The settings of a strategy, as given by the culling/vaccinate/move options of the web form.
+     */
+    public static final class Settings {
+
+        /**
+         * Create the settings.
+         * @param cull       the culling setting.
+         * @param vacc       the vaccinate setting.
+         * @param vacRadius  the vaccination radius.
+         * @param move       the movement restriction setting.
+         * @param moveRadius the movement restriction radius.
+         */
+        public Settings(final int cull, final int vacc, final double vacRadius, final int move,
+                        final double moveRadius) {
+            this.culling = cull;
+            this.vaccinate = vacc;
+            this.vacradius = vacRadius;
+            this.move = move;
+            this.moveradius = moveRadius;
+        }
+
+        /**
+         * Read the settings from a JSON object with (optional) culling, vaccinate, vacradius, move and moveradius
+         * fields.
+         * @param node the JSON object.
+         * @return the settings.
+         */
+        public static Settings fromJson(final JsonNode node) {
+            return new Settings(node.path("culling").asInt(ControlStrategy.CULL_NOT),
+                                node.path("vaccinate").asInt(ControlStrategy.VAC_NOT),
+                                node.path("vacradius").asDouble(-1),
+                                node.path("move").asInt(ControlStrategy.MOVE_NOT),
+                                node.path("moveradius").asDouble(-1));
+        }
+
+        /**
+         * Create a copy of these settings with different radii.
+         * @param vacRadius  the vaccination radius.
+         * @param moveRadius the movement restriction radius.
+         * @return the new settings.
+         */
+        public Settings withRadii(final double vacRadius, final double moveRadius) {
+            return new Settings(culling, vaccinate, vacRadius, move, moveRadius);
+        }
+
+        /**
+         * Create the control strategy for these settings.
+         * @return the control strategy.
+         */
+        public ControlStrategy create() {
+            return ControlStrategyFactory.create(culling, vaccinate, vacradius, move, moveradius);
+        }
+
+        @Getter
+        private final int culling;
+        @Getter
+        private final int vaccinate;
+        @Getter
+        private final double vacradius;
+        @Getter
+        private final int move;
+        @Getter
+        private final double moveradius;
+    }
+
+    /**
+     * The outcome of running one strategy.
+     */
+    public static final class Outcome {
+
+        /**
+         * Create the outcome of a run.
+         * @param strategy  the settings of the strategy that was run.
+         * @param sim       the simulation after the run.
+         * @param startDay  the day the run started on.
+         * @param stopped   why the run stopped early (null if it ran to the end).
+         */
+        Outcome(final Settings strategy, final Simulation sim, final int startDay, final String stopped) {
+            this.settings = strategy;
+            this.day = sim.getDay();
+            this.cost = sim.getStatistics().getTotalCost(sim.getDay() - 1)
+                        - sim.getStatistics().getTotalCost(startDay - 1);
+            this.counts = new int[DiseaseState.values().length];
+            for (Farm farm : sim.getFarms()) {
+                counts[farm.getStatus().ordinal()]++;
+            }
+            this.stoppedReason = stopped;
+        }
+
+        /**
+         * Get the number of farms in a given state at the end of the run.
+         * @param state the disease state.
+         * @return the number of farms.
+         */
+        public int getCount(final DiseaseState state) {
+            return counts[state.ordinal()];
+        }
+
+        @Getter
+        private final Settings settings;
+        /**
+         * The day the run finished on.
+         */
+        @Getter
+        private final int day;
+        /**
+         * The cost incurred over the run.
+         */
+        @Getter
+        private final double cost;
+        private final int[] counts;
+        @Getter
+        private final String stoppedReason;
+    }
+
+    /**
+     * Create the comparison.
+     * @param simulation the simulation from which every strategy starts (it is not modified).
+     * @param strategies the strategies to compare.
+     * @param numDays    the number of days to run each strategy for.
+     */
+    public StrategyComparison(final Simulation simulation, final List<Settings> strategies, final int numDays) {
+        this.base = simulation;
+        this.settings = Collections.unmodifiableList(new ArrayList<>(strategies));
+        this.days = numDays;
+    }
+
+    /**
+     * Read a list of strategy settings from a JSON array of objects with (optional) culling, vaccinate, vacradius,
+     * move and moveradius fields.
+     * @param strategiesJson the JSON array.
+     * @return the list of settings.
+     */
+    public static List<Settings> parse(final String strategiesJson) {
+        try {
+            final JsonNode node = new ObjectMapper().readTree(strategiesJson);
+            if (node == null || !node.isArray()) {
+                throw new BroadwickException("Expected a JSON array of strategies, got " + strategiesJson);
+            }
+            final List<Settings> strategies = new ArrayList<>(node.size());
+            for (JsonNode strategy : node) {
+                strategies.add(Settings.fromJson(strategy));
+            }
+            return strategies;
+        } catch (IOException ex) {
+            throw new BroadwickException("Could not read strategies; " + Throwables.getStackTraceAsString(ex));
+        }
+    }
+
+    /**
+     * Run every strategy, in parallel on the given executor. Every task runs on its own fork of the base simulation;
+     * the forks all use the same random number stream so the strategies are compared on common random numbers.
+     * @param executor        the executor on which the strategies are run.
+     * @param wallClockMillis the wall-clock budget of each run (&lt;= 0 for no limit).
+     * @param cpuMillis       the CPU budget of each run (&lt;= 0 for no limit).
+     * @return the outcomes, in the order of the strategies.
+     */
+    public List<Outcome> run(final ExecutorService executor, final long wallClockMillis, final long cpuMillis) {
+        final int startDay = base.getDay();
+
+        final List<Future<Outcome>> futures = new ArrayList<>(settings.size());
+        for (Settings strategy : settings) {
+            final Simulation branch = base.fork(0, strategy.create());
+            branch.setLimits(new RunLimits(wallClockMillis, cpuMillis));
+            futures.add(executor.submit(() -> {
+                String stopped = null;
+                try {
+                    branch.runFor(days);
+                } catch (SimulationCancelledException ex) {
+                    stopped = branch.getLimits().getReason();
+                }
+                return new Outcome(strategy, branch, startDay, stopped);
+            }));
+        }
+
+        final List<Outcome> outcomes = new ArrayList<>(futures.size());
+        try {
+            for (Future<Outcome> future : futures) {
+                outcomes.add(future.get());
+            }
+        } catch (InterruptedException ex) {
+            futures.forEach((future) -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new BroadwickException("Strategy comparison interrupted");
+        } catch (ExecutionException ex) {
+            futures.forEach((future) -> future.cancel(true));
+            throw new BroadwickException("Error comparing strategies; "
+                                         + Throwables.getStackTraceAsString(ex.getCause()));
+        }
+        return outcomes;
+    }
+
+    /**
+     * Get the outcomes of a comparison as JSON.
+     * @param outcomes the outcomes.
+     * @return A JSON string.
+     */
+    public String asJson(final List<Outcome> outcomes) {
+        StringBuilder jsFile = new StringBuilder();
+
+        jsFile.append("{");
+        jsFile.append("\"session_id\": \"").append(base.getSessionId()).append("\", ");
+        jsFile.append("\"timeframe\": ").append(base.getDay() + 1).append(", ");
+        jsFile.append("\"days\": ").append(days).append(", ");
+        jsFile.append("\"results\": [");
+        for (int i = 0; i < outcomes.size(); i++) {
+            final Outcome outcome = outcomes.get(i);
+            final Settings strategy = outcome.getSettings();
+            jsFile.append(i == 0 ? "{" : ", {");
+            jsFile.append("\"culling\": ").append(strategy.getCulling()).append(", ");
+            jsFile.append("\"vaccinate\": ").append(strategy.getVaccinate()).append(", ");
+            jsFile.append("\"vacradius\": ").append(strategy.getVacradius()).append(", ");
+            jsFile.append("\"move\": ").append(strategy.getMove()).append(", ");
+            jsFile.append("\"moveradius\": ").append(strategy.getMoveradius()).append(", ");
+            jsFile.append("\"timeframe\": ").append(outcome.getDay() + 1).append(", ");
+            jsFile.append("\"cost\": ").append(outcome.getCost()).append(", ");
+            for (DiseaseState state : DiseaseState.values()) {
+                jsFile.append("\"").append(state.name().toLowerCase()).append("\": ")
+                        .append(outcome.getCount(state)).append(", ");
+            }
+            if (outcome.getStoppedReason() != null) {
+                jsFile.append("\"stopped\": \"").append(outcome.getStoppedReason()).append("\", ");
+            }
+            jsFile.setLength(jsFile.length() - 2);
+            jsFile.append("}");
+        }
+        jsFile.append("]");
+        jsFile.append("}");
+
+        return jsFile.toString();
+    }
+
+    private final Simulation base;
+    @Getter
+    private final List<Settings> settings;
+    @Getter
+    private final int days;
+}
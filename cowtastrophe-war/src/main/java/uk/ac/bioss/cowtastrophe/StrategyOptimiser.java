@@ -0,0 +1,309 @@
+package uk.ac.bioss.cowtastrophe;
+
+import broadwick.BroadwickException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Throwables;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Search the culling/vaccination/movement restriction settings of the CullVacMoveCombi strategy for the one with the
+ * lowest expected total cost.
+ * <p>
+ * Every candidate is evaluated on the same random number streams (replicate r of every candidate uses the same seed)
+ * so the differences between candidates are not hidden by the noise between replicates. The search is a successive
+ * halving: every candidate gets a few replicates, the better 1/eta of them are kept and get eta times as many, and so
+ * on until one candidate is left or the maximum number of replicates is reached. The optimiser is described by a JSON
+ * file of the form
+ * <pre>
+ * {
+ *   "culling" : [0, 1, 2], "vaccinate" : [0, 2], "vacradius" : [2, 5, 10], "move" : [0, 1], "moveradius" : [5],
+ *   "replicates" : 4, "maxReplicates" : 64, "eta" : 2, "seed" : 42
+ * }
+ * </pre>
+ */
+@Slf4j
+public final class StrategyOptimiser {
+
+    /**
+     * A candidate strategy and the total costs of the replicates it has been run for.
+     */
+    public static final class Candidate {
+
+        /**
+         * Create the candidate.
+         * @param strategy      the settings of the strategy.
+         * @param maxReplicates the largest number of replicates the candidate can be run for.
+         */
+        Candidate(final StrategyComparison.Settings strategy, final int maxReplicates) {
+            this.settings = strategy;
+            this.costs = new double[maxReplicates];
+        }
+
+        /**
+         * Get the mean total cost over the replicates run so far.
+         * @return the mean cost.
+         */
+        public double getMeanCost() {
+            double sum = 0.0;
+            for (int i = 0; i < replicates; i++) {
+                sum += costs[i];
+            }
+            return sum / replicates;
+        }
+
+        /**
+         * Get the half width of the (normal approximation) 95% confidence interval of the mean total cost.
+         * @return the half width of the interval.
+         */
+        public double getConfidenceHalfWidth() {
+            if (replicates < 2) {
+                return Double.POSITIVE_INFINITY;
+            }
+            final double mean = getMeanCost();
+            double sumSq = 0.0;
+            for (int i = 0; i < replicates; i++) {
+                sumSq += (costs[i] - mean) * (costs[i] - mean);
+            }
+            return Z_95 * Math.sqrt(sumSq / (replicates - 1) / replicates);
+        }
+
+        @Getter
+        private final StrategyComparison.Settings settings;
+        private final double[] costs;
+        /**
+         * The number of replicates run so far.
+         */
+        @Getter
+        private int replicates;
+        /**
+         * The round in which the candidate was dropped (-1 if it was never dropped).
+         */
+        @Getter
+        private int droppedInRound = -1;
+    }
+
+    /**
+     * Read the description of the optimiser from a JSON file.
+     * @param directory   the directory where the output is stored.
+     * @param farmMap     the preset map from which every run starts.
+     * @param optionsFile the name of the JSON file.
+     */
+    public StrategyOptimiser(final String directory, final FarmMap farmMap, final String optionsFile) {
+        final JsonNode json;
+        try {
+            json = new ObjectMapper().readTree(new File(optionsFile));
+        } catch (IOException ex) {
+            throw new BroadwickException("Error reading optimiser options " + optionsFile + "; "
+                                         + Throwables.getStackTraceAsString(ex));
+        }
+        this.directory = directory;
+        this.map = farmMap;
+        this.initialReplicates = json.path("replicates").asInt(DEFAULT_INITIAL_REPLICATES);
+        final int requestedMaxReplicates = json.path("maxReplicates").asInt(DEFAULT_MAX_REPLICATES);
+        if (initialReplicates < 1 || requestedMaxReplicates < 1) {
+            throw new BroadwickException("The optimiser needs at least 1 replicate, got replicates = "
+                                         + initialReplicates + " and maxReplicates = " + requestedMaxReplicates
+                                         + " in " + optionsFile);
+        }
+        this.maxReplicates = Math.max(initialReplicates, requestedMaxReplicates);
+        this.eta = Math.max(2, json.path("eta").asInt(2));
+        this.seed = json.path("seed").asLong(System.currentTimeMillis());
+        if (!json.has("seed")) {
+            log.info("No seed in {}, using seed {} (add \"seed\" : {} to repeat the search)", optionsFile, seed, seed);
+        }
+        this.candidates = createCandidates(json);
+    }
+
+    /**
+     * Create a candidate for every combination of the settings. The vaccination (movement) radius is ignored if there
+     * is no vaccination (movement restriction), so those combinations are only created once.
+     * @param json the description of the optimiser.
+     * @return the candidates.
+     */
+    private List<Candidate> createCandidates(final JsonNode json) {
+        final Map<String, Candidate> unique = new LinkedHashMap<>();
+        for (double cull : values(json, "culling", ControlStrategy.CULL_NOT)) {
+            for (double vacc : values(json, "vaccinate", ControlStrategy.VAC_NOT)) {
+                for (double vacRadius : values(json, "vacradius", -1)) {
+                    for (double move : values(json, "move", ControlStrategy.MOVE_NOT)) {
+                        for (double moveRadius : values(json, "moveradius", -1)) {
+                            final StrategyComparison.Settings settings = new StrategyComparison.Settings(
+                                    (int) cull, (int) vacc, vacc == ControlStrategy.VAC_NOT ? -1 : vacRadius,
+                                    (int) move, move == ControlStrategy.MOVE_NOT ? -1 : moveRadius);
+                            final String key = settings.getCulling() + "/" + settings.getVaccinate() + "/"
+                                               + settings.getVacradius() + "/" + settings.getMove() + "/"
+                                               + settings.getMoveradius();
+                            unique.putIfAbsent(key, new Candidate(settings, maxReplicates));
+                        }
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(unique.values());
+    }
+
+    /**
+     * Read the values of a setting, a single value or an array of values.
+     * @param json         the description of the optimiser.
+     * @param name         the name of the setting.
+     * @param defaultValue the value if the setting is not given.
+     * @return the values.
+     */
+    private static double[] values(final JsonNode json, final String name, final double defaultValue) {
+        final JsonNode node = json.path(name);
+        if (node.isArray()) {
+            final double[] values = new double[node.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = node.get(i).asDouble();
+            }
+            return values;
+        }
+        return new double[]{node.asDouble(defaultValue)};
+    }
+
+    /**
+     * Run the search.
+     * @param threads the number of threads on which the replicates are run.
+     * @return all the candidates, best first: the survivors of the last round ordered by mean cost, then the
+     *         candidates that were dropped, those that lasted longest first.
+     */
+    public List<Candidate> run(final int threads) {
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final long start = System.currentTimeMillis();
+        int simulations = 0;
+        try {
+            List<Candidate> alive = new ArrayList<>(candidates);
+            int target = Math.min(initialReplicates, maxReplicates);
+            int round = 0;
+            while (true) {
+                simulations += runReplicates(executor, alive, target);
+                log.info("Round {}: {} candidates with {} replicates, best mean cost {}", round, alive.size(),
+                         target, alive.stream().mapToDouble(Candidate::getMeanCost).min().orElse(Double.NaN));
+                if (alive.size() <= 1 || target >= maxReplicates) {
+                    break;
+                }
+                alive.sort(Comparator.comparingDouble(Candidate::getMeanCost));
+                final int keep = (alive.size() + eta - 1) / eta;
+                for (Candidate dropped : alive.subList(keep, alive.size())) {
+                    dropped.droppedInRound = round;
+                }
+                alive = new ArrayList<>(alive.subList(0, keep));
+                target = (int) Math.min((long) target * eta, maxReplicates);
+                round++;
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        log.info("Evaluated {} candidates with {} simulations (a full evaluation would need {}) in {} ms",
+                 candidates.size(), simulations, candidates.size() * maxReplicates,
+                 System.currentTimeMillis() - start);
+
+        final List<Candidate> ranked = new ArrayList<>(candidates);
+        ranked.sort(Comparator.comparingInt((Candidate c) -> c.droppedInRound < 0 ? Integer.MIN_VALUE
+                                                             : -c.droppedInRound)
+                .thenComparingDouble(Candidate::getMeanCost));
+        return ranked;
+    }
+
+    /**
+     * Run the replicates each candidate is missing to reach a target number of replicates, in parallel.
+     * @param executor the executor on which the replicates are run.
+     * @param alive    the candidates.
+     * @param target   the number of replicates each candidate should have.
+     * @return the number of simulations that were run.
+     */
+    private int runReplicates(final ExecutorService executor, final List<Candidate> alive, final int target) {
+        final List<Callable<Void>> tasks = new ArrayList<>();
+        for (Candidate candidate : alive) {
+            for (int r = candidate.replicates; r < target; r++) {
+                final int replicate = r;
+                tasks.add(() -> {
+                    candidate.costs[replicate] = runReplicate(candidate.getSettings(), replicate);
+                    return null;
+                });
+            }
+        }
+        try {
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new BroadwickException("Strategy optimisation interrupted");
+        } catch (ExecutionException ex) {
+            throw new BroadwickException("Error running a replicate; "
+                                         + Throwables.getStackTraceAsString(ex.getCause()));
+        }
+        for (Candidate candidate : alive) {
+            candidate.replicates = Math.max(candidate.replicates, target);
+        }
+        return tasks.size();
+    }
+
+    /**
+     * Run a replicate of a strategy on the common random number stream of the replicate.
+     * @param settings  the settings of the strategy.
+     * @param replicate the number of the replicate.
+     * @return the total cost of the replicate.
+     */
+    private double runReplicate(final StrategyComparison.Settings settings, final int replicate) {
+        final Simulation simulation = new Simulation(directory, map, false, seed, replicate);
+        simulation.setControlStrategy(settings.create());
+        simulation.runToEnd();
+        return simulation.getStatistics().getTotalCost();
+    }
+
+    /**
+     * Get a ranked list of candidates as a table (one line per candidate) with the 95% confidence interval of the
+     * mean total cost.
+     * @param ranked the ranked candidates.
+     * @return the table.
+     */
+    public static String asTable(final List<Candidate> ranked) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("#rank, culling, vaccinate, vacradius, move, moveradius, replicates, mean cost, 95% CI low, "
+                  + "95% CI high, dropped in round\n");
+        for (int i = 0; i < ranked.size(); i++) {
+            final Candidate candidate = ranked.get(i);
+            final StrategyComparison.Settings settings = candidate.getSettings();
+            final double halfWidth = candidate.getConfidenceHalfWidth();
+            sb.append(String.format("%d, %d, %d, %.2f, %d, %.2f, %d, %.2f, %.2f, %.2f, %d%n", i + 1,
+                                    settings.getCulling(), settings.getVaccinate(), settings.getVacradius(),
+                                    settings.getMove(), settings.getMoveradius(), candidate.getReplicates(),
+                                    candidate.getMeanCost(), candidate.getMeanCost() - halfWidth,
+                                    candidate.getMeanCost() + halfWidth, candidate.getDroppedInRound()));
+        }
+        return sb.toString();
+    }
+
+    private final String directory;
+    @Getter
+    private final FarmMap map;
+    @Getter
+    private final List<Candidate> candidates;
+    @Getter
+    private final int initialReplicates;
+    @Getter
+    private final int maxReplicates;
+    @Getter
+    private final int eta;
+    @Getter
+    private final long seed;
+    private static final int DEFAULT_INITIAL_REPLICATES = 4;
+    private static final int DEFAULT_MAX_REPLICATES = 64;
+    private static final double Z_95 = 1.96;
+}
@@ -0,0 +1,82 @@
+package uk.ac.bioss.cowtastrophe;
+
+import java.io.Serializable;
+import lombok.Getter;
+
+/**
+ * The running count, mean and variance (by Welford's algorithm) and a quantile sketch of a stream of values. Two
+ * statistics are merged with the pairwise update of Chan et al., so partial statistics can be built independently
+ * (e.g. one per worker thread) and combined at the end.
+ */
+public final class StreamingStatistic implements Serializable {
+
+    /**
+     * Create an empty statistic.
+     * @param relativeAccuracy the relative accuracy of the quantiles.
+     */
+    public StreamingStatistic(final double relativeAccuracy) {
+        this.sketch = new QuantileSketch(relativeAccuracy);
+    }
+
+    /**
+     * Add a value.
+     * @param value the value.
+     */
+    public void add(final double value) {
+        count++;
+        final double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+        sketch.add(value);
+    }
+
+    /**
+     * Merge another statistic into this one.
+     * @param other the statistic to merge.
+     */
+    public void merge(final StreamingStatistic other) {
+        if (other.count == 0) {
+            return;
+        }
+        final long total = count + other.count;
+        final double delta = other.mean - mean;
+        mean += delta * other.count / total;
+        m2 += other.m2 + delta * delta * count * other.count / total;
+        count = total;
+        sketch.merge(other.sketch);
+    }
+
+    /**
+     * Get the (sample) variance of the values.
+     * @return the variance, 0 if there are fewer than two values.
+     */
+    public double getVariance() {
+        return count < 2 ? 0.0 : m2 / (count - 1);
+    }
+
+    /**
+     * Estimate a quantile of the values.
+     * @param q the quantile (between 0 and 1).
+     * @return the estimate.
+     */
+    public double quantile(final double q) {
+        return sketch.quantile(q);
+    }
+
+    /**
+     * The number of values.
+     */
+    @Getter
+    private long count;
+    /**
+     * The mean of the values.
+     */
+    @Getter
+    private double mean;
+    private double m2;
+    private final QuantileSketch sketch;
+    /**
+     * The serialVersionUID.
+     */
+    private static final long serialVersionUID = -1402390467327451085L;
+}
@@ -0,0 +1,195 @@
+package uk.ac.bioss.cowtastrophe;
+
+import broadwick.BroadwickException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.base.Throwables;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The coordinator of a parameter sweep distributed over a work queue. The points x replicates of the design are split
+ * into units of a few replicates, the coordinator writes the units to the queue and merges the results written back
+ * by the workers, passing the result of each point to a listener as soon as all its units have finished, and reissues
+ * the units whose workers stopped sending heartbeats.
+ * <p>
+ * The workers can be threads of the coordinator's own process, processes on other nodes that share the queue
+ * directory, or both. Every replicate has a fixed seed, so the results do not depend on which worker ran which unit.
+ */
+@Slf4j
+public final class SweepCoordinator {
+
+    /**
+     * Create the coordinator. The design is copied to the queue (with its seed fixed, so every worker generates the
+     * same points).
+     * @param workQueue   the queue shared with the workers.
+     * @param designFile  the name of the JSON design file.
+     * @param unitSize    the number of replicates in a unit.
+     * @param lease       the time (in ms) after the last heartbeat at which a unit is reissued.
+     * @throws BroadwickException if the queue holds the units of a different design.
+     */
+    public SweepCoordinator(final WorkQueue workQueue, final String designFile, final int unitSize,
+                            final long lease) {
+        this.queue = workQueue;
+        this.unitReplicates = Math.max(1, unitSize);
+        this.leaseMillis = lease;
+        this.design = publishDesign(designFile);
+    }
+
+    /**
+     * Copy the design to the queue, fixing its seed, and read it back. The units of different designs have the same
+     * names, so a design is only published to a queue that is empty or that already holds the same design (the
+     * coordinator being restarted); a design without a seed takes the seed of the design already in the queue.
+     * @param designFile the name of the JSON design file.
+     * @return the design.
+     */
+    private SweepDesign publishDesign(final String designFile) {
+        try {
+            final ObjectMapper mapper = new ObjectMapper();
+            final ObjectNode json = (ObjectNode) mapper.readTree(new File(designFile));
+            final Path published = queue.getDesignFile();
+            final JsonNode previous = Files.exists(published) ? mapper.readTree(published.toFile()) : null;
+            if (!json.has("seed") && previous != null && previous.has("seed")) {
+                json.set("seed", previous.get("seed"));
+            }
+            json.put("seed", new SweepDesign(json, designFile).getSeed());
+            if (!json.equals(previous) && !queue.isEmpty()) {
+                throw new BroadwickException("The work queue " + queue.getRoot() + " holds the units of a different"
+                                             + " sweep design than " + designFile + ", use an empty directory");
+            }
+            final Path tmp = queue.getRoot().resolve(".design.json");
+            mapper.writerWithDefaultPrettyPrinter().writeValue(tmp.toFile(), json);
+            Files.move(tmp, published, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | ClassCastException ex) {
+            throw new BroadwickException("Could not copy the sweep design " + designFile + " to the work queue; "
+                                         + Throwables.getStackTraceAsString(ex));
+        }
+        return new SweepDesign(queue.getDesignFile().toString());
+    }
+
+    /**
+     * Run the sweep, blocking until every unit has a result.
+     * @param directory    the directory where the output of the local workers is stored.
+     * @param farmMap      the preset map used by the local workers.
+     * @param localWorkers the number of workers to run in this process (0 to rely on remote workers only).
+     * @param listener     called (from the calling thread) with the result of each point as soon as all its units
+     *                     have finished.
+     */
+    public void run(final String directory, final FarmMap farmMap, final int localWorkers,
+                    final Consumer<ParameterSweep.PointResult> listener) {
+        final int numPoints = design.getPoints().size();
+        final int numReplicates = design.getReplicates();
+        final long start = System.currentTimeMillis();
+
+        queue.setFinished(false);
+        final List<ParameterSweep.PointResult> points = new ArrayList<>(numPoints);
+        final int[] remaining = new int[numPoints];
+        final Set<String> units = new HashSet<>();
+        int submitted = 0;
+        for (int p = 0; p < numPoints; p++) {
+            points.add(new ParameterSweep.PointResult(p, design.getPoints().get(p), numReplicates));
+            for (int first = 0; first < numReplicates; first += unitReplicates) {
+                final WorkQueue.WorkUnit unit = new WorkQueue.WorkUnit(p, first,
+                                                                       Math.min(first + unitReplicates, numReplicates));
+                if (queue.submit(unit)) {
+                    submitted++;
+                }
+                units.add(unit.getName());
+                remaining[p]++;
+            }
+        }
+        final int numUnits = units.size();
+        log.info("Queued {} of {} units ({} points x {} replicates) in {}", submitted, numUnits, numPoints,
+                 numReplicates, queue.getRoot());
+
+        final List<Thread> workers = new ArrayList<>(localWorkers);
+        for (int i = 0; i < localWorkers; i++) {
+            final SweepWorker worker = new SweepWorker(directory, farmMap, queue, SweepWorker.createId(i));
+            final Thread thread = new Thread(() -> {
+                try {
+                    worker.run();
+                } catch (RuntimeException ex) {
+                    // the lease of the unit it was running will expire and the unit will be reissued.
+                    log.error("Worker {} failed; {}", worker.getWorkerId(), Throwables.getStackTraceAsString(ex));
+                }
+            }, "worker-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            workers.add(thread);
+        }
+
+        final Set<String> merged = new HashSet<>();
+        try {
+            while (merged.size() < numUnits) {
+                boolean progress = false;
+                for (Map.Entry<String, Path> entry : queue.getResults().entrySet()) {
+                    if (units.contains(entry.getKey()) && merged.add(entry.getKey())) {
+                        final WorkQueue.WorkUnit unit = WorkQueue.WorkUnit.fromName(entry.getKey());
+                        final ParameterSweep.PointResult result = points.get(unit.getPoint());
+                        SweepWorker.decode(read(entry.getValue()), unit, result);
+                        if (--remaining[unit.getPoint()] == 0) {
+                            listener.accept(result);
+                        }
+                        progress = true;
+                    }
+                }
+                reissued += queue.reissueExpired(leaseMillis);
+                if (!progress) {
+                    Thread.sleep(POLL_MILLIS);
+                }
+            }
+            queue.setFinished(true);
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            workers.forEach(Thread::interrupt);
+            throw new BroadwickException("Distributed sweep interrupted");
+        }
+        log.info("Merged {} units ({} reissued) in {} ms", numUnits, reissued, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Read the encoded result of a unit from a file.
+     * @param file the file.
+     * @return the encoded result.
+     */
+    private static byte[] read(final Path file) {
+        try {
+            return Files.readAllBytes(file);
+        } catch (IOException ex) {
+            throw new BroadwickException("Could not read " + file + "; " + Throwables.getStackTraceAsString(ex));
+        }
+    }
+
+    private final WorkQueue queue;
+    @Getter
+    private final SweepDesign design;
+    @Getter
+    private final int unitReplicates;
+    @Getter
+    private final long leaseMillis;
+    /**
+     * The number of units that were reissued because their lease expired.
+     */
+    @Getter
+    private int reissued;
+    /**
+     * The default number of replicates in a unit.
+     */
+    public static final int DEFAULT_UNIT_REPLICATES = 4;
+    private static final long POLL_MILLIS = 500;
+}
@@ -0,0 +1,319 @@
+package uk.ac.bioss.cowtastrophe;
+
+import broadwick.BroadwickException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Throwables;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import lombok.Getter;
+
+/**
+ * The design of a parameter sweep: the factors that are varied, the points (combinations of factor values) at which
+ * the simulation is run and the number of replicates of each point. The design is read from a JSON file of the form
+ * <pre>
+ * {
+ *   "design" : "grid",                                      (or "lhs" for a Latin hypercube)
+ *   "points" : 20,                                          (the number of points of a Latin hypercube)
+ *   "replicates" : 10,
+ *   "seed" : 42,
+ *   "strategy" : { "culling" : 2, "vaccinate" : 0, "move" : 1, "moveradius" : 5 },
+ *   "factors" : {
+ *     "beta" : { "min" : 0.03, "max" : 0.09, "levels" : 4 }, (levels are only used by a grid)
+ *     "vacradius" : { "values" : [0, 5, 10] }                (explicit values are only allowed in a grid)
+ *   }
+ * }
+ * </pre>
+ */
+public final class SweepDesign {
+
+    /**
+     * The type of design.
+     */
+    public enum Type {
+        /** Every combination of the levels of the factors. */
+        GRID,
+        /** A Latin hypercube sample of the ranges of the factors. */
+        LHS
+    }
+
+    /**
+     * The factors that can be varied in a sweep.
+     */
+    public enum Factor {
+        /** The disease transmission parameter. */
+        BETA("beta"),
+        /** The power of the transmission kernel. */
+        KERNEL_POWER("kernelPower"),
+        /** The offset of the transmission kernel. */
+        KERNEL_OFFSET("kernelOffset"),
+        /** The power of the transmission kernel for farms under movement restriction. */
+        RESTRICTED_KERNEL_POWER("restrictedKernelPower"),
+        /** The sensitivity of the test of suspected farms. */
+        TEST_SENSITIVITY("testSensitivity"),
+        /** The vaccination radius of the control strategy. */
+        VACRADIUS("vacradius"),
+        /** The movement restriction radius of the control strategy. */
+        MOVERADIUS("moveradius");
+
+        /**
+         * Create the factor.
+         * @param name the name of the factor in the design file.
+         */
+        Factor(final String name) {
+            this.jsonName = name;
+        }
+
+        /**
+         * Get the factor with a given name in the design file.
+         * @param name the name.
+         * @return the factor.
+         */
+        public static Factor fromJsonName(final String name) {
+            for (Factor factor : values()) {
+                if (factor.jsonName.equals(name)) {
+                    return factor;
+                }
+            }
+            throw new BroadwickException("Unknown sweep factor " + name);
+        }
+
+        /**
+         * Set the value of the factor in the parameters of a simulation (the radii are set in the control strategy
+         * settings instead).
+         * @param parameters the parameters of the simulation.
+         * @param value      the value of the factor.
+         */
+        public void apply(final Parameters parameters, final double value) {
+            switch (this) {
+                case BETA:
+                    parameters.setBeta(value);
+                    break;
+                case KERNEL_POWER:
+                    parameters.setKernelPower(value);
+                    break;
+                case KERNEL_OFFSET:
+                    parameters.setKernelOffset(value);
+                    break;
+                case RESTRICTED_KERNEL_POWER:
+                    parameters.setRestrictedKernelPower(value);
+                    break;
+                case TEST_SENSITIVITY:
+                    parameters.setTestSensitivity(value);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        /**
+         * The name of the factor in the design file.
+         */
+        @Getter
+        private final String jsonName;
+    }
+
+    /**
+     * Read a design from a JSON file.
+     * @param designFile the name of the file.
+     */
+    public SweepDesign(final String designFile) {
+        this(read(designFile), designFile);
+    }
+
+    /**
+     * Create a design from its JSON description.
+     * @param json       the design, as it is read from a design file.
+     * @param designFile the name of the file the design was read from (for the error messages).
+     */
+    SweepDesign(final JsonNode json, final String designFile) {
+        this.type = Type.valueOf(json.path("design").asText("grid").toUpperCase());
+        this.replicates = json.path("replicates").asInt(1);
+        if (replicates < 1) {
+            throw new BroadwickException("The sweep design " + designFile + " needs at least 1 replicate, got "
+                                         + replicates);
+        }
+        this.seed = json.path("seed").asLong(System.currentTimeMillis());
+        this.strategy = StrategyComparison.Settings.fromJson(json.path("strategy"));
+
+        final List<Factor> names = new ArrayList<>();
+        final List<double[]> levels = new ArrayList<>();
+        final Iterator<Map.Entry<String, JsonNode>> fields = json.path("factors").fields();
+        while (fields.hasNext()) {
+            final Map.Entry<String, JsonNode> field = fields.next();
+            names.add(Factor.fromJsonName(field.getKey()));
+            levels.add(readLevels(field.getKey(), field.getValue()));
+        }
+        if (names.isEmpty()) {
+            throw new BroadwickException("The sweep design " + designFile + " has no factors");
+        }
+        this.factors = Collections.unmodifiableList(names);
+
+        if (type == Type.GRID) {
+            this.points = grid(levels);
+        } else {
+            this.points = latinHypercube(levels, json.path("points").asInt(DEFAULT_LHS_POINTS), new Random(seed));
+        }
+    }
+
+    /**
+     * Read a design file.
+     * @param designFile the name of the file.
+     * @return the JSON content of the file.
+     */
+    private static JsonNode read(final String designFile) {
+        try {
+            return new ObjectMapper().readTree(new File(designFile));
+        } catch (IOException ex) {
+            throw new BroadwickException("Error reading sweep design " + designFile + "; "
+                                         + Throwables.getStackTraceAsString(ex));
+        }
+    }
+
+    /**
+     * Read the levels of a factor, either an explicit list of values or the min, max and number of (evenly spaced)
+     * levels. For a Latin hypercube only the min and max are used.
+     * @param name the name of the factor.
+     * @param node the JSON object describing the factor.
+     * @return the levels (for a Latin hypercube, the min and max).
+     */
+    private double[] readLevels(final String name, final JsonNode node) {
+        if (node.has("values")) {
+            if (type == Type.LHS) {
+                throw new BroadwickException("Factor " + name + " needs a min and max in a Latin hypercube design");
+            }
+            final double[] values = new double[node.get("values").size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = node.get("values").get(i).asDouble();
+            }
+            return values;
+        }
+        if (!node.has("min") || !node.has("max")) {
+            throw new BroadwickException("Factor " + name + " needs either values or a min and max");
+        }
+        final double min = node.get("min").asDouble();
+        final double max = node.get("max").asDouble();
+        if (type == Type.LHS) {
+            return new double[]{min, max};
+        }
+        final int numLevels = node.path("levels").asInt(2);
+        final double[] values = new double[numLevels];
+        for (int i = 0; i < numLevels; i++) {
+            values[i] = numLevels == 1 ? min : min + i * (max - min) / (numLevels - 1);
+        }
+        return values;
+    }
+
+    /**
+     * Create the points of a full factorial grid.
+     * @param levels the levels of each factor.
+     * @return the points, the last factor varying fastest.
+     */
+    private static List<double[]> grid(final List<double[]> levels) {
+        int numPoints = 1;
+        for (double[] factorLevels : levels) {
+            numPoints *= factorLevels.length;
+        }
+        final List<double[]> grid = new ArrayList<>(numPoints);
+        for (int p = 0; p < numPoints; p++) {
+            final double[] point = new double[levels.size()];
+            int rest = p;
+            for (int f = levels.size() - 1; f >= 0; f--) {
+                final double[] factorLevels = levels.get(f);
+                point[f] = factorLevels[rest % factorLevels.length];
+                rest /= factorLevels.length;
+            }
+            grid.add(point);
+        }
+        return grid;
+    }
+
+    /**
+     * Create the points of a Latin hypercube: the range of each factor is split into as many strata as there are
+     * points and each stratum is sampled exactly once, the strata being matched up at random between the factors.
+     * @param ranges    the min and max of each factor.
+     * @param numPoints the number of points.
+     * @param random    the random number generator.
+     * @return the points.
+     */
+    private static List<double[]> latinHypercube(final List<double[]> ranges, final int numPoints,
+                                                 final Random random) {
+        final double[][] points = new double[numPoints][ranges.size()];
+        final int[] strata = new int[numPoints];
+        for (int f = 0; f < ranges.size(); f++) {
+            for (int i = 0; i < numPoints; i++) {
+                strata[i] = i;
+            }
+            // Fisher-Yates shuffle of the strata.
+            for (int i = numPoints - 1; i > 0; i--) {
+                final int j = random.nextInt(i + 1);
+                final int tmp = strata[i];
+                strata[i] = strata[j];
+                strata[j] = tmp;
+            }
+            final double min = ranges.get(f)[0];
+            final double max = ranges.get(f)[1];
+            for (int i = 0; i < numPoints; i++) {
+                points[i][f] = min + (strata[i] + random.nextDouble()) / numPoints * (max - min);
+            }
+        }
+        final List<double[]> design = new ArrayList<>(numPoints);
+        Collections.addAll(design, points);
+        return design;
+    }
+
+    /**
+     * Get the control strategy settings for a point of the design.
+     * @param point the values of the factors at the point.
+     * @return the settings.
+     */
+    public StrategyComparison.Settings strategyAt(final double[] point) {
+        double vacRadius = strategy.getVacradius();
+        double moveRadius = strategy.getMoveradius();
+        for (int f = 0; f < factors.size(); f++) {
+            if (factors.get(f) == Factor.VACRADIUS) {
+                vacRadius = point[f];
+            } else if (factors.get(f) == Factor.MOVERADIUS) {
+                moveRadius = point[f];
+            }
+        }
+        return strategy.withRadii(vacRadius, moveRadius);
+    }
+
+    /**
+     * Set the parameters of a simulation for a point of the design.
+     * @param parameters the parameters of the simulation.
+     * @param point      the values of the factors at the point.
+     */
+    public void applyTo(final Parameters parameters, final double[] point) {
+        for (int f = 0; f < factors.size(); f++) {
+            factors.get(f).apply(parameters, point[f]);
+        }
+    }
+
+    @Getter
+    private final Type type;
+    @Getter
+    private final List<Factor> factors;
+    /**
+     * The values of the factors at each point of the design.
+     */
+    @Getter
+    private final List<double[]> points;
+    @Getter
+    private final int replicates;
+    @Getter
+    private final long seed;
+    /**
+     * The control strategy settings (the radii are replaced by the factors of the design if they are varied).
+     */
+    @Getter
+    private final StrategyComparison.Settings strategy;
+    private static final int DEFAULT_LHS_POINTS = 10;
+}
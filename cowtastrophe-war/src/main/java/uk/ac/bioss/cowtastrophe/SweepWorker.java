@@ -0,0 +1,178 @@
+package uk.ac.bioss.cowtastrophe;
+
+import broadwick.BroadwickException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.base.Throwables;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A worker of a distributed parameter sweep: it claims units from a work queue, runs their replicates on the preset
+ * map of the node it runs on and writes the results back to the queue, until the coordinator marks the queue as
+ * finished. The design of the sweep is read from the queue, so the worker needs nothing but the queue directory and
+ * the preset.
+ */
+@Slf4j
+public final class SweepWorker {
+
+    /**
+     * Create the worker.
+     * @param directory the directory where the output is stored.
+     * @param farmMap   the preset map from which every run starts.
+     * @param workQueue the queue from which the units are claimed.
+     * @param id        the id of the worker, unique among the workers on the queue.
+     */
+    public SweepWorker(final String directory, final FarmMap farmMap, final WorkQueue workQueue, final String id) {
+        this.directory = directory;
+        this.map = farmMap;
+        this.queue = workQueue;
+        this.workerId = id;
+    }
+
+    /**
+     * Create an id for a worker from the name of the host and the process (and a number to tell apart the workers
+     * of the same process).
+     * @param number the number of the worker in the process.
+     * @return the id.
+     */
+    public static String createId(final int number) {
+        return (ManagementFactory.getRuntimeMXBean().getName() + "-" + number).replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    /**
+     * Claim and run units until the queue is finished.
+     * @return the number of units this worker ran.
+     */
+    public int run() {
+        final ScheduledExecutorService heartbeats = Executors.newSingleThreadScheduledExecutor((r) -> {
+            final Thread thread = new Thread(r, "heartbeat-" + workerId);
+            thread.setDaemon(true);
+            return thread;
+        });
+        int units = 0;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                final WorkQueue.WorkUnit unit = queue.claim(workerId);
+                if (unit == null) {
+                    if (queue.isFinished()) {
+                        break;
+                    }
+                    Thread.sleep(POLL_MILLIS);
+                    continue;
+                }
+                final ScheduledFuture<?> heartbeat = heartbeats.scheduleAtFixedRate(
+                        () -> queue.heartbeat(unit, workerId), WorkQueue.HEARTBEAT_MILLIS,
+                        WorkQueue.HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+                try {
+                    queue.complete(unit, workerId, runUnit(unit));
+                } finally {
+                    heartbeat.cancel(false);
+                }
+                units++;
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            heartbeats.shutdownNow();
+        }
+        log.info("Worker {} ran {} units", workerId, units);
+        return units;
+    }
+
+    /**
+     * Run the replicates of a unit.
+     * @param unit the unit.
+     * @return the encoded result of the unit.
+     */
+    private byte[] runUnit(final WorkQueue.WorkUnit unit) {
+        final ParameterSweep runner = getSweep();
+        final SweepDesign design = runner.getDesign();
+        final ParameterSweep.PointResult result = new ParameterSweep.PointResult(
+                unit.getPoint(), design.getPoints().get(unit.getPoint()), design.getReplicates());
+        final long start = System.currentTimeMillis();
+        for (int replicate = unit.getFirst(); replicate < unit.getLast(); replicate++) {
+            runner.runOrFail(result, replicate);
+        }
+        log.debug("Worker {} ran {} in {} ms", workerId, unit, System.currentTimeMillis() - start);
+        return encode(result, unit);
+    }
+
+    /**
+     * Get the runner of the sweep, reading the design from the queue the first time.
+     * @return the runner.
+     */
+    private ParameterSweep getSweep() {
+        if (sweep == null) {
+            sweep = new ParameterSweep(directory, map, new SweepDesign(queue.getDesignFile().toString()));
+        }
+        return sweep;
+    }
+
+    /**
+     * Encode the results of the replicates of a unit as a JSON object of arrays (a failed replicate has a null cost).
+     * @param result the result of the point of the unit.
+     * @param unit   the unit.
+     * @return the encoded results.
+     */
+    static byte[] encode(final ParameterSweep.PointResult result, final WorkQueue.WorkUnit unit) {
+        final ObjectMapper mapper = new ObjectMapper();
+        final ObjectNode json = mapper.createObjectNode();
+        final ArrayNode costs = json.putArray("costs");
+        final ArrayNode sizes = json.putArray("outbreakSizes");
+        final ArrayNode durations = json.putArray("durations");
+        for (int replicate = unit.getFirst(); replicate < unit.getLast(); replicate++) {
+            if (Double.isNaN(result.getCost(replicate))) {
+                costs.addNull();
+            } else {
+                costs.add(result.getCost(replicate));
+            }
+            sizes.add(result.getOutbreakSize(replicate));
+            durations.add(result.getDuration(replicate));
+        }
+        try {
+            return mapper.writeValueAsBytes(json);
+        } catch (IOException ex) {
+            throw new BroadwickException("Could not encode the result of " + unit + "; "
+                                         + Throwables.getStackTraceAsString(ex));
+        }
+    }
+
+    /**
+     * Decode the results of the replicates of a unit and record them in the result of its point.
+     * @param encoded the encoded results.
+     * @param unit    the unit.
+     * @param result  the result of the point of the unit.
+     */
+    static void decode(final byte[] encoded, final WorkQueue.WorkUnit unit,
+                       final ParameterSweep.PointResult result) {
+        final JsonNode json;
+        try {
+            json = new ObjectMapper().readTree(encoded);
+        } catch (IOException ex) {
+            throw new BroadwickException("Could not decode the result of " + unit + "; "
+                                         + Throwables.getStackTraceAsString(ex));
+        }
+        for (int i = 0; i < unit.getLast() - unit.getFirst(); i++) {
+            final JsonNode cost = json.path("costs").path(i);
+            result.record(unit.getFirst() + i, cost.isNumber() ? cost.asDouble() : Double.NaN,
+                          json.path("outbreakSizes").path(i).asInt(), json.path("durations").path(i).asInt());
+        }
+    }
+
+    private final String directory;
+    private final FarmMap map;
+    private final WorkQueue queue;
+    @Getter
+    private final String workerId;
+    private ParameterSweep sweep;
+    private static final long POLL_MILLIS = 1000;
+}
@@ -0,0 +1,192 @@
+package uk.ac.bioss.cowtastrophe;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * The log of the changes to the farms of a simulation that its control strategy has not handled yet: the changes of
+ * disease state (recorded by FarmStates as they are made, whoever makes them), the movement restrictions that are
+ * lifted and the attachment of a strategy. The simulation clears the log every time the strategy has run, so it only
+ * ever holds the changes of the last day or so and an event-driven strategy does work in proportion to them rather
+ * than to the size of the outbreak.
+ * <p>
+ * The entries are held in primitive columns that are reused once the log is cleared.
+ */
+public final class TransitionLog implements Serializable {
+
+    /**
+     * The kinds of entry in the log.
+     */
+    public enum Kind {
+        /** The disease state of a farm changed. */
+        STATUS,
+        /** The movement restriction of a farm was lifted. */
+        RESTRICTION_LIFTED,
+        /** A control strategy was attached to the simulation (there is no farm). */
+        ATTACHED
+    }
+
+    /**
+     * Create an empty log.
+     */
+    public TransitionLog() {
+        this.farms = new int[INITIAL_CAPACITY];
+        this.kinds = new byte[INITIAL_CAPACITY];
+        this.from = new byte[INITIAL_CAPACITY];
+        this.to = new byte[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Create a copy of a log.
+     * @param other the log to copy.
+     */
+    public TransitionLog(final TransitionLog other) {
+        this.farms = Arrays.copyOf(other.farms, Math.max(INITIAL_CAPACITY, other.size));
+        this.kinds = Arrays.copyOf(other.kinds, farms.length);
+        this.from = Arrays.copyOf(other.from, farms.length);
+        this.to = Arrays.copyOf(other.to, farms.length);
+        this.size = other.size;
+    }
+
+    /**
+     * Record a change of the disease state of a farm.
+     * @param farm     the index of the farm.
+     * @param oldState the state the farm was in.
+     * @param newState the state the farm is now in.
+     */
+    void addStatusChange(final int farm, final DiseaseState oldState, final DiseaseState newState) {
+        add(Kind.STATUS, farm, oldState.ordinal(), newState.ordinal());
+    }
+
+    /**
+     * Record the lifting of the movement restriction of a farm.
+     * @param farm the index of the farm.
+     */
+    void addRestrictionLifted(final int farm) {
+        add(Kind.RESTRICTION_LIFTED, farm, 0, 0);
+    }
+
+    /**
+     * Replace the log with the replay of the current state of the farms, for a strategy that is attached to the
+     * simulation: an ATTACHED entry followed by a change from SUSCEPTIBLE to the current state for every farm that is
+     * not susceptible, so the strategy sees the outbreak as if it had been attached from the start.
+     * @param states the states of the farms.
+     */
+    void replay(final FarmStates states) {
+        clear();
+        add(Kind.ATTACHED, -1, 0, 0);
+        for (int farm = 0; farm < states.size(); farm++) {
+            final DiseaseState state = states.getStatus(farm);
+            if (state != DiseaseState.SUSCEPTIBLE) {
+                addStatusChange(farm, DiseaseState.SUSCEPTIBLE, state);
+            }
+        }
+    }
+
+    /**
+     * Remove the changes of state that have been overtaken, i.e. the farm is no longer in the state it changed to
+     * (a later change of the farm is in the log).
+     * @param states the states of the farms.
+     */
+    void dropOvertaken(final FarmStates states) {
+        int kept = 0;
+        for (int entry = 0; entry < size; entry++) {
+            if (kinds[entry] == STATUS && states.getStatus(farms[entry]).ordinal() != to[entry]) {
+                continue;
+            }
+            farms[kept] = farms[entry];
+            kinds[kept] = kinds[entry];
+            from[kept] = from[entry];
+            to[kept] = to[entry];
+            kept++;
+        }
+        size = kept;
+    }
+
+    /**
+     * Remove every entry.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Get the number of entries.
+     * @return the number of entries.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the kind of an entry.
+     * @param entry the number of the entry.
+     * @return the kind.
+     */
+    public Kind getKind(final int entry) {
+        return KINDS[kinds[entry]];
+    }
+
+    /**
+     * Get the farm of an entry.
+     * @param entry the number of the entry.
+     * @return the index of the farm (-1 for an ATTACHED entry).
+     */
+    public int getFarm(final int entry) {
+        return farms[entry];
+    }
+
+    /**
+     * Get the state a farm changed from.
+     * @param entry the number of a STATUS entry.
+     * @return the old state.
+     */
+    public DiseaseState getFrom(final int entry) {
+        return STATES[from[entry]];
+    }
+
+    /**
+     * Get the state a farm changed to.
+     * @param entry the number of a STATUS entry.
+     * @return the new state.
+     */
+    public DiseaseState getTo(final int entry) {
+        return STATES[to[entry]];
+    }
+
+    /**
+     * Append an entry, doubling the capacity of the columns as required.
+     * @param kind     the kind of entry.
+     * @param farm     the index of the farm.
+     * @param oldState the ordinal of the old state.
+     * @param newState the ordinal of the new state.
+     */
+    private void add(final Kind kind, final int farm, final int oldState, final int newState) {
+        if (size == farms.length) {
+            farms = Arrays.copyOf(farms, size * 2);
+            kinds = Arrays.copyOf(kinds, size * 2);
+            from = Arrays.copyOf(from, size * 2);
+            to = Arrays.copyOf(to, size * 2);
+        }
+        farms[size] = farm;
+        kinds[size] = (byte) kind.ordinal();
+        from[size] = (byte) oldState;
+        to[size] = (byte) newState;
+        size++;
+    }
+
+    private int[] farms;
+    private byte[] kinds;
+    private byte[] from;
+    private byte[] to;
+    private int size;
+    private static final int INITIAL_CAPACITY = 64;
+    private static final Kind[] KINDS = Kind.values();
+    private static final byte STATUS = (byte) Kind.STATUS.ordinal();
+    private static final DiseaseState[] STATES = DiseaseState.values();
+
+    /**
+     * The serialVersionUID.
+     */
+    private static final long serialVersionUID = -4472016529963087245L;
+}
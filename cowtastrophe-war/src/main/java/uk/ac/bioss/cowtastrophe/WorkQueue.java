@@ -0,0 +1,324 @@
+package uk.ac.bioss.cowtastrophe;
+
+import broadwick.BroadwickException;
+import com.google.common.base.Throwables;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A queue of work units held in a directory, so it can be shared by the coordinator and workers running on any node
+ * that mounts the directory (or by threads of a single process, using a local directory).
+ * <p>
+ * Each unit is an (empty) file whose name describes the unit. The directory holds
+ * <ul>
+ * <li>pending/UNIT for the units waiting for a worker,</li>
+ * <li>claimed/UNIT@WORKER for the units being run; a worker claims a unit by moving it from pending, which is atomic
+ * so only one worker can succeed, and keeps the claim alive by touching it (the heartbeat),</li>
+ * <li>results/UNIT for the results of the finished units, written to a temporary file and moved into place so a
+ * result is never read half written,</li>
+ * <li>design.json, the sweep design shared by the workers, and a "done" marker written when every unit has a
+ * result.</li>
+ * </ul>
+ * The coordinator moves claims whose heartbeat is older than the lease back to pending, so the units of a worker
+ * that died are run again. As every replicate has a fixed seed a unit gives the same result whichever worker runs it,
+ * so a unit that ends up being run twice is harmless.
+ */
+@Slf4j
+public final class WorkQueue {
+
+    /**
+     * A unit of work: a range of replicates of one point of a sweep design.
+     */
+    public static final class WorkUnit {
+
+        /**
+         * Create the unit.
+         * @param pointIndex the index of the point in the design.
+         * @param from       the first replicate (inclusive).
+         * @param to         the last replicate (exclusive).
+         */
+        public WorkUnit(final int pointIndex, final int from, final int to) {
+            this.point = pointIndex;
+            this.first = from;
+            this.last = to;
+        }
+
+        /**
+         * Get the name of the unit, which is also the name of its files in the queue.
+         * @return the name.
+         */
+        public String getName() {
+            return String.format("p%06d_r%06d-%06d", point, first, last);
+        }
+
+        /**
+         * Read a unit from its name.
+         * @param name the name of the unit (possibly followed by "@" and the id of the worker that claimed it).
+         * @return the unit.
+         */
+        public static WorkUnit fromName(final String name) {
+            final String unit = name.contains("@") ? name.substring(0, name.indexOf('@')) : name;
+            try {
+                final int separator = unit.indexOf("_r");
+                final int dash = unit.indexOf('-', separator);
+                return new WorkUnit(Integer.parseInt(unit.substring(1, separator)),
+                                    Integer.parseInt(unit.substring(separator + 2, dash)),
+                                    Integer.parseInt(unit.substring(dash + 1)));
+            } catch (IndexOutOfBoundsException | NumberFormatException ex) {
+                throw new BroadwickException("Invalid work unit " + name);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return getName();
+        }
+
+        @Getter
+        private final int point;
+        @Getter
+        private final int first;
+        @Getter
+        private final int last;
+    }
+
+    /**
+     * Open the queue in a directory, creating the directory if required.
+     * @param directory the directory of the queue.
+     */
+    public WorkQueue(final String directory) {
+        this.root = Paths.get(directory);
+        this.pending = root.resolve("pending");
+        this.claimed = root.resolve("claimed");
+        this.results = root.resolve("results");
+        try {
+            Files.createDirectories(pending);
+            Files.createDirectories(claimed);
+            Files.createDirectories(results);
+        } catch (IOException ex) {
+            throw new BroadwickException("Could not create the work queue in " + directory + "; "
+                                         + Throwables.getStackTraceAsString(ex));
+        }
+    }
+
+    /**
+     * Add a unit to the queue, unless it already has a result or is already pending or claimed (so the coordinator
+     * can be restarted on a queue without repeating the finished units).
+     * @param unit the unit.
+     * @return true if the unit was added.
+     */
+    public boolean submit(final WorkUnit unit) {
+        final String name = unit.getName();
+        if (Files.exists(results.resolve(name)) || !list(claimed, name + "@").isEmpty()) {
+            return false;
+        }
+        try {
+            Files.createFile(pending.resolve(name));
+            return true;
+        } catch (FileAlreadyExistsException ex) {
+            return false;
+        } catch (IOException ex) {
+            throw new BroadwickException("Could not submit work unit " + name + "; "
+                                         + Throwables.getStackTraceAsString(ex));
+        }
+    }
+
+    /**
+     * Claim a pending unit.
+     * @param workerId the id of the worker claiming the unit.
+     * @return the unit, null if there is no pending unit.
+     */
+    public WorkUnit claim(final String workerId) {
+        for (String name : list(pending, "")) {
+            try {
+                Files.move(pending.resolve(name), claimed.resolve(name + "@" + workerId),
+                           StandardCopyOption.ATOMIC_MOVE);
+                // the move keeps the time the unit was queued, start the lease now.
+                final WorkUnit unit = WorkUnit.fromName(name);
+                heartbeat(unit, workerId);
+                return unit;
+            } catch (NoSuchFileException ex) {
+                // another worker claimed it first, try the next one.
+                log.trace("Work unit {} already claimed", name);
+            } catch (IOException ex) {
+                throw new BroadwickException("Could not claim work unit " + name + "; "
+                                             + Throwables.getStackTraceAsString(ex));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Renew the lease on a claimed unit. If the claim has been reissued in the mean time nothing is done (the worker
+     * carries on and its result is still accepted).
+     * @param unit     the unit.
+     * @param workerId the id of the worker that claimed the unit.
+     */
+    public void heartbeat(final WorkUnit unit, final String workerId) {
+        try {
+            Files.setLastModifiedTime(claimed.resolve(unit.getName() + "@" + workerId),
+                                      FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException ex) {
+            log.debug("Could not renew the lease on {}; {}", unit, ex.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Store the result of a unit and release the claim.
+     * @param unit     the unit.
+     * @param workerId the id of the worker that claimed the unit.
+     * @param result   the (encoded) result.
+     */
+    public void complete(final WorkUnit unit, final String workerId, final byte[] result) {
+        final String name = unit.getName();
+        final Path tmp = results.resolve("." + name + "@" + workerId);
+        try {
+            Files.write(tmp, result);
+            Files.move(tmp, results.resolve(name), StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+            Files.deleteIfExists(claimed.resolve(name + "@" + workerId));
+        } catch (IOException ex) {
+            throw new BroadwickException("Could not store the result of work unit " + name + "; "
+                                         + Throwables.getStackTraceAsString(ex));
+        }
+    }
+
+    /**
+     * Get the units that have a result.
+     * @return the files of the results by the name of the unit.
+     */
+    public Map<String, Path> getResults() {
+        final Map<String, Path> finished = new HashMap<>();
+        for (String name : list(results, "")) {
+            if (!name.startsWith(".")) {
+                finished.put(name, results.resolve(name));
+            }
+        }
+        return finished;
+    }
+
+    /**
+     * Check whether the queue holds no unit, i.e. no unit is pending, claimed or has a result.
+     * @return true if the queue is empty.
+     */
+    public boolean isEmpty() {
+        return list(pending, "").isEmpty() && list(claimed, "").isEmpty() && getResults().isEmpty();
+    }
+
+    /**
+     * Move the claimed units whose lease has expired back to pending so another worker can run them.
+     * @param leaseMillis the time (in ms) after the last heartbeat at which a claim expires.
+     * @return the number of units that were reissued.
+     */
+    public int reissueExpired(final long leaseMillis) {
+        final long expired = System.currentTimeMillis() - leaseMillis;
+        int reissued = 0;
+        for (String claim : list(claimed, "")) {
+            final Path path = claimed.resolve(claim);
+            try {
+                if (Files.getLastModifiedTime(path).toMillis() >= expired) {
+                    continue;
+                }
+                final String name = claim.substring(0, claim.indexOf('@'));
+                if (Files.exists(results.resolve(name))) {
+                    Files.deleteIfExists(path);
+                } else {
+                    Files.move(path, pending.resolve(name), StandardCopyOption.ATOMIC_MOVE);
+                    log.warn("Lease on {} expired, reissuing it", claim);
+                    reissued++;
+                }
+            } catch (NoSuchFileException ex) {
+                // the worker finished (or the claim was reissued) while we were looking at it.
+                log.trace("Claim {} released", claim);
+            } catch (IOException ex) {
+                throw new BroadwickException("Could not reissue work unit " + claim + "; "
+                                             + Throwables.getStackTraceAsString(ex));
+            }
+        }
+        return reissued;
+    }
+
+    /**
+     * Mark the queue as finished (or not), telling the workers to stop once there are no pending units.
+     * @param finished true if every unit has a result.
+     */
+    public void setFinished(final boolean finished) {
+        final Path marker = root.resolve(DONE);
+        try {
+            if (finished) {
+                Files.write(marker, new byte[0]);
+            } else {
+                Files.deleteIfExists(marker);
+            }
+        } catch (IOException ex) {
+            throw new BroadwickException("Could not update " + marker + "; " + Throwables.getStackTraceAsString(ex));
+        }
+    }
+
+    /**
+     * Check whether the queue has been marked as finished.
+     * @return true if the coordinator has every result.
+     */
+    public boolean isFinished() {
+        return Files.exists(root.resolve(DONE));
+    }
+
+    /**
+     * Get the file holding the design of the sweep shared by the coordinator and the workers.
+     * @return the path of the design.
+     */
+    public Path getDesignFile() {
+        return root.resolve("design.json");
+    }
+
+    /**
+     * List (in order) the names of the files in a directory of the queue that start with a given prefix.
+     * @param dir    the directory.
+     * @param prefix the prefix.
+     * @return the names of the files.
+     */
+    private static List<String> list(final Path dir, final String prefix) {
+        final List<String> names = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, prefix + "*")) {
+            for (Path path : stream) {
+                names.add(path.getFileName().toString());
+            }
+        } catch (IOException ex) {
+            throw new BroadwickException("Could not list " + dir + "; " + Throwables.getStackTraceAsString(ex));
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    /**
+     * The directory of the queue.
+     */
+    @Getter
+    private final Path root;
+    private final Path pending;
+    private final Path claimed;
+    private final Path results;
+    /**
+     * The interval (in ms) at which a worker renews the lease on the unit it is running.
+     */
+    public static final long HEARTBEAT_MILLIS = 5000;
+    /**
+     * The default time (in ms) after the last heartbeat at which a claim expires.
+     */
+    public static final long DEFAULT_LEASE_MILLIS = 30000;
+    private static final String DONE = "done";
+}
@@ -2,12 +2,9 @@ package uk.ac.bioss.cowtastrophe.controls;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
-import uk.ac.bioss.cowtastrophe.ControlStrategy;
 import uk.ac.bioss.cowtastrophe.DiseaseState;
+import uk.ac.bioss.cowtastrophe.EventDrivenStrategy;
 import uk.ac.bioss.cowtastrophe.Farm;
 import uk.ac.bioss.cowtastrophe.Simulation;
 
@@ -15,49 +12,29 @@ import uk.ac.bioss.cowtastrophe.Simulation;
  * A control strategy that culls a farm once it is suspected and vaccinates suspected farms within a ring.
  */
 @Slf4j
-public class CullAndVaccinateOnSuspiscion extends ControlStrategy implements Serializable {
+public class CullAndVaccinateOnSuspiscion extends EventDrivenStrategy implements Serializable {
 
     /**
      * Create the control strategy using the json formatted string.
      * @param jsonNode the parameters for the control.
      */
     public CullAndVaccinateOnSuspiscion(final JsonNode jsonNode) {
-        log.info("Using Cull On Confirmation with a ring Strategy");
+        log.info("Using Cull And Vaccinate On Suspicion Strategy");
         radius = jsonNode.get("radius").asDouble(1.0);
 
     }
 
     @Override
-    public void run(Simulation simulation) {
-        ArrayList<Farm> toBeCulled = new ArrayList<>(simulation.getSuspectedFarms());
-
-        log.trace("Suspected farms to be culled {}", toBeCulled.stream()
-                  .map(Farm::getId)
-                  .sorted()
-                  .collect(Collectors.toList()));
-
-        for (Farm farm : toBeCulled) {
-            farm.setDayCulled(simulation.getDay());
-            farm.setStatus(DiseaseState.CULLED);
-            simulation.getStatistics().addCost(simulation.getDay(),
-                                               farm.getHerdSize() * simulation.getParameters().getCostOfCullingAnimal()
-                                               + simulation.getParameters().getCostOfFarmVisit());
-
-            // now vaccinate those (suspected) farms within the radius.
-            List<Farm> toBeVaccinated = simulation.getHelper().getAllFarmsWithindistance(farm, radius).stream()
-                    .filter((fm) -> (fm.getStatus() == DiseaseState.SUSPECTED))
-                    .collect(Collectors.toList());
-            for (Farm vacc : toBeVaccinated) {
-                vacc.setDayVaccinated(simulation.getDay());
-                vacc.setStatus(DiseaseState.VACCINATED);
-                simulation.getStatistics().addCost(simulation.getDay(),
-                                                   vacc.getHerdSize() * simulation.getParameters().getCostOfVaccinatingAnimal()
-                                                   + simulation.getParameters().getCostOfFarmVisit());
+    protected void onSuspected(final Simulation simulation, final Farm farm) {
+        log.trace("Culling suspected farm {}", farm.getId());
+        cull(simulation, farm);
+
+        // now vaccinate those (suspected) farms within the radius.
+        for (Farm vacc : simulation.getHelper().getAllFarmsWithindistance(farm, radius)) {
+            if (vacc.getStatus() == DiseaseState.SUSPECTED) {
+                vaccinate(simulation, vacc, true);
             }
-            
         }
-
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
     }
 
     /**
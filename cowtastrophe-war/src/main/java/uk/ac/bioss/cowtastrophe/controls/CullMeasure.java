@@ -0,0 +1,32 @@
+package uk.ac.bioss.cowtastrophe.controls;
+
+import lombok.extern.slf4j.Slf4j;
+import uk.ac.bioss.cowtastrophe.ControlMeasure;
+import uk.ac.bioss.cowtastrophe.Farm;
+import uk.ac.bioss.cowtastrophe.Simulation;
+
+/**
+ * The measure of a composite strategy that culls the farm that triggered it.
+ */
+@Slf4j
+final class CullMeasure extends ControlMeasure {
+
+    /**
+     * Create the measure.
+     * @param trigger when the farms are culled: never, on suspicion or on confirmation.
+     */
+    CullMeasure(final int trigger) {
+        super(trigger, -1);
+    }
+
+    @Override
+    protected void applyToSource(final Simulation simulation, final Farm source) {
+        log.trace("Culling farm {}", source.getId());
+        cull(simulation, source);
+    }
+
+    /**
+     * The serialVersionUID.
+     */
+    private static final long serialVersionUID = 4469405818236066437L;
+}
@@ -2,11 +2,8 @@ package uk.ac.bioss.cowtastrophe.controls;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
-import uk.ac.bioss.cowtastrophe.ControlStrategy;
-import uk.ac.bioss.cowtastrophe.DiseaseState;
+import uk.ac.bioss.cowtastrophe.EventDrivenStrategy;
 import uk.ac.bioss.cowtastrophe.Farm;
 import uk.ac.bioss.cowtastrophe.Simulation;
 
@@ -14,7 +11,7 @@ import uk.ac.bioss.cowtastrophe.Simulation;
  * A control strategy that culls a farm once it is confirmed to be infected.
  */
 @Slf4j
-public class CullOnConfirmation extends ControlStrategy implements Serializable {
+public class CullOnConfirmation extends EventDrivenStrategy implements Serializable {
 
     /**
      * Create the control strategy using the JSON formatted string.
@@ -25,23 +22,16 @@ public class CullOnConfirmation extends ControlStrategy implements Serializable
     }
 
     @Override
-    public final void run(final Simulation simulation) {
-        ArrayList<Farm> toBeCulled = new ArrayList<>(simulation.getConfirmedFarms());
-        
-        log.trace("Confirmed farms to be culled {}", toBeCulled.stream()
-                 .map(Farm::getId)
-                 .sorted()
-                 .collect(Collectors.toList()));
-        
-        for (Farm farm : toBeCulled) {
-            farm.setDayCulled(simulation.getDay());
-            farm.setStatus(DiseaseState.CULLED);
-            simulation.getStatistics().addCost(simulation.getDay(),
-                                               farm.getHerdSize() * simulation.getParameters().getCostOfCullingAnimal()
-                                               + simulation.getParameters().getCostOfFarmVisit());
-        }
+    protected final void onConfirmed(final Simulation simulation, final Farm farm) {
+        log.trace("Culling confirmed farm {}", farm.getId());
+        cull(simulation, farm);
     }
     
+    @Override
+    public final boolean isIdle(final Simulation simulation) {
+        return !isTriggered(simulation, CULL_ON_CON);
+    }
+
     /**
      * A public identifier (name) of the strategy.
      */
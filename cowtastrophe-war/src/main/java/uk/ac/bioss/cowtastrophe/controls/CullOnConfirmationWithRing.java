@@ -2,11 +2,10 @@ package uk.ac.bioss.cowtastrophe.controls;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import java.io.Serializable;
-import java.util.ArrayList;
+import java.util.List;
 import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
-import uk.ac.bioss.cowtastrophe.ControlStrategy;
-import uk.ac.bioss.cowtastrophe.DiseaseState;
+import uk.ac.bioss.cowtastrophe.EventDrivenStrategy;
 import uk.ac.bioss.cowtastrophe.Farm;
 import uk.ac.bioss.cowtastrophe.Simulation;
 
@@ -14,7 +13,7 @@ import uk.ac.bioss.cowtastrophe.Simulation;
  * A control strategy that culls a farm once it is confirmed to be infected.
  */
 @Slf4j
-public class CullOnConfirmationWithRing extends ControlStrategy implements Serializable {
+public class CullOnConfirmationWithRing extends EventDrivenStrategy implements Serializable {
 
     /**
      * Create the control strategy using the json formatted string.
@@ -26,25 +25,19 @@ public class CullOnConfirmationWithRing extends ControlStrategy implements Seria
     }
 
     @Override
-    public final void run(final Simulation simulation) {
-        ArrayList<Farm> toBeCulled = new ArrayList<>(simulation.getConfirmedFarms());
-        simulation.getConfirmedFarms().forEach((farm) -> {
-            toBeCulled.addAll(simulation.getHelper().getAllFarmsWithindistance(farm, radius));
-        });
-        
-        log.trace("Confirmed farms to be culled {}", toBeCulled.stream()
+    protected final void onConfirmed(final Simulation simulation, final Farm farm) {
+        final List<Farm> ring = simulation.getHelper().getAllFarmsWithindistance(farm, radius);
+
+        log.trace("Culling confirmed farm {} and the farms within its ring {}", farm.getId(), ring.stream()
                  .map(Farm::getId)
                  .sorted()
                  .collect(Collectors.toList()));
-                
-        for (Farm farm : toBeCulled) {
-            // Note: we are vaccinating farms within a ring so there may be suspected and susceptible
-            // farms that we are vaccinating
-            farm.setDayCulled(simulation.getDay());
-            farm.setStatus(DiseaseState.CULLED);
-            simulation.getStatistics().addCost(simulation.getDay(),
-                                               farm.getHerdSize() * simulation.getParameters().getCostOfCullingAnimal()
-                                               + simulation.getParameters().getCostOfFarmVisit());
+
+        cull(simulation, farm);
+        for (Farm neighbour : ring) {
+            // Note: we are culling farms within a ring so there may be suspected and susceptible farms that we
+            // are culling (the farms culled already are skipped).
+            cull(simulation, neighbour);
         }
     }
     
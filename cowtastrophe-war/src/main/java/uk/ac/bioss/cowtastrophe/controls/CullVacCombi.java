@@ -1,21 +1,23 @@
 package uk.ac.bioss.cowtastrophe.controls;
 
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.EnumSet;
 import lombok.extern.slf4j.Slf4j;
+import uk.ac.bioss.cowtastrophe.CompositeStrategy;
 import uk.ac.bioss.cowtastrophe.ControlStrategy;
 import uk.ac.bioss.cowtastrophe.DiseaseState;
-import uk.ac.bioss.cowtastrophe.Farm;
-import uk.ac.bioss.cowtastrophe.Simulation;
 
 /**
- * A cull / vaccinate combination
+ * A cull / vaccinate combination: a triggering farm is culled and the farms around it are vaccinated, except those
+ * that are culled or vaccinated already and those that are culled by the strategy (they are culled when their own
+ * change of state is handled).
+ * <p>
+ * The old daily scan culled first and then vaccinated around the farms still in the triggering state, so it vaccinated
+ * no ring at all when the farms were culled in that state, and it vaccinated the farms it had just culled. The rings
+ * are now vaccinated around every triggering farm and the culled farms are left out.
  */
 @Slf4j
-public class CullVacCombi extends ControlStrategy implements Serializable {
+public class CullVacCombi extends CompositeStrategy implements Serializable {
 
     /**
      * Create the control strategy using the JSON formatted string.
@@ -24,73 +26,26 @@ public class CullVacCombi extends ControlStrategy implements Serializable {
      * @param vacrad
      */
     public CullVacCombi(final int cull, final int vacc, final double vacrad) {
+        super(new CullMeasure(cull), new VaccinationMeasure(vacc, vacrad, vaccinatedStates(cull)));
         log.info("Using CullVac Combi Strategy");
-        vacradius = vacrad;
-        culling = cull;
-        vaccinate = vacc;
     }
 
-    @Override
-    public final void run(final Simulation simulation) {
-        doCull(simulation);
-        doVac(simulation);
-    }
-
-    public final void doCull(final Simulation simulation) {
-        if (culling == ControlStrategy.CULL_NOT) {
-            return;
-        }
-        
-        Set<Farm> toBeCulled;
-        if (culling == ControlStrategy.CULL_ON_CON) {
-            toBeCulled = simulation.getConfirmedFarms();
-        } else {
-            toBeCulled = simulation.getSuspectedOrConfirmedFarms();
-        }
-        
-        log.trace("Farms to be culled {}", toBeCulled.stream()
-                  .map(Farm::getId)
-                  .sorted()
-                  .collect(Collectors.toList()));
-
-        for (Farm farm : toBeCulled) {
-            farm.setDayCulled(simulation.getDay());
-            farm.setStatus(DiseaseState.CULLED);
-            simulation.getStatistics().addCost(simulation.getDay(),
-                                               farm.getHerdSize() * simulation.getParameters().getCostOfCullingAnimal()
-                                               + simulation.getParameters().getCostOfFarmVisit());
-        }
-    }
-
-    public final void doVac(final Simulation simulation) {
-        if (vaccinate == ControlStrategy.VAC_NOT) {
-            return;
-        }
-
-        Set<Farm> toBeVaccinated = new HashSet<>();
-		
-        if (vaccinate == ControlStrategy.VAC_ON_CON) {
-            for (Farm farm : simulation.getConfirmedFarms()) {
-                toBeVaccinated.addAll(simulation.getHelper().getAllFarmsWithindistance(farm, vacradius));
-            }
-        } else {
-            for (Farm farm : simulation.getSuspectedOrConfirmedFarms()) {
-                toBeVaccinated.addAll(simulation.getHelper().getAllFarmsWithindistance(farm, vacradius));
-            }
+    /**
+     * Get the states of the farms that are vaccinated: all the states except culled, vaccinated and those of the
+     * farms that are culled.
+     * @param cull when the farms are culled: never, on suspicion or on confirmation.
+     * @return the states.
+     */
+    private static EnumSet<DiseaseState> vaccinatedStates(final int cull) {
+        final EnumSet<DiseaseState> states = EnumSet.of(DiseaseState.SUSCEPTIBLE,
+                                                        DiseaseState.INFECTIOUS_NOT_SUSPECTED);
+        if (cull != ControlStrategy.CULL_ON_SUS) {
+            states.add(DiseaseState.SUSPECTED);
         }
-        
-        log.trace("Farms to be vaccinated {}", toBeVaccinated.stream()
-                  .map(Farm::getId)
-                  .sorted()
-                  .collect(Collectors.toList()));
-
-        for (Farm farm : toBeVaccinated) {
-            farm.setDayVaccinated(simulation.getDay());
-            farm.setStatus(DiseaseState.VACCINATED);
-            simulation.getStatistics().addCost(simulation.getDay(),
-                                               farm.getHerdSize() * simulation.getParameters()
-                                               .getCostOfVaccinatingAnimal());
+        if (cull == ControlStrategy.CULL_NOT) {
+            states.add(DiseaseState.CONFIRMED);
         }
+        return states;
     }
 
     /**
@@ -98,10 +53,6 @@ public class CullVacCombi extends ControlStrategy implements Serializable {
      */
     public static final String name = "Cull_and_vaccinate_combi";
 
-    private final double vacradius;
-    private final int culling;
-    private final int vaccinate;
-
     /**
      * The serialVersionUID.
      */
@@ -1,20 +1,18 @@
 package uk.ac.bioss.cowtastrophe.controls;
 
 import java.io.Serializable;
-import java.util.stream.Collectors;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.EnumSet;
 import lombok.extern.slf4j.Slf4j;
-import uk.ac.bioss.cowtastrophe.ControlStrategy;
+import uk.ac.bioss.cowtastrophe.CompositeStrategy;
 import uk.ac.bioss.cowtastrophe.DiseaseState;
-import uk.ac.bioss.cowtastrophe.Farm;
 import uk.ac.bioss.cowtastrophe.Simulation;
 
 /**
- * A cull / vaccinate / movement combination
+ * A cull / vaccinate / movement combination: the movements of the farms around a triggering farm are restricted, the
+ * susceptible and infectious (not suspected) farms around it are vaccinated and it is culled.
  */
 @Slf4j
-public class CullVacMoveCombi extends ControlStrategy implements Serializable {
+public class CullVacMoveCombi extends CompositeStrategy implements Serializable {
 
     /**
      * Create the control strategy using the JSON formatted string.
@@ -25,104 +23,16 @@ public class CullVacMoveCombi extends ControlStrategy implements Serializable {
      * @param moveRad
      */
     public CullVacMoveCombi(final int cull, final int vacc, final double vacrad, final int move, final double moveRad) {
+        super(new MovementMeasure(move, moveRad),
+              new VaccinationMeasure(vacc, vacrad, EnumSet.of(DiseaseState.SUSCEPTIBLE,
+                                                              DiseaseState.INFECTIOUS_NOT_SUSPECTED)),
+              new CullMeasure(cull));
         log.info("Using CullVacMove Combi Strategy");
-        vacradius = vacrad;
-        culling = cull;
-        vaccinate = vacc;
-	movement = move;
-	movement_rad = moveRad;
     }
 
     @Override
-    public final void run(final Simulation simulation) {
-        doMovement(simulation);
-        doMovementCost(simulation);
-        doVac(simulation);
-        doCull(simulation);
-    }
-	
-    public final void doMovementCost(final Simulation simulation) {
-        simulation.getStatistics().addCost(simulation.getDay(), 
-        simulation.getParameters().getCostOfMvmtBanPerDay() * simulation.getRestrictedFarms().size());
-    }
-	
-    public final void doMovement(final Simulation simulation) {
-        if (movement == ControlStrategy.MOVE_NOT) {
-            return;
-        }
-        Set<Farm> MoveSourceList;
-        if (movement == ControlStrategy.MOVE_ON_CON) {
-            MoveSourceList = simulation.getConfirmedFarms();
-        } else {
-            MoveSourceList = simulation.getSuspectedOrConfirmedFarms();
-        }
-        for (Farm farm : MoveSourceList) {
-            for (Farm farm2 : simulation.getHelper().getAllFarmsWithindistance(farm, movement_rad)) {
-                if(!farm2.isRestrictedMovement()){
-                    simulation.getRestrictedFarms().add(farm2.getId());
-                    farm2.setRestrictedMovement(true);
-                    farm2.setRestrictionSource(farm.getId());
-                }
-            }
-        }
-    }
-
-    public final void doCull(final Simulation simulation) {
-        if (culling == ControlStrategy.CULL_NOT) {
-            return;
-        }
-        Set<Farm> toBeCulled;
-        if (culling == ControlStrategy.CULL_ON_CON) {
-            toBeCulled = simulation.getConfirmedFarms();
-        } else {
-            toBeCulled = simulation.getSuspectedOrConfirmedFarms();
-        }
-
-        log.trace("Farms to be culled {}", toBeCulled.stream()
-                  .map(Farm::getId)
-                  .sorted()
-                  .collect(Collectors.toList()));
-
-        for (Farm farm : toBeCulled) {
-            farm.setDayCulled(simulation.getDay());
-            farm.setStatus(DiseaseState.CULLED);
-            simulation.getStatistics().addCost(simulation.getDay(),
-                                               farm.getHerdSize() * simulation.getParameters().getCostOfCullingAnimal()
-                                               + simulation.getParameters().getCostOfFarmVisit());
-        }
-    }
-
-    public final void doVac(final Simulation simulation) {
-        if (vaccinate == ControlStrategy.VAC_NOT) {
-            return;
-        }
-        
-        Set<Farm> toBeVaccinated = new HashSet<>();
-		
-        if (vaccinate == ControlStrategy.VAC_ON_CON) {
-            for (Farm farm : simulation.getConfirmedFarms()) {
-                toBeVaccinated.addAll(simulation.getHelper().getAllFarmsWithindistance(farm, vacradius));
-            }
-        } else {
-            for (Farm farm : simulation.getSuspectedOrConfirmedFarms()) {
-                toBeVaccinated.addAll(simulation.getHelper().getAllFarmsWithindistance(farm, vacradius));
-            }
-        }
-        
-        log.trace("Farms to be vaccinated {}", toBeVaccinated.stream()
-                  .map(Farm::getId)
-                  .sorted()
-                  .collect(Collectors.toList()));
-
-        for (Farm farm : toBeVaccinated) {
-			if(farm.getStatus() == DiseaseState.SUSCEPTIBLE || farm.getStatus() == DiseaseState.INFECTIOUS_NOT_SUSPECTED) {
-				farm.setDayVaccinated(simulation.getDay());
-				farm.setStatus(DiseaseState.VACCINATED);
-				simulation.getStatistics().addCost(simulation.getDay(),
-                                               farm.getHerdSize() * simulation.getParameters()
-                                               .getCostOfVaccinatingAnimal());
-			}
-        }
+    public final double getIdleCost(final Simulation simulation) {
+        return simulation.getParameters().getCostOfMvmtBanPerDay() * simulation.getRestrictedFarms().getSize();
     }
 
     /**
@@ -130,13 +40,6 @@ public class CullVacMoveCombi extends ControlStrategy implements Serializable {
      */
     public static final String name = "Cull_and_vaccinate_and_movement_restrict";
 
-    private final double vacradius;
-    private final int culling;
-    private final int vaccinate;
-	private final int movement;
-	private final double movement_rad;
-	
-
     /**
      * The serialVersionUID.
      */
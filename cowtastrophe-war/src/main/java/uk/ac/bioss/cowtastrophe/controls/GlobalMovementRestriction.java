@@ -8,7 +8,8 @@ package uk.ac.bioss.cowtastrophe.controls;
 import com.fasterxml.jackson.databind.JsonNode;
 import java.io.Serializable;
 import lombok.extern.slf4j.Slf4j;
-import uk.ac.bioss.cowtastrophe.ControlStrategy;
+import uk.ac.bioss.cowtastrophe.CostCategory;
+import uk.ac.bioss.cowtastrophe.EventDrivenStrategy;
 import uk.ac.bioss.cowtastrophe.Farm;
 import uk.ac.bioss.cowtastrophe.Simulation;
 
@@ -16,17 +17,19 @@ import uk.ac.bioss.cowtastrophe.Simulation;
  * A control strategy that imposes a movement restriction on every farm until the end of the simulation.
  */
 @Slf4j
-public class GlobalMovementRestriction extends ControlStrategy implements Serializable {
+public class GlobalMovementRestriction extends EventDrivenStrategy implements Serializable {
 
     GlobalMovementRestriction(JsonNode strategyNode) {
     }
 
     @Override
-    public void run(Simulation simulation) {
+    protected void onAttach(final Simulation simulation) {
         final int days = simulation.getParameters().getEndTime() - simulation.getDay();
         for (Farm farm : simulation.getFarms()) {
-            simulation.getRestrictedFarms().add(farm.getId());
-            simulation.getStatistics().addCost(simulation.getDay(),
+            if (!simulation.getRestrictedFarms().add(farm.getIndex())) {
+                continue;
+            }
+            simulation.getStatistics().addCost(CostCategory.MOVEMENT_RESTRICTION,
                                                simulation.getParameters()
                                                        .getCostOfMvmtBanPerDay() * days);
 
@@ -0,0 +1,45 @@
+package uk.ac.bioss.cowtastrophe.controls;
+
+import uk.ac.bioss.cowtastrophe.ControlMeasure;
+import uk.ac.bioss.cowtastrophe.CostCategory;
+import uk.ac.bioss.cowtastrophe.Farm;
+import uk.ac.bioss.cowtastrophe.Simulation;
+
+/**
+ * The measure of a composite strategy that restricts the movements of the farms in a ring around the farm that
+ * triggered it, and books the cost of the restricted farms at every run.
+ */
+final class MovementMeasure extends ControlMeasure {
+
+    /**
+     * Create the measure.
+     * @param trigger when the rings are restricted: never, on suspicion or on confirmation.
+     * @param radius  the radius of the ring.
+     */
+    MovementMeasure(final int trigger, final double radius) {
+        super(trigger, radius);
+    }
+
+    @Override
+    protected boolean isEligible(final Farm farm) {
+        return !farm.isRestrictedMovement();
+    }
+
+    @Override
+    protected void applyToNeighbour(final Simulation simulation, final Farm source, final Farm neighbour) {
+        simulation.getRestrictedFarms().add(neighbour.getIndex());
+        neighbour.setRestrictionSource(source.getId());
+    }
+
+    @Override
+    protected void afterTransitions(final Simulation simulation) {
+        simulation.getStatistics().addCost(CostCategory.MOVEMENT_RESTRICTION,
+                                           simulation.getParameters().getCostOfMvmtBanPerDay()
+                                           * simulation.getRestrictedFarms().getSize());
+    }
+
+    /**
+     * The serialVersionUID.
+     */
+    private static final long serialVersionUID = 2925000713460215102L;
+}
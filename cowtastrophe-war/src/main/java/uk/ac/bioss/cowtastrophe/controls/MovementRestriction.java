@@ -6,22 +6,24 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Throwables;
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
-import uk.ac.bioss.cowtastrophe.ControlStrategy;
+import uk.ac.bioss.cowtastrophe.CostCategory;
+import uk.ac.bioss.cowtastrophe.EventDrivenStrategy;
 import uk.ac.bioss.cowtastrophe.Farm;
+import uk.ac.bioss.cowtastrophe.RestrictionScheduler;
 import uk.ac.bioss.cowtastrophe.Simulation;
 
 /**
- * A control strategy that imposes a movement restriction.
+ * A control strategy that imposes a movement restriction. The farms within the radius of each of the given farms are
+ * restricted for the given number of days, and the restriction is extended by as many days each time it ends, so the
+ * restrictions are only lifted once another strategy replaces this one.
  */
 @Slf4j
-public class MovementRestriction extends ControlStrategy implements Serializable {
+public class MovementRestriction extends EventDrivenStrategy implements Serializable {
 
     static class Params implements Serializable {
 
@@ -55,16 +57,12 @@ public class MovementRestriction extends ControlStrategy implements Serializable
                       Throwables.getStackTraceAsString(ex));
         }
     }
-// TODO: the number of days should be VERY long be default - the idea is that there is no lifting of restriction.
     @Override
-    public void run(Simulation simulation) {
+    protected void onAttach(final Simulation simulation) {
         for (Map.Entry<Integer, MovementRestriction.Params> entry : restrictions.entrySet()) {
-            final int farmId = entry.getKey();
-            final double radius = entry.getValue().radius;
-            final int days = entry.getValue().days;
-            final Farm thisFarm = simulation.getHelper().getFarmById(farmId);
+            final Farm thisFarm = simulation.getHelper().getFarmById(entry.getKey());
 
-            List<Farm> allFarms = simulation.getHelper().getAllFarmsWithindistance(thisFarm, radius);
+            List<Farm> allFarms = simulation.getHelper().getAllFarmsWithindistance(thisFarm, entry.getValue().radius);
 
             log.trace("Farms to be placed under restriction {}", allFarms.stream()
                       .map(Farm::getId)
@@ -72,18 +70,49 @@ public class MovementRestriction extends ControlStrategy implements Serializable
                       .collect(Collectors.toList()));
 
             for (Farm farm : allFarms) {
-                simulation.getRestrictedFarms().add(farm.getId());
-                simulation.getStatistics().addCost(simulation.getDay(),
-                                                   simulation.getParameters()
-                                                           .getCostOfMvmtBanPerDay() * days);
+                restrict(simulation, farm, entry.getValue().days);
+            }
+        }
+    }
 
-                // now schedule when the movement ban should be lifted.
-                Collection<Integer> list = simulation.getEaseMvmtRestriction()
-                        .getOrDefault(simulation.getDay() + days, new ArrayList<>());
-                list.add(farm.getId());
-                simulation.getEaseMvmtRestriction().put(simulation.getDay() + days, list);
+    /**
+     * The restrictions are not lifted while the strategy is in force: the restrictions of the farms in its areas that
+     * end today are extended by the number of days of the area before the simulation lifts them.
+     * @param simulation the simulation.
+     */
+    @Override
+    protected void afterTransitions(final Simulation simulation) {
+        simulation.getRestrictionScheduler().forEachDue(simulation.getDay(), (index) -> {
+            final Farm farm = simulation.getFarm(index);
+            for (Map.Entry<Integer, MovementRestriction.Params> entry : restrictions.entrySet()) {
+                final Farm thisFarm = simulation.getHelper().getFarmById(entry.getKey());
+                if (simulation.getMap().distance(thisFarm.getIndex(), index) <= entry.getValue().radius) {
+                    restrict(simulation, farm, entry.getValue().days);
+                }
             }
+        });
+    }
+
+    /**
+     * Restrict the movements of a farm for a number of days and book the cost of the restriction. A farm that is
+     * restricted already (e.g. it is in two areas, or the strategy was attached to the session before) has its
+     * restriction extended and only the extension is booked; a farm restricted until the end of the simulation (e.g.
+     * by a global restriction) is left as it is.
+     * @param simulation the simulation.
+     * @param farm       the farm.
+     * @param days       the number of days of the restriction.
+     */
+    private static void restrict(final Simulation simulation, final Farm farm, final int days) {
+        final RestrictionScheduler scheduler = simulation.getRestrictionScheduler();
+        if (simulation.getRestrictedFarms().isRestricted(farm.getIndex()) && !scheduler.isScheduled(farm.getIndex())) {
+            return;
         }
+        final int liftDay = simulation.getDay() + days;
+        final int previous = scheduler.schedule(farm.getIndex(), liftDay);
+        final int extension = previous == RestrictionScheduler.NOT_SCHEDULED ? days : Math.max(0, liftDay - previous);
+        simulation.getRestrictedFarms().add(farm.getIndex());
+        simulation.getStatistics().addCost(CostCategory.MOVEMENT_RESTRICTION,
+                                           simulation.getParameters().getCostOfMvmtBanPerDay() * extension);
     }
 
     /**
@@ -3,14 +3,14 @@ package uk.ac.bioss.cowtastrophe.controls;
 import com.fasterxml.jackson.databind.JsonNode;
 import java.io.Serializable;
 import lombok.extern.slf4j.Slf4j;
-import uk.ac.bioss.cowtastrophe.ControlStrategy;
+import uk.ac.bioss.cowtastrophe.EventDrivenStrategy;
 import uk.ac.bioss.cowtastrophe.Simulation;
 
 /**
  * A control strategy that culls a farm once it is confirmed to be infected.
  */
 @Slf4j
-public class NullStrategy extends ControlStrategy implements Serializable {
+public class NullStrategy extends EventDrivenStrategy implements Serializable {
 
     /**
      * Create the control strategy using the json formatted string.
@@ -28,8 +28,8 @@ public class NullStrategy extends ControlStrategy implements Serializable {
     }
 
     @Override
-    public final void run(final Simulation simulation) {
-        // there is no strategy to implement!
+    public final boolean isIdle(final Simulation simulation) {
+        return true;
     }
 
     /**
@@ -5,13 +5,13 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Throwables;
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
-import uk.ac.bioss.cowtastrophe.ControlStrategy;
 import uk.ac.bioss.cowtastrophe.DiseaseState;
+import uk.ac.bioss.cowtastrophe.EventDrivenStrategy;
 import uk.ac.bioss.cowtastrophe.Farm;
 import uk.ac.bioss.cowtastrophe.Simulation;
 
@@ -19,7 +19,7 @@ import uk.ac.bioss.cowtastrophe.Simulation;
  * A control strategy that culls a farm once it is confirmed to be infected.
  */
 @Slf4j
-public class RingVaccination extends ControlStrategy implements Serializable {
+public class RingVaccination extends EventDrivenStrategy implements Serializable {
 
     static class Params {
 
@@ -52,29 +52,36 @@ public class RingVaccination extends ControlStrategy implements Serializable {
     }
 
     @Override
-    public final void run(final Simulation simulation) {
-        ArrayList<Farm> toBeVaccinated = new ArrayList<>(simulation.getConfirmedFarms());
+    protected final void onAttach(final Simulation simulation) {
         for (Map.Entry<Integer, Double> entry : ring.entrySet()) {
-            final int farmId = entry.getKey();
-            final Farm farm = simulation.getHelper().getFarmById(farmId);
+            final Farm farm = simulation.getHelper().getFarmById(entry.getKey());
+            final List<Farm> neighbours = simulation.getHelper().getAllFarmsWithindistance(farm, entry.getValue());
 
-            toBeVaccinated.add(farm);
-            simulation.getHelper().getAllFarmsWithindistance(farm, entry.getValue()).forEach((farm2) -> {
-                toBeVaccinated.add(farm2);
-            });
+            log.trace("Vaccinating the ring of farm {}: {}", farm.getId(), neighbours.stream()
+                      .map(Farm::getId)
+                      .sorted()
+                      .collect(Collectors.toList()));
+
+            vaccinateUnlessDone(simulation, farm);
+            for (Farm neighbour : neighbours) {
+                vaccinateUnlessDone(simulation, neighbour);
+            }
         }
-        
-        log.trace("Farms to be vaccinated {}", toBeVaccinated.stream()
-                  .map(Farm::getId)
-                  .sorted()
-                  .collect(Collectors.toList()));
-
-        for (Farm farm : toBeVaccinated) {
-            farm.setDayVaccinated(simulation.getDay());
-            farm.setStatus(DiseaseState.VACCINATED);
-            simulation.getStatistics().addCost(simulation.getDay(),
-                                               farm.getHerdSize() * simulation.getParameters()
-                                               .getCostOfVaccinatingAnimal());
+    }
+
+    @Override
+    protected final void onConfirmed(final Simulation simulation, final Farm farm) {
+        vaccinateUnlessDone(simulation, farm);
+    }
+
+    /**
+     * Vaccinate a farm unless it has been culled or vaccinated already.
+     * @param simulation the simulation.
+     * @param farm       the farm.
+     */
+    private static void vaccinateUnlessDone(final Simulation simulation, final Farm farm) {
+        if (farm.getStatus() != DiseaseState.CULLED && farm.getStatus() != DiseaseState.VACCINATED) {
+            vaccinate(simulation, farm, false);
         }
     }
 
@@ -7,11 +7,11 @@ package uk.ac.bioss.cowtastrophe.controls;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import java.io.Serializable;
-import java.util.ArrayList;
+import java.util.List;
 import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
-import uk.ac.bioss.cowtastrophe.ControlStrategy;
 import uk.ac.bioss.cowtastrophe.DiseaseState;
+import uk.ac.bioss.cowtastrophe.EventDrivenStrategy;
 import uk.ac.bioss.cowtastrophe.Farm;
 import uk.ac.bioss.cowtastrophe.Simulation;
 
@@ -19,7 +19,7 @@ import uk.ac.bioss.cowtastrophe.Simulation;
  * A control strategy that vaccinates a farm once it is confirmed as being infected.
  */
 @Slf4j
-public class VaccinateOnConfirmation extends ControlStrategy implements Serializable {
+public class VaccinateOnConfirmation extends EventDrivenStrategy implements Serializable {
 
     /**
      * Create the control strategy using the json formatted string.
@@ -31,27 +31,30 @@ public class VaccinateOnConfirmation extends ControlStrategy implements Serializ
     }
 
     @Override
-    public void run(Simulation simulation) {
-        ArrayList<Farm> toBeVaccinated = new ArrayList<>(simulation.getConfirmedFarms());
-        for (Farm farm : simulation.getConfirmedFarms()) {
-            toBeVaccinated.addAll(simulation.getHelper().getAllFarmsWithindistance(farm, radius));
-        }
+    protected void onConfirmed(final Simulation simulation, final Farm farm) {
+        final List<Farm> ring = simulation.getHelper().getAllFarmsWithindistance(farm, radius);
 
-        log.trace("Farms to be vaccinated {}", toBeVaccinated.stream()
+        log.trace("Vaccinating farm {} and the farms within its ring {}", farm.getId(), ring.stream()
                   .map(Farm::getId)
                   .sorted()
                   .collect(Collectors.toList()));
 
-        for (Farm farm : toBeVaccinated) {
-            if (farm.getStatus() != DiseaseState.CULLED) {
-                // Note: we are vaccinating farms within a ring so there may be suspected and susceptible
-                // farms that we are vaccinating.
-                farm.setDayVaccinated(simulation.getDay());
-                farm.setStatus(DiseaseState.VACCINATED);
-                simulation.getStatistics().addCost(simulation.getDay(),
-                                                   farm.getHerdSize() * simulation.getParameters().getCostOfVaccinatingAnimal()
-                                                   + simulation.getParameters().getCostOfFarmVisit());
-            }
+        vaccinateUnlessDone(simulation, farm);
+        for (Farm neighbour : ring) {
+            // Note: we are vaccinating farms within a ring so there may be suspected and susceptible
+            // farms that we are vaccinating.
+            vaccinateUnlessDone(simulation, neighbour);
+        }
+    }
+
+    /**
+     * Vaccinate a farm unless it has been culled or vaccinated already.
+     * @param simulation the simulation.
+     * @param farm       the farm.
+     */
+    private static void vaccinateUnlessDone(final Simulation simulation, final Farm farm) {
+        if (farm.getStatus() != DiseaseState.CULLED && farm.getStatus() != DiseaseState.VACCINATED) {
+            vaccinate(simulation, farm, true);
         }
     }
 
@@ -0,0 +1,51 @@
+package uk.ac.bioss.cowtastrophe.controls;
+
+import java.util.EnumSet;
+import java.util.Set;
+import lombok.extern.slf4j.Slf4j;
+import uk.ac.bioss.cowtastrophe.ControlMeasure;
+import uk.ac.bioss.cowtastrophe.DiseaseState;
+import uk.ac.bioss.cowtastrophe.Farm;
+import uk.ac.bioss.cowtastrophe.Simulation;
+
+/**
+ * The measure of a composite strategy that vaccinates the farms in a ring around the farm that triggered it (the
+ * cost of the visit is not booked, the farms are visited as part of the ring).
+ */
+@Slf4j
+final class VaccinationMeasure extends ControlMeasure {
+
+    /**
+     * Create the measure.
+     * @param trigger  when the rings are vaccinated: never, on suspicion or on confirmation.
+     * @param radius   the radius of the ring.
+     * @param eligible the states of the farms of the ring that are vaccinated.
+     */
+    VaccinationMeasure(final int trigger, final double radius, final Set<DiseaseState> eligible) {
+        super(trigger, radius);
+        this.eligible = EnumSet.copyOf(eligible);
+    }
+
+    @Override
+    protected boolean hasSameSettings(final ControlMeasure other) {
+        return super.hasSameSettings(other) && ((VaccinationMeasure) other).eligible.equals(eligible);
+    }
+
+    @Override
+    protected boolean isEligible(final Farm farm) {
+        return eligible.contains(farm.getStatus());
+    }
+
+    @Override
+    protected void applyToNeighbour(final Simulation simulation, final Farm source, final Farm neighbour) {
+        log.trace("Vaccinating farm {} in the ring of {}", neighbour.getId(), source.getId());
+        vaccinate(simulation, neighbour, false);
+    }
+
+    private final EnumSet<DiseaseState> eligible;
+
+    /**
+     * The serialVersionUID.
+     */
+    private static final long serialVersionUID = -6300951237000361749L;
+}
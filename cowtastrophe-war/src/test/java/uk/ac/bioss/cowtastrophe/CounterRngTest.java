@@ -0,0 +1,148 @@
+package uk.ac.bioss.cowtastrophe;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Test;
+
+/**
+ * Tests of the counter-based random number generator.
+ */
+public class CounterRngTest {
+
+    /**
+     * The Philox4x32-10 function gives the known answers published with Random123 (kat_vectors).
+     */
+    @Test
+    public void philoxMatchesKnownAnswers() {
+        final int[] out = new int[4];
+
+        CounterRng.philox(0L, 0L, 0L, out);
+        assertArrayEquals(new int[]{0x6627e8d5, 0xe169c58d, 0xbc57ac4c, 0x9b00dbd8}, out);
+
+        CounterRng.philox(-1L, -1L, -1L, out);
+        assertArrayEquals(new int[]{0x408f276d, 0x41c83b0e, 0xa20bc7c6, 0x6d5451fd}, out);
+
+        // counter {243f6a88, 85a308d3, 13198a2e, 03707344}, key {a4093822, 299f31d0} (the digits of pi).
+        CounterRng.philox(0x85a308d3243f6a88L, 0x0370734413198a2eL, 0x299f31d0a4093822L, out);
+        assertArrayEquals(new int[]{0xd16cfe09, 0x94fdcceb, 0x5001e420, 0x24126ea1}, out);
+    }
+
+    /**
+     * The numbers of a stream are the output blocks of its counters, and jumping to a position gives the numbers that
+     * stepping to it does.
+     */
+    @Test
+    public void streamIsTheSequenceOfBlocks() {
+        final CounterRng rng = new CounterRng(SEED, 7);
+        final int[] block = new int[4];
+        for (long counter = 0; counter < 8; counter++) {
+            CounterRng.philox(counter, 7, SEED, block);
+            for (int word = 0; word < 4; word++) {
+                assertEquals(block[word], rng.nextInt());
+            }
+        }
+
+        final CounterRng jumped = new CounterRng(SEED, 7);
+        jumped.jump(13);
+        final CounterRng stepped = new CounterRng(SEED, 7);
+        for (int i = 0; i < 13; i++) {
+            stepped.nextInt();
+        }
+        for (int i = 0; i < 10; i++) {
+            assertEquals(stepped.nextInt(), jumped.nextInt());
+        }
+    }
+
+    /**
+     * Splitting depends only on the seed, the stream and the index, not on what was drawn before.
+     */
+    @Test
+    public void splitIsReproducible() {
+        final CounterRng parent = new CounterRng(SEED, 3);
+        final CounterRng before = parent.split(11);
+        for (int i = 0; i < 100; i++) {
+            parent.nextInt();
+        }
+        final CounterRng after = parent.split(11);
+        assertEquals(before.getStream(), after.getStream());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(before.nextLong(), after.nextLong());
+        }
+    }
+
+    /**
+     * Neighbouring sub-streams, the sub-streams of neighbouring streams and nested splits are all different streams
+     * whose numbers are uncorrelated.
+     */
+    @Test
+    public void splitStreamsAreIndependent() {
+        final CounterRng root = new CounterRng(SEED, 0);
+        final Set<Long> streams = new HashSet<>();
+        for (long i = 0; i < 100; i++) {
+            assertTrue(streams.add(root.split(i).getStream()));
+            assertTrue(streams.add(new CounterRng(SEED, i + 1).split(0).getStream()));
+            assertTrue(streams.add(root.split(i).split(0).getStream()));
+        }
+
+        final CounterRng first = root.split(0);
+        final CounterRng second = root.split(1);
+        final int n = 100000;
+        double sumX = 0;
+        double sumY = 0;
+        double sumXY = 0;
+        double sumXX = 0;
+        double sumYY = 0;
+        for (int i = 0; i < n; i++) {
+            final double x = first.nextDouble();
+            final double y = second.nextDouble();
+            sumX += x;
+            sumY += y;
+            sumXY += x * y;
+            sumXX += x * x;
+            sumYY += y * y;
+        }
+        final double correlation = (n * sumXY - sumX * sumY)
+                                   / Math.sqrt((n * sumXX - sumX * sumX) * (n * sumYY - sumY * sumY));
+        // the standard error of the correlation of independent streams is 1 / sqrt(n), i.e. about 0.003.
+        assertEquals(0.0, correlation, 0.02);
+        assertEquals(0.5, sumX / n, 0.01);
+        assertEquals(0.5, sumY / n, 0.01);
+    }
+
+    /**
+     * The same seed and stream give the same numbers and a different seed gives different ones.
+     */
+    @Test
+    public void seedSelectsTheStream() {
+        final CounterRng a = new CounterRng(SEED, 5);
+        final CounterRng b = new CounterRng(SEED, 5);
+        final CounterRng c = new CounterRng(SEED + 1, 5);
+        for (int i = 0; i < 10; i++) {
+            final long value = a.nextLong();
+            assertEquals(value, b.nextLong());
+            assertNotEquals(value, c.nextLong());
+        }
+    }
+
+    /**
+     * nextInt(bound) stays in [0, bound) and hits every value.
+     */
+    @Test
+    public void boundedIntegersAreInRange() {
+        final CounterRng rng = new CounterRng(SEED, 1);
+        final int[] counts = new int[7];
+        for (int i = 0; i < 7000; i++) {
+            counts[rng.nextInt(7)]++;
+        }
+        for (int count : counts) {
+            assertTrue(count > 800 && count < 1200);
+        }
+    }
+
+    private static final long SEED = 42L;
+}
@@ -0,0 +1,47 @@
+package uk.ac.bioss.cowtastrophe;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of the sharing of the maps loaded from the preset files.
+ */
+public class FarmMapTest {
+
+    /**
+     * A preset file is read once and its map shared until the file is modified, it is then read again.
+     * @throws IOException        if the preset cannot be copied.
+     * @throws URISyntaxException if the test preset cannot be found.
+     */
+    @Test
+    public void readsAModifiedPresetAgain() throws IOException, URISyntaxException {
+        final File preset = folder.newFile("preset.properties");
+        Files.copy(new File(FarmMapTest.class.getResource("/test-preset.properties").toURI()).toPath(),
+                   preset.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        final FarmMap map = FarmMap.load(preset.getPath());
+        assertSame(map, FarmMap.load(preset.getAbsolutePath()));
+
+        assertTrue(preset.setLastModified(preset.lastModified() + MODIFIED_LATER));
+        final FarmMap reloaded = FarmMap.load(preset.getPath());
+        assertNotSame(map, reloaded);
+        assertSame(reloaded, FarmMap.load(preset.getPath()));
+    }
+
+    /**
+     * The folder of the copies of the preset.
+     */
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+    private static final long MODIFIED_LATER = 2000;
+}
@@ -0,0 +1,177 @@
+package uk.ac.bioss.cowtastrophe;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests of the infection tree against a naive tree of source links.
+ */
+public class InfectionTreeTest {
+
+    /**
+     * Load the test map.
+     * @throws URISyntaxException if the test preset cannot be found.
+     */
+    @BeforeClass
+    public static void loadMap() throws URISyntaxException {
+        map = FarmMap.load(new File(InfectionTreeTest.class.getResource("/test-preset.properties").toURI())
+                .getAbsolutePath());
+        states = new FarmStates(map);
+    }
+
+    /**
+     * A random forest of infections, queried between additions (so the index is rebuilt), gives the answers of the
+     * naive tree.
+     */
+    @Test
+    public void agreesWithANaiveTree() {
+        final InfectionTree tree = new InfectionTree();
+        final NaiveTree naive = new NaiveTree();
+        final CounterRng rng = new CounterRng(4L, 0);
+        for (int step = 0; step < 300; step++) {
+            final int day = step / 10;
+            final Farm farm = farm(rng.nextInt(map.size()));
+            if (naive.order.isEmpty() || rng.nextInt(20) == 0) {
+                tree.addIndexCase(day, farm);
+                naive.add(farm.getIndex(), -1, day);
+            } else {
+                // mostly farms already in the tree, sometimes a source that is not (it becomes an index case); a farm
+                // that is already infected is ignored.
+                final Farm source = rng.nextInt(10) == 0 ? farm(rng.nextInt(map.size()))
+                                    : farm(naive.order.get(rng.nextInt(naive.order.size())));
+                tree.addInfection(day, source, farm);
+                if (!naive.source.containsKey(farm.getIndex())) {
+                    naive.add(source.getIndex(), -1, day);
+                    naive.add(farm.getIndex(), source.getIndex(), day);
+                }
+            }
+            if (step % 37 == 0) {
+                assertSameTree(naive, tree);
+            }
+        }
+        assertSameTree(naive, tree);
+        assertSameTree(naive, new InfectionTree(tree));
+    }
+
+    /**
+     * A copy of a tree grows independently of the original.
+     */
+    @Test
+    public void copiesAreIndependent() {
+        final InfectionTree tree = new InfectionTree();
+        tree.addInfection(0, farm(0), farm(1));
+        final InfectionTree copy = new InfectionTree(tree);
+        copy.addInfection(1, farm(1), farm(2));
+        assertFalse(tree.contains(2));
+        assertEquals(2, tree.getSubtreeSize(0));
+        assertEquals(3, copy.getSubtreeSize(0));
+        assertArrayEquals(new int[]{0, 1, 2}, copy.getChain(2));
+    }
+
+    /**
+     * Check every query of a tree against the naive tree.
+     * @param naive the naive tree.
+     * @param tree  the infection tree.
+     */
+    private static void assertSameTree(final NaiveTree naive, final InfectionTree tree) {
+        assertEquals(naive.order.size(), tree.getNumFarms());
+        int indexCases = 0;
+        int maxGeneration = 0;
+        final Map<Integer, Integer> offspringCounts = new HashMap<>();
+        for (int farm : naive.order) {
+            assertTrue(tree.contains(farm));
+            assertEquals(naive.source.get(farm).intValue(), tree.getSource(farm));
+            assertEquals(naive.day.get(farm).intValue(), tree.getDayInfected(farm));
+            assertEquals(naive.generation(farm), tree.getGeneration(farm));
+            assertArrayEquals(naive.offspring(farm), tree.getOffspring(farm));
+            assertEquals(naive.offspring(farm).length, tree.getNumOffspring(farm));
+            assertEquals(naive.subtreeSize(farm), tree.getSubtreeSize(farm));
+            assertArrayEquals(naive.chain(farm), tree.getChain(farm));
+            indexCases += naive.source.get(farm) < 0 ? 1 : 0;
+            maxGeneration = Math.max(maxGeneration, naive.generation(farm));
+            offspringCounts.merge(naive.offspring(farm).length, 1, Integer::sum);
+        }
+        assertEquals(naive.order.size() - indexCases, tree.getNumInfections());
+
+        final int[] generations = new int[maxGeneration + 1];
+        naive.order.forEach((farm) -> generations[naive.generation(farm)]++);
+        assertArrayEquals(generations, tree.getGenerationSizes());
+        final int[] distribution = tree.getOffspringDistribution();
+        for (int n = 0; n < distribution.length; n++) {
+            assertEquals(offspringCounts.getOrDefault(n, 0).intValue(), distribution[n]);
+        }
+        assertEquals(offspringCounts.keySet().stream().mapToInt(Integer::intValue).max().getAsInt() + 1,
+                     distribution.length);
+    }
+
+    /**
+     * Get a farm of the test map.
+     * @param index the index of the farm.
+     * @return the farm.
+     */
+    private static Farm farm(final int index) {
+        return new Farm(states, index);
+    }
+
+    /**
+     * A tree held as the source of every farm, answering every query by following the links.
+     */
+    private static final class NaiveTree {
+
+        /**
+         * Add a farm, unless it is in the tree already.
+         * @param farm   the farm.
+         * @param from   its source, -1 for an index case.
+         * @param onDay  the day it was infected.
+         */
+        void add(final int farm, final int from, final int onDay) {
+            if (!source.containsKey(farm)) {
+                source.put(farm, from);
+                day.put(farm, onDay);
+                order.add(farm);
+            }
+        }
+
+        int generation(final int farm) {
+            return source.get(farm) < 0 ? 0 : generation(source.get(farm)) + 1;
+        }
+
+        int[] offspring(final int farm) {
+            return order.stream().filter((other) -> source.get(other) == farm).mapToInt(Integer::intValue).toArray();
+        }
+
+        int subtreeSize(final int farm) {
+            int size = 1;
+            for (int child : offspring(farm)) {
+                size += subtreeSize(child);
+            }
+            return size;
+        }
+
+        int[] chain(final int farm) {
+            final List<Integer> chain = new ArrayList<>();
+            for (int node = farm; node >= 0; node = source.get(node)) {
+                chain.add(0, node);
+            }
+            return chain.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        private final Map<Integer, Integer> source = new HashMap<>();
+        private final Map<Integer, Integer> day = new HashMap<>();
+        private final List<Integer> order = new ArrayList<>();
+    }
+
+    private static FarmMap map;
+    private static FarmStates states;
+}
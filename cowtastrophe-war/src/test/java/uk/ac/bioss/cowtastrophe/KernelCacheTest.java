@@ -0,0 +1,73 @@
+package uk.ac.bioss.cowtastrophe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests of the sharing of the kernel caches and of the weights they hold.
+ */
+public class KernelCacheTest {
+
+    /**
+     * Load the test map.
+     * @throws URISyntaxException if the test preset cannot be found.
+     */
+    @BeforeClass
+    public static void loadMap() throws URISyntaxException {
+        map = FarmMap.load(new File(KernelCacheTest.class.getResource("/test-preset.properties").toURI())
+                .getAbsolutePath());
+    }
+
+    /**
+     * The simulations with the same map and kernel parameters get the same cache, those with other parameters
+     * another one.
+     */
+    @Test
+    public void sharesTheCacheOfTheSameParameters() {
+        final KernelCache cache = KernelCache.forParameters(null, map, new Parameters(map.getParameters()));
+        assertSame(cache, KernelCache.forParameters(null, map, new Parameters(map.getParameters())));
+        assertSame(cache, KernelCache.forParameters(cache, map, new Parameters(map.getParameters())));
+
+        final Parameters other = new Parameters(map.getParameters());
+        other.setKernelPower(other.getKernelPower() + 1);
+        final KernelCache otherCache = KernelCache.forParameters(cache, map, other);
+        assertNotSame(cache, otherCache);
+        assertSame(otherCache, KernelCache.forParameters(null, map, other));
+    }
+
+    /**
+     * The cached weights are those of the power law, whether they are computed or read from the cache.
+     */
+    @Test
+    public void holdsTheWeightsOfThePowerLaw() {
+        final Parameters parameters = new Parameters(map.getParameters());
+        final KernelCache cache = KernelCache.forParameters(null, map, parameters);
+        for (int pass = 0; pass < 2; pass++) {
+            for (int infected = 0; infected < map.size(); infected += STEP) {
+                for (int susceptible = 0; susceptible < map.size(); susceptible++) {
+                    for (boolean restricted : new boolean[] {false, true}) {
+                        final double expected = Math.pow(1 + map.distance(infected, susceptible)
+                                                             / parameters.getKernelOffset(),
+                                                         -(restricted ? parameters.getRestrictedKernelPower()
+                                                                      : parameters.getKernelPower()))
+                                                * map.getHerdSize(infected) * map.getHerdSize(susceptible)
+                                                * parameters.getBeta();
+                        assertEquals(expected, cache.weight(infected, susceptible, restricted), 0.0);
+                    }
+                }
+            }
+        }
+    }
+
+    private static FarmMap map;
+    /**
+     * The infected farms that are checked are every STEP-th farm.
+     */
+    private static final int STEP = 7;
+}
@@ -0,0 +1,85 @@
+package uk.ac.bioss.cowtastrophe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import org.junit.Test;
+
+/**
+ * Tests of the quantile sketch.
+ */
+public class QuantileSketchTest {
+
+    /**
+     * Every quantile of a skewed distribution with negative values and zeros is within the relative accuracy of the
+     * value of the same rank.
+     */
+    @Test
+    public void quantilesAreWithinTheRelativeAccuracy() {
+        final CounterRng rng = new CounterRng(1L, 0);
+        final double[] values = new double[20000];
+        final QuantileSketch sketch = new QuantileSketch(ACCURACY);
+        for (int i = 0; i < values.length; i++) {
+            final double value = i % 10 == 0 ? 0.0 : Math.exp(3 * rng.nextGaussian()) * (i % 4 == 0 ? -1 : 1);
+            values[i] = value;
+            sketch.add(value);
+        }
+        assertWithinAccuracy(values, sketch);
+    }
+
+    /**
+     * Merging the sketches of parts of the values gives the sketch of all of them.
+     */
+    @Test
+    public void mergedSketchesAreWithinTheRelativeAccuracy() {
+        final CounterRng rng = new CounterRng(2L, 0);
+        final double[] values = new double[9000];
+        final QuantileSketch[] parts = {new QuantileSketch(ACCURACY), new QuantileSketch(ACCURACY),
+                                        new QuantileSketch(ACCURACY)};
+        for (int i = 0; i < values.length; i++) {
+            // the parts cover different ranges, so merging grows the buckets in both directions.
+            values[i] = (1 + rng.nextDouble()) * Math.pow(10, i % 3 * 2);
+            parts[i % 3].add(values[i]);
+        }
+        final QuantileSketch merged = new QuantileSketch(ACCURACY);
+        for (QuantileSketch part : parts) {
+            merged.merge(part);
+        }
+        assertEquals(values.length, merged.getCount());
+        assertWithinAccuracy(values, merged);
+    }
+
+    /**
+     * An empty sketch has no quantiles and sketches of different accuracies cannot be merged.
+     */
+    @Test
+    public void emptyAndIncompatibleSketches() {
+        assertTrue(Double.isNaN(new QuantileSketch(ACCURACY).quantile(0.5)));
+        try {
+            new QuantileSketch(ACCURACY).merge(new QuantileSketch(ACCURACY / 2));
+            throw new AssertionError("Merged sketches with different accuracies");
+        } catch (IllegalArgumentException ex) {
+            // expected.
+        }
+    }
+
+    /**
+     * Check the quantiles of a sketch against the values added to it.
+     * @param values the values.
+     * @param sketch the sketch.
+     */
+    private static void assertWithinAccuracy(final double[] values, final QuantileSketch sketch) {
+        final double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        for (int percent = 0; percent <= 100; percent++) {
+            final double q = percent / 100.0;
+            final double exact = sorted[(int) (q * (sorted.length - 1))];
+            final double estimate = sketch.quantile(q);
+            // a little slack for the rounding of the logarithm at the bounds of the buckets.
+            assertEquals("quantile " + q, exact, estimate, Math.abs(exact) * ACCURACY * (1 + 1e-9));
+        }
+    }
+
+    private static final double ACCURACY = 0.01;
+}
@@ -0,0 +1,145 @@
+package uk.ac.bioss.cowtastrophe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Tests of the timing wheel of the movement restrictions.
+ */
+public class RestrictionSchedulerTest {
+
+    /**
+     * Liftings a whole number of turns of the wheel apart share a bucket but are each lifted on their own day.
+     */
+    @Test
+    public void liftingsSeveralTurnsApartAreLiftedOnTheirDay() {
+        final RestrictionScheduler scheduler = new RestrictionScheduler(4);
+        scheduler.schedule(0, 10);
+        scheduler.schedule(1, 10 + 256);
+        scheduler.schedule(2, 10 + 2 * 256);
+        scheduler.schedule(3, 9 + 256);
+
+        assertEquals(Arrays.asList(0), liftDue(scheduler, 10));
+        assertEquals(Arrays.asList(), liftDue(scheduler, 100));
+        assertEquals(Arrays.asList(3), liftDue(scheduler, 9 + 256));
+        assertEquals(Arrays.asList(1), liftDue(scheduler, 10 + 256));
+        assertEquals(1, scheduler.getSize());
+        // a call that skips more than a turn of the wheel still lifts what is due.
+        assertEquals(Arrays.asList(2), liftDue(scheduler, 10 + 5 * 256));
+        assertEquals(0, scheduler.getSize());
+        assertEquals(10 + 2 * 256, scheduler.getLastLiftDay());
+    }
+
+    /**
+     * Rescheduling a farm only ever extends its restriction, and the entry left in its old bucket is not lifted.
+     */
+    @Test
+    public void reschedulingOnlyExtends() {
+        final RestrictionScheduler scheduler = new RestrictionScheduler(2);
+        assertEquals(RestrictionScheduler.NOT_SCHEDULED, scheduler.schedule(0, 20));
+        assertEquals(20, scheduler.schedule(0, 15));
+        assertEquals(20, scheduler.getLiftDay(0));
+        assertEquals(20, scheduler.schedule(0, 20 + 256));
+        assertEquals(20 + 256, scheduler.getLiftDay(0));
+        assertEquals(1, scheduler.getSize());
+
+        assertEquals(Arrays.asList(), liftDue(scheduler, 20));
+        assertTrue(scheduler.isScheduled(0));
+        assertEquals(Arrays.asList(0), liftDue(scheduler, 20 + 256));
+        assertFalse(scheduler.isScheduled(0));
+
+        // a day before the last day lifted is taken as that day.
+        scheduler.schedule(1, 3);
+        assertEquals(20 + 256, scheduler.getLiftDay(1));
+        assertEquals(Arrays.asList(1), liftDue(scheduler, 20 + 256));
+    }
+
+    /**
+     * forEachDue visits the farms that are due without lifting them, and a farm it reschedules is not lifted.
+     */
+    @Test
+    public void dueFarmsCanBeExtendedBeforeTheyAreLifted() {
+        final RestrictionScheduler scheduler = new RestrictionScheduler(3);
+        scheduler.schedule(0, 5);
+        scheduler.schedule(1, 5);
+        scheduler.schedule(2, 6);
+        final List<Integer> due = new ArrayList<>();
+        scheduler.forEachDue(5, (farm) -> {
+            due.add(farm);
+            if (farm == 1) {
+                scheduler.schedule(farm, 5 + 256);
+            }
+        });
+        assertEquals(Arrays.asList(0, 1), due);
+        assertEquals(Arrays.asList(0), liftDue(scheduler, 5));
+        assertEquals(Arrays.asList(2), liftDue(scheduler, 6));
+        assertEquals(Arrays.asList(1), liftDue(scheduler, 5 + 256));
+    }
+
+    /**
+     * Random schedules, extensions and liftings agree with a plain array of lift days.
+     */
+    @Test
+    public void agreesWithAReferenceModel() {
+        final int numFarms = 50;
+        final RestrictionScheduler scheduler = new RestrictionScheduler(numFarms);
+        final int[] expected = new int[numFarms];
+        Arrays.fill(expected, RestrictionScheduler.NOT_SCHEDULED);
+        final CounterRng rng = new CounterRng(3L, 0);
+        int today = 0;
+        for (int day = 0; day < 2000; day += 1 + rng.nextInt(3) * rng.nextInt(200)) {
+            for (int i = 0; i < 5; i++) {
+                final int farm = rng.nextInt(numFarms);
+                final int liftDay = Math.max(day + rng.nextInt(700), today);
+                final int previous = scheduler.schedule(farm, liftDay);
+                assertEquals(expected[farm], previous);
+                expected[farm] = Math.max(expected[farm], liftDay);
+            }
+            final List<Integer> lifted = liftDue(scheduler, day);
+            final List<Integer> expectedLifted = new ArrayList<>();
+            for (int farm = 0; farm < numFarms; farm++) {
+                if (expected[farm] != RestrictionScheduler.NOT_SCHEDULED && expected[farm] <= day) {
+                    expectedLifted.add(farm);
+                    expected[farm] = RestrictionScheduler.NOT_SCHEDULED;
+                }
+            }
+            lifted.sort(null);
+            assertEquals("day " + day, expectedLifted, lifted);
+            for (int farm = 0; farm < numFarms; farm++) {
+                assertEquals(expected[farm], scheduler.getLiftDay(farm));
+            }
+            today = day;
+        }
+    }
+
+    /**
+     * A copy is scheduled independently of the original.
+     */
+    @Test
+    public void copiesAreIndependent() {
+        final RestrictionScheduler scheduler = new RestrictionScheduler(2);
+        scheduler.schedule(0, 4);
+        final RestrictionScheduler copy = new RestrictionScheduler(scheduler);
+        copy.schedule(1, 4);
+        assertEquals(Arrays.asList(0), liftDue(scheduler, 4));
+        assertEquals(Arrays.asList(0, 1), liftDue(copy, 4));
+    }
+
+    /**
+     * Lift the restrictions due on a day.
+     * @param scheduler the scheduler.
+     * @param day       the day.
+     * @return the farms whose restrictions were lifted, in the order they were lifted.
+     */
+    private static List<Integer> liftDue(final RestrictionScheduler scheduler, final int day) {
+        final List<Integer> lifted = new ArrayList<>();
+        scheduler.liftDue(day, lifted::add);
+        return lifted;
+    }
+}
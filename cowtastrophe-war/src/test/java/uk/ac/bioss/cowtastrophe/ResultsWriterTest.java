@@ -0,0 +1,167 @@
+package uk.ac.bioss.cowtastrophe;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.ac.bioss.cowtastrophe.Statistics.Measure;
+
+/**
+ * Tests of writing the results of an ensemble with ResultsWriter and reading them back with ResultsReader.
+ */
+public class ResultsWriterTest {
+
+    /**
+     * Replicates whose cost chunks are dictionary encoded (few distinct costs) and plain (every cost different), with
+     * row groups that split the replicates, read back as written, whole and by row group.
+     * @throws IOException if the results file cannot be created.
+     */
+    @Test
+    public void roundTripAcrossDictionaryAndPlainChunks() throws IOException {
+        final List<Statistics> replicates = new ArrayList<>();
+        final CounterRng rng = new CounterRng(6L, 0);
+        for (int replicate = 0; replicate < 6; replicate++) {
+            final Statistics statistics = new Statistics();
+            final int days = 20 + rng.nextInt(40);
+            for (int day = 0; day < days; day++) {
+                if (day % 7 == 6) {
+                    // a day that is not recorded is not written.
+                    continue;
+                }
+                statistics.setSusceptibleFarms(day, 1000 - day);
+                statistics.addSuspectedFarms(day, rng.nextInt(5));
+                statistics.addInfectedButNotSuspectedFarms(day, rng.nextInt(3));
+                statistics.addConfirmedFarms(day, day / 2);
+                statistics.addCulledFarms(day, day / 3);
+                statistics.addVaccinatedFarms(day, replicate % 2 == 0 ? 0 : 100000 * day);
+                statistics.addRestrictedFarms(day, rng.nextInt(50));
+                // the even replicates repeat a few costs, the odd ones never do.
+                statistics.addCost(day, replicate % 2 == 0 ? 100.0 * rng.nextInt(3) : rng.nextDouble() * 1e6);
+            }
+            replicates.add(statistics);
+        }
+
+        final File dictionaryFile = write(replicates, 0);
+        final File plainFile = write(replicates, 1);
+        final File mixedFile = write(replicates, -1);
+        assertSameRows(replicates, 0, dictionaryFile);
+        assertSameRows(replicates, 1, plainFile);
+        assertSameRows(replicates, -1, mixedFile);
+        // a dictionary index takes a byte where a plain cost takes eight.
+        assertTrue(dictionaryFile.length() < plainFile.length() - 5 * countRows(replicates, 0));
+    }
+
+    /**
+     * An ensemble with no rows gives a file with no row groups.
+     * @throws IOException if the results file cannot be created.
+     */
+    @Test
+    public void emptyResults() throws IOException {
+        final File file = folder.newFile();
+        new ResultsWriter(file, ROW_GROUP_SIZE).close();
+        try (ResultsReader reader = new ResultsReader(file)) {
+            assertEquals(0, reader.getNumRowGroups());
+            assertEquals(0, reader.readIntColumn("day").length);
+            assertEquals(0, reader.readDoubleColumn("cost").length);
+        }
+    }
+
+    /**
+     * Write the replicates of a given parity.
+     * @param replicates the statistics of the replicates.
+     * @param parity     0 or 1 for the even or odd replicates, -1 for all of them.
+     * @return the results file.
+     * @throws IOException if the results file cannot be created.
+     */
+    private File write(final List<Statistics> replicates, final int parity) throws IOException {
+        final File file = folder.newFile();
+        try (ResultsWriter writer = new ResultsWriter(file, ROW_GROUP_SIZE)) {
+            for (int replicate = 0; replicate < replicates.size(); replicate++) {
+                if (parity < 0 || replicate % 2 == parity) {
+                    writer.add(replicate, replicates.get(replicate));
+                }
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Check the rows of a results file against the statistics of the replicates written to it.
+     * @param replicates the statistics of the replicates.
+     * @param parity     0 or 1 for the even or odd replicates, -1 for all of them.
+     * @param file       the results file.
+     */
+    private static void assertSameRows(final List<Statistics> replicates, final int parity, final File file) {
+        final int rows = countRows(replicates, parity);
+        final int[][] ints = new int[ResultsWriter.COLUMNS.length - 1][rows];
+        final double[] costs = new double[rows];
+        int row = 0;
+        for (int replicate = 0; replicate < replicates.size(); replicate++) {
+            if (parity >= 0 && replicate % 2 != parity) {
+                continue;
+            }
+            final Statistics statistics = replicates.get(replicate);
+            for (int day : statistics.getDays()) {
+                ints[0][row] = replicate;
+                ints[1][row] = day;
+                for (int i = 0; i < COUNTS.length; i++) {
+                    ints[2 + i][row] = (int) statistics.get(day, COUNTS[i]);
+                }
+                costs[row++] = statistics.getCost(day);
+            }
+        }
+
+        try (ResultsReader reader = new ResultsReader(file)) {
+            assertEquals((rows + ROW_GROUP_SIZE - 1) / ROW_GROUP_SIZE, reader.getNumRowGroups());
+            for (int column = 0; column < ints.length; column++) {
+                assertArrayEquals(ResultsWriter.COLUMNS[column], ints[column],
+                                  reader.readIntColumn(ResultsWriter.COLUMNS[column]));
+            }
+            assertArrayEquals(costs, reader.readDoubleColumn("cost"), 0.0);
+
+            int start = 0;
+            for (int group = 0; group < reader.getNumRowGroups(); group++) {
+                final int groupRows = reader.getNumRows(group);
+                final double[] groupCosts = reader.readDoubleColumn("cost", group);
+                final int[] groupDays = reader.readIntColumn("day", group);
+                for (int i = 0; i < groupRows; i++) {
+                    assertEquals(costs[start + i], groupCosts[i], 0.0);
+                    assertEquals(ints[1][start + i], groupDays[i]);
+                }
+                start += groupRows;
+            }
+            assertEquals(rows, start);
+        }
+    }
+
+    /**
+     * Count the recorded days of the replicates of a given parity.
+     * @param replicates the statistics of the replicates.
+     * @param parity     0 or 1 for the even or odd replicates, -1 for all of them.
+     * @return the number of rows.
+     */
+    private static int countRows(final List<Statistics> replicates, final int parity) {
+        int rows = 0;
+        for (int replicate = 0; replicate < replicates.size(); replicate++) {
+            if (parity < 0 || replicate % 2 == parity) {
+                rows += replicates.get(replicate).getDays().size();
+            }
+        }
+        return rows;
+    }
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static final int ROW_GROUP_SIZE = 37;
+    private static final Measure[] COUNTS = {Measure.SUSCEPTIBLE, Measure.SUSPECTED, Measure.INFECTIOUS_NOT_SUSPECTED,
+                                             Measure.CONFIRMED, Measure.CULLED, Measure.VACCINATED,
+                                             Measure.RESTRICTED};
+}
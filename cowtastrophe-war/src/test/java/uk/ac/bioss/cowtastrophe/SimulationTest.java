@@ -0,0 +1,67 @@
+package uk.ac.bioss.cowtastrophe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests of the number of days a simulation is run for.
+ */
+public class SimulationTest {
+
+    /**
+     * Load the test map.
+     * @throws URISyntaxException if the test preset cannot be found.
+     */
+    @BeforeClass
+    public static void loadMap() throws URISyntaxException {
+        final File preset = new File(SimulationTest.class.getResource("/test-preset.properties").toURI());
+        directory = preset.getParent();
+        map = FarmMap.load(preset.getAbsolutePath());
+    }
+
+    /**
+     * Running for n days advances the simulation by exactly n days, whether or not the days have events, unless the
+     * outbreak ends first.
+     */
+    @Test
+    public void runsForExactlyTheNumberOfDays() {
+        for (long seed = 1; seed <= SEEDS; seed++) {
+            for (int start : START_DAYS) {
+                for (int days : DAYS) {
+                    final Simulation simulation = new Simulation(directory, map, false, seed, seed);
+                    simulation.runFor(start);
+                    final int first = simulation.getDay();
+                    simulation.runFor(days);
+                    final String message = "seed " + seed + " start " + first + " days " + days;
+                    assertTrue(message + " ran to day " + simulation.getDay(), simulation.getDay() <= first + days);
+                    if (!isOver(simulation)) {
+                        assertEquals(message, first + days, simulation.getDay());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Check whether nothing more can happen in a simulation: there are no infection events left or no farm is
+     * infectious.
+     * @param simulation the simulation.
+     * @return true if the outbreak is over.
+     */
+    private static boolean isOver(final Simulation simulation) {
+        return simulation.getSimulator().getTransitionKernel().getTransitionEvents().isEmpty()
+               || simulation.countFarms(DiseaseState.SUSPECTED) + simulation.countFarms(DiseaseState.CONFIRMED)
+                  + simulation.countFarms(DiseaseState.INFECTIOUS_NOT_SUSPECTED) == 0;
+    }
+
+    private static String directory;
+    private static FarmMap map;
+    private static final int SEEDS = 6;
+    private static final int[] START_DAYS = {0, 1, 2, 4, 8};
+    private static final int[] DAYS = {1, 2, 5};
+}
@@ -0,0 +1,171 @@
+package uk.ac.bioss.cowtastrophe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.TreeMap;
+import org.junit.Test;
+import uk.ac.bioss.cowtastrophe.Statistics.Measure;
+
+/**
+ * Tests of the columns of the daily statistics.
+ */
+public class StatisticsTest {
+
+    /**
+     * Days recorded well past the initial capacity of the columns, in order, keep their values.
+     */
+    @Test
+    public void columnsGrowPastTheInitialCapacity() {
+        final Statistics statistics = new Statistics();
+        final Reference reference = new Reference();
+        for (int day = 0; day < 100; day++) {
+            for (Measure measure : Measure.values()) {
+                reference.add(statistics, day, measure, day * 10 + measure.ordinal());
+            }
+        }
+        assertEquals(0, statistics.getFirstDay());
+        assertEquals(99, statistics.getLastDay());
+        reference.assertSame(statistics);
+    }
+
+    /**
+     * Days recorded in any order, with gaps and before the first day, give the values and running costs of a map of
+     * the days.
+     */
+    @Test
+    public void agreesWithAReferenceModel() {
+        final Statistics statistics = new Statistics();
+        final Reference reference = new Reference();
+        final CounterRng rng = new CounterRng(5L, 0);
+        for (int i = 0; i < 2000; i++) {
+            // mostly the next few days, as in a simulation, sometimes a jump forwards or back.
+            final int day = rng.nextInt(10) == 0 ? rng.nextInt(300) - 20 : 40 + i / 10 + rng.nextInt(3);
+            final Measure measure = Measure.values()[rng.nextInt(Measure.values().length)];
+            if (measure == Measure.COST && day < 0) {
+                continue;
+            }
+            reference.add(statistics, day, measure, rng.nextInt(1000));
+            if (i % 97 == 0) {
+                reference.assertSame(statistics);
+            }
+        }
+        reference.assertSame(statistics);
+        reference.assertSame(new Statistics(statistics));
+    }
+
+    /**
+     * A copy can be extended without changing the original.
+     */
+    @Test
+    public void copiesAreIndependent() {
+        final Statistics statistics = new Statistics();
+        for (int day = 0; day < 40; day++) {
+            statistics.addCulledFarms(day, 1);
+        }
+        final Statistics copy = new Statistics(statistics);
+        copy.addCulledFarms(39, 1);
+        copy.addCulledFarms(200, 1);
+        copy.addCost(10, 5.0);
+        assertEquals(1.0, statistics.get(39, Measure.CULLED), 0.0);
+        assertEquals(39, statistics.getLastDay());
+        assertEquals(0.0, statistics.getTotalCost(), 0.0);
+        assertEquals(2.0, copy.get(39, Measure.CULLED), 0.0);
+        assertEquals(5.0, copy.getTotalCost(), 0.0);
+    }
+
+    /**
+     * The binary form holds every column.
+     * @throws IOException if the statistics cannot be written or read.
+     */
+    @Test
+    public void binaryRoundTrip() throws IOException {
+        final Statistics statistics = new Statistics();
+        final Reference reference = new Reference();
+        for (int day = 3; day < 80; day += 1 + day % 3) {
+            reference.add(statistics, day, Measure.CONFIRMED, day);
+            reference.add(statistics, day, Measure.COST, day * 1.5);
+        }
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        statistics.writeBinary(new DataOutputStream(bytes));
+        final Statistics read = Statistics.readBinary(new DataInputStream(new ByteArrayInputStream(
+                bytes.toByteArray())));
+        reference.assertSame(read);
+        assertEquals(statistics.getDays(), read.getDays());
+    }
+
+    /**
+     * The values added to statistics, by day.
+     */
+    private static final class Reference {
+
+        /**
+         * Add a value to the statistics and to the reference.
+         * @param statistics the statistics.
+         * @param day        the day.
+         * @param measure    the measure.
+         * @param value      the value.
+         */
+        void add(final Statistics statistics, final int day, final Measure measure, final double value) {
+            switch (measure) {
+                case SUSCEPTIBLE:
+                    statistics.setSusceptibleFarms(day, (int) value);
+                    break;
+                case SUSPECTED:
+                    statistics.addSuspectedFarms(day, (int) value);
+                    break;
+                case INFECTIOUS_NOT_SUSPECTED:
+                    statistics.addInfectedButNotSuspectedFarms(day, (int) value);
+                    break;
+                case CONFIRMED:
+                    statistics.addConfirmedFarms(day, (int) value);
+                    break;
+                case CULLED:
+                    statistics.addCulledFarms(day, (int) value);
+                    break;
+                case VACCINATED:
+                    statistics.addVaccinatedFarms(day, (int) value);
+                    break;
+                case RESTRICTED:
+                    statistics.addRestrictedFarms(day, (int) value);
+                    break;
+                default:
+                    statistics.addCost(day, value);
+                    break;
+            }
+            days.computeIfAbsent(day, (d) -> new double[Measure.values().length])[measure.ordinal()] += value;
+        }
+
+        /**
+         * Check every day of some statistics against the reference.
+         * @param statistics the statistics.
+         */
+        void assertSame(final Statistics statistics) {
+            assertEquals(days.firstKey().intValue(), statistics.getFirstDay());
+            assertEquals(days.lastKey().intValue(), statistics.getLastDay());
+            assertEquals(days.navigableKeySet(), statistics.getDays());
+            double total = 0.0;
+            for (int day = days.firstKey() - 2; day <= days.lastKey() + 2; day++) {
+                final double[] values = days.get(day);
+                assertEquals(values != null, statistics.isRecorded(day));
+                for (Measure measure : Measure.values()) {
+                    assertEquals("day " + day + " " + measure, values == null ? 0.0 : values[measure.ordinal()],
+                                 statistics.get(day, measure), 1e-9);
+                }
+                total += values == null ? 0.0 : values[Measure.COST.ordinal()];
+                assertEquals("day " + day, values == null ? 0.0 : values[Measure.COST.ordinal()],
+                             statistics.getCost(day), 1e-9);
+                assertEquals("day " + day, total, statistics.getTotalCost(day), 1e-6);
+            }
+            assertEquals(total, statistics.getTotalCost(), 1e-6);
+            assertFalse(statistics.isRecorded(days.lastKey() + 1));
+        }
+
+        private final TreeMap<Integer, double[]> days = new TreeMap<>();
+    }
+}
@@ -0,0 +1,120 @@
+package uk.ac.bioss.cowtastrophe.controls;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import uk.ac.bioss.cowtastrophe.CostCategory;
+import uk.ac.bioss.cowtastrophe.DiseaseState;
+import uk.ac.bioss.cowtastrophe.Farm;
+import uk.ac.bioss.cowtastrophe.FarmMap;
+import uk.ac.bioss.cowtastrophe.Parameters;
+import uk.ac.bioss.cowtastrophe.Simulation;
+
+/**
+ * Tests of the policy of CullAndVaccinateOnSuspiscion: every suspected farm is culled the day it is suspected, and the
+ * other farms suspected in the same run within the radius of a culled farm are vaccinated (and culled in their turn).
+ * Which of the farms suspected in the same run are vaccinated depends on the order in which they became suspected, so
+ * the policy is checked directly rather than against a scanning strategy.
+ */
+public class CullAndVaccinateOnSuspiscionTest {
+
+    /**
+     * Load the test map.
+     * @throws URISyntaxException if the test preset cannot be found.
+     */
+    @BeforeClass
+    public static void loadMap() throws URISyntaxException {
+        final File preset = new File(CullAndVaccinateOnSuspiscionTest.class.getResource("/test-preset.properties")
+                .toURI());
+        directory = preset.getParent();
+        map = FarmMap.load(preset.getAbsolutePath());
+    }
+
+    /**
+     * No farm is left suspected at the end of a day, the vaccinated farms were suspected on the day they were culled
+     * near another farm culled that day, and the culls and vaccinations are charged once each with a visit.
+     * @throws IOException if the settings of the strategy cannot be parsed.
+     */
+    @Test
+    public void cullsSuspectedFarmsAndVaccinatesTheirSuspectedNeighbours() throws IOException {
+        int vaccinated = 0;
+        for (long seed = 1; seed <= SEEDS; seed++) {
+            final Simulation simulation = new Simulation(directory, map, false, seed, seed);
+            simulation.setControlStrategy(new CullAndVaccinateOnSuspiscion(
+                    new ObjectMapper().readTree("{\"radius\":" + RADIUS + "}")));
+            while (simulation.getDay() < END_DAY && hasInfectiousFarms(simulation)) {
+                simulation.runFor(1);
+                assertEquals("seed " + seed + " day " + simulation.getDay(), 0,
+                             simulation.countFarms(DiseaseState.SUSPECTED));
+            }
+
+            final Parameters parameters = simulation.getParameters();
+            double cullingCost = 0.0;
+            double vaccinationCost = 0.0;
+            for (Farm farm : simulation.getFarms()) {
+                if (farm.getStatus() == DiseaseState.CULLED) {
+                    cullingCost += farm.getHerdSize() * parameters.getCostOfCullingAnimal()
+                                   + parameters.getCostOfFarmVisit();
+                }
+                if (farm.getDayVaccinated() >= 0) {
+                    vaccinated++;
+                    vaccinationCost += farm.getHerdSize() * parameters.getCostOfVaccinatingAnimal()
+                                       + parameters.getCostOfFarmVisit();
+                    final String message = "seed " + seed + " farm " + farm.getId();
+                    assertEquals(message, DiseaseState.CULLED, farm.getStatus());
+                    assertEquals(message, farm.getDayVaccinated(), farm.getDayCulled());
+                    assertTrue(message, culledNearby(simulation, farm));
+                }
+            }
+            assertEquals("seed " + seed, cullingCost,
+                         simulation.getStatistics().getCostLedger().getTotalCost(CostCategory.CULLING),
+                         cullingCost * TOLERANCE);
+            assertEquals("seed " + seed, vaccinationCost,
+                         simulation.getStatistics().getCostLedger().getTotalCost(CostCategory.VACCINATION),
+                         vaccinationCost * TOLERANCE);
+        }
+        assertTrue("no farm was vaccinated", vaccinated > 0);
+    }
+
+    /**
+     * Check whether any farm of a simulation is infectious, i.e. the outbreak is not over.
+     * @param simulation the simulation.
+     * @return true if a farm is infectious.
+     */
+    private static boolean hasInfectiousFarms(final Simulation simulation) {
+        return simulation.countFarms(DiseaseState.SUSPECTED) + simulation.countFarms(DiseaseState.CONFIRMED)
+               + simulation.countFarms(DiseaseState.INFECTIOUS_NOT_SUSPECTED) > 0;
+    }
+
+    /**
+     * Check whether another farm within the radius of a farm was culled on the day the farm was vaccinated.
+     * @param simulation the simulation.
+     * @param farm       the vaccinated farm.
+     * @return true if there is such a farm.
+     */
+    private static boolean culledNearby(final Simulation simulation, final Farm farm) {
+        for (Farm other : simulation.getFarms()) {
+            if (other != farm && other.getDayCulled() == farm.getDayVaccinated()
+                && map.distance(farm.getIndex(), other.getIndex()) <= RADIUS) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String directory;
+    private static FarmMap map;
+    private static final double RADIUS = 15;
+    private static final int SEEDS = 6;
+    private static final int END_DAY = 200;
+    /**
+     * The relative tolerance of the costs, which are summed in a different order.
+     */
+    private static final double TOLERANCE = 1e-9;
+}
@@ -0,0 +1,627 @@
+package uk.ac.bioss.cowtastrophe.controls;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import uk.ac.bioss.cowtastrophe.ControlStrategy;
+import uk.ac.bioss.cowtastrophe.CostCategory;
+import uk.ac.bioss.cowtastrophe.DiseaseState;
+import uk.ac.bioss.cowtastrophe.Farm;
+import uk.ac.bioss.cowtastrophe.FarmMap;
+import uk.ac.bioss.cowtastrophe.RestrictionScheduler;
+import uk.ac.bioss.cowtastrophe.Simulation;
+import uk.ac.bioss.cowtastrophe.Statistics;
+
+/**
+ * Tests that the event-driven control strategies give the same simulations as strategies that scan every farm each
+ * time they are run (as the strategies did before they were driven by the transition log), i.e. the same state of
+ * every farm, the same daily statistics and the same costs.
+ * <p>
+ * The scanning strategies implement the policies of the event-driven ones, which fixed a few accounting bugs of the
+ * old scans: farms that are already culled or vaccinated are not charged again, fixed movement restrictions are only
+ * extended, and a farm that a combined strategy culls is not vaccinated (the old CullVacCombi vaccinated the rings of
+ * the farms left confirmed after culling, i.e. none when culling on confirmation, and vaccinated culled farms).
+ */
+public class StrategyEquivalenceTest {
+
+    /**
+     * Load the test map.
+     * @throws URISyntaxException if the test preset cannot be found.
+     */
+    @BeforeClass
+    public static void loadMap() throws URISyntaxException {
+        final File preset = new File(StrategyEquivalenceTest.class.getResource("/test-preset.properties").toURI());
+        directory = preset.getParent();
+        map = FarmMap.load(preset.getAbsolutePath());
+    }
+
+    /**
+     * Culling on confirmation.
+     */
+    @Test
+    public void cullOnConfirmation() {
+        assertSameSimulations(() -> ControlStrategyFactory.create("{\"strategy\":\"Cull_on_confirmation\"}"),
+                              () -> new ScanCull(EnumSet.of(DiseaseState.CONFIRMED), -1,
+                                                 ControlStrategy.CULL_ON_CON));
+    }
+
+    /**
+     * Culling on suspicion.
+     */
+    @Test
+    public void cullOnSuspicion() {
+        assertSameSimulations(() -> ControlStrategyFactory.create("{\"strategy\":\"Cull_on_suspicion\"}"),
+                              () -> new ScanCull(EnumSet.of(DiseaseState.SUSPECTED, DiseaseState.CONFIRMED), -1,
+                                                 ControlStrategy.CULL_ON_SUS));
+    }
+
+    /**
+     * Culling the confirmed farms and the farms around them.
+     */
+    @Test
+    public void cullOnConfirmationWithRing() {
+        assertSameSimulations(() -> ControlStrategyFactory.create(
+                "{\"strategy\":\"Cull_on_confirmation_with_ring\",\"radius\":" + RADIUS + "}"),
+                              () -> new ScanCull(EnumSet.of(DiseaseState.CONFIRMED), RADIUS,
+                                                 ControlStrategy.CULL_NOT));
+    }
+
+    /**
+     * Vaccinating the confirmed farms and the farms around them.
+     */
+    @Test
+    public void vaccinateOnConfirmation() {
+        assertSameSimulations(() -> ControlStrategyFactory.create(
+                "{\"strategy\":\"Vaccinate_on_confirmation\",\"radius\":" + RADIUS + "}"),
+                              () -> new ScanVaccination(DiseaseState.CONFIRMED, RADIUS));
+    }
+
+    /**
+     * Vaccinating the suspected farms and the farms around them.
+     */
+    @Test
+    public void vaccinateOnSuspicion() {
+        assertSameSimulations(() -> ControlStrategyFactory.create(
+                "{\"strategy\":\"Vaccinate_on_suspicion\",\"radius\":" + RADIUS + "}"),
+                              () -> new ScanVaccination(DiseaseState.SUSPECTED, RADIUS));
+    }
+
+    /**
+     * Vaccinating fixed rings and the confirmed farms.
+     */
+    @Test
+    public void ringVaccination() {
+        assertSameSimulations(() -> ControlStrategyFactory.create(
+                "{\"strategy\":\"Ring_vaccination\",\"parameters\":[{\"farmId\":1,\"radius\":30},"
+                + "{\"farmId\":4,\"radius\":20}]}"),
+                              () -> new ScanRingVaccination(new int[]{1, 4}, new double[]{30, 20}));
+    }
+
+    /**
+     * Overlapping fixed movement restrictions of different lengths, which are extended when they end.
+     */
+    @Test
+    public void movementRestriction() {
+        assertSameSimulations(() -> ControlStrategyFactory.create(
+                "{\"strategy\":\"Movement_restriction\",\"parameters\":[{\"farmId\":1,\"radius\":40,\"days\":9},"
+                + "{\"farmId\":4,\"radius\":30,\"days\":5}]}"),
+                              () -> new ScanMovementRestriction(new int[]{1, 4}, new double[]{40, 30},
+                                                                new int[]{9, 5}));
+    }
+
+    /**
+     * Restricting the movements of every farm to the end of the simulation.
+     */
+    @Test
+    public void globalMovementRestriction() {
+        assertSameSimulations(() -> ControlStrategyFactory.create(
+                "{\"strategy\":\"Global_movement_restriction\"}"),
+                              ScanGlobalMovementRestriction::new);
+    }
+
+    /**
+     * Culling combined with ring vaccination, for several triggers.
+     */
+    @Test
+    public void cullVacCombi() {
+        final int[][] triggers = {{ControlStrategy.CULL_ON_CON, ControlStrategy.VAC_ON_SUS},
+                                  {ControlStrategy.CULL_ON_SUS, ControlStrategy.VAC_ON_CON},
+                                  {ControlStrategy.CULL_ON_CON, ControlStrategy.VAC_ON_CON},
+                                  {ControlStrategy.CULL_NOT, ControlStrategy.VAC_ON_CON}};
+        for (int[] trigger : triggers) {
+            assertSameSimulations(() -> ControlStrategyFactory.create(trigger[0], trigger[1], RADIUS),
+                                  () -> ScanCombination.cullAndVaccinate(trigger[0], trigger[1], RADIUS));
+        }
+    }
+
+    /**
+     * Culling combined with ring vaccination and movement restrictions, for several triggers and radii.
+     */
+    @Test
+    public void cullVacMoveCombi() {
+        final int[][] triggers = {
+            {ControlStrategy.CULL_ON_CON, ControlStrategy.VAC_ON_SUS, ControlStrategy.MOVE_ON_CON},
+            {ControlStrategy.CULL_NOT, ControlStrategy.VAC_ON_CON, ControlStrategy.MOVE_ON_SUS},
+            {ControlStrategy.CULL_ON_SUS, ControlStrategy.VAC_NOT, ControlStrategy.MOVE_ON_CON}};
+        final double[][] radii = {{RADIUS, 20}, {10, 25}, {RADIUS, 10}};
+        for (int i = 0; i < triggers.length; i++) {
+            final int[] trigger = triggers[i];
+            final double[] radius = radii[i];
+            assertSameSimulations(() -> ControlStrategyFactory.create(trigger[0], trigger[1], radius[0], trigger[2],
+                                                                      radius[1]),
+                                  () -> ScanCombination.cullVaccinateAndRestrict(trigger[0], trigger[1], radius[0],
+                                                                                 trigger[2], radius[1]));
+        }
+    }
+
+    /**
+     * Run a simulation with each strategy for several seeds and check that they end the same.
+     * @param strategy  creates the event-driven strategy.
+     * @param reference creates the scanning strategy.
+     */
+    private static void assertSameSimulations(final Supplier<ControlStrategy> strategy,
+                                              final Supplier<ControlStrategy> reference) {
+        for (long seed = 1; seed <= SEEDS; seed++) {
+            for (int attachDay : ATTACH_DAYS) {
+                final Simulation expected = run(reference.get(), seed, attachDay);
+                final Simulation actual = run(strategy.get(), seed, attachDay);
+                assertSameSimulation(strategy.get().getClass().getSimpleName() + " seed " + seed + " attached on day "
+                                     + attachDay, expected, actual);
+            }
+        }
+    }
+
+    /**
+     * Run a simulation to the end with a strategy attached on a given day.
+     * @param strategy  the strategy.
+     * @param seed      the seed (and the stream) of the simulation.
+     * @param attachDay the day on which the strategy is attached.
+     * @return the simulation.
+     */
+    private static Simulation run(final ControlStrategy strategy, final long seed, final int attachDay) {
+        final Simulation simulation = new Simulation(directory, map, false, seed, seed);
+        if (attachDay > 0) {
+            simulation.runFor(attachDay);
+        }
+        simulation.setControlStrategy(strategy);
+        simulation.runToEnd();
+        return simulation;
+    }
+
+    /**
+     * Check that two simulations ended in the same state with the same statistics.
+     * @param message  the message of a failure.
+     * @param expected the simulation of the scanning strategy.
+     * @param actual   the simulation of the event-driven strategy.
+     */
+    private static void assertSameSimulation(final String message, final Simulation expected,
+                                             final Simulation actual) {
+        assertEquals(message, expected.getDay(), actual.getDay());
+        for (int index = 0; index < map.size(); index++) {
+            final Farm farm = expected.getFarm(index);
+            final Farm other = actual.getFarm(index);
+            final String farmMessage = message + " farm " + farm.getId();
+            assertEquals(farmMessage, farm.getStatus(), other.getStatus());
+            assertEquals(farmMessage, farm.getDayInfected(), other.getDayInfected());
+            assertEquals(farmMessage, farm.getDayCulled(), other.getDayCulled());
+            assertEquals(farmMessage, farm.getDayVaccinated(), other.getDayVaccinated());
+            assertEquals(farmMessage, farm.isRestrictedMovement(), other.isRestrictedMovement());
+        }
+
+        final Statistics statistics = expected.getStatistics();
+        final Statistics otherStatistics = actual.getStatistics();
+        assertEquals(message, statistics.getFirstDay(), otherStatistics.getFirstDay());
+        assertEquals(message, statistics.getLastDay(), otherStatistics.getLastDay());
+        for (int day = statistics.getFirstDay(); day <= statistics.getLastDay(); day++) {
+            for (Statistics.Measure measure : Statistics.Measure.values()) {
+                final double value = statistics.get(day, measure);
+                assertEquals(message + " day " + day + " " + measure, value, otherStatistics.get(day, measure),
+                             Math.abs(value) * TOLERANCE);
+            }
+        }
+        for (CostCategory category : CostCategory.values()) {
+            final double cost = statistics.getCostLedger().getTotalCost(category);
+            assertEquals(message + " " + category, cost, otherStatistics.getCostLedger().getTotalCost(category),
+                         Math.abs(cost) * TOLERANCE);
+        }
+    }
+
+    /**
+     * A strategy that scans every farm each time it is run.
+     */
+    private abstract static class ScanStrategy extends ControlStrategy {
+
+        /**
+         * Get the farms that are in some states.
+         * @param simulation the simulation.
+         * @param states     the states.
+         * @return the farms, in the order of their indices.
+         */
+        static List<Farm> farmsIn(final Simulation simulation, final Set<DiseaseState> states) {
+            final List<Farm> farms = new ArrayList<>();
+            for (Farm farm : simulation.getFarms()) {
+                if (states.contains(farm.getStatus())) {
+                    farms.add(farm);
+                }
+            }
+            return farms;
+        }
+
+        /**
+         * Get the farms within a distance of a farm.
+         * @param simulation the simulation.
+         * @param farm       the farm.
+         * @param radius     the distance.
+         * @return the farms.
+         */
+        static List<Farm> farmsWithin(final Simulation simulation, final Farm farm, final double radius) {
+            final List<Farm> farms = new ArrayList<>();
+            for (Farm other : simulation.getFarms()) {
+                if (simulation.getMap().distance(farm.getIndex(), other.getIndex()) <= radius) {
+                    farms.add(other);
+                }
+            }
+            return farms;
+        }
+
+        /**
+         * Cull a farm, unless it is culled already.
+         * @param simulation the simulation.
+         * @param farm       the farm.
+         */
+        static void cull(final Simulation simulation, final Farm farm) {
+            if (farm.getStatus() != DiseaseState.CULLED) {
+                farm.setDayCulled(simulation.getDay());
+                farm.setStatus(DiseaseState.CULLED);
+                simulation.getStatistics().addCost(CostCategory.CULLING,
+                                                   farm.getHerdSize()
+                                                   * simulation.getParameters().getCostOfCullingAnimal()
+                                                   + simulation.getParameters().getCostOfFarmVisit());
+            }
+        }
+
+        /**
+         * Vaccinate a farm.
+         * @param simulation the simulation.
+         * @param farm       the farm.
+         * @param visitCost  whether the cost of a visit is charged.
+         */
+        static void vaccinate(final Simulation simulation, final Farm farm, final boolean visitCost) {
+            farm.setDayVaccinated(simulation.getDay());
+            farm.setStatus(DiseaseState.VACCINATED);
+            simulation.getStatistics().addCost(CostCategory.VACCINATION,
+                                               farm.getHerdSize()
+                                               * simulation.getParameters().getCostOfVaccinatingAnimal()
+                                               + (visitCost ? simulation.getParameters().getCostOfFarmVisit() : 0));
+        }
+
+        /**
+         * Vaccinate a farm, unless it is culled or vaccinated already.
+         * @param simulation the simulation.
+         * @param farm       the farm.
+         * @param visitCost  whether the cost of a visit is charged.
+         */
+        static void vaccinateUnlessDone(final Simulation simulation, final Farm farm, final boolean visitCost) {
+            if (farm.getStatus() != DiseaseState.CULLED && farm.getStatus() != DiseaseState.VACCINATED) {
+                vaccinate(simulation, farm, visitCost);
+            }
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Culls the farms in some states and optionally the farms around them.
+     */
+    private static final class ScanCull extends ScanStrategy {
+
+        /**
+         * Create the strategy.
+         * @param sourceStates the states of the farms that are culled.
+         * @param ringRadius   the radius of the ring culled around them, negative for none.
+         * @param idleTrigger  the trigger of the strategy when it is idle, CULL_NOT if it is never idle.
+         */
+        ScanCull(final Set<DiseaseState> sourceStates, final double ringRadius, final int idleTrigger) {
+            this.states = sourceStates;
+            this.radius = ringRadius;
+            this.trigger = idleTrigger;
+        }
+
+        @Override
+        public void run(final Simulation simulation) {
+            for (Farm farm : farmsIn(simulation, states)) {
+                cull(simulation, farm);
+                if (radius >= 0) {
+                    farmsWithin(simulation, farm, radius).forEach((neighbour) -> cull(simulation, neighbour));
+                }
+            }
+        }
+
+        @Override
+        public boolean isIdle(final Simulation simulation) {
+            return trigger != CULL_NOT && !isTriggered(simulation, trigger);
+        }
+
+        private final Set<DiseaseState> states;
+        private final double radius;
+        private final int trigger;
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Vaccinates the farms in a state and the farms around them, with the cost of a visit.
+     */
+    private static final class ScanVaccination extends ScanStrategy {
+
+        /**
+         * Create the strategy.
+         * @param sourceState the state of the farms that are vaccinated.
+         * @param ringRadius  the radius of the ring vaccinated around them.
+         */
+        ScanVaccination(final DiseaseState sourceState, final double ringRadius) {
+            this.state = sourceState;
+            this.radius = ringRadius;
+        }
+
+        @Override
+        public void run(final Simulation simulation) {
+            for (Farm farm : farmsIn(simulation, EnumSet.of(state))) {
+                vaccinateUnlessDone(simulation, farm, true);
+                farmsWithin(simulation, farm, radius).forEach((neighbour) -> vaccinateUnlessDone(simulation,
+                                                                                                 neighbour, true));
+            }
+        }
+
+        private final DiseaseState state;
+        private final double radius;
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Vaccinates the confirmed farms and fixed rings, without the cost of a visit.
+     */
+    private static final class ScanRingVaccination extends ScanStrategy {
+
+        /**
+         * Create the strategy.
+         * @param farmIds the ids of the farms at the centres of the rings.
+         * @param radii   the radii of the rings.
+         */
+        ScanRingVaccination(final int[] farmIds, final double[] radii) {
+            this.centres = farmIds;
+            this.radii = radii;
+        }
+
+        @Override
+        public void run(final Simulation simulation) {
+            for (Farm farm : farmsIn(simulation, EnumSet.of(DiseaseState.CONFIRMED))) {
+                vaccinateUnlessDone(simulation, farm, false);
+            }
+            for (int ring = 0; ring < centres.length; ring++) {
+                final Farm centre = simulation.getHelper().getFarmById(centres[ring]);
+                vaccinateUnlessDone(simulation, centre, false);
+                farmsWithin(simulation, centre, radii[ring]).forEach((neighbour) -> vaccinateUnlessDone(
+                        simulation, neighbour, false));
+            }
+        }
+
+        private final int[] centres;
+        private final double[] radii;
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Restricts the movements of the farms in fixed areas for a number of days, extending the restrictions that end.
+     */
+    private static final class ScanMovementRestriction extends ScanStrategy {
+
+        /**
+         * Create the strategy.
+         * @param farmIds the ids of the farms at the centres of the areas.
+         * @param radii   the radii of the areas.
+         * @param days    the number of days of the restrictions in each area.
+         */
+        ScanMovementRestriction(final int[] farmIds, final double[] radii, final int[] days) {
+            this.centres = farmIds;
+            this.radii = radii;
+            this.days = days;
+        }
+
+        @Override
+        public void run(final Simulation simulation) {
+            final RestrictionScheduler scheduler = simulation.getRestrictionScheduler();
+            for (Farm farm : simulation.getFarms()) {
+                int length = -1;
+                for (int area = 0; area < centres.length; area++) {
+                    final Farm centre = simulation.getHelper().getFarmById(centres[area]);
+                    if (simulation.getMap().distance(centre.getIndex(), farm.getIndex()) <= radii[area]) {
+                        length = Math.max(length, days[area]);
+                    }
+                }
+                final int index = farm.getIndex();
+                if (length < 0 || (farm.isRestrictedMovement() && !scheduler.isScheduled(index))
+                    || (scheduler.isScheduled(index) && scheduler.getLiftDay(index) > simulation.getDay())) {
+                    continue;
+                }
+                final int liftDay = simulation.getDay() + length;
+                final int previous = scheduler.schedule(index, liftDay);
+                final int extension = previous == RestrictionScheduler.NOT_SCHEDULED ? length : liftDay - previous;
+                simulation.getRestrictedFarms().add(index);
+                simulation.getStatistics().addCost(CostCategory.MOVEMENT_RESTRICTION,
+                                                   simulation.getParameters().getCostOfMvmtBanPerDay() * extension);
+            }
+        }
+
+        private final int[] centres;
+        private final double[] radii;
+        private final int[] days;
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Restricts the movements of every farm that is not restricted to the end of the simulation.
+     */
+    private static final class ScanGlobalMovementRestriction extends ScanStrategy {
+
+        @Override
+        public void run(final Simulation simulation) {
+            final int days = simulation.getParameters().getEndTime() - simulation.getDay();
+            for (Farm farm : simulation.getFarms()) {
+                if (simulation.getRestrictedFarms().add(farm.getIndex())) {
+                    simulation.getStatistics().addCost(CostCategory.MOVEMENT_RESTRICTION,
+                                                       simulation.getParameters().getCostOfMvmtBanPerDay() * days);
+                }
+            }
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Restricts the movements of the farms around the farms that trigger it, vaccinates the farms in some states
+     * around the farms that trigger it and culls the farms that trigger it, and charges for the restricted farms.
+     */
+    private static final class ScanCombination extends ScanStrategy {
+
+        /**
+         * Create the strategy.
+         * @param cull      the trigger of culling.
+         * @param vac       the trigger of vaccination.
+         * @param vacRadius the radius of vaccination.
+         * @param vacStates the states of the farms that are vaccinated.
+         * @param move      the trigger of the movement restrictions.
+         * @param moveRad   the radius of the movement restrictions.
+         * @param cullFirst whether the culling is done before the vaccination (the order of CullVacCombi).
+         */
+        private ScanCombination(final int cull, final int vac, final double vacRadius,
+                                final Set<DiseaseState> vacStates, final int move, final double moveRad,
+                                final boolean cullFirst) {
+            this.culling = cull;
+            this.vaccination = vac;
+            this.vaccinationRadius = vacRadius;
+            this.vaccinated = vacStates;
+            this.movement = move;
+            this.movementRadius = moveRad;
+            this.cullingFirst = cullFirst;
+        }
+
+        /**
+         * Create the reference of CullVacCombi.
+         * @param cull      the trigger of culling.
+         * @param vac       the trigger of vaccination.
+         * @param vacRadius the radius of vaccination.
+         * @return the strategy.
+         */
+        static ScanCombination cullAndVaccinate(final int cull, final int vac, final double vacRadius) {
+            final Set<DiseaseState> states = EnumSet.of(DiseaseState.SUSCEPTIBLE,
+                                                        DiseaseState.INFECTIOUS_NOT_SUSPECTED);
+            if (cull != CULL_ON_SUS) {
+                states.add(DiseaseState.SUSPECTED);
+            }
+            if (cull == CULL_NOT) {
+                states.add(DiseaseState.CONFIRMED);
+            }
+            return new ScanCombination(cull, vac, vacRadius, states, MOVE_NOT, -1, true);
+        }
+
+        /**
+         * Create the reference of CullVacMoveCombi.
+         * @param cull      the trigger of culling.
+         * @param vac       the trigger of vaccination.
+         * @param vacRadius the radius of vaccination.
+         * @param move      the trigger of the movement restrictions.
+         * @param moveRad   the radius of the movement restrictions.
+         * @return the strategy.
+         */
+        static ScanCombination cullVaccinateAndRestrict(final int cull, final int vac, final double vacRadius,
+                                                        final int move, final double moveRad) {
+            return new ScanCombination(cull, vac, vacRadius, EnumSet.of(DiseaseState.SUSCEPTIBLE,
+                                                                        DiseaseState.INFECTIOUS_NOT_SUSPECTED),
+                                       move, moveRad, false);
+        }
+
+        @Override
+        public void run(final Simulation simulation) {
+            // the farms that trigger the measures are those in the trigger states when the strategy is run.
+            final List<Farm> cullSources = farmsIn(simulation, triggerStates(culling));
+            final List<Farm> vaccinationSources = farmsIn(simulation, triggerStates(vaccination));
+            for (Farm source : farmsIn(simulation, triggerStates(movement))) {
+                for (Farm farm : farmsWithin(simulation, source, movementRadius)) {
+                    simulation.getRestrictedFarms().add(farm.getIndex());
+                }
+            }
+            if (cullingFirst) {
+                cullSources.forEach((farm) -> cull(simulation, farm));
+            }
+            for (Farm source : vaccinationSources) {
+                for (Farm farm : farmsWithin(simulation, source, vaccinationRadius)) {
+                    if (vaccinated.contains(farm.getStatus())) {
+                        vaccinate(simulation, farm, false);
+                    }
+                }
+            }
+            if (!cullingFirst) {
+                cullSources.forEach((farm) -> cull(simulation, farm));
+                simulation.getStatistics().addCost(CostCategory.MOVEMENT_RESTRICTION, getIdleCost(simulation));
+            }
+        }
+
+        @Override
+        public boolean isIdle(final Simulation simulation) {
+            return !isTriggered(simulation, culling) && !isTriggered(simulation, vaccination)
+                   && !isTriggered(simulation, movement);
+        }
+
+        @Override
+        public double getIdleCost(final Simulation simulation) {
+            return cullingFirst ? 0.0 : simulation.getParameters().getCostOfMvmtBanPerDay()
+                                        * simulation.getRestrictedFarms().getSize();
+        }
+
+        /**
+         * Get the states of the farms that trigger a measure.
+         * @param trigger the trigger of the measure.
+         * @return the states.
+         */
+        private static Set<DiseaseState> triggerStates(final int trigger) {
+            final Set<DiseaseState> states = EnumSet.noneOf(DiseaseState.class);
+            if (trigger != CULL_NOT) {
+                states.add(DiseaseState.CONFIRMED);
+            }
+            if (trigger == CULL_ON_SUS) {
+                states.add(DiseaseState.SUSPECTED);
+            }
+            return states;
+        }
+
+        private final int culling;
+        private final int vaccination;
+        private final double vaccinationRadius;
+        private final Set<DiseaseState> vaccinated;
+        private final int movement;
+        private final double movementRadius;
+        private final boolean cullingFirst;
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static String directory;
+    private static FarmMap map;
+    private static final double RADIUS = 15;
+    private static final int SEEDS = 3;
+    /**
+     * The strategies are attached at the start and to an outbreak that has run uncontrolled for a few days.
+     */
+    private static final int[] ATTACH_DAYS = {0, 2};
+    /**
+     * The relative tolerance of the costs, which are summed in a different order.
+     */
+    private static final double TOLERANCE = 1e-9;
+}